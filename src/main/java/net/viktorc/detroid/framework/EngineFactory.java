@@ -1,6 +1,8 @@
 package net.viktorc.detroid.framework;
 
 import net.viktorc.detroid.framework.engine.Detroid;
+import net.viktorc.detroid.framework.engine.EndGameTableBase;
+import net.viktorc.detroid.framework.engine.GaviotaTableBaseJNI;
 import net.viktorc.detroid.framework.tuning.TunableEngine;
 import net.viktorc.detroid.framework.uci.UCIEngine;
 import net.viktorc.detroid.framework.validation.ControllerEngine;
@@ -37,4 +39,14 @@ public interface EngineFactory {
     return new Detroid();
   }
 
-}
\ No newline at end of file
+  /**
+   * Returns the {@link net.viktorc.detroid.framework.engine.EndGameTableBase} to adjudicate self-play games by. By default, it is the
+   * Gaviota tablebase instance which is loaded and initialized by the default controller engines.
+   *
+   * @return The endgame tablebase for adjudication.
+   */
+  default EndGameTableBase getEndGameTableBase() {
+    return GaviotaTableBaseJNI.getInstance();
+  }
+
+}
\ No newline at end of file
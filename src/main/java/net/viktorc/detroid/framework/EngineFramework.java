@@ -7,22 +7,37 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import javafx.application.Application;
+import net.viktorc.detroid.framework.engine.BitbaseGenerator;
+import net.viktorc.detroid.framework.engine.ChessParseException;
+import net.viktorc.detroid.framework.engine.PolyglotBookBuilder;
+import net.viktorc.detroid.framework.engine.StartupSnapshot;
 import net.viktorc.detroid.framework.gui.GUIStarter;
 import net.viktorc.detroid.framework.gui.standard.GUI;
 import net.viktorc.detroid.framework.gui.standard.StandardGUIStarter;
+import net.viktorc.detroid.framework.tuning.Adjudication;
 import net.viktorc.detroid.framework.tuning.DataSetUtils;
+import net.viktorc.detroid.framework.tuning.EPDFilter;
 import net.viktorc.detroid.framework.tuning.EngineParameters;
+import net.viktorc.detroid.framework.tuning.OpeningSuite;
 import net.viktorc.detroid.framework.tuning.ParameterType;
 import net.viktorc.detroid.framework.tuning.SelfPlayEngines;
 import net.viktorc.detroid.framework.tuning.SelfPlayOptimizer;
+import net.viktorc.detroid.framework.tuning.SelfPlaySettings;
+import net.viktorc.detroid.framework.tuning.SelfPlayWorker;
 import net.viktorc.detroid.framework.tuning.TexelOptimizer;
 import net.viktorc.detroid.framework.tuning.TunableEngine;
 import net.viktorc.detroid.framework.uci.UCI;
 import net.viktorc.detroid.framework.uci.UCIEngine;
+import net.viktorc.detroid.framework.util.GradientApproximation;
 import net.viktorc.detroid.framework.validation.ControllerEngine;
+import net.viktorc.detroid.framework.validation.SPRT;
 
 /**
  * The application that serves as a chess engine framework handling communication via the UCI protocol, providing a GUI, and offering
@@ -68,6 +83,18 @@ public final class EngineFramework implements Runnable {
    * The default path to the PGN file.
    */
   private static final String DEF_PGN_FILE_PATH = "games.pgn";
+  /**
+   * The default path to the Polyglot opening book file.
+   */
+  private static final String DEF_BOOK_FILE_PATH = "book.bin";
+  /**
+   * The default path to the directory of the bitbase files.
+   */
+  private static final String DEF_BITBASE_DIR_PATH = "bitbases";
+  /**
+   * The default path to the start-up snapshot file.
+   */
+  private static final String DEF_SNAPSHOT_FILE_PATH = StartupSnapshot.DEFAULT_FILE_PATH;
   /**
    * The default EPD game result operation code.
    */
@@ -86,24 +113,47 @@ public final class EngineFramework implements Runnable {
    * engine instances required for different parameters of the framework.
    * @param args The program arguments. If it is null or empty, the engine is started in GUI mode; else:<br>
    * UCI mode: {@code -u}<br>
-   * Self play tuning: {@code -t selfplay -population <integer> -games <integer> -tc <integer> [--paramtype <eval | control | management |
-   * eval+control | control+management | all> {all}] [--learningrate <decimal> {.1}] [--neglearningrate <decimal> {.05}]
+   * Self play tuning: {@code -t selfplay -population <integer> -games <integer> <-tc <integer> | --depth <integer> |
+   * --nodes <integer>> [--paramtype <eval | control | management | eval+control | control+management | all> {all}]
+   * [--learningrate <decimal> {.1}] [--neglearningrate <decimal> {.05}]
    * [--mutationprob <decimal> {.025}] [--mutationshift <decimal> {.05}] [--generations <integer>] [--inc <integer> {0}]
-   * [--validfactor <decimal> {0}] [--initprobvector <quoted_comma_separated_decimals>] [--trybook <bool> {false}] [--tryhash <integer>]
-   * [--trythreads <integer>] [--log <string> {log.txt}] [--concurrency <integer>] {1}]}<br>
+   * [--validfactor <decimal> {0}] [--sprt <quoted_comma_separated_decimals>] [--sprtalpha <decimal> {.05}] [--sprtbeta <decimal> {.05}]
+   * [--initprobvector <quoted_comma_separated_decimals>] [--trybook <bool> {false}] [--tryhash <integer>] [--trythreads <integer>]
+   * [--openings <string>] [--resignscore <integer>] [--resignmoves <integer> {3}] [--drawply <integer>] [--drawscore <integer> {10}]
+   * [--drawmoves <integer> {8}] [--egtbadjudication <bool> {false}] [--workerport <integer>] [--checkpoint <string>]
+   * [--resume <string>] [--log <string> {log.txt}] [--concurrency <integer>] {1}]}<br>
+   * Self play tuning worker: {@code -t worker -coordinator <host:port> [--trybook <bool> {false}] [--tryhash <integer>]
+   * [--trythreads <integer>] [--resignscore <integer>] [--resignmoves <integer> {3}] [--drawply <integer>] [--drawscore <integer> {10}]
+   * [--drawmoves <integer> {8}] [--egtbadjudication <bool> {false}] [--log <string> {log.txt}] [--concurrency <integer> {1}]}<br>
    * Texel tuning: {@code -t texel -epdfile <string> -batchsize <integer> [--labelopcode <string> {Gr}] [--epochs <integer>]
    * [--testdataprop <decimal> {.2}] [--h <decimal> {1}] [--learningrate <decimal> {1}] [--annealingrate <decimal> {.99}]
-   * [--l1reg <decimal> {.001}] [--l2reg <decimal> {.0001}] [--costbatchsize <integer>] [--k <decimal>] [--log <string> {log.txt}]
-   * [--concurrency <integer> {1}]}<br>
+   * [--l1reg <decimal> {.001}] [--l2reg <decimal> {.0001}] [--costbatchsize <integer>] [--k <decimal>] [--gradapprox <fd | spsa> {fd}]
+   * [--checkpoint <string>] [--resume <string>] [--log <string> {log.txt}] [--concurrency <integer> {1}]}<br>
    * EPD file generation from a PGN file: {@code -g epd -pgnfile <string> [--maxgames <integer>] [--minelo <integer>]
-   * [--labelopcode <string> {Gr}] [--minhalfmoveind <integer>] [--destfile <string> {positions.epd}]}<br>
-   * PGN file generation by self-play: {@code -g pgn -games <integer> -tc <integer> [--inc <integer> {0}] [--trybook <bool> {false}]
-   * [--tryhash <integer>] [--trythreads <integer>] [--destfile <string> {games.pgn}] [--concurrency <integer> {1}]}<br>
+   * [--labelopcode <string> {Gr}] [--minhalfmoveind <integer>] [--samplepergame <integer>] [--destfile <string> {positions.epd}]
+   * [--concurrency <integer> {1}] [--ordered <boolean> {true}]}<br>
+   * PGN file generation by self-play: {@code -g pgn -games <integer> <-tc <integer> | --depth <integer> | --nodes <integer>>
+   * [--inc <integer> {0}] [--trybook <bool> {false}] [--tryhash <integer>] [--trythreads <integer>] [--openings <string>]
+   * [--resignscore <integer>] [--resignmoves <integer> {3}] [--drawply <integer>] [--drawscore <integer> {10}]
+   * [--drawmoves <integer> {8}] [--egtbadjudication <bool> {false}] [--destfile <string> {games.pgn}] [--concurrency <integer> {1}]}<br>
+   * Polyglot opening book generation from a PGN file: {@code -g book -pgnfile <string> [--maxgames <integer>] [--maxply <integer> {32}]
+   * [--mingames <integer> {3}] [--memlimit <integer> {256}] [--destfile <string> {book.bin}] [--concurrency <integer> {1}]}<br>
+   * Endgame bitbase generation: {@code -g bitbases [--maxpieces <integer> {4}] [--tables <quoted_comma_separated_names>]
+   * [--destdir <string> {bitbases}] [--concurrency <integer> {1}]}<br>
+   * Start-up snapshot generation: {@code -g snapshot [--paramsfile <string> {params.xml}] [--destfile <string> {startup.snapshot}]}<br>
    * Removing draws from an EPD file: {@code -f draw -sourcefile <string> [--labelopcode <string> {Gr}]
-   * [--destfile <string> {games.pgn}]}<br>
-   * Removing tactical positions from an EPD file: {@code -f tactical -sourcefile <string> [--destfile <string> {positions.epd}]}<br>
+   * [--destfile <string> {games.pgn}] [--concurrency <integer> {1}]}<br>
+   * Removing tactical positions from an EPD file: {@code -f tactical -sourcefile <string> [--destfile <string> {positions.epd}]
+   * [--concurrency <integer> {1}]}<br>
    * Removing unbalanced positions from an EPD file: {@code -f unbalanced -sourcefile <string> -imbalance <integer>
-   * [--destfile <string> {positions.epd}]}<br>
+   * [--destfile <string> {positions.epd}] [--concurrency <integer> {1}]}<br>
+   * Applying multiple filters in a single pass: {@code -f <draw+tactical | draw+unbalanced | tactical+unbalanced |
+   * draw+tactical+unbalanced> -sourcefile <string> [-imbalance <integer>] [--labelopcode <string> {Gr}]
+   * [--destfile <string> {positions.epd}] [--concurrency <integer> {1}]}<br>
+   * Removing duplicate positions from an EPD file: {@code -f duplicate -sourcefile <string> [--labelopcode <string> {Gr}]
+   * [--averagelabels <bool> {false}] [--memlimit <integer> {1024}] [--destfile <string> {positions.epd}]}<br>
+   * Replacing the positions of an EPD file by their quiescence-resolved leaf positions: {@code -f quiescence -sourcefile <string>
+   * [--destfile <string> {positions.epd}] [--concurrency <integer> {1}]}<br>
    * Probability vector conversion to parameters file: {@code -c probvector -value <quoted_comma_separated_decimals>
    * [--paramtype <eval | control | management | eval+control | control+management | all> {all}] [--paramsfile <string> {params.xml}]}<br>
    * Parameter value array conversion to parameters file: {@code -c parameters -value <quoted_comma_separated_decimals>
@@ -140,6 +190,17 @@ public final class EngineFramework implements Runnable {
     return paramTypes;
   }
 
+  private static GradientApproximation resolveGradientApproximation(String arg) {
+    switch (arg) {
+      case "fd":
+        return GradientApproximation.FINITE_DIFFERENCE;
+      case "spsa":
+        return GradientApproximation.SIMULTANEOUS_PERTURBATION;
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
   private static void trySetOptions(UCIEngine engine, Boolean tryUseBook, Integer hash, Integer threads) {
     if (tryUseBook != null) {
       engine.setOwnBookOption(tryUseBook);
@@ -152,15 +213,34 @@ public final class EngineFramework implements Runnable {
     }
   }
 
+  private static List<String> loadOpenings(String openingsFile) {
+    if (openingsFile == null) {
+      return null;
+    }
+    try {
+      return OpeningSuite.load(openingsFile);
+    } catch (IOException | ChessParseException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private Adjudication buildAdjudication(Short resignScore, Integer resignMoves, Integer drawPly, Short drawScore, Integer drawMoves,
+      boolean egtbAdjudication) {
+    if (resignScore == null && drawPly == null && !egtbAdjudication) {
+      return null;
+    }
+    return new Adjudication(resignScore, resignMoves, drawPly, drawScore, drawMoves,
+        egtbAdjudication ? factory.getEndGameTableBase() : null);
+  }
+
   private void runInUCIMode() {
     try (UCI uci = new UCI(factory.newEngineInstance(), System.in, System.out)) {
       uci.run();
     }
   }
 
-  private void runInSelfPlayTuningMode(Set<ParameterType> paramTypes, String logFilePath, int concurrency, int popSize, int games, long tc,
-      long tcInc, double validFactor, double[] initProbVec, Double learningRate, Double negLearningRate, Double mutationProb,
-      Double mutationShift, Integer generations, Boolean useBook, Integer hash, Integer threads) {
+  private void runInSelfPlayTuningMode(SelfPlaySettings settings, String logFilePath, int concurrency, Boolean useBook, Integer hash,
+      Integer threads, String checkpointFile, String resumeFile) {
     List<SelfPlayEngines<TunableEngine>> engines = new ArrayList<>(concurrency);
     for (int i = 0; i < concurrency; i++) {
       try {
@@ -182,9 +262,8 @@ public final class EngineFramework implements Runnable {
     } catch (SecurityException | IOException e) {
       throw new IllegalArgumentException(e);
     }
-    try (SelfPlayOptimizer optimizer = new SelfPlayOptimizer(engines, paramTypes, games, tc, tcInc, validFactor, initProbVec, popSize,
-        learningRate, negLearningRate, mutationProb, mutationShift, generations, logger)) {
-      optimizer.optimize();
+    try (SelfPlayOptimizer optimizer = new SelfPlayOptimizer(engines, settings, logger)) {
+      optimizer.optimize(resumeFile, checkpointFile);
     } catch (Exception e) {
       throw new IllegalArgumentException(e);
     }
@@ -199,6 +278,9 @@ public final class EngineFramework implements Runnable {
     long tc = -1;
     long tcInc = 0;
     double validFactor = 0;
+    double[] sprtBounds = null;
+    Double sprtAlpha = null;
+    Double sprtBeta = null;
     double[] initProbVec = null;
     Double learningRate = null;
     Double negLearningRate = null;
@@ -208,6 +290,20 @@ public final class EngineFramework implements Runnable {
     Boolean useBook = null;
     Integer hash = null;
     Integer threads = null;
+    Integer depth = null;
+    Long nodes = null;
+    Short resignScore = null;
+    Integer resignMoves = null;
+    Integer drawPly = null;
+    Short drawScore = null;
+    Integer drawMoves = null;
+    boolean egtbAdjudication = false;
+    String openingsFile = null;
+    Integer workerPort = null;
+    String workerAddress = null;
+    Long workerTimeout = null;
+    String checkpointFile = null;
+    String resumeFile = null;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -251,6 +347,18 @@ public final class EngineFramework implements Runnable {
         case "--validfactor":
           validFactor = Double.parseDouble(args[++i]);
           break;
+        case "--sprt":
+          sprtBounds = buildFeatureArray(args[++i]);
+          if (sprtBounds.length != 2) {
+            throw new IllegalArgumentException();
+          }
+          break;
+        case "--sprtalpha":
+          sprtAlpha = Double.parseDouble(args[++i]);
+          break;
+        case "--sprtbeta":
+          sprtBeta = Double.parseDouble(args[++i]);
+          break;
         case "--trybook":
           useBook = Boolean.parseBoolean(args[++i]);
           break;
@@ -268,20 +376,185 @@ public final class EngineFramework implements Runnable {
             initProbVec[j] = Double.parseDouble(probs[j].trim());
           }
           break;
+        case "--openings":
+          openingsFile = args[++i];
+          break;
+        case "--depth":
+          depth = Integer.parseInt(args[++i]);
+          break;
+        case "--nodes":
+          nodes = Long.parseLong(args[++i]);
+          break;
+        case "--resignscore":
+          resignScore = Short.parseShort(args[++i]);
+          break;
+        case "--resignmoves":
+          resignMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--drawply":
+          drawPly = Integer.parseInt(args[++i]);
+          break;
+        case "--drawscore":
+          drawScore = Short.parseShort(args[++i]);
+          break;
+        case "--drawmoves":
+          drawMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--egtbadjudication":
+          egtbAdjudication = Boolean.parseBoolean(args[++i]);
+          break;
+        case "--workerport":
+          workerPort = Integer.parseInt(args[++i]);
+          break;
+        case "--workeraddress":
+          workerAddress = args[++i];
+          break;
+        case "--workertimeout":
+          workerTimeout = Long.parseLong(args[++i]);
+          break;
+        case "--checkpoint":
+          checkpointFile = args[++i];
+          break;
+        case "--resume":
+          resumeFile = args[++i];
+          break;
+        default:
+          throw new IllegalArgumentException();
+      }
+    }
+    if (games == -1 || (tc == -1 && depth == null && nodes == null) || popSize == -1) {
+      throw new IllegalArgumentException();
+    }
+    SelfPlaySettings settings = new SelfPlaySettings.Builder(games, popSize)
+        .parameterTypes(paramTypes)
+        .timeControl(tc, tcInc)
+        .depthPerMove(depth)
+        .nodesPerMove(nodes)
+        .adjudication(buildAdjudication(resignScore, resignMoves, drawPly, drawScore, drawMoves, egtbAdjudication))
+        .openings(loadOpenings(openingsFile))
+        .validationFactor(validFactor)
+        .sprt(sprtBounds == null ? null : new SPRT(sprtBounds[0], sprtBounds[1], sprtAlpha, sprtBeta))
+        .initialProbabilityVector(initProbVec)
+        .learningRates(learningRate, negLearningRate)
+        .mutation(mutationProb, mutationShift)
+        .generations(generations)
+        .workerPort(workerPort)
+        .workerBindAddress(workerAddress)
+        .workerTimeout(workerTimeout)
+        .build();
+    runInSelfPlayTuningMode(settings, logFilePath, concurrency, useBook, hash, threads, checkpointFile, resumeFile);
+  }
+
+  private void runInSelfPlayWorkerMode(String host, int port, String logFilePath, int concurrency, Adjudication adjudication,
+      Boolean useBook, Integer hash, Integer threads) {
+    Logger logger = Logger.getAnonymousLogger();
+    try {
+      logger.addHandler(new FileHandler(logFilePath, true));
+    } catch (SecurityException | IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+    List<SelfPlayWorker> workers = new ArrayList<>(concurrency);
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        TunableEngine engine1 = factory.newTunableEngineInstance();
+        TunableEngine engine2 = factory.newTunableEngineInstance();
+        engine1.init();
+        engine2.init();
+        trySetOptions(engine1, useBook, hash, threads);
+        trySetOptions(engine2, useBook, hash, threads);
+        workers.add(new SelfPlayWorker(new SelfPlayEngines<>(engine1, engine2, factory.newControllerEngineInstance()),
+            adjudication, logger));
+      }
+      List<Future<?>> futures = new ArrayList<>(concurrency);
+      for (SelfPlayWorker worker : workers) {
+        futures.add(pool.submit(() -> {
+          worker.serve(host, port);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      pool.shutdown();
+      for (SelfPlayWorker worker : workers) {
+        worker.close();
+      }
+    }
+  }
+
+  private void runInSelfPlayWorkerMode(String[] args) {
+    String coordinator = null;
+    String logFilePath = DEF_LOG_FILE_PATH;
+    int concurrency = DEF_CONCURRENCY;
+    Boolean useBook = null;
+    Integer hash = null;
+    Integer threads = null;
+    Short resignScore = null;
+    Integer resignMoves = null;
+    Integer drawPly = null;
+    Short drawScore = null;
+    Integer drawMoves = null;
+    boolean egtbAdjudication = false;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-coordinator":
+          coordinator = args[++i];
+          break;
+        case "--log":
+          logFilePath = args[++i];
+          break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
+        case "--trybook":
+          useBook = Boolean.parseBoolean(args[++i]);
+          break;
+        case "--tryhash":
+          hash = Integer.parseInt(args[++i]);
+          break;
+        case "--trythreads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        case "--resignscore":
+          resignScore = Short.parseShort(args[++i]);
+          break;
+        case "--resignmoves":
+          resignMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--drawply":
+          drawPly = Integer.parseInt(args[++i]);
+          break;
+        case "--drawscore":
+          drawScore = Short.parseShort(args[++i]);
+          break;
+        case "--drawmoves":
+          drawMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--egtbadjudication":
+          egtbAdjudication = Boolean.parseBoolean(args[++i]);
+          break;
         default:
           throw new IllegalArgumentException();
       }
     }
-    if (games == -1 || tc == -1 || popSize == -1) {
+    int separatorInd = coordinator == null ? -1 : coordinator.lastIndexOf(':');
+    if (separatorInd == -1 || concurrency < 1) {
       throw new IllegalArgumentException();
     }
-    runInSelfPlayTuningMode(paramTypes, logFilePath, concurrency, popSize, games, tc, tcInc, validFactor, initProbVec, learningRate,
-        negLearningRate, mutationProb, mutationShift, generations, useBook, hash, threads);
+    Adjudication adjudication = buildAdjudication(resignScore, resignMoves, drawPly, drawScore, drawMoves, egtbAdjudication);
+    runInSelfPlayWorkerMode(coordinator.substring(0, separatorInd), Integer.parseInt(coordinator.substring(separatorInd + 1)),
+        logFilePath, concurrency, adjudication, useBook, hash, threads);
   }
 
   private void runInTexelTuningMode(String logFilePath, String epdFilePath, String gameResultOpCode, int concurrency,
       long trainingBatchSize, int epochs, Long costCalcBatchSize, Double k, Double h, Double learningRate, Double annealingRate,
-      Double l1RegCoeff, Double l2RegCoeff, Double testDataProp) {
+      Double l1RegCoeff, Double l2RegCoeff, Double testDataProp, GradientApproximation gradientApproximation, String checkpointFile,
+      String resumeFile) {
     TunableEngine[] engines = new TunableEngine[concurrency];
     for (int i = 0; i < concurrency; i++) {
       engines[i] = factory.newTunableEngineInstance();
@@ -298,8 +571,8 @@ public final class EngineFramework implements Runnable {
       throw new IllegalArgumentException(e);
     }
     try (TexelOptimizer optimizer = new TexelOptimizer(engines, trainingBatchSize, epochs, h, learningRate, annealingRate, l1RegCoeff,
-        l2RegCoeff, epdFilePath, gameResultOpCode, costCalcBatchSize, k, testDataProp, logger)) {
-      optimizer.optimize();
+        l2RegCoeff, epdFilePath, gameResultOpCode, costCalcBatchSize, k, testDataProp, gradientApproximation, logger)) {
+      optimizer.optimize(resumeFile, checkpointFile);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -320,6 +593,9 @@ public final class EngineFramework implements Runnable {
     Double l1RegCoeff = null;
     Double l2RegCoeff = null;
     Double testDataProp = null;
+    GradientApproximation gradientApproximation = null;
+    String checkpointFile = null;
+    String resumeFile = null;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -365,6 +641,15 @@ public final class EngineFramework implements Runnable {
         case "--testdataprop":
           testDataProp = Double.parseDouble(args[++i]);
           break;
+        case "--gradapprox":
+          gradientApproximation = resolveGradientApproximation(args[++i]);
+          break;
+        case "--checkpoint":
+          checkpointFile = args[++i];
+          break;
+        case "--resume":
+          resumeFile = args[++i];
+          break;
         default:
           throw new IllegalArgumentException();
       }
@@ -373,7 +658,7 @@ public final class EngineFramework implements Runnable {
       throw new IllegalArgumentException();
     }
     runInTexelTuningMode(logFilePath, epdFilePath, gameResOpCode, concurrency, batchSize, epochs, costCalcBatchSize, k, h, learningRate,
-        annealingRate, l1RegCoeff, l2RegCoeff, testDataProp);
+        annealingRate, l1RegCoeff, l2RegCoeff, testDataProp, gradientApproximation, checkpointFile, resumeFile);
   }
 
   private void runInTuningMode(String[] args) {
@@ -382,13 +667,16 @@ public final class EngineFramework implements Runnable {
       runInSelfPlayTuningMode(Arrays.copyOfRange(args, 1, args.length));
     } else if ("texel".equals(arg0)) {
       runInTexelTuningMode(Arrays.copyOfRange(args, 1, args.length));
+    } else if ("worker".equals(arg0)) {
+      runInSelfPlayWorkerMode(Arrays.copyOfRange(args, 1, args.length));
     } else {
       throw new IllegalArgumentException();
     }
   }
 
-  private void runInPGNGenerationMode(String destFile, int concurrency, int games, long tc, long tcInc, Boolean useBook, Integer hash,
-      Integer threads) {
+  private void runInPGNGenerationMode(String destFile, int concurrency, int games, long tc, long tcInc, Integer depth, Long nodes,
+      Adjudication adjudication, Boolean useBook, Integer hash, Integer threads, String openingsFile) {
+    List<String> openings = loadOpenings(openingsFile);
     List<SelfPlayEngines<UCIEngine>> engines = new ArrayList<>(concurrency);
     for (int i = 0; i < concurrency; i++) {
       try {
@@ -405,7 +693,7 @@ public final class EngineFramework implements Runnable {
       }
     }
     try {
-      DataSetUtils.generatePGNFile(engines, games, tc, tcInc, destFile);
+      DataSetUtils.generatePGNFile(engines, games, tc, tcInc, depth, nodes, adjudication, openings, destFile);
     } catch (Exception e) {
       throw new RuntimeException(e);
     } finally {
@@ -426,6 +714,15 @@ public final class EngineFramework implements Runnable {
     Boolean useBook = null;
     Integer hash = null;
     Integer threads = null;
+    Integer depth = null;
+    Long nodes = null;
+    Short resignScore = null;
+    Integer resignMoves = null;
+    Integer drawPly = null;
+    Short drawScore = null;
+    Integer drawMoves = null;
+    boolean egtbAdjudication = false;
+    String openingsFile = null;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -453,22 +750,60 @@ public final class EngineFramework implements Runnable {
         case "--trythreads":
           threads = Integer.parseInt(args[++i]);
           break;
+        case "--openings":
+          openingsFile = args[++i];
+          break;
+        case "--depth":
+          depth = Integer.parseInt(args[++i]);
+          break;
+        case "--nodes":
+          nodes = Long.parseLong(args[++i]);
+          break;
+        case "--resignscore":
+          resignScore = Short.parseShort(args[++i]);
+          break;
+        case "--resignmoves":
+          resignMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--drawply":
+          drawPly = Integer.parseInt(args[++i]);
+          break;
+        case "--drawscore":
+          drawScore = Short.parseShort(args[++i]);
+          break;
+        case "--drawmoves":
+          drawMoves = Integer.parseInt(args[++i]);
+          break;
+        case "--egtbadjudication":
+          egtbAdjudication = Boolean.parseBoolean(args[++i]);
+          break;
         default:
           throw new IllegalArgumentException();
       }
     }
-    if (games == -1 || tc == -1) {
+    if (games == -1 || (tc == -1 && depth == null && nodes == null)) {
       throw new IllegalArgumentException();
     }
-    runInPGNGenerationMode(destFile, concurrency, games, tc, tcInc, useBook, hash, threads);
+    Adjudication adjudication = buildAdjudication(resignScore, resignMoves, drawPly, drawScore, drawMoves, egtbAdjudication);
+    runInPGNGenerationMode(destFile, concurrency, games, tc, tcInc, depth, nodes, adjudication, useBook, hash, threads,
+        openingsFile);
   }
 
   private void runInEPDGenerationMode(String sourceFile, String destFile, String gameResultOpCode, long maxNumOfGames, Integer minElo,
-      Integer minHalfMoveIndex) {
-    try (ControllerEngine engine = factory.newControllerEngineInstance()) {
-      DataSetUtils.generateEPDFile(engine, sourceFile, destFile, gameResultOpCode, maxNumOfGames, minElo, minHalfMoveIndex);
+      Integer minHalfMoveIndex, Integer positionsPerGame, int concurrency, boolean ordered) {
+    List<ControllerEngine> engines = new ArrayList<>(concurrency);
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        engines.add(factory.newControllerEngineInstance());
+      }
+      DataSetUtils.generateEPDFile(engines, sourceFile, destFile, gameResultOpCode, maxNumOfGames, minElo, minHalfMoveIndex,
+          positionsPerGame, ordered, Logger.getAnonymousLogger());
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      for (ControllerEngine e : engines) {
+        e.close();
+      }
     }
   }
 
@@ -479,6 +814,9 @@ public final class EngineFramework implements Runnable {
     long maxNumOfGames = Long.MAX_VALUE;
     Integer minElo = null;
     Integer minHalfMoveIndex = null;
+    Integer positionsPerGame = null;
+    int concurrency = DEF_CONCURRENCY;
+    boolean ordered = true;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -497,14 +835,142 @@ public final class EngineFramework implements Runnable {
         case "--minhalfmoveind":
           minHalfMoveIndex = Integer.parseInt(args[++i]);
           break;
+        case "--samplepergame":
+          positionsPerGame = Integer.parseInt(args[++i]);
+          break;
         case "--destfile":
           destFile = args[++i];
           break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
+        case "--ordered":
+          ordered = Boolean.parseBoolean(args[++i]);
+          break;
         default:
           throw new IllegalArgumentException();
       }
     }
-    runInEPDGenerationMode(sourceFile, destFile, gameResOpCode, maxNumOfGames, minElo, minHalfMoveIndex);
+    runInEPDGenerationMode(sourceFile, destFile, gameResOpCode, maxNumOfGames, minElo, minHalfMoveIndex, positionsPerGame, concurrency,
+        ordered);
+  }
+
+  private void runInBookGenerationMode(String sourceFile, String destFile, long maxNumOfGames, Integer maxPly, Integer minGames,
+      Integer memoryLimit, int concurrency) {
+    try {
+      new PolyglotBookBuilder(maxPly, minGames, memoryLimit, concurrency, Logger.getAnonymousLogger())
+          .build(sourceFile, destFile, maxNumOfGames);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void runInBookGenerationMode(String[] args) {
+    String sourceFile = null;
+    String destFile = DEF_BOOK_FILE_PATH;
+    long maxNumOfGames = Long.MAX_VALUE;
+    Integer maxPly = null;
+    Integer minGames = null;
+    Integer memoryLimit = null;
+    int concurrency = DEF_CONCURRENCY;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-pgnfile":
+          sourceFile = args[++i];
+          break;
+        case "--maxgames":
+          maxNumOfGames = Long.parseLong(args[++i]);
+          break;
+        case "--maxply":
+          maxPly = Integer.parseInt(args[++i]);
+          break;
+        case "--mingames":
+          minGames = Integer.parseInt(args[++i]);
+          break;
+        case "--memlimit":
+          memoryLimit = Integer.parseInt(args[++i]);
+          break;
+        case "--destfile":
+          destFile = args[++i];
+          break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
+        default:
+          throw new IllegalArgumentException();
+      }
+    }
+    if (sourceFile == null) {
+      throw new IllegalArgumentException();
+    }
+    runInBookGenerationMode(sourceFile, destFile, maxNumOfGames, maxPly, minGames, memoryLimit, concurrency);
+  }
+
+  private void runInBitbaseGenerationMode(String destDir, List<String> bitbaseNames, int concurrency) {
+    try {
+      new BitbaseGenerator(concurrency, Logger.getAnonymousLogger()).generate(destDir, bitbaseNames);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void runInBitbaseGenerationMode(String[] args) {
+    String destDir = DEF_BITBASE_DIR_PATH;
+    int maxNumOfPieces = BitbaseGenerator.DEF_MAX_PIECES;
+    List<String> bitbaseNames = null;
+    int concurrency = DEF_CONCURRENCY;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "--maxpieces":
+          maxNumOfPieces = Integer.parseInt(args[++i]);
+          break;
+        case "--tables":
+          bitbaseNames = new ArrayList<>();
+          for (String name : args[++i].split(",")) {
+            bitbaseNames.add(name.trim().toUpperCase());
+          }
+          break;
+        case "--destdir":
+          destDir = args[++i];
+          break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
+        default:
+          throw new IllegalArgumentException();
+      }
+    }
+    runInBitbaseGenerationMode(destDir, bitbaseNames == null ? BitbaseGenerator.getBitbaseNames(maxNumOfPieces) : bitbaseNames,
+        concurrency);
+  }
+
+  private void runInSnapshotGenerationMode(String paramsFilePath, String destFile) {
+    try {
+      StartupSnapshot.write(destFile, paramsFilePath);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void runInSnapshotGenerationMode(String[] args) {
+    String paramsFilePath = DEF_PARAMS_FILE_PATH;
+    String destFile = DEF_SNAPSHOT_FILE_PATH;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "--paramsfile":
+          paramsFilePath = args[++i];
+          break;
+        case "--destfile":
+          destFile = args[++i];
+          break;
+        default:
+          throw new IllegalArgumentException();
+      }
+    }
+    runInSnapshotGenerationMode(paramsFilePath, destFile);
   }
 
   private void runInGenerationMode(String[] args) {
@@ -513,23 +979,62 @@ public final class EngineFramework implements Runnable {
       runInPGNGenerationMode(Arrays.copyOfRange(args, 1, args.length));
     } else if ("epd".equals(arg0)) {
       runInEPDGenerationMode(Arrays.copyOfRange(args, 1, args.length));
+    } else if ("book".equals(arg0)) {
+      runInBookGenerationMode(Arrays.copyOfRange(args, 1, args.length));
+    } else if ("bitbases".equals(arg0)) {
+      runInBitbaseGenerationMode(Arrays.copyOfRange(args, 1, args.length));
+    } else if ("snapshot".equals(arg0)) {
+      runInSnapshotGenerationMode(Arrays.copyOfRange(args, 1, args.length));
     } else {
       throw new IllegalArgumentException();
     }
   }
 
-  private void runInDrawFiltrationMode(String sourceFile, String destFile, String gameResOpCode) {
+  private static EPDFilter chain(EPDFilter filter, EPDFilter nextFilter) {
+    return filter == null ? nextFilter : filter.and(nextFilter);
+  }
+
+  private void runInFiltrationMode(Set<String> filterTypes, String sourceFile, String destFile, String gameResOpCode,
+      Short maxImbalance, int concurrency) {
+    List<UCIEngine> engines = Collections.synchronizedList(new ArrayList<>());
+    Supplier<EPDFilter> filterFactory = () -> {
+      try {
+        EPDFilter filter = null;
+        if (filterTypes.contains("draw")) {
+          filter = EPDFilter.excludeDraws(gameResOpCode);
+        }
+        if (filterTypes.contains("tactical")) {
+          ControllerEngine controllerEngine = factory.newControllerEngineInstance();
+          engines.add(controllerEngine);
+          filter = chain(filter, EPDFilter.excludeTacticalPositions(controllerEngine));
+        }
+        if (filterTypes.contains("unbalanced")) {
+          TunableEngine tunableEngine = factory.newTunableEngineInstance();
+          engines.add(tunableEngine);
+          filter = chain(filter, EPDFilter.excludeUnbalancedPositions(maxImbalance, tunableEngine));
+        }
+        return filter;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    };
     try {
-      DataSetUtils.filterDraws(sourceFile, destFile, gameResOpCode);
-    } catch (IOException e) {
+      DataSetUtils.filterPositions(sourceFile, destFile, filterFactory, concurrency, Logger.getAnonymousLogger());
+    } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      for (UCIEngine e : engines) {
+        e.close();
+      }
     }
   }
 
-  private void runInDrawFiltrationMode(String[] args) {
+  private void runInDuplicateFiltrationMode(String[] args) {
     String sourceFile = null;
     String destFile = DEF_EPD_FILE_PATH;
     String gameResOpCode = DEF_GAME_RES_OP_CODE;
+    boolean averageLabels = false;
+    Integer memoryLimit = null;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -539,6 +1044,12 @@ public final class EngineFramework implements Runnable {
         case "--labelopcode":
           gameResOpCode = args[++i];
           break;
+        case "--averagelabels":
+          averageLabels = Boolean.parseBoolean(args[++i]);
+          break;
+        case "--memlimit":
+          memoryLimit = Integer.parseInt(args[++i]);
+          break;
         case "--destfile":
           destFile = args[++i];
           break;
@@ -549,20 +1060,17 @@ public final class EngineFramework implements Runnable {
     if (sourceFile == null) {
       throw new IllegalArgumentException();
     }
-    runInDrawFiltrationMode(sourceFile, destFile, gameResOpCode);
-  }
-
-  private void runInTacticalPositionFiltrationMode(String sourceFile, String destFile) {
-    try (ControllerEngine controllerEngine = factory.newControllerEngineInstance()) {
-      DataSetUtils.filterTacticalPositions(sourceFile, destFile, controllerEngine);
+    try {
+      DataSetUtils.deduplicatePositions(sourceFile, destFile, gameResOpCode, averageLabels, memoryLimit, Logger.getAnonymousLogger());
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
-  private void runInTacticalPositionFiltrationMode(String[] args) {
+  private void runInQuiescenceResolutionMode(String[] args) {
     String sourceFile = null;
     String destFile = DEF_EPD_FILE_PATH;
+    int concurrency = DEF_CONCURRENCY;
     for (int i = 0; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
@@ -572,6 +1080,9 @@ public final class EngineFramework implements Runnable {
         case "--destfile":
           destFile = args[++i];
           break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
         default:
           throw new IllegalArgumentException();
       }
@@ -579,54 +1090,67 @@ public final class EngineFramework implements Runnable {
     if (sourceFile == null) {
       throw new IllegalArgumentException();
     }
-    runInTacticalPositionFiltrationMode(sourceFile, destFile);
-  }
-
-  private void runInUnbalancedPositionFiltrationMode(String sourceFile, String destFile, short maxImbalance) {
-    try (TunableEngine tunableEngine = factory.newTunableEngineInstance()) {
-      DataSetUtils.filterUnbalancedPositions(sourceFile, destFile, maxImbalance, tunableEngine);
+    List<TunableEngine> engines = new ArrayList<>(concurrency);
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        engines.add(factory.newTunableEngineInstance());
+      }
+      DataSetUtils.resolveQuiescence(sourceFile, destFile, engines, Logger.getAnonymousLogger());
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      for (UCIEngine e : engines) {
+        e.close();
+      }
     }
   }
 
-  private void runInUnbalancedPositionFiltrationMode(String[] args) {
+  private void runInFiltrationMode(String[] args) {
+    if ("duplicate".equals(args[0])) {
+      runInDuplicateFiltrationMode(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if ("quiescence".equals(args[0])) {
+      runInQuiescenceResolutionMode(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    Set<String> filterTypes = new HashSet<>(Arrays.asList(args[0].split("\\+")));
+    for (String filterType : filterTypes) {
+      if (!"draw".equals(filterType) && !"tactical".equals(filterType) && !"unbalanced".equals(filterType)) {
+        throw new IllegalArgumentException();
+      }
+    }
     String sourceFile = null;
     String destFile = DEF_EPD_FILE_PATH;
+    String gameResOpCode = DEF_GAME_RES_OP_CODE;
     Short maxImbalance = null;
-    for (int i = 0; i < args.length; i++) {
+    int concurrency = DEF_CONCURRENCY;
+    for (int i = 1; i < args.length; i++) {
       String arg = args[i];
       switch (arg) {
+        case "-sourcefile":
+          sourceFile = args[++i];
+          break;
         case "-imbalance":
           maxImbalance = Short.parseShort(args[++i]);
           break;
-        case "-sourcefile":
-          sourceFile = args[++i];
+        case "--labelopcode":
+          gameResOpCode = args[++i];
           break;
         case "--destfile":
           destFile = args[++i];
           break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(args[++i]);
+          break;
         default:
           throw new IllegalArgumentException();
       }
     }
-    if (sourceFile == null || maxImbalance == null) {
-      throw new IllegalArgumentException();
-    }
-    runInUnbalancedPositionFiltrationMode(sourceFile, destFile, maxImbalance);
-  }
-
-  private void runInFiltrationMode(String[] args) {
-    String arg0 = args[0];
-    if ("draw".equals(arg0)) {
-      runInDrawFiltrationMode(Arrays.copyOfRange(args, 1, args.length));
-    } else if ("tactical".equals(arg0)) {
-      runInTacticalPositionFiltrationMode(Arrays.copyOfRange(args, 1, args.length));
-    } else if ("unbalanced".equals(arg0)) {
-      runInUnbalancedPositionFiltrationMode(Arrays.copyOfRange(args, 1, args.length));
-    } else {
+    if (sourceFile == null || (filterTypes.contains("unbalanced") && maxImbalance == null)) {
       throw new IllegalArgumentException();
     }
+    runInFiltrationMode(filterTypes, sourceFile, destFile, gameResOpCode, maxImbalance, concurrency);
   }
 
   private String buildBinaryString(String arg) {
@@ -0,0 +1,422 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import net.viktorc.detroid.framework.util.Checkpoint;
+
+/**
+ * A win-draw-loss bitbase of all positions with a specific material configuration. Each position is stored on two bits denoting whether
+ * it is won, lost, or drawn for the side to move or illegal. The positions are indexed by the side to move and the squares of the pieces
+ * in a canonical order; the side with the stronger material is always considered white and the board is mirrored so that the white king
+ * is in the a1-d1-d4 triangle for pawnless material or on the queen side for material with pawns.
+ * <p>
+ * The materials are identified by material indices computed from the non-king pieces of both sides. Each side's pieces are encoded by a
+ * side code in the range [0, 36) and the material index of the stronger side's code <i>s</i> and the weaker side's code <i>w</i> is
+ * <i>s * 36 + w</i>.
+ *
+ * @author Viktor
+ */
+final class Bitbase {
+
+  /**
+   * The outcome of the positions drawn for the side to move.
+   */
+  static final int DRAW = 0;
+  /**
+   * The outcome of the positions won by the side to move.
+   */
+  static final int WIN = 1;
+  /**
+   * The outcome of the positions lost by the side to move.
+   */
+  static final int LOSS = 2;
+  /**
+   * The value of illegal positions.
+   */
+  static final int ILLEGAL = 3;
+  /**
+   * The maximum number of pieces, including the kings, a bitbase may have.
+   */
+  static final int MAX_PIECES = 4;
+  /**
+   * The number of possible material indices.
+   */
+  static final int NUM_OF_MATERIALS = 36 * 36;
+  /**
+   * The extension of bitbase files.
+   */
+  static final String FILE_EXTENSION = ".bitbase";
+  // The type indices of the pieces relative to the kings.
+  static final int KING = 0;
+  static final int QUEEN = 1;
+  static final int ROOK = 2;
+  static final int BISHOP = 3;
+  static final int KNIGHT = 4;
+  static final int PAWN = 5;
+  // The file header.
+  private static final int MAGIC = 0x44544242;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final String PIECE_LETTERS = "KQRBNP";
+  // The squares of the regions the white king is restricted to.
+  private static final int[] TRIANGLE_SQUARES = new int[]{0, 1, 2, 3, 9, 10, 11, 18, 19, 27};
+  private static final int[] QUEEN_SIDE_SQUARES = new int[32];
+  private static final int[] TRIANGLE_INDICES = new int[64];
+  private static final int[] QUEEN_SIDE_INDICES = new int[64];
+
+  static {
+    for (int i = 0; i < 64; i++) {
+      TRIANGLE_INDICES[i] = -1;
+      QUEEN_SIDE_INDICES[i] = -1;
+    }
+    for (int i = 0; i < TRIANGLE_SQUARES.length; i++) {
+      TRIANGLE_INDICES[TRIANGLE_SQUARES[i]] = i;
+    }
+    for (int i = 0; i < QUEEN_SIDE_SQUARES.length; i++) {
+      QUEEN_SIDE_SQUARES[i] = 8 * (i / 4) + i % 4;
+      QUEEN_SIDE_INDICES[QUEEN_SIDE_SQUARES[i]] = i;
+    }
+  }
+
+  private final int materialIndex;
+  private final String name;
+  private final byte[] pieces;
+  private final boolean pawns;
+  private final long size;
+  private ByteBuffer data;
+
+  /**
+   * Constructs an empty bitbase for the specified material.
+   *
+   * @param materialIndex The canonical material index.
+   * @throws IllegalArgumentException If the material index is out of range or not canonical.
+   */
+  Bitbase(int materialIndex) throws IllegalArgumentException {
+    if (!isValid(materialIndex) || materialIndex != canonical(materialIndex)) {
+      throw new IllegalArgumentException("Illegal material index: " + materialIndex);
+    }
+    this.materialIndex = materialIndex;
+    int[] strongTypes = types(materialIndex / 36);
+    int[] weakTypes = types(materialIndex % 36);
+    pieces = new byte[2 + strongTypes.length + weakTypes.length];
+    int i = 0;
+    pieces[i++] = Piece.W_KING.ind;
+    for (int type : strongTypes) {
+      pieces[i++] = (byte) (Piece.W_KING.ind + type);
+    }
+    pieces[i++] = Piece.B_KING.ind;
+    for (int type : weakTypes) {
+      pieces[i++] = (byte) (Piece.B_KING.ind + type);
+    }
+    boolean pawns = false;
+    StringBuilder name = new StringBuilder();
+    for (byte piece : pieces) {
+      pawns |= type(piece) == PAWN;
+      name.append(PIECE_LETTERS.charAt(type(piece)));
+    }
+    this.pawns = pawns;
+    this.name = name.toString();
+    long size = 2L * regionSize(pawns);
+    for (i = 1; i < pieces.length; i++) {
+      size *= 64;
+    }
+    this.size = size;
+  }
+
+  /**
+   * Returns the bitbase for the material denoted by the name which lists the pieces of the stronger side starting with its king followed
+   * by the pieces of the weaker side starting with its king, e.g. KRKN or KBNK.
+   *
+   * @param name The name of the bitbase.
+   * @return The empty bitbase.
+   * @throws IllegalArgumentException If the name is not the canonical name of a material with at most {@link #MAX_PIECES} pieces.
+   */
+  static Bitbase forName(String name) throws IllegalArgumentException {
+    int secondKing = name.indexOf('K', 1);
+    if (!name.startsWith("K") || secondKing < 0 || name.length() > MAX_PIECES) {
+      throw new IllegalArgumentException("Illegal bitbase name: " + name);
+    }
+    int[] codes = new int[2];
+    String[] sides = new String[]{name.substring(1, secondKing), name.substring(secondKing + 1)};
+    for (int i = 0; i < 2; i++) {
+      int[] types = new int[2];
+      for (int j = 0; j < sides[i].length(); j++) {
+        types[j] = PIECE_LETTERS.indexOf(sides[i].charAt(j));
+        if (types[j] < QUEEN) {
+          throw new IllegalArgumentException("Illegal bitbase name: " + name);
+        }
+      }
+      codes[i] = sideCode(types[0], types[1]);
+    }
+    Bitbase bitbase = new Bitbase(canonical(codes[0] * 36 + codes[1]));
+    if (!bitbase.name.equals(name)) {
+      throw new IllegalArgumentException("Illegal bitbase name: " + name + "; the canonical name is " + bitbase.name);
+    }
+    return bitbase;
+  }
+
+  /**
+   * Returns the names of all bitbases with at least three and at most the specified number of pieces in an order in which each bitbase
+   * only depends on bitbases preceding it.
+   *
+   * @param maxNumOfPieces The maximum number of pieces including the kings.
+   * @return The names of the bitbases.
+   */
+  static List<String> getNames(int maxNumOfPieces) {
+    List<String> names = new ArrayList<>();
+    for (int numOfPieces = 3; numOfPieces <= Math.min(MAX_PIECES, maxNumOfPieces); numOfPieces++) {
+      // Fewer pawns first as promotions only lead to materials with fewer pawns.
+      for (int numOfPawns = 0; numOfPawns <= numOfPieces - 2; numOfPawns++) {
+        for (int materialIndex = 0; materialIndex < NUM_OF_MATERIALS; materialIndex++) {
+          if (!isValid(materialIndex) || materialIndex != canonical(materialIndex)) {
+            continue;
+          }
+          Bitbase bitbase = new Bitbase(materialIndex);
+          if (bitbase.pieces.length == numOfPieces && bitbase.name.length() - bitbase.name.replace("P", "").length() == numOfPawns) {
+            names.add(bitbase.name);
+          }
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Returns the type index of the piece.
+   *
+   * @param piece The piece index.
+   * @return The type of the piece.
+   */
+  static int type(int piece) {
+    return piece < Piece.B_KING.ind ? piece - Piece.W_KING.ind : piece - Piece.B_KING.ind;
+  }
+
+  /**
+   * Returns whether the piece is white.
+   *
+   * @param piece The piece index.
+   * @return Whether it is white.
+   */
+  static boolean isWhite(int piece) {
+    return piece < Piece.B_KING.ind;
+  }
+
+  /**
+   * Returns the code of a side's non-king pieces.
+   *
+   * @param type1 The type of the first piece or 0 if there is none.
+   * @param type2 The type of the second piece or 0 if there is none.
+   * @return The side code.
+   */
+  static int sideCode(int type1, int type2) {
+    if (type1 == 0 || type2 == 0) {
+      return type1 + type2;
+    }
+    return Math.min(type1, type2) + 6 * Math.max(type1, type2);
+  }
+
+  private static boolean isValidSideCode(int sideCode) {
+    return sideCode < 6 || (sideCode % 6 != 0 && sideCode % 6 <= sideCode / 6);
+  }
+
+  /**
+   * Returns whether the material index denotes a material with at least three and at most {@link #MAX_PIECES} pieces.
+   *
+   * @param materialIndex The material index.
+   * @return Whether there can be a bitbase for the material.
+   */
+  static boolean isValid(int materialIndex) {
+    if (materialIndex <= 0 || materialIndex >= NUM_OF_MATERIALS) {
+      return false;
+    }
+    int first = materialIndex / 36;
+    int second = materialIndex % 36;
+    return isValidSideCode(first) && isValidSideCode(second) && types(first).length + types(second).length <= MAX_PIECES - 2;
+  }
+
+  private static int[] types(int sideCode) {
+    if (sideCode == 0) {
+      return new int[0];
+    }
+    return sideCode < 6 ? new int[]{sideCode} : new int[]{sideCode % 6, sideCode / 6};
+  }
+
+  /**
+   * Returns a key representing the strength of a side's material; a side with more pieces is always stronger and a side with stronger
+   * pieces is stronger than a side with the same number of weaker pieces.
+   *
+   * @param sideCode The side code.
+   * @return The strength of the side.
+   */
+  static int strength(int sideCode) {
+    if (sideCode == 0) {
+      return 0;
+    }
+    return sideCode < 6 ? 100 - 10 * sideCode : 200 - 10 * (sideCode % 6) - sideCode / 6;
+  }
+
+  /**
+   * Returns the canonical material index of the material where the side with the first code is white and the side with the second code is
+   * black, i.e. a material index in which the first side is at least as strong as the second.
+   *
+   * @param materialIndex The material index.
+   * @return The canonical material index.
+   */
+  static int canonical(int materialIndex) {
+    int first = materialIndex / 36;
+    int second = materialIndex % 36;
+    return strength(first) >= strength(second) ? materialIndex : second * 36 + first;
+  }
+
+  /**
+   * Returns the number of squares the white king is restricted to.
+   *
+   * @param pawns Whether there are pawns on the board.
+   * @return The number of squares the white king may occupy.
+   */
+  static int regionSize(boolean pawns) {
+    return pawns ? QUEEN_SIDE_SQUARES.length : TRIANGLE_SQUARES.length;
+  }
+
+  /**
+   * Returns the index of the square within the region the white king is restricted to.
+   *
+   * @param sqrInd The square index.
+   * @param pawns Whether there are pawns on the board.
+   * @return The index within the region or -1 if the square is outside the region.
+   */
+  static int regionIndex(int sqrInd, boolean pawns) {
+    return pawns ? QUEEN_SIDE_INDICES[sqrInd] : TRIANGLE_INDICES[sqrInd];
+  }
+
+  /**
+   * Returns the square of the specified index within the region the white king is restricted to.
+   *
+   * @param regionInd The index within the region.
+   * @param pawns Whether there are pawns on the board.
+   * @return The square index.
+   */
+  static int regionSquare(int regionInd, boolean pawns) {
+    return pawns ? QUEEN_SIDE_SQUARES[regionInd] : TRIANGLE_SQUARES[regionInd];
+  }
+
+  /**
+   * @return The canonical material index.
+   */
+  int getMaterialIndex() {
+    return materialIndex;
+  }
+
+  /**
+   * @return The name of the bitbase.
+   */
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @return The number of pieces including the kings.
+   */
+  int getNumOfPieces() {
+    return pieces.length;
+  }
+
+  /**
+   * Returns the piece at the specified position of the canonical order of the pieces which is the white king, the other white pieces,
+   * the black king, and the other black pieces.
+   *
+   * @param i The position of the piece in the canonical order.
+   * @return The piece index.
+   */
+  byte getPiece(int i) {
+    return pieces[i];
+  }
+
+  /**
+   * @return Whether there are pawns on the board.
+   */
+  boolean hasPawns() {
+    return pawns;
+  }
+
+  /**
+   * @return The number of indices.
+   */
+  long size() {
+    return size;
+  }
+
+  /**
+   * @return Whether the values of the positions are available.
+   */
+  boolean isLoaded() {
+    return data != null;
+  }
+
+  /**
+   * Returns the value of the position at the specified index.
+   *
+   * @param index The index of the position.
+   * @return The value of the position.
+   */
+  int get(long index) {
+    return (data.get(HEADER_SIZE + (int) (index >>> 2)) >>> ((index & 3) << 1)) & 3;
+  }
+
+  /**
+   * Sets the values of the positions and writes them to the specified file atomically.
+   *
+   * @param values The values of the positions.
+   * @param file The file to write the bitbase to.
+   * @throws IOException If the file cannot be written.
+   */
+  void store(byte[] values, File file) throws IOException {
+    byte[] bytes = new byte[HEADER_SIZE + (int) ((size + 3) >>> 2)];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(size);
+    for (int i = 0; i < values.length; i++) {
+      bytes[HEADER_SIZE + (i >>> 2)] |= (byte) (values[i] << ((i & 3) << 1));
+    }
+    Checkpoint.writeAtomically(file.getPath(), path -> {
+      try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer content = ByteBuffer.wrap(bytes);
+        while (content.hasRemaining()) {
+          channel.write(content);
+        }
+      }
+    });
+    data = buffer;
+  }
+
+  /**
+   * Maps the specified bitbase file into memory.
+   *
+   * @param file The bitbase file.
+   * @throws IOException If the file cannot be read or it is not a bitbase file of this material.
+   */
+  void load(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() != HEADER_SIZE + ((size + 3) >>> 2)) {
+        throw new IOException("Illegal bitbase file size: " + file);
+      }
+      ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != size) {
+        throw new IOException("Illegal bitbase file header: " + file);
+      }
+      data = buffer;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
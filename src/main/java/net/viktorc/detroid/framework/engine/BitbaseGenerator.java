@@ -0,0 +1,431 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A generator of win-draw-loss bitbases for endgames with up to four pieces by retrograde analysis. The positions of a material are first
+ * evaluated one by one; illegal positions, check mates, stale mates, and positions in which a capture or promotion leads to a position
+ * lost for the opponent according to the already generated bitbases of the resulting materials are resolved right away. Then, in each
+ * round, the predecessors of the positions resolved in the previous round are collected by generating the unmoves leading to them and
+ * the ones not resolved yet are evaluated again; a position is won if any of its moves leads to a position lost for the opponent and lost
+ * if all of them lead to positions won by the opponent. Once a round does not resolve any more positions, all the unresolved positions are
+ * drawn. Both the initial evaluation and the rounds are distributed among the worker threads by ranges of indices.
+ * <p>
+ * Each bitbase depends on the bitbases of the materials its positions can be converted to by captures and promotions. These are
+ * generated first or, if their files already exist in the destination directory, loaded. En passant captures are taken into account
+ * when evaluating the moves that push pawns by two squares; positions with en passant rights are not stored, as their values can be
+ * derived from the values of the same positions without en passant rights and the values of the positions the en passant captures lead
+ * to. The fifty-move rule is ignored.
+ *
+ * @author Viktor
+ */
+public final class BitbaseGenerator {
+
+  /**
+   * The default maximum number of pieces of the generated bitbases.
+   */
+  public static final int DEF_MAX_PIECES = Bitbase.MAX_PIECES;
+  // The states of the positions during the generation.
+  private static final byte UNKNOWN = 4;
+  private static final byte STALE_MATE = 5;
+  // The number of indices each worker claims at once.
+  private static final int CHUNK_SIZE = 1 << 12;
+
+  private final int concurrency;
+  private final Logger logger;
+
+  /**
+   * Constructs an instance using the specified number of threads.
+   *
+   * @param concurrency The number of worker threads.
+   * @param logger A logger to log the progress of the generation. It may be null.
+   * @throws IllegalArgumentException If the concurrency is less than 1.
+   */
+  public BitbaseGenerator(int concurrency, Logger logger) throws IllegalArgumentException {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("The concurrency has to be at least 1.");
+    }
+    this.concurrency = concurrency;
+    this.logger = logger;
+  }
+
+  /**
+   * Returns the names of all bitbases with at least three and at most the specified number of pieces, e.g. KPK, KQKR, or KBNK.
+   *
+   * @param maxNumOfPieces The maximum number of pieces including the kings.
+   * @return The names of the bitbases.
+   */
+  public static List<String> getBitbaseNames(int maxNumOfPieces) {
+    return Bitbase.getNames(maxNumOfPieces);
+  }
+
+  private static List<Integer> getDependencies(Bitbase bitbase) {
+    int[] types = new int[Bitbase.MAX_PIECES];
+    boolean[] white = new boolean[Bitbase.MAX_PIECES];
+    int numOfPieces = 0;
+    for (int i = 0; i < bitbase.getNumOfPieces(); i++) {
+      byte piece = bitbase.getPiece(i);
+      if (Bitbase.type(piece) != Bitbase.KING) {
+        types[numOfPieces] = Bitbase.type(piece);
+        white[numOfPieces++] = Bitbase.isWhite(piece);
+      }
+    }
+    List<Integer> dependencies = new ArrayList<>();
+    // All the materials after capturing any of the pieces, promoting any of the pawns, or both.
+    for (int captured = -1; captured < numOfPieces; captured++) {
+      for (int promoted = -1; promoted < numOfPieces; promoted++) {
+        if ((captured < 0 && promoted < 0) || captured == promoted || (promoted >= 0 && types[promoted] != Bitbase.PAWN) ||
+            (captured >= 0 && promoted >= 0 && white[captured] == white[promoted])) {
+          continue;
+        }
+        for (int promotion = Bitbase.QUEEN; promotion <= (promoted < 0 ? Bitbase.QUEEN : Bitbase.KNIGHT); promotion++) {
+          int[] whiteTypes = new int[2];
+          int[] blackTypes = new int[2];
+          int whiteCount = 0;
+          int blackCount = 0;
+          for (int i = 0; i < numOfPieces; i++) {
+            if (i == captured) {
+              continue;
+            }
+            int type = i == promoted ? promotion : types[i];
+            if (white[i]) {
+              whiteTypes[whiteCount++] = type;
+            } else {
+              blackTypes[blackCount++] = type;
+            }
+          }
+          int materialIndex = Bitbase.canonical(Bitbase.sideCode(whiteTypes[0], whiteTypes[1]) * 36 +
+              Bitbase.sideCode(blackTypes[0], blackTypes[1]));
+          if (Bitbase.isValid(materialIndex) && !dependencies.contains(materialIndex)) {
+            dependencies.add(materialIndex);
+          }
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  private void log(String message) {
+    if (logger != null) {
+      logger.info(message);
+    }
+  }
+
+  /**
+   * Generates the specified bitbases and all the bitbases they depend on and writes them to the destination directory. Bitbases whose
+   * files already exist in the directory are loaded instead of being generated again.
+   *
+   * @param destDirPath The path to the directory to write the bitbase files to.
+   * @param bitbaseNames The names of the bitbases to generate, e.g. KPK, KQKR, or KBNK.
+   * @return The names of the bitbases generated.
+   * @throws IllegalArgumentException If any of the names is not the name of a material with at most four pieces.
+   * @throws Exception If the generation fails or the bitbases cannot be written.
+   */
+  public synchronized List<String> generate(String destDirPath, List<String> bitbaseNames) throws Exception {
+    File destDir = new File(destDirPath);
+    if (!destDir.isDirectory() && !destDir.mkdirs()) {
+      throw new IOException("The directory " + destDirPath + " cannot be created.");
+    }
+    Set<Integer> materialIndices = new LinkedHashSet<>();
+    for (String name : bitbaseNames) {
+      materialIndices.add(Bitbase.forName(name).getMaterialIndex());
+    }
+    Bitbase[] bitbases = new Bitbase[Bitbase.NUM_OF_MATERIALS];
+    List<String> generated = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    try {
+      for (int materialIndex : materialIndices) {
+        generate(materialIndex, bitbases, destDir, pool, generated);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return generated;
+  }
+
+  private void generate(int materialIndex, Bitbase[] bitbases, File destDir, ExecutorService pool, List<String> generated)
+      throws Exception {
+    if (bitbases[materialIndex] != null) {
+      return;
+    }
+    Bitbase bitbase = new Bitbase(materialIndex);
+    for (int dependency : getDependencies(bitbase)) {
+      generate(dependency, bitbases, destDir, pool, generated);
+    }
+    File file = new File(destDir, bitbase.getName() + Bitbase.FILE_EXTENSION);
+    if (file.exists()) {
+      try {
+        bitbase.load(file);
+        bitbases[materialIndex] = bitbase;
+        log(String.format("Bitbase %s loaded from %s", bitbase, file));
+        return;
+      } catch (IOException e) {
+        log(String.format("Bitbase %s could not be loaded from %s; regenerating it: %s", bitbase, file, e.getMessage()));
+      }
+    }
+    long start = System.currentTimeMillis();
+    byte[] values = new Generation(bitbase, bitbases, pool).run();
+    bitbase.store(values, file);
+    bitbases[materialIndex] = bitbase;
+    generated.add(bitbase.getName());
+    long[] counts = new long[4];
+    for (byte value : values) {
+      counts[value]++;
+    }
+    log(String.format("Bitbase %s generated; positions: %d; wins: %d; losses: %d; draws: %d; illegal: %d; time: %.1fs", bitbase,
+        values.length, counts[Bitbase.WIN], counts[Bitbase.LOSS], counts[Bitbase.DRAW], counts[Bitbase.ILLEGAL],
+        (System.currentTimeMillis() - start) / 1000d));
+  }
+
+  /**
+   * The generation of a single bitbase.
+   */
+  private class Generation {
+
+    final Bitbase bitbase;
+    final Bitbase[] bitbases;
+    final ExecutorService pool;
+    final byte[] states;
+    final byte[] frontier;
+    final byte[] candidates;
+
+    Generation(Bitbase bitbase, Bitbase[] bitbases, ExecutorService pool) {
+      this.bitbase = bitbase;
+      this.bitbases = bitbases;
+      this.pool = pool;
+      int size = (int) bitbase.size();
+      states = new byte[size];
+      frontier = new byte[size];
+      candidates = new byte[size];
+    }
+
+    /**
+     * Executes the task for each index in parallel.
+     *
+     * @param task The task.
+     * @return The number of indices the task returned true for.
+     * @throws Exception If the execution fails.
+     */
+    long forEachIndex(IndexTask task) throws Exception {
+      AtomicLong nextIndex = new AtomicLong();
+      AtomicLong count = new AtomicLong();
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        futures.add(pool.submit(() -> {
+          Worker worker = new Worker();
+          long localCount = 0;
+          for (long from = nextIndex.getAndAdd(CHUNK_SIZE); from < states.length; from = nextIndex.getAndAdd(CHUNK_SIZE)) {
+            int to = (int) Math.min(states.length, from + CHUNK_SIZE);
+            for (int index = (int) from; index < to; index++) {
+              if (task.execute(worker, index)) {
+                localCount++;
+              }
+            }
+          }
+          count.addAndGet(localCount);
+          return null;
+        }));
+      }
+      try {
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (ExecutionException e) {
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+        throw e;
+      }
+      return count.get();
+    }
+
+    byte[] run() throws Exception {
+      // Evaluate all positions once.
+      long resolved = forEachIndex((worker, index) -> {
+        worker.pos.set(bitbase, index);
+        if (!worker.pos.isLegal()) {
+          states[index] = Bitbase.ILLEGAL;
+          return false;
+        }
+        int state = worker.evaluate();
+        states[index] = (byte) state;
+        if (state == Bitbase.WIN || state == Bitbase.LOSS) {
+          frontier[index] = 1;
+          return true;
+        }
+        return false;
+      });
+      int rounds = 0;
+      while (resolved > 0) {
+        rounds++;
+        // Collect the unresolved predecessors of the positions resolved in the last round.
+        forEachIndex((worker, index) -> {
+          if (frontier[index] == 0) {
+            return false;
+          }
+          frontier[index] = 0;
+          worker.pos.set(bitbase, index);
+          int numOfUnmoves = worker.pos.generateUnmoves(worker.moves);
+          for (int i = 0; i < numOfUnmoves; i++) {
+            worker.child.set(worker.pos);
+            worker.child.makeMove(worker.moves[i]);
+            int predecessor = (int) worker.child.index();
+            if (states[predecessor] == UNKNOWN) {
+              candidates[predecessor] = 1;
+            }
+            /* Without pawns, positions with the white king on the a1-h8 diagonal are stored twice, mirrored along the diagonal, but
+             * only one of them is reached by the unmoves. */
+            if (!bitbase.hasPawns()) {
+              worker.child.transpose();
+              predecessor = (int) worker.child.index();
+              if (states[predecessor] == UNKNOWN) {
+                candidates[predecessor] = 1;
+              }
+            }
+          }
+          return false;
+        });
+        // Evaluate the candidates.
+        resolved = forEachIndex((worker, index) -> {
+          if (candidates[index] == 0) {
+            return false;
+          }
+          candidates[index] = 0;
+          worker.pos.set(bitbase, index);
+          int state = worker.evaluate();
+          if (state == Bitbase.WIN || state == Bitbase.LOSS) {
+            states[index] = (byte) state;
+            frontier[index] = 1;
+            return true;
+          }
+          return false;
+        });
+      }
+      log(String.format("Bitbase %s resolved in %d rounds", bitbase, rounds));
+      for (int i = 0; i < states.length; i++) {
+        if (states[i] == UNKNOWN || states[i] == STALE_MATE) {
+          states[i] = Bitbase.DRAW;
+        }
+      }
+      return states;
+    }
+
+    /**
+     * The reusable state of a worker thread.
+     */
+    private class Worker {
+
+      final BitbasePosition pos = new BitbasePosition();
+      final BitbasePosition child = new BitbasePosition();
+      final BitbasePosition grandChild = new BitbasePosition();
+      final int[] moves = new int[BitbasePosition.MAX_MOVES];
+      final int[] enPassantMoves = new int[2];
+
+      /**
+       * Returns the state of the position after the move from the point of view of the side to move.
+       */
+      int lookUp(BitbasePosition position) {
+        if (position.numOfPieces == 2) {
+          return Bitbase.DRAW;
+        }
+        long index = position.index();
+        int materialIndex = position.getMaterialIndex();
+        return materialIndex == bitbase.getMaterialIndex() ? states[(int) index] : bitbases[materialIndex].get(index);
+      }
+
+      /**
+       * Returns the state of the child position after a pawn of the opponent has been pushed by two squares to the specified square taking
+       * the en passant captures into account.
+       */
+      int lookUpWithEnPassant(int victimSqrInd) {
+        int state = lookUp(child);
+        int numOfMoves = child.generateEnPassantMoves(victimSqrInd, enPassantMoves);
+        boolean legal = false;
+        int best = Bitbase.LOSS;
+        for (int i = 0; i < numOfMoves; i++) {
+          grandChild.set(child);
+          grandChild.makeMove(enPassantMoves[i]);
+          if (grandChild.isOpponentInCheck()) {
+            continue;
+          }
+          legal = true;
+          int grandChildState = lookUp(grandChild);
+          if (grandChildState == Bitbase.LOSS) {
+            return Bitbase.WIN;
+          } else if (grandChildState != Bitbase.WIN) {
+            best = Bitbase.DRAW;
+          }
+        }
+        if (!legal || state == Bitbase.WIN || state == UNKNOWN) {
+          return state;
+        }
+        // The en passant captures are the only moves if the position is a stale mate without them.
+        return state == Bitbase.LOSS || state == STALE_MATE ? best : Bitbase.DRAW;
+      }
+
+      /**
+       * Evaluates the position based on the states of the positions its moves lead to.
+       *
+       * @return The state of the position.
+       */
+      int evaluate() {
+        int numOfMoves = pos.generateMoves(moves);
+        boolean legal = false;
+        boolean allWon = true;
+        for (int i = 0; i < numOfMoves; i++) {
+          int move = moves[i];
+          child.set(pos);
+          child.makeMove(move);
+          if (child.isOpponentInCheck()) {
+            continue;
+          }
+          legal = true;
+          int from = move & 63;
+          int to = (move >>> 6) & 63;
+          int state = Bitbase.type(pos.getPiece(from)) == Bitbase.PAWN && Math.abs(to - from) == 16 ? lookUpWithEnPassant(to) :
+              lookUp(child);
+          if (state == Bitbase.LOSS) {
+            return Bitbase.WIN;
+          } else if (state != Bitbase.WIN) {
+            allWon = false;
+          }
+        }
+        if (!legal) {
+          return pos.isInCheck() ? Bitbase.LOSS : STALE_MATE;
+        }
+        return allWon ? Bitbase.LOSS : UNKNOWN;
+      }
+
+    }
+
+  }
+
+  /**
+   * A task executed for each index of a bitbase.
+   */
+  @FunctionalInterface
+  private interface IndexTask {
+
+    /**
+     * Executes the task for the index.
+     *
+     * @param worker The state of the worker thread executing the task.
+     * @param index The index.
+     * @return Whether the index is to be counted.
+     */
+    boolean execute(Generation.Worker worker, int index);
+
+  }
+
+}
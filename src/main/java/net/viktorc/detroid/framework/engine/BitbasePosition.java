@@ -0,0 +1,480 @@
+package net.viktorc.detroid.framework.engine;
+
+/**
+ * A mutable representation of positions with at most {@link Bitbase#MAX_PIECES} pieces for the generation and probing of bitbases. The
+ * pieces are stored in small parallel arrays of piece indices and square indices which allows for generating moves, making them, and
+ * computing the indices of the positions in the bitbases without allocating any memory.
+ * <p>
+ * Moves are encoded as integers with the origin square on the lowest six bits, the destination square on the next six bits, the index of
+ * the piece to promote to on the next four bits, and an en passant flag.
+ *
+ * @author Viktor
+ */
+final class BitbasePosition {
+
+  /**
+   * The maximum number of pseudo-legal moves in a position with at most {@link Bitbase#MAX_PIECES} pieces.
+   */
+  static final int MAX_MOVES = 64;
+  /**
+   * The flag of en passant captures.
+   */
+  static final int EN_PASSANT = 1 << 16;
+  private static final MoveSetBase[] MOVE_SETS = MoveSetBase.values();
+
+  final byte[] pieces;
+  final int[] squares;
+  int numOfPieces;
+  boolean whitesTurn;
+  private int materialIndex;
+  private final int[] order;
+
+  /**
+   * Constructs an empty position.
+   */
+  BitbasePosition() {
+    pieces = new byte[Bitbase.MAX_PIECES];
+    squares = new int[Bitbase.MAX_PIECES];
+    order = new int[Bitbase.MAX_PIECES];
+  }
+
+  /**
+   * Sets the position to the position at the specified index of the bitbase.
+   *
+   * @param bitbase The bitbase.
+   * @param index The index of the position.
+   */
+  void set(Bitbase bitbase, long index) {
+    numOfPieces = bitbase.getNumOfPieces();
+    for (int i = numOfPieces - 1; i > 0; i--) {
+      pieces[i] = bitbase.getPiece(i);
+      squares[i] = (int) (index & 63);
+      index >>>= 6;
+    }
+    pieces[0] = bitbase.getPiece(0);
+    int regionSize = Bitbase.regionSize(bitbase.hasPawns());
+    squares[0] = Bitbase.regionSquare((int) (index % regionSize), bitbase.hasPawns());
+    whitesTurn = index / regionSize == 0;
+  }
+
+  /**
+   * Sets the position to the specified position.
+   *
+   * @param pos The position to copy.
+   */
+  void set(BitbasePosition pos) {
+    numOfPieces = pos.numOfPieces;
+    whitesTurn = pos.whitesTurn;
+    System.arraycopy(pos.pieces, 0, pieces, 0, numOfPieces);
+    System.arraycopy(pos.squares, 0, squares, 0, numOfPieces);
+  }
+
+  /**
+   * Sets the position to the specified chess position ignoring its en passant rights.
+   *
+   * @param pos The chess position.
+   * @return Whether the position could be set, i.e. there are at most {@link Bitbase#MAX_PIECES} pieces and no castling rights.
+   */
+  boolean set(Position pos) {
+    long occupied = pos.getAllOccupied();
+    if (Long.bitCount(occupied) > Bitbase.MAX_PIECES || pos.getWhiteCastlingRights() != CastlingRights.NONE.ind ||
+        pos.getBlackCastlingRights() != CastlingRights.NONE.ind) {
+      return false;
+    }
+    numOfPieces = 0;
+    while (occupied != 0) {
+      int sqrInd = Long.numberOfTrailingZeros(occupied);
+      pieces[numOfPieces] = pos.getPiece(sqrInd);
+      squares[numOfPieces++] = sqrInd;
+      occupied &= occupied - 1;
+    }
+    whitesTurn = pos.isWhitesTurn();
+    return true;
+  }
+
+  private long occupied() {
+    long occupied = 0;
+    for (int i = 0; i < numOfPieces; i++) {
+      occupied |= 1L << squares[i];
+    }
+    return occupied;
+  }
+
+  private long occupied(boolean white) {
+    long occupied = 0;
+    for (int i = 0; i < numOfPieces; i++) {
+      if (Bitbase.isWhite(pieces[i]) == white) {
+        occupied |= 1L << squares[i];
+      }
+    }
+    return occupied;
+  }
+
+  private int kingSquare(boolean white) {
+    byte king = white ? Piece.W_KING.ind : Piece.B_KING.ind;
+    for (int i = 0; i < numOfPieces; i++) {
+      if (pieces[i] == king) {
+        return squares[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the piece on the specified square.
+   *
+   * @param sqrInd The square index.
+   * @return The piece index or 0 if the square is empty.
+   */
+  int getPiece(int sqrInd) {
+    for (int i = 0; i < numOfPieces; i++) {
+      if (squares[i] == sqrInd) {
+        return pieces[i];
+      }
+    }
+    return Piece.NULL.ind;
+  }
+
+  private boolean isAttacked(int sqrInd, boolean byWhite) {
+    long occupied = occupied();
+    long bit = 1L << sqrInd;
+    for (int i = 0; i < numOfPieces; i++) {
+      int piece = pieces[i];
+      if (Bitbase.isWhite(piece) != byWhite) {
+        continue;
+      }
+      MoveSetBase moveSets = MOVE_SETS[squares[i]];
+      long attacks;
+      switch (Bitbase.type(piece)) {
+        case Bitbase.KING:
+          attacks = moveSets.kingMoveMask;
+          break;
+        case Bitbase.QUEEN:
+          attacks = moveSets.getQueenMoveSet(Bitboard.FULL_BOARD, occupied);
+          break;
+        case Bitbase.ROOK:
+          attacks = moveSets.getRookMoveSet(Bitboard.FULL_BOARD, occupied);
+          break;
+        case Bitbase.BISHOP:
+          attacks = moveSets.getBishopMoveSet(Bitboard.FULL_BOARD, occupied);
+          break;
+        case Bitbase.KNIGHT:
+          attacks = moveSets.knightMoveMask;
+          break;
+        default:
+          attacks = byWhite ? moveSets.whitePawnCaptureMoveMask : moveSets.blackPawnCaptureMoveMask;
+          break;
+      }
+      if ((attacks & bit) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Whether the side to move is in check.
+   */
+  boolean isInCheck() {
+    return isAttacked(kingSquare(whitesTurn), !whitesTurn);
+  }
+
+  /**
+   * @return Whether the side not to move is in check, i.e. whether the last move was illegal.
+   */
+  boolean isOpponentInCheck() {
+    return isAttacked(kingSquare(!whitesTurn), whitesTurn);
+  }
+
+  /**
+   * Returns whether the position is legal, i.e. no two pieces occupy the same square, there are no pawns on the first and last ranks, and
+   * the side not to move is not in check.
+   *
+   * @return Whether the position is legal.
+   */
+  boolean isLegal() {
+    if (Long.bitCount(occupied()) != numOfPieces) {
+      return false;
+    }
+    for (int i = 0; i < numOfPieces; i++) {
+      if (Bitbase.type(pieces[i]) == Bitbase.PAWN && (squares[i] < 8 || squares[i] >= 56)) {
+        return false;
+      }
+    }
+    return !isOpponentInCheck();
+  }
+
+  /**
+   * Generates the pseudo-legal moves of the side to move excluding en passant captures.
+   *
+   * @param moves The array to store the moves in. Its length has to be at least {@link #MAX_MOVES}.
+   * @return The number of moves generated.
+   */
+  int generateMoves(int[] moves) {
+    long occupied = occupied();
+    long nonOwnOccupied = ~occupied(whitesTurn);
+    long opponentOccupied = occupied & nonOwnOccupied;
+    int numOfMoves = 0;
+    for (int i = 0; i < numOfPieces; i++) {
+      int piece = pieces[i];
+      if (Bitbase.isWhite(piece) != whitesTurn) {
+        continue;
+      }
+      int from = squares[i];
+      MoveSetBase moveSets = MOVE_SETS[from];
+      long targets;
+      switch (Bitbase.type(piece)) {
+        case Bitbase.KING:
+          targets = moveSets.getKingMoveSet(nonOwnOccupied);
+          break;
+        case Bitbase.QUEEN:
+          targets = moveSets.getQueenMoveSet(nonOwnOccupied, occupied);
+          break;
+        case Bitbase.ROOK:
+          targets = moveSets.getRookMoveSet(nonOwnOccupied, occupied);
+          break;
+        case Bitbase.BISHOP:
+          targets = moveSets.getBishopMoveSet(nonOwnOccupied, occupied);
+          break;
+        case Bitbase.KNIGHT:
+          targets = moveSets.getKnightMoveSet(nonOwnOccupied);
+          break;
+        default:
+          targets = whitesTurn ? moveSets.getWhitePawnMoveSet(opponentOccupied, ~occupied) :
+              moveSets.getBlackPawnMoveSet(opponentOccupied, ~occupied);
+          if ((targets & (Bitboard.Rank.R1.bitboard | Bitboard.Rank.R8.bitboard)) != 0) {
+            int king = whitesTurn ? Piece.W_KING.ind : Piece.B_KING.ind;
+            while (targets != 0) {
+              int move = from | (Long.numberOfTrailingZeros(targets) << 6);
+              for (int type = Bitbase.QUEEN; type <= Bitbase.KNIGHT; type++) {
+                moves[numOfMoves++] = move | ((king + type) << 12);
+              }
+              targets &= targets - 1;
+            }
+          }
+          break;
+      }
+      while (targets != 0) {
+        moves[numOfMoves++] = from | (Long.numberOfTrailingZeros(targets) << 6);
+        targets &= targets - 1;
+      }
+    }
+    return numOfMoves;
+  }
+
+  /**
+   * Generates the pseudo-legal en passant captures of the side to move given that the opponent's pawn on the specified square has just
+   * been pushed two squares.
+   *
+   * @param victimSqrInd The square of the pawn that has just been pushed two squares.
+   * @param moves The array to store the moves in.
+   * @return The number of moves generated.
+   */
+  int generateEnPassantMoves(int victimSqrInd, int[] moves) {
+    int pawn = whitesTurn ? Piece.W_PAWN.ind : Piece.B_PAWN.ind;
+    int to = whitesTurn ? victimSqrInd + 8 : victimSqrInd - 8;
+    int numOfMoves = 0;
+    for (int i = 0; i < numOfPieces; i++) {
+      int from = squares[i];
+      if (pieces[i] == pawn && from >>> 3 == victimSqrInd >>> 3 && Math.abs(from - victimSqrInd) == 1) {
+        moves[numOfMoves++] = from | (to << 6) | EN_PASSANT;
+      }
+    }
+    return numOfMoves;
+  }
+
+  /**
+   * Generates the moves the side not to move could have made to get to this position without capturing or promoting. They are encoded
+   * the same way as moves with the destination of the move that has been made as the origin and its origin as the destination.
+   *
+   * @param moves The array to store the moves in. Its length has to be at least {@link #MAX_MOVES}.
+   * @return The number of moves generated.
+   */
+  int generateUnmoves(int[] moves) {
+    long occupied = occupied();
+    long empty = ~occupied;
+    int numOfMoves = 0;
+    for (int i = 0; i < numOfPieces; i++) {
+      int piece = pieces[i];
+      if (Bitbase.isWhite(piece) == whitesTurn) {
+        continue;
+      }
+      int to = squares[i];
+      MoveSetBase moveSets = MOVE_SETS[to];
+      long origins;
+      switch (Bitbase.type(piece)) {
+        case Bitbase.KING:
+          origins = moveSets.getKingMoveSet(empty);
+          break;
+        case Bitbase.QUEEN:
+          origins = moveSets.getQueenMoveSet(empty, occupied);
+          break;
+        case Bitbase.ROOK:
+          origins = moveSets.getRookMoveSet(empty, occupied);
+          break;
+        case Bitbase.BISHOP:
+          origins = moveSets.getBishopMoveSet(empty, occupied);
+          break;
+        case Bitbase.KNIGHT:
+          origins = moveSets.getKnightMoveSet(empty);
+          break;
+        default:
+          // The pawn must not have come from the first rank.
+          int step = whitesTurn ? 8 : -8;
+          int from = to + step;
+          origins = 0;
+          if (from >= 8 && from < 56 && (empty & (1L << from)) != 0) {
+            origins = 1L << from;
+            if ((to >>> 3) == (whitesTurn ? 4 : 3) && (empty & (1L << (from + step))) != 0) {
+              origins |= 1L << (from + step);
+            }
+          }
+          break;
+      }
+      while (origins != 0) {
+        moves[numOfMoves++] = to | (Long.numberOfTrailingZeros(origins) << 6);
+        origins &= origins - 1;
+      }
+    }
+    return numOfMoves;
+  }
+
+  /**
+   * Makes the specified move or unmove.
+   *
+   * @param move The move.
+   */
+  void makeMove(int move) {
+    int from = move & 63;
+    int to = (move >>> 6) & 63;
+    int promotion = (move >>> 12) & 15;
+    int captured = (move & EN_PASSANT) != 0 ? (whitesTurn ? to - 8 : to + 8) : to;
+    for (int i = 0; i < numOfPieces; i++) {
+      if (squares[i] == captured) {
+        numOfPieces--;
+        pieces[i] = pieces[numOfPieces];
+        squares[i] = squares[numOfPieces];
+        break;
+      }
+    }
+    for (int i = 0; i < numOfPieces; i++) {
+      if (squares[i] == from) {
+        squares[i] = to;
+        if (promotion != 0) {
+          pieces[i] = (byte) promotion;
+        }
+        break;
+      }
+    }
+    whitesTurn = !whitesTurn;
+  }
+
+  /**
+   * Computes the canonical material index of the position and its index within the bitbase of the material.
+   *
+   * @return The index of the position within its bitbase.
+   */
+  long index() {
+    // Collect the pieces in the canonical order; the king first, then the stronger pieces.
+    int whiteCount = 0;
+    int blackCount = 0;
+    int whiteKing = 0;
+    int blackKing = 0;
+    int whiteOffset = 0;
+    int blackOffset = 2;
+    boolean pawns = false;
+    for (int i = 0; i < numOfPieces; i++) {
+      int piece = pieces[i];
+      int type = Bitbase.type(piece);
+      pawns |= type == Bitbase.PAWN;
+      if (type == Bitbase.KING) {
+        if (Bitbase.isWhite(piece)) {
+          whiteKing = i;
+        } else {
+          blackKing = i;
+        }
+      } else if (Bitbase.isWhite(piece)) {
+        order[whiteOffset + whiteCount++] = i;
+      } else {
+        order[blackOffset + blackCount++] = i;
+      }
+    }
+    if (whiteCount == 2 && pieces[order[0]] > pieces[order[1]]) {
+      int temp = order[0];
+      order[0] = order[1];
+      order[1] = temp;
+    }
+    if (blackCount == 2 && pieces[order[2]] > pieces[order[3]]) {
+      int temp = order[2];
+      order[2] = order[3];
+      order[3] = temp;
+    }
+    int whiteCode = Bitbase.sideCode(whiteCount > 0 ? Bitbase.type(pieces[order[0]]) : 0,
+        whiteCount > 1 ? Bitbase.type(pieces[order[1]]) : 0);
+    int blackCode = Bitbase.sideCode(blackCount > 0 ? Bitbase.type(pieces[order[2]]) : 0,
+        blackCount > 1 ? Bitbase.type(pieces[order[3]]) : 0);
+    // Swap the colors if black is stronger.
+    boolean flip = Bitbase.strength(whiteCode) < Bitbase.strength(blackCode);
+    int strongKing = flip ? blackKing : whiteKing;
+    int weakKing = flip ? whiteKing : blackKing;
+    int strongOffset = flip ? blackOffset : whiteOffset;
+    int weakOffset = flip ? whiteOffset : blackOffset;
+    int strongCount = flip ? blackCount : whiteCount;
+    int weakCount = flip ? whiteCount : blackCount;
+    materialIndex = flip ? blackCode * 36 + whiteCode : whiteCode * 36 + blackCode;
+    int mirror = flip ? 56 : 0;
+    // Determine the symmetry transformation that moves the strong side's king into its region.
+    int kingSqr = squares[strongKing] ^ mirror;
+    if ((kingSqr & 7) > 3) {
+      mirror ^= 7;
+      kingSqr ^= 7;
+    }
+    boolean transpose = false;
+    if (!pawns) {
+      if ((kingSqr >>> 3) > 3) {
+        mirror ^= 56;
+        kingSqr ^= 56;
+      }
+      transpose = (kingSqr >>> 3) > (kingSqr & 7);
+      kingSqr = transpose ? transpose(kingSqr) : kingSqr;
+    }
+    long index = (whitesTurn != flip ? 0 : 1) * Bitbase.regionSize(pawns) + Bitbase.regionIndex(kingSqr, pawns);
+    for (int i = 0; i < strongCount; i++) {
+      index = index * 64 + transform(squares[order[strongOffset + i]], mirror, transpose);
+    }
+    index = index * 64 + transform(squares[weakKing], mirror, transpose);
+    for (int i = 0; i < weakCount; i++) {
+      index = index * 64 + transform(squares[order[weakOffset + i]], mirror, transpose);
+    }
+    return index;
+  }
+
+  /**
+   * Mirrors the position along the a1-h8 diagonal. The resulting position is equivalent to the original one if there are no pawns on the
+   * board.
+   */
+  void transpose() {
+    for (int i = 0; i < numOfPieces; i++) {
+      squares[i] = transpose(squares[i]);
+    }
+  }
+
+  private static int transpose(int sqrInd) {
+    return ((sqrInd >>> 3) | (sqrInd << 3)) & 63;
+  }
+
+  private static int transform(int sqrInd, int mirror, boolean transpose) {
+    sqrInd ^= mirror;
+    return transpose ? transpose(sqrInd) : sqrInd;
+  }
+
+  /**
+   * Returns the canonical material index computed by the last call to {@link #index()}.
+   *
+   * @return The material index of the position.
+   */
+  int getMaterialIndex() {
+    return materialIndex;
+  }
+
+}
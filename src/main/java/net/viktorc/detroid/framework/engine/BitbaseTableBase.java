@@ -0,0 +1,226 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pure Java endgame tablebase backed by the win-draw-loss bitbases generated by {@link BitbaseGenerator}. The bitbase files are
+ * memory-mapped and probing them does not allocate any memory; the positions found are counted as drive hits. As there is no native
+ * probing library, the tablebase is always considered loaded; it is initialized once at least one bitbase file has been found in the
+ * specified directories. The bitbases do not contain the distances to mate, thus {@link #probeDTM(Position, boolean)} only returns the
+ * outcomes and soft probes are answered the same way as hard probes.
+ *
+ * @author Viktor
+ */
+public class BitbaseTableBase extends EndGameTableBase {
+
+  private final ThreadLocal<ProbeBuffers> probeBuffers;
+  private final LongAdder hardProbes;
+  private final LongAdder softProbes;
+  private final LongAdder hits;
+  private volatile Bitbase[] bitbases;
+  private volatile boolean[] availability;
+
+  /**
+   * Constructs an uninitialized instance.
+   */
+  public BitbaseTableBase() {
+    probeBuffers = ThreadLocal.withInitial(ProbeBuffers::new);
+    hardProbes = new LongAdder();
+    softProbes = new LongAdder();
+    hits = new LongAdder();
+    bitbases = new Bitbase[Bitbase.NUM_OF_MATERIALS];
+    availability = new boolean[Bitbase.MAX_PIECES + 1];
+  }
+
+  @Override
+  public void loadProbingLibrary(String path) {
+    // There is no native probing library.
+  }
+
+  @Override
+  public boolean isProbingLibLoaded() {
+    return true;
+  }
+
+  /**
+   * Maps the bitbase files found in the specified directories into memory.
+   *
+   * @param path The paths to the directories containing the bitbase files separated by semicolons.
+   * @param cacheSize Ignored as the bitbases are memory-mapped.
+   * @param args Ignored.
+   */
+  @Override
+  public synchronized void init(String path, long cacheSize, Object... args) {
+    Bitbase[] bitbases = new Bitbase[Bitbase.NUM_OF_MATERIALS];
+    boolean[] availability = new boolean[Bitbase.MAX_PIECES + 1];
+    for (String dirPath : path.split(";")) {
+      File[] files = new File(dirPath.trim()).listFiles((dir, name) -> name.endsWith(Bitbase.FILE_EXTENSION));
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = file.getName();
+        try {
+          Bitbase bitbase = Bitbase.forName(name.substring(0, name.length() - Bitbase.FILE_EXTENSION.length()));
+          bitbase.load(file);
+          bitbases[bitbase.getMaterialIndex()] = bitbase;
+          availability[bitbase.getNumOfPieces()] = true;
+        } catch (IllegalArgumentException | IOException e) {
+          // Ignore.
+        }
+      }
+    }
+    this.bitbases = bitbases;
+    this.availability = availability;
+  }
+
+  @Override
+  public boolean isInit() {
+    for (boolean available : availability) {
+      if (available) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void clearCache() {
+    // The bitbases are memory-mapped; there is no cache to clear.
+  }
+
+  @Override
+  public boolean areTableBasesAvailable(int piecesOnBoard) {
+    boolean[] availability = this.availability;
+    return piecesOnBoard >= 0 && piecesOnBoard < availability.length && availability[piecesOnBoard];
+  }
+
+  @Override
+  public boolean providesDistanceToMate() {
+    return false;
+  }
+
+  @Override
+  public EGTBStats getStats() {
+    return new EGTBStats(hardProbes.sum(), softProbes.sum(), hits.sum(), 0);
+  }
+
+  @Override
+  public void resetStats() {
+    hardProbes.reset();
+    softProbes.reset();
+    hits.reset();
+  }
+
+  /**
+   * Returns the value of the position from the point of view of the side to move.
+   */
+  private static int lookUp(Bitbase[] bitbases, BitbasePosition pos) {
+    if (pos.numOfPieces == 2) {
+      return Bitbase.DRAW;
+    }
+    long index = pos.index();
+    Bitbase bitbase = bitbases[pos.getMaterialIndex()];
+    return bitbase == null ? Bitbase.ILLEGAL : bitbase.get(index);
+  }
+
+  /**
+   * Determines whether the side to move has a legal move other than en passant captures.
+   */
+  private static boolean hasLegalMove(ProbeBuffers buffers) {
+    int numOfMoves = buffers.pos.generateMoves(buffers.moves);
+    for (int i = 0; i < numOfMoves; i++) {
+      buffers.child.set(buffers.pos);
+      buffers.child.makeMove(buffers.moves[i]);
+      if (!buffers.child.isOpponentInCheck()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public WDL probeWDL(Position pos, boolean soft) {
+    (soft ? softProbes : hardProbes).increment();
+    ProbeBuffers buffers = probeBuffers.get();
+    BitbasePosition bitbasePos = buffers.pos;
+    if (!bitbasePos.set(pos)) {
+      return null;
+    }
+    Bitbase[] bitbases = this.bitbases;
+    int value = lookUp(bitbases, bitbasePos);
+    byte enPassantRights = pos.getEnPassantRights();
+    if (value != Bitbase.ILLEGAL && value != Bitbase.WIN && enPassantRights != EnPassantRights.NONE.ind) {
+      // Take the en passant captures into account.
+      int victimSqrInd = enPassantRights + (pos.isWhitesTurn() ? EnPassantRights.TO_W_VICT_SQR_IND :
+          EnPassantRights.TO_B_VICT_SQR_IND);
+      int numOfMoves = bitbasePos.generateEnPassantMoves(victimSqrInd, buffers.enPassantMoves);
+      boolean legal = false;
+      int best = Bitbase.LOSS;
+      for (int i = 0; i < numOfMoves && best != Bitbase.WIN; i++) {
+        buffers.child.set(bitbasePos);
+        buffers.child.makeMove(buffers.enPassantMoves[i]);
+        if (buffers.child.isOpponentInCheck()) {
+          continue;
+        }
+        int childValue = lookUp(bitbases, buffers.child);
+        if (childValue == Bitbase.ILLEGAL) {
+          return null;
+        }
+        legal = true;
+        best = childValue == Bitbase.LOSS ? Bitbase.WIN : childValue == Bitbase.WIN ? best : Bitbase.DRAW;
+      }
+      if (legal) {
+        if (best == Bitbase.WIN) {
+          value = Bitbase.WIN;
+        } else if (value == Bitbase.LOSS || (value == Bitbase.DRAW && !hasLegalMove(buffers))) {
+          // If the position is a stale mate without en passant, the en passant captures are the only moves.
+          value = best;
+        }
+      }
+    }
+    if (value != Bitbase.ILLEGAL) {
+      hits.increment();
+    }
+    switch (value) {
+      case Bitbase.WIN:
+        return WDL.WIN;
+      case Bitbase.LOSS:
+        return WDL.LOSS;
+      case Bitbase.DRAW:
+        return WDL.DRAW;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * As the bitbases do not contain the distances to mate, the distance of the returned results is always 0.
+   */
+  @Override
+  public DTM probeDTM(Position pos, boolean soft) {
+    WDL wdl = probeWDL(pos, soft);
+    return wdl == null ? null : new DTM(wdl, 0);
+  }
+
+  @Override
+  public synchronized void close() {
+    bitbases = new Bitbase[Bitbase.NUM_OF_MATERIALS];
+    availability = new boolean[Bitbase.MAX_PIECES + 1];
+  }
+
+  /**
+   * The reusable positions and move arrays of a probing thread.
+   */
+  private static class ProbeBuffers {
+
+    final BitbasePosition pos = new BitbasePosition();
+    final BitbasePosition child = new BitbasePosition();
+    final int[] moves = new int[BitbasePosition.MAX_MOVES];
+    final int[] enPassantMoves = new int[2];
+
+  }
+
+}
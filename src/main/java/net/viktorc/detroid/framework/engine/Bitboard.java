@@ -1,16 +1,5 @@
 package net.viktorc.detroid.framework.engine;
 
-import java.util.AbstractMap;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.function.Function;
 import net.viktorc.detroid.framework.util.BitOperations;
 
 /**
@@ -498,99 +487,6 @@ public class Bitboard {
     return pinnedPieces;
   }
 
-  /**
-   * Generates a magic number for the square specified either for a rook or for a bishop depending on the parameters. If enhanced is set
-   * true, it will try to find a magic that can be right shifted by one more than the usual value allowing for denser tables lookup tables.
-   *
-   * @param sqrInd The origin square index.
-   * @param rook Whether the magics are to be generated for a rook move set or a bishop move set.
-   * @param enhanced Whether the magic number is to work with a greater magic shift value.
-   * @return A magic number and magic shift value pair.
-   * @throws ExecutionException If something goes wrong while generating enhanced magic numbers.
-   * @throws InterruptedException If the thread is interrupted while waiting for the background threads to compute the enhanced magic
-   * numbers.
-   */
-  public static Map.Entry<Long, Byte> generateMagics(int sqrInd, boolean rook, boolean enhanced)
-      throws InterruptedException, ExecutionException {
-    final Random random = new Random();
-    long[] occVar, moveVar;
-    long bit = Square.values()[sqrInd].bitboard;
-    if (rook) {
-      occVar = BitOperations.getAllSubsets(computeRookOccupancyMasks(bit));
-      moveVar = computeRookMoveSetVariations(bit, occVar);
-    } else {
-      occVar = BitOperations.getAllSubsets(computeBishopOccupancyMasks(bit));
-      moveVar = computeBishopMoveSetVariations(bit, occVar);
-    }
-    int variations = occVar.length;
-    Function<Byte, Long> gen = s -> {
-      long magicNumber;
-      boolean collision;
-      long[] magicDatabase = new long[variations];
-      do {
-        for (int i = 0; i < variations; i++) {
-          magicDatabase[i] = 0;
-        }
-        collision = false;
-        magicNumber = random.nextLong() & random.nextLong() & random.nextLong();
-        for (int i = 0; i < variations; i++) {
-          int index = (int) ((occVar[i] * magicNumber) >>> s);
-          if (magicDatabase[index] == 0) {
-            magicDatabase[index] = moveVar[i];
-          } else if (magicDatabase[index] != moveVar[i]) {
-            collision = true;
-            break;
-          }
-        }
-      } while (collision);
-      return magicNumber;
-    };
-    byte shift = (byte) (64 - BitOperations.indexOfBit(variations));
-    long num;
-    if (enhanced) {
-      int threads = Runtime.getRuntime().availableProcessors();
-      CompletionService<Long> pool = new ExecutorCompletionService<>(Executors.newFixedThreadPool(threads));
-      ArrayList<Future<Long>> futures = new ArrayList<>();
-      for (int i = 0; i < threads; i++) {
-        futures.add(pool.submit(() -> gen.apply((byte) (shift + 1))));
-      }
-      num = pool.take().get();
-      for (Future<Long> f : futures) {
-        f.cancel(true);
-      }
-    } else {
-      num = gen.apply(shift);
-    }
-    return new AbstractMap.SimpleEntry<>(num, shift);
-  }
-
-  /**
-   * Generates magic numbers for each square either for a rook or a bishop. For the squares whose indices are fed to this method, it will
-   * attempt to find enhanced magics.
-   *
-   * @param rook Whether the magics are to be generated for a rook move set or a bishop move set.
-   * @param enhancedSquares The indices of the squares for which enhanced magic numbers are to be computed.
-   * @return A list of 64 magic number and magic shift value pairs.
-   * @throws ExecutionException If something goes wrong while generating enhanced magic numbers.
-   * @throws InterruptedException If the thread is interrupted while waiting for the background threads to compute the enhanced magic
-   * numbers.
-   */
-  public static List<Map.Entry<Long, Byte>> generateAllMagics(boolean rook, int... enhancedSquares)
-      throws InterruptedException, ExecutionException {
-    List<Map.Entry<Long, Byte>> allMagics = new ArrayList<>(64);
-    OuterLoop:
-    for (int i = 0; i < 64; i++) {
-      for (int sqr : enhancedSquares) {
-        if (sqr == i) {
-          allMagics.add(generateMagics(i, rook, true));
-          continue OuterLoop;
-        }
-      }
-      allMagics.add(generateMagics(i, rook, false));
-    }
-    return allMagics;
-  }
-
   /**
    * Returns a long in binary form aligned like a chess board with one byte per row, in a human-readable way.
    *
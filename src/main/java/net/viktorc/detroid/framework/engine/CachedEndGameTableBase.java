@@ -0,0 +1,205 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A decorator of an endgame tablebase that caches the results of the probes in a lock-free hash table keyed by the Zobrist keys of the
+ * positions so that repeated probes of the same position, possibly from different search threads or engine instances, do not have to go
+ * through the probing code of the underlying tablebase. Each slot of the table consists of two longs; the encoded result and the key of the
+ * position XOR-ed with the encoded result. Reading a slot whose two halves have been written by different threads yields a key mismatch,
+ * thus the table needs no locks. Results of soft probes that have not been found are not cached as they may be available to hard probes.
+ * The hits and misses of the cache and the time spent in the probing code of the underlying tablebase are reported in the
+ * {@link net.viktorc.detroid.framework.engine.EndGameTableBase.EGTBStats}.
+ *
+ * @author Viktor
+ */
+public class CachedEndGameTableBase extends EndGameTableBase {
+
+  /**
+   * The default size of the result cache in bytes.
+   */
+  public static final long DEF_CACHE_SIZE = 4L << 20;
+  // The number of bytes a slot of the cache occupies.
+  private static final int SLOT_SIZE = 16;
+  // The flags and fields of the encoded results.
+  private static final long VALID = 1;
+  private static final long HAS_DTM = 1 << 1;
+  private static final long NOT_FOUND = 1 << 2;
+  private static final int WDL_SHIFT = 3;
+  private static final long WDL_MASK = 3;
+  private static final int DISTANCE_SHIFT = 32;
+  private static final WDL[] WDLS = WDL.values();
+
+  private final EndGameTableBase tableBase;
+  private final long[] slots;
+  private final int mask;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder probeTime;
+
+  /**
+   * Constructs a result cache in front of the specified tablebase.
+   *
+   * @param tableBase The tablebase whose probe results are to be cached.
+   * @param cacheSize The maximum size of the result cache in bytes. The number of slots is the greatest power of two that fits. If it is
+   * null, it defaults to {@link #DEF_CACHE_SIZE}.
+   * @throws IllegalArgumentException If the tablebase is null or the cache size is less than the size of a single slot.
+   */
+  public CachedEndGameTableBase(EndGameTableBase tableBase, Long cacheSize) throws IllegalArgumentException {
+    cacheSize = cacheSize == null ? DEF_CACHE_SIZE : cacheSize;
+    if (tableBase == null || cacheSize < SLOT_SIZE) {
+      throw new IllegalArgumentException("The tablebase cannot be null and the cache size has to be at least " + SLOT_SIZE + " bytes.");
+    }
+    this.tableBase = tableBase;
+    int numOfSlots = Integer.highestOneBit((int) Math.min(1 << 30, cacheSize / SLOT_SIZE));
+    slots = new long[2 * numOfSlots];
+    mask = numOfSlots - 1;
+    hits = new LongAdder();
+    misses = new LongAdder();
+    probeTime = new LongAdder();
+  }
+
+  /**
+   * Returns the tablebase whose probe results are cached.
+   *
+   * @return The underlying tablebase.
+   */
+  public EndGameTableBase getTableBase() {
+    return tableBase;
+  }
+
+  private static long encode(WDL wdl, Integer distance) {
+    long data = VALID;
+    if (distance != null) {
+      data |= HAS_DTM | ((long) distance << DISTANCE_SHIFT);
+    }
+    return data | ((wdl == null ? 0 : wdl.ordinal() + 1L) << WDL_SHIFT);
+  }
+
+  private static WDL decodeWDL(long data) {
+    int wdl = (int) ((data >>> WDL_SHIFT) & WDL_MASK);
+    return wdl == 0 ? null : WDLS[wdl - 1];
+  }
+
+  private int index(long key) {
+    return 2 * ((int) (key ^ (key >>> 32)) & mask);
+  }
+
+  /**
+   * Returns the encoded result cached for the position or 0 if there is none.
+   *
+   * @param key The Zobrist key of the position.
+   * @return The encoded result or 0.
+   */
+  private long lookUp(long key) {
+    int index = index(key);
+    long data = slots[index + 1];
+    return data != 0 && (slots[index] ^ data) == key ? data : 0;
+  }
+
+  private void store(long key, long data) {
+    int index = index(key);
+    slots[index] = key ^ data;
+    slots[index + 1] = data;
+  }
+
+  @Override
+  public void loadProbingLibrary(String path) {
+    tableBase.loadProbingLibrary(path);
+  }
+
+  @Override
+  public boolean isProbingLibLoaded() {
+    return tableBase.isProbingLibLoaded();
+  }
+
+  @Override
+  public void init(String path, long cacheSize, Object... args) {
+    tableBase.init(path, cacheSize, args);
+    Arrays.fill(slots, 0);
+  }
+
+  @Override
+  public boolean isInit() {
+    return tableBase.isInit();
+  }
+
+  @Override
+  public void clearCache() {
+    tableBase.clearCache();
+    Arrays.fill(slots, 0);
+  }
+
+  @Override
+  public boolean areTableBasesAvailable(int piecesOnBoard) {
+    return tableBase.areTableBasesAvailable(piecesOnBoard);
+  }
+
+  @Override
+  public boolean providesDistanceToMate() {
+    return tableBase.providesDistanceToMate();
+  }
+
+  @Override
+  public EGTBStats getStats() {
+    EGTBStats stats = tableBase.getStats();
+    return new EGTBStats(stats.getTotalHardProbes(), stats.getTotalSoftProbes(), stats.getTotalDriveHits(),
+        stats.getTotalCacheHits(), hits.sum(), misses.sum(), probeTime.sum());
+  }
+
+  @Override
+  public void resetStats() {
+    tableBase.resetStats();
+    hits.reset();
+    misses.reset();
+    probeTime.reset();
+  }
+
+  @Override
+  public WDL probeWDL(Position pos, boolean soft) {
+    long key = pos.getKey();
+    long data = lookUp(key);
+    if (data != 0) {
+      hits.increment();
+      return decodeWDL(data);
+    }
+    misses.increment();
+    long start = System.nanoTime();
+    WDL wdl = tableBase.probeWDL(pos, soft);
+    probeTime.add(System.nanoTime() - start);
+    if (wdl != null) {
+      store(key, encode(wdl, null));
+    } else if (!soft) {
+      store(key, NOT_FOUND | VALID);
+    }
+    return wdl;
+  }
+
+  @Override
+  public DTM probeDTM(Position pos, boolean soft) {
+    long key = pos.getKey();
+    long data = lookUp(key);
+    if ((data & (HAS_DTM | NOT_FOUND)) != 0) {
+      hits.increment();
+      return (data & NOT_FOUND) != 0 ? null : new DTM(decodeWDL(data), (int) (data >> DISTANCE_SHIFT));
+    }
+    misses.increment();
+    long start = System.nanoTime();
+    DTM dtm = tableBase.probeDTM(pos, soft);
+    probeTime.add(System.nanoTime() - start);
+    if (dtm != null) {
+      store(key, encode(dtm.getWdl(), dtm.getDistance()));
+    } else if (!soft) {
+      store(key, NOT_FOUND | VALID);
+    }
+    return dtm;
+  }
+
+  @Override
+  public void close() throws IOException {
+    tableBase.close();
+  }
+
+}
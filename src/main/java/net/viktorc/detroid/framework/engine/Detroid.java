@@ -1,5 +1,6 @@
 package net.viktorc.detroid.framework.engine;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
@@ -16,6 +17,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import net.viktorc.detroid.framework.engine.GaviotaTableBaseJNI.CompressionScheme;
 import net.viktorc.detroid.framework.engine.OpeningBook.SelectionModel;
@@ -27,13 +30,15 @@ import net.viktorc.detroid.framework.uci.ScoreType;
 import net.viktorc.detroid.framework.uci.SearchInformation;
 import net.viktorc.detroid.framework.uci.SearchResults;
 import net.viktorc.detroid.framework.util.Cache;
+import net.viktorc.detroid.framework.util.ResourceRegistry;
 import net.viktorc.detroid.framework.util.SizeEstimator;
 import net.viktorc.detroid.framework.validation.ControllerEngine;
 import net.viktorc.detroid.framework.validation.GameState;
 
 /**
  * A UCI compatible, tunable chess engine that utilizes magic bitboards and most search heuristics and supports Polyglot opening books and
- * Gaviota endgame tablebases.
+ * Gaviota endgame tablebases. If the Gaviota probing library is not available, it falls back on its own win-draw-loss bitbases. To keep
+ * the start-up fast, the engine takes whatever it can from the {@link StartupSnapshot} and allocates its hash tables in the background.
  *
  * @author Viktor
  */
@@ -61,6 +66,11 @@ public class Detroid implements ControllerEngine, TunableEngine {
   private static final String DEFAULT_EGTB_FOLDERS_PATH = "gtb/3;gtb/4";
   // The default compression scheme of the Gaviotat endgame tablebase files.
   private static final CompressionScheme DEFAULT_EGTB_COMP_SCHEME = CompressionScheme.CP4;
+  // The default path to the directory of the bitbases generated by BitbaseGenerator.
+  private static final String DEFAULT_BITBASE_PATH = "bitbases";
+  /* The default path to the file the hash tables are saved to and loaded from; like the other default paths, it is relative to the
+   * working directory. If the file exists, it is loaded at start-up. */
+  private static final String DEFAULT_HASH_FILE_PATH = "hash.dat";
   // The minimum allowed number of search threads to use.
   private static final int MIN_SEARCH_THREADS = 1;
   // The maximum allowed number of search threads to use.
@@ -73,6 +83,23 @@ public class Detroid implements ControllerEngine, TunableEngine {
   private static final int MAX_HASH_SIZE = (int) (Runtime.getRuntime().maxMemory() / (2L << 20));
   // The default hash size in MB.
   private static final int DEFAULT_HASH_SIZE = Math.min(DEFAULT_SEARCH_THREADS * 32, MAX_HASH_SIZE);
+  /* The names of the hash table schemes; the cuckoo hash tables or thread safe bucketed hash tables with the respective replacement
+   * policies. */
+  private static final String CUCKOO_HASH_SCHEME = "Cuckoo";
+  private static final String DEPTH_PREFERRED_HASH_SCHEME = "DepthPreferred";
+  private static final String ALWAYS_REPLACE_HASH_SCHEME = "AlwaysReplace";
+  private static final String TWO_TIER_HASH_SCHEME = "TwoTier";
+  private static final String AGING_HASH_SCHEME = "Aging";
+  // The minimum allowed number of slots per bucket in bucketed hash tables.
+  private static final int MIN_HASH_BUCKET_WAYS = 1;
+  // The maximum allowed number of slots per bucket in bucketed hash tables.
+  private static final int MAX_HASH_BUCKET_WAYS = 16;
+  // The default number of slots per bucket in bucketed hash tables.
+  private static final int DEFAULT_HASH_BUCKET_WAYS = 4;
+  // The number of plies a transposition table entry's depth is discounted by per generation of age under the aging scheme.
+  private static final int HASH_AGE_WEIGHT = 4;
+  // The default hash table scheme. As the hash tables are shared by the search threads, it is one of the thread safe schemes.
+  private static final String DEFAULT_HASH_SCHEME = DEPTH_PREFERRED_HASH_SCHEME;
   // The minimum allowed endgame tablebase cache size in MB.
   private static final int MIN_EGTB_CACHE_SIZE = 0;
   // The maximum allowed endgame tablebase cache size in MB.
@@ -86,6 +113,13 @@ public class Detroid implements ControllerEngine, TunableEngine {
 
   private Option<?> hashSize;
   private Option<?> clearHash;
+  private Option<?> hashScheme;
+  private Option<?> hashBucketWays;
+  private Option<?> neverClearHash;
+  private Option<?> hashFile;
+  private Option<?> saveHash;
+  private Option<?> loadHash;
+  private Option<?> saveEvalHash;
   private Option<?> ponder;
   private Option<?> ownBook;
   private Option<?> primaryBookPath;
@@ -95,6 +129,7 @@ public class Detroid implements ControllerEngine, TunableEngine {
   private Option<?> egtbCompScheme;
   private Option<?> egtbCacheSize;
   private Option<?> egtbClearCache;
+  private Option<?> bitbasePath;
   private Option<?> numOfSearchThreads;
   private Option<?> parametersPath;
   private Option<?> uciOpponent;
@@ -102,15 +137,20 @@ public class Detroid implements ControllerEngine, TunableEngine {
   private Map<Option<?>, Object> options;
 
   private DetroidParameters params;
+  private Map<String, String> paramValues;
   private DetroidSearchInformation searchInfo;
   private DetroidDebugInfo debugInfo;
   private OpeningBook book;
   private EndGameTableBase egtb;
+  private BitbaseTableBase bitbases;
   private Game game;
   private Evaluator eval;
   private Cache<TTEntry> transTable;
   private Cache<ETEntry> evalTable;
   private ExecutorService executor;
+  private volatile Future<?> hashAllocation;
+  // The hash file to load into the hash tables whenever they are allocated until the first search starts.
+  private volatile String startUpHashFilePath;
   private Future<SearchResults> search;
   private volatile boolean bookMove;
   private volatile boolean outOfBook;
@@ -132,26 +172,192 @@ public class Detroid implements ControllerEngine, TunableEngine {
     stopLock = new Object();
   }
 
+  /**
+   * Returns the shared instance of the opening book on the specified files.
+   *
+   * @param primaryFilePath The path to the primary book file.
+   * @param secondaryFilePath The path to the secondary book file. It may be null.
+   * @return The opening book.
+   * @throws Exception If the book cannot be loaded.
+   */
+  private static OpeningBook acquireBook(String primaryFilePath, String secondaryFilePath) throws Exception {
+    return ResourceRegistry.getInstance().acquire(OpeningBook.class, () -> new PolyglotBook(primaryFilePath, secondaryFilePath),
+        OpeningBook::close, primaryFilePath, secondaryFilePath);
+  }
+
+  /**
+   * Returns the shared parameter values read from the specified file or, if the file has not changed since the start-up snapshot was
+   * taken, from the snapshot.
+   *
+   * @param filePath The path to the parameters file.
+   * @return The parameter values by the names of the parameters.
+   * @throws Exception If the file cannot be read.
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> acquireParameterValues(String filePath) throws Exception {
+    return ResourceRegistry.getInstance().acquire(Map.class, () -> {
+      Map<String, String> values = StartupSnapshot.getInstance().getParameterValues(filePath);
+      return values != null ? values : EngineParameters.readValues(filePath);
+    }, null, filePath);
+  }
+
+  /**
+   * Returns the shared endgame tablebase instance behind a result cache shared by all engine instances. The probing library is only
+   * loaded and initialized with the default settings if no other engine instance holds a reference to the tablebase, and it is only
+   * closed once no engine instance references it anymore.
+   *
+   * @return The endgame tablebase.
+   * @throws Exception If the tablebase cannot be set up.
+   */
+  private static EndGameTableBase acquireEgtb() throws Exception {
+    return ResourceRegistry.getInstance().acquire(EndGameTableBase.class, () -> {
+      GaviotaTableBaseJNI gaviotaTb = GaviotaTableBaseJNI.getInstance();
+      gaviotaTb.loadProbingLibrary(DEFAULT_EGTB_LIB_PATH);
+      if (gaviotaTb.isProbingLibLoaded()) {
+        gaviotaTb.init(DEFAULT_EGTB_FOLDERS_PATH, DEFAULT_EGTB_CACHE_SIZE * 1024L * 1024L, DEFAULT_EGTB_COMP_SCHEME);
+      }
+      return new CachedEndGameTableBase(gaviotaTb, null);
+    }, tb -> {
+      if (tb.isProbingLibLoaded()) {
+        tb.close();
+      }
+    });
+  }
+
+  /**
+   * Returns the shared bitbases found in the specified directories.
+   *
+   * @param path The paths to the directories containing the bitbase files separated by semicolons.
+   * @return The bitbases.
+   * @throws Exception If the bitbases cannot be set up.
+   */
+  private static BitbaseTableBase acquireBitbases(String path) throws Exception {
+    return ResourceRegistry.getInstance().acquire(BitbaseTableBase.class, () -> {
+      BitbaseTableBase bitbases = new BitbaseTableBase();
+      bitbases.init(path, 0);
+      return bitbases;
+    }, BitbaseTableBase::close, path);
+  }
+
+  private void release(Object resource) {
+    if (resource == null) {
+      return;
+    }
+    try {
+      ResourceRegistry.getInstance().release(resource);
+    } catch (IOException e) {
+      if (debugMode) {
+        debugInfo.set(e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Allocates the hash tables and sets up the evaluator using the new evaluation table on the executor so that the caller is not held up.
+   * The tables and the evaluator may only be accessed after calling {@link #awaitHashTables()}. A previous allocation that has not
+   * started yet is cancelled as its tables would be replaced anyway.
+   *
+   * @param hashSize The total size of the hash tables in MB.
+   */
   private void setHashSize(int hashSize) {
     long sizeInBytes = hashSize * 1024L * 1024L;
     SizeEstimator estimator = SizeEstimator.getInstance();
     double transTableShare = ((double) params.transTableShare16th) / 16;
-    transTable = new Cache<>(TTEntry::new, (int) (sizeInBytes * transTableShare / estimator.sizeOf(TTEntry.class)));
-    evalTable = new Cache<>(ETEntry::new, (int) (sizeInBytes * (1d - transTableShare) / estimator.sizeOf(ETEntry.class)));
+    boolean noEvalTable = controllerMode || deterministicEvalMode;
+    String scheme = (String) options.get(hashScheme);
+    int ways = (Integer) options.get(hashBucketWays);
     gen = 0;
-    // Prompt for garbage collection.
-    System.gc();
-    if (debugMode) {
-      debugInfo.set("Hash capacity data\n" +
-          "Transposition table capacity - " + transTable.capacity() + "\n" +
-          "Evaluation table capacity - " + evalTable.capacity());
+    Future<?> previousAllocation = hashAllocation;
+    if (previousAllocation != null) {
+      previousAllocation.cancel(false);
+    }
+    hashAllocation = executor.submit(() -> {
+      transTable = newHashTable(TTEntry::new, (int) (sizeInBytes * transTableShare / estimator.sizeOf(TTEntry.class)), scheme,
+          ways, TTEntry::getGeneration, TTEntry::getDepth);
+      evalTable = newHashTable(ETEntry::new, (int) (sizeInBytes * (1d - transTableShare) / estimator.sizeOf(ETEntry.class)),
+          scheme, ways, ETEntry::getGeneration, e -> 0);
+      eval = new Evaluator(params, noEvalTable ? null : evalTable);
+      String hashFilePath = startUpHashFilePath;
+      if (hashFilePath != null && !noEvalTable) {
+        try {
+          HashTableFile.Header header = HashTableFile.load(hashFilePath, transTable, evalTable, (byte) 0);
+          if (debugMode) {
+            debugInfo.set("Hash file loaded at start-up\n" + header);
+          }
+        } catch (IOException e) {
+          if (debugMode) {
+            debugInfo.set("Hash file could not be loaded at start-up\n" + e.getMessage());
+          }
+        }
+      }
+      // Prompt for garbage collection.
+      System.gc();
+      if (debugMode) {
+        debugInfo.set("Hash capacity data\n" +
+            "Transposition table capacity - " + transTable.capacity() + "\n" +
+            "Evaluation table capacity - " + evalTable.capacity());
+      }
+    });
+  }
+
+  /**
+   * Constructs a hash table of the specified scheme.
+   *
+   * @param factory The entry factory.
+   * @param capacity The capacity of the hash table.
+   * @param scheme The name of the hash table scheme.
+   * @param ways The number of slots per bucket if the scheme is a bucketed one.
+   * @param generation A function returning the generation of an entry.
+   * @param depth A function returning the depth of an entry.
+   * @param <T> The hash table entry type.
+   * @return The hash table.
+   */
+  private static <T extends Cache.Entry<T>> Cache<T> newHashTable(Cache.EntryFactory<T> factory, int capacity, String scheme,
+      int ways, ToIntFunction<T> generation, ToIntFunction<T> depth) {
+    switch (scheme) {
+      case DEPTH_PREFERRED_HASH_SCHEME:
+        return new Cache<>(factory, capacity, ways, Cache.ReplacementPolicy.depthPreferred(), true);
+      case ALWAYS_REPLACE_HASH_SCHEME:
+        return new Cache<>(factory, capacity, ways, Cache.ReplacementPolicy.alwaysReplace(), true);
+      case TWO_TIER_HASH_SCHEME:
+        return new Cache<>(factory, capacity, ways, Cache.ReplacementPolicy.twoTier(), true);
+      case AGING_HASH_SCHEME:
+        return new Cache<>(factory, capacity, ways, Cache.ReplacementPolicy.aging(generation, depth, HASH_AGE_WEIGHT), true);
+      default:
+        return new Cache<>(factory, capacity);
+    }
+  }
+
+  /**
+   * Waits for the allocation of the hash tables to complete. The wait is uninterruptible so that the tables are always accessible once
+   * it returns; if the thread is interrupted while waiting, its interrupt flag is restored afterwards.
+   */
+  private void awaitHashTables() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          hashAllocation.get();
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw new RuntimeException(e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
   private void clearHash() {
+    awaitHashTables();
     transTable.clear();
     evalTable.clear();
     gen = 0;
+    startUpHashFilePath = null;
     if (debugMode) {
       debugInfo.set("Hash tables cleared");
     }
@@ -367,11 +573,14 @@ public class Detroid implements ControllerEngine, TunableEngine {
 
   private void startGameTreeSearch(Set<Move> allowedMoves, boolean doPonder, boolean doInfinite, Integer depth, Long nodes,
       Integer mateDistance) {
-    if (egtb.isProbingLibLoaded() && egtb.isInit()) {
-      egtb.resetStats();
+    EndGameTableBase tableBase = egtb.isProbingLibLoaded() && egtb.isInit() ? egtb : bitbases;
+    if (tableBase.isProbingLibLoaded() && tableBase.isInit()) {
+      tableBase.resetStats();
     }
     boolean analysisMode = (Boolean) options.get(uciAnalysis);
-    Search gameTreeSearch = new Search(game.getPosition(), params, eval, egtb, searchInfo, (int) options.get(numOfSearchThreads),
+    awaitHashTables();
+    startUpHashFilePath = null;
+    Search gameTreeSearch = new Search(game.getPosition(), params, eval, tableBase, searchInfo, (int) options.get(numOfSearchThreads),
         transTable, gen, analysisMode, doPonder || doInfinite,
         depth == null ? (mateDistance == null ? Integer.MAX_VALUE : mateDistance) : depth, nodes == null ? Long.MAX_VALUE : nodes,
         allowedMoves);
@@ -509,18 +718,16 @@ public class Detroid implements ControllerEngine, TunableEngine {
   public void init() throws Exception {
     synchronized (mainLock) {
       params = new DetroidParameters();
-      params.loadFrom(DEFAULT_PARAMETERS_FILE_PATH);
+      paramValues = acquireParameterValues(DEFAULT_PARAMETERS_FILE_PATH);
+      params.loadFrom(paramValues);
       try {
-        book = new PolyglotBook(DEFAULT_BOOK_FILE_PATH);
+        book = acquireBook(DEFAULT_BOOK_FILE_PATH, null);
       } catch (Exception e) {
         // It's okay if the opening book can't be initialized.
+        book = null;
       }
-      egtb = GaviotaTableBaseJNI.getInstance();
-      egtb.loadProbingLibrary(DEFAULT_EGTB_LIB_PATH);
-      if (egtb.isProbingLibLoaded()) {
-        egtb.init(DEFAULT_EGTB_FOLDERS_PATH, DEFAULT_EGTB_CACHE_SIZE * 1024L * 1024L,
-            DEFAULT_EGTB_COMP_SCHEME);
-      }
+      egtb = acquireEgtb();
+      bitbases = acquireBitbases(DEFAULT_BITBASE_PATH);
       debugInfo = new DetroidDebugInfo();
       debugMode = false;
       controllerMode = false;
@@ -534,6 +741,15 @@ public class Detroid implements ControllerEngine, TunableEngine {
           MAX_SEARCH_THREADS);
       hashSize = new Option.SpinOption(HASH_OPTION_NAME, DEFAULT_HASH_SIZE, MIN_HASH_SIZE, MAX_HASH_SIZE);
       clearHash = new Option.ButtonOption("ClearHash");
+      hashScheme = new Option.ComboOption("HashScheme", DEFAULT_HASH_SCHEME, new TreeSet<>(Arrays.asList(CUCKOO_HASH_SCHEME,
+          DEPTH_PREFERRED_HASH_SCHEME, ALWAYS_REPLACE_HASH_SCHEME, TWO_TIER_HASH_SCHEME, AGING_HASH_SCHEME)));
+      hashBucketWays = new Option.SpinOption("HashBucketWays", DEFAULT_HASH_BUCKET_WAYS, MIN_HASH_BUCKET_WAYS,
+          MAX_HASH_BUCKET_WAYS);
+      neverClearHash = new Option.CheckOption("NeverClearHash", false);
+      hashFile = new Option.StringOption("HashFile", DEFAULT_HASH_FILE_PATH);
+      saveHash = new Option.ButtonOption("SaveHashToFile");
+      loadHash = new Option.ButtonOption("LoadHashFromFile");
+      saveEvalHash = new Option.CheckOption("SaveEvalHash", false);
       ownBook = new Option.CheckOption(OWN_BOOK_OPTION_NAME, true);
       primaryBookPath = new Option.StringOption("PolyglotBookPrimaryPath", DEFAULT_BOOK_FILE_PATH);
       secondaryBookPath = new Option.StringOption("PolyglotBookSecondaryPath", "");
@@ -545,6 +761,7 @@ public class Detroid implements ControllerEngine, TunableEngine {
       egtbCacheSize = new Option.SpinOption("GaviotaTbCache", DEFAULT_EGTB_CACHE_SIZE, MIN_EGTB_CACHE_SIZE,
           MAX_EGTB_CACHE_SIZE);
       egtbClearCache = new Option.ButtonOption("GaviotaTbClearCache");
+      bitbasePath = new Option.StringOption("BitbasePath", DEFAULT_BITBASE_PATH);
       ponder = new Option.CheckOption("Ponder", true);
       uciOpponent = new Option.StringOption("UCI_Opponent", "?");
       uciAnalysis = new Option.CheckOption("UCI_AnalyseMode", false);
@@ -552,6 +769,13 @@ public class Detroid implements ControllerEngine, TunableEngine {
       options.put(numOfSearchThreads, numOfSearchThreads.getDefaultValue().get());
       options.put(hashSize, hashSize.getDefaultValue().get());
       options.put(clearHash, null);
+      options.put(hashScheme, hashScheme.getDefaultValue().get());
+      options.put(hashBucketWays, hashBucketWays.getDefaultValue().get());
+      options.put(neverClearHash, neverClearHash.getDefaultValue().get());
+      options.put(hashFile, hashFile.getDefaultValue().get());
+      options.put(saveHash, null);
+      options.put(loadHash, null);
+      options.put(saveEvalHash, saveEvalHash.getDefaultValue().get());
       options.put(ownBook, ownBook.getDefaultValue().get());
       options.put(primaryBookPath, primaryBookPath.getDefaultValue().get());
       options.put(secondaryBookPath, secondaryBookPath.getDefaultValue().get());
@@ -560,13 +784,14 @@ public class Detroid implements ControllerEngine, TunableEngine {
       options.put(egtbCompScheme, DEFAULT_EGTB_COMP_SCHEME);
       options.put(egtbCacheSize, egtbCacheSize.getDefaultValue().get());
       options.put(egtbClearCache, null);
+      options.put(bitbasePath, bitbasePath.getDefaultValue().get());
       options.put(ponder, ponder.getDefaultValue().get());
       options.put(uciOpponent, uciOpponent.getDefaultValue().get());
       options.put(uciAnalysis, uciAnalysis.getDefaultValue().get());
       searchInfo = new DetroidSearchInformation();
-      setHashSize(controllerMode || deterministicEvalMode ? MIN_HASH_SIZE : DEFAULT_HASH_SIZE);
-      eval = new Evaluator(params, controllerMode || deterministicEvalMode ? null : evalTable);
       executor = Executors.newSingleThreadExecutor();
+      startUpHashFilePath = new File(DEFAULT_HASH_FILE_PATH).exists() ? DEFAULT_HASH_FILE_PATH : null;
+      setHashSize(controllerMode || deterministicEvalMode ? MIN_HASH_SIZE : DEFAULT_HASH_SIZE);
       init = true;
     }
   }
@@ -604,7 +829,6 @@ public class Detroid implements ControllerEngine, TunableEngine {
           if (MIN_HASH_SIZE <= val && MAX_HASH_SIZE >= val) {
             if (val != (Integer) options.get(hashSize)) {
               setHashSize(val);
-              eval = new Evaluator(params, controllerMode || deterministicEvalMode ? null : evalTable);
               options.put(hashSize, value);
             }
             if (debugMode) {
@@ -615,6 +839,87 @@ public class Detroid implements ControllerEngine, TunableEngine {
         } else if (clearHash.equals(setting)) {
           clearHash();
           return true;
+        } else if (hashScheme.equals(setting)) {
+          if (hashScheme.getAllowedValues().get().contains(value)) {
+            if (!value.equals(options.get(hashScheme))) {
+              options.put(hashScheme, value);
+              setHashSize((Integer) options.get(hashSize));
+            }
+            if (debugMode) {
+              debugInfo.set("Hash scheme successfully set to " + value);
+            }
+            return true;
+          }
+        } else if (hashBucketWays.equals(setting)) {
+          int val = (Integer) value;
+          if (MIN_HASH_BUCKET_WAYS <= val && MAX_HASH_BUCKET_WAYS >= val) {
+            if (val != (Integer) options.get(hashBucketWays)) {
+              options.put(hashBucketWays, value);
+              setHashSize((Integer) options.get(hashSize));
+            }
+            if (debugMode) {
+              debugInfo.set("Hash bucket ways successfully set to " + value);
+            }
+            return true;
+          }
+        } else if (neverClearHash.equals(setting)) {
+          options.put(neverClearHash, value);
+          if (debugMode) {
+            debugInfo.set("Never clear hash successfully set to " + value);
+          }
+          return true;
+        } else if (hashFile.equals(setting)) {
+          options.put(hashFile, value);
+          if (debugMode) {
+            debugInfo.set("Hash file path successfully set to " + value);
+          }
+          return true;
+        } else if (saveHash.equals(setting)) {
+          if (search != null && !search.isDone()) {
+            if (debugMode) {
+              debugInfo.set("Hash tables cannot be saved while searching");
+            }
+            return false;
+          }
+          awaitHashTables();
+          try {
+            HashTableFile.save((String) options.get(hashFile), transTable, (Boolean) options.get(saveEvalHash) ? evalTable : null,
+                (Integer) options.get(hashSize), gen);
+            if (debugMode) {
+              debugInfo.set("Hash tables successfully saved to " + options.get(hashFile));
+            }
+            return true;
+          } catch (IOException e) {
+            if (debugMode) {
+              debugInfo.set(e.getMessage());
+            }
+          }
+        } else if (loadHash.equals(setting)) {
+          if (search != null && !search.isDone()) {
+            if (debugMode) {
+              debugInfo.set("Hash tables cannot be loaded while searching");
+            }
+            return false;
+          }
+          awaitHashTables();
+          try {
+            HashTableFile.Header header = HashTableFile.load((String) options.get(hashFile), transTable,
+                controllerMode || deterministicEvalMode ? null : evalTable, gen);
+            if (debugMode) {
+              debugInfo.set("Hash tables successfully loaded from " + options.get(hashFile) + "\n" + header);
+            }
+            return true;
+          } catch (IOException e) {
+            if (debugMode) {
+              debugInfo.set(e.getMessage());
+            }
+          }
+        } else if (saveEvalHash.equals(setting)) {
+          options.put(saveEvalHash, value);
+          if (debugMode) {
+            debugInfo.set("Save evaluation hash successfully set to " + value);
+          }
+          return true;
         } else if (ponder.equals(setting)) {
           options.put(ponder, value);
           if (debugMode) {
@@ -636,16 +941,8 @@ public class Detroid implements ControllerEngine, TunableEngine {
         } else if (primaryBookPath.equals(setting)) {
           try {
             String secondaryFilePath = book == null ? null : book.getSecondaryFilePath();
-            PolyglotBook newBook = new PolyglotBook((String) value, secondaryFilePath);
-            if (book != null) {
-              try {
-                book.close();
-              } catch (IOException e) {
-                if (debugMode) {
-                  debugInfo.set(e.getMessage());
-                }
-              }
-            }
+            OpeningBook newBook = acquireBook((String) value, secondaryFilePath);
+            release(book);
             book = newBook;
             options.put(primaryBookPath, book.getPrimaryFilePath());
             outOfBook = false;
@@ -661,14 +958,8 @@ public class Detroid implements ControllerEngine, TunableEngine {
         } else if (secondaryBookPath.equals(setting)) {
           if (book != null) {
             try {
-              PolyglotBook newBook = new PolyglotBook(book.getPrimaryFilePath(), (String) value);
-              try {
-                book.close();
-              } catch (IOException e) {
-                if (debugMode) {
-                  debugInfo.set(e.getMessage());
-                }
-              }
+              OpeningBook newBook = acquireBook(book.getPrimaryFilePath(), (String) value);
+              release(book);
               book = newBook;
               options.put(secondaryBookPath, book.getSecondaryFilePath());
               outOfBook = false;
@@ -758,6 +1049,22 @@ public class Detroid implements ControllerEngine, TunableEngine {
             egtb.clearCache();
             return true;
           }
+        } else if (bitbasePath.equals(setting)) {
+          try {
+            BitbaseTableBase newBitbases = acquireBitbases((String) value);
+            release(bitbases);
+            bitbases = newBitbases;
+            options.put(bitbasePath, value);
+            if (debugMode) {
+              debugInfo.set("Bitbase path successfully set to " + value + "; available bitbases: " +
+                  bitbases.areTableBasesAvailable(3) + ", " + bitbases.areTableBasesAvailable(4));
+            }
+            return true;
+          } catch (Exception e) {
+            if (debugMode) {
+              debugInfo.set(e.getMessage());
+            }
+          }
         } else if (numOfSearchThreads.equals(setting)) {
           if (value != null && MIN_SEARCH_THREADS <= (Integer) value &&
               MAX_SEARCH_THREADS >= (Integer) value) {
@@ -770,7 +1077,15 @@ public class Detroid implements ControllerEngine, TunableEngine {
         } else if (parametersPath.equals(setting)) {
           try {
             String filePath = (String) value;
-            params.loadFrom(filePath);
+            Map<String, String> newParamValues = acquireParameterValues(filePath);
+            try {
+              params.loadFrom(newParamValues);
+            } catch (Exception e) {
+              release(newParamValues);
+              throw e;
+            }
+            release(paramValues);
+            paramValues = newParamValues;
             options.put(parametersPath, filePath);
             notifyParametersChanged();
             if (debugMode) {
@@ -820,7 +1135,9 @@ public class Detroid implements ControllerEngine, TunableEngine {
     synchronized (mainLock) {
       newGame = true;
       outOfBook = false;
-      if (!controllerMode && !deterministicEvalMode) {
+      /* Before the first search after start-up, the hash tables contain nothing but the entries of the start-up hash file which are
+       * meant to be used in the first game. */
+      if (!controllerMode && !deterministicEvalMode && !(Boolean) options.get(neverClearHash) && startUpHashFilePath == null) {
         clearHash();
       }
       if (egtb.isProbingLibLoaded()) {
@@ -856,6 +1173,7 @@ public class Detroid implements ControllerEngine, TunableEngine {
           }
           gen++;
           if (!controllerMode && !deterministicEvalMode) {
+            awaitHashTables();
             if (gen == 127) {
               transTable.clear();
               evalTable.clear();
@@ -963,6 +1281,11 @@ public class Detroid implements ControllerEngine, TunableEngine {
 
   @Override
   public short getHashLoadPermill() {
+    Future<?> hashAllocation = this.hashAllocation;
+    if (hashAllocation == null || !hashAllocation.isDone()) {
+      return 0;
+    }
+    awaitHashTables();
     long transLoad = transTable.size();
     long evalLoad = evalTable.size();
     long totalLoad = transLoad + evalLoad;
@@ -1000,24 +1323,13 @@ public class Detroid implements ControllerEngine, TunableEngine {
       if (debugMode) {
         debugInfo.set("Shutting down...");
       }
-      if (book != null) {
-        try {
-          book.close();
-        } catch (IOException e) {
-          if (debugMode) {
-            debugInfo.set(e.getMessage());
-          }
-        }
-      }
-      if (egtb.isProbingLibLoaded()) {
-        try {
-          egtb.close();
-        } catch (IOException e) {
-          if (debugMode) {
-            debugInfo.set(e.getMessage());
-          }
-        }
-      }
+      release(book);
+      release(egtb);
+      release(bitbases);
+      release(paramValues);
+      book = null;
+      paramValues = null;
+      hashAllocation.cancel(false);
       executor.shutdown();
       searchInfo.deleteObservers();
       transTable = null;
@@ -1090,6 +1402,18 @@ public class Detroid implements ControllerEngine, TunableEngine {
     }
   }
 
+  @Override
+  public GameState replayGame(String pgn, Consumer<String> positionConsumer) {
+    try {
+      return PGNReplayer.replay(pgn, p -> positionConsumer.accept(p.toString()));
+    } catch (ChessParseException e) {
+      if (debugMode) {
+        debugInfo.set("Game could not be replayed. Invalid PGN:\n" + pgn);
+      }
+      return null;
+    }
+  }
+
   @Override
   public void setPlayers(String whitePlayer, String blackPlayer) {
     synchronized (mainLock) {
@@ -1143,6 +1467,13 @@ public class Detroid implements ControllerEngine, TunableEngine {
     }
   }
 
+  @Override
+  public void setTermination(String reason) {
+    synchronized (mainLock) {
+      game.setTermination(reason);
+    }
+  }
+
   @Override
   public String unplayLastMove() {
     synchronized (mainLock) {
@@ -1211,6 +1542,7 @@ public class Detroid implements ControllerEngine, TunableEngine {
   public void notifyParametersChanged() {
     synchronized (mainLock) {
       if (init) {
+        awaitHashTables();
         eval = new Evaluator(params, controllerMode || deterministicEvalMode ? null : evalTable);
       }
     }
@@ -1226,9 +1558,24 @@ public class Detroid implements ControllerEngine, TunableEngine {
     }
   }
 
+  @Override
+  public String resolveQuiescence() {
+    synchronized (mainLock) {
+      Position pos = new Position(game.getPosition());
+      awaitHashTables();
+      Search quiescenceSearch = new Search(pos, params, eval, egtb, searchInfo, 1, transTable, gen, true, false, 0, Long.MAX_VALUE,
+          null);
+      for (Move move : quiescenceSearch.searchQuiescencePv()) {
+        pos.makeMove(move);
+      }
+      return pos.toString();
+    }
+  }
+
   @Override
   public double eval(Map<String, Double> gradientCache) {
     synchronized (mainLock) {
+      awaitHashTables();
       return eval.score(game.getPosition(), gen, new ETEntry(), gradientCache);
     }
   }
@@ -54,9 +54,10 @@ public class ETEntry implements Entry<ETEntry> {
   }
 
   /**
-   * XORs the data fields into the key.
+   * XORs the data fields into the key. It is only ever invoked on entries owned by a single thread before they are inserted into the
+   * hash table, thus it requires no synchronization.
    */
-  public synchronized void setupKey() {
+  public void setupKey() {
     key ^= score;
   }
 
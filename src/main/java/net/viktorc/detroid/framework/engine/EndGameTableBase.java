@@ -74,6 +74,15 @@ public abstract class EndGameTableBase implements Closeable {
    */
   public abstract boolean areTableBasesAvailable(int piecesOnBoard);
 
+  /**
+   * Returns whether the probes of the tablebase yield the distances to mate or only the outcomes of the positions.
+   *
+   * @return Whether the results of {@link #probeDTM(Position, boolean)} contain the distances to mate.
+   */
+  public boolean providesDistanceToMate() {
+    return true;
+  }
+
   /**
    * Returns some basic usage stats about the endgame tablebase.
    *
@@ -176,12 +185,35 @@ public abstract class EndGameTableBase implements Closeable {
     private final long totalSoftProbes;
     private final long totalDriveHits;
     private final long totalCacheHits;
+    private final long totalResultCacheHits;
+    private final long totalResultCacheMisses;
+    private final long totalProbeTime;
 
     public EGTBStats(long totalHardProbes, long totalSoftProbes, long totalDriveHits, long totalCacheHits) {
+      this(totalHardProbes, totalSoftProbes, totalDriveHits, totalCacheHits, 0, 0, 0);
+    }
+
+    /**
+     * Constructs an instance including the stats of a result cache in front of the tablebase such as
+     * {@link net.viktorc.detroid.framework.engine.CachedEndGameTableBase}.
+     *
+     * @param totalHardProbes The total number of hard probes.
+     * @param totalSoftProbes The total number of soft probes.
+     * @param totalDriveHits The total number of drive hits.
+     * @param totalCacheHits The total number of cache hits of the probing code.
+     * @param totalResultCacheHits The total number of probes answered by the result cache.
+     * @param totalResultCacheMisses The total number of probes that had to be passed on to the probing code.
+     * @param totalProbeTime The total time spent in the probing code in nanoseconds.
+     */
+    public EGTBStats(long totalHardProbes, long totalSoftProbes, long totalDriveHits, long totalCacheHits,
+        long totalResultCacheHits, long totalResultCacheMisses, long totalProbeTime) {
       this.totalHardProbes = totalHardProbes;
       this.totalSoftProbes = totalSoftProbes;
       this.totalDriveHits = totalDriveHits;
       this.totalCacheHits = totalCacheHits;
+      this.totalResultCacheHits = totalResultCacheHits;
+      this.totalResultCacheMisses = totalResultCacheMisses;
+      this.totalProbeTime = totalProbeTime;
     }
 
     /**
@@ -220,6 +252,33 @@ public abstract class EndGameTableBase implements Closeable {
       return totalCacheHits;
     }
 
+    /**
+     * Returns the total number of probes answered by the result cache.
+     *
+     * @return The number of result cache hits.
+     */
+    public long getTotalResultCacheHits() {
+      return totalResultCacheHits;
+    }
+
+    /**
+     * Returns the total number of probes not answered by the result cache.
+     *
+     * @return The number of result cache misses.
+     */
+    public long getTotalResultCacheMisses() {
+      return totalResultCacheMisses;
+    }
+
+    /**
+     * Returns the average time a probe not answered by the result cache took.
+     *
+     * @return The average latency of the probing code in nanoseconds.
+     */
+    public double getAverageProbeLatency() {
+      return totalResultCacheMisses == 0 ? 0 : (double) totalProbeTime / totalResultCacheMisses;
+    }
+
   }
 
 }
@@ -579,10 +579,10 @@ public class Evaluator {
   public short score(Position pos, byte hashGen, ETEntry entry, Map<String, Double> gradientCache) {
     // Probe evaluation hash table.
     if (evalTable != null) {
-      ETEntry eE = evalTable.get(pos.getKey());
-      if (eE != null && eE.hashKey() == pos.getKey()) {
+      ETEntry eE = evalTable.get(pos.getKey(), entry);
+      if (eE != null && entry.hashKey() == pos.getKey()) {
         eE.setGeneration(hashGen);
-        return eE.getScore();
+        return entry.getScore();
       }
     }
     short score = 0;
@@ -19,10 +19,12 @@ public class Game {
   private String event;
   private String site;
   private String date;
+  private long creationTime;
   private int round;
   private String whitePlayerName;
   private String blackPlayerName;
   private GameState state;
+  private String termination;
 
   /**
    * Parses a game in PGN notation and returns a game instance.
@@ -35,7 +37,7 @@ public class Game {
     char tagChar;
     String tagContent, tagType, tagValue,
         event = null, site = null, date = null, round = null,
-        whiteName = null, blackName = null, result = null, fen = null;
+        whiteName = null, blackName = null, result = null, fen = null, termination = null;
     Game out = new Game();
     String[] moveDescParts;
     ArrayList<String> sanStrings = new ArrayList<>();
@@ -77,6 +79,9 @@ public class Game {
               break;
             case "FEN":
               fen = tagValue;
+              break;
+            case "TERMINATION":
+              termination = tagValue;
           }
         }
       }
@@ -90,6 +95,7 @@ public class Game {
       out.round = "?".equals(round) ? -1 : Short.parseShort(round);
       out.whitePlayerName = whiteName;
       out.blackPlayerName = blackName;
+      out.termination = termination;
       out.position = fen == null ? Position.parse(Position.START_POSITION_FEN) : Position.parse(fen);
       out.startPosition = new Position(out.position);
       pgn = pgn.substring(pgn.lastIndexOf(']') + 1);
@@ -159,9 +165,7 @@ public class Game {
     startPosition = new Position(this.position);
     this.event = event;
     this.site = site;
-    Calendar cal = Calendar.getInstance();
-    cal.setTime(new Date());
-    date = cal.get(Calendar.YEAR) + "." + cal.get(Calendar.MONTH) + "." + cal.get(Calendar.DAY_OF_MONTH);
+    creationTime = System.currentTimeMillis();
     this.round = round;
     this.whitePlayerName = whitePlayerName;
     this.blackPlayerName = blackPlayerName;
@@ -197,9 +201,7 @@ public class Game {
       return;
     }
     startPosition = new Position(position);
-    Calendar cal = Calendar.getInstance();
-    cal.setTime(new Date());
-    date = cal.get(Calendar.YEAR) + "." + cal.get(Calendar.MONTH) + "." + cal.get(Calendar.DAY_OF_MONTH);
+    creationTime = System.currentTimeMillis();
     round = 1;
     state = GameState.IN_PROGRESS;
   }
@@ -236,6 +238,12 @@ public class Game {
    * @return The date the game took place.
    */
   public String getDate() {
+    // The date is only formatted when needed, as loading the calendar data takes long.
+    if (date == null) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(new Date(creationTime));
+      date = cal.get(Calendar.YEAR) + "." + cal.get(Calendar.MONTH) + "." + cal.get(Calendar.DAY_OF_MONTH);
+    }
     return date;
   }
 
@@ -302,6 +310,20 @@ public class Game {
     this.blackPlayerName = blackPlayerName;
   }
 
+  /**
+   * @return The reason of the termination of the game if it was terminated other than by the rules of chess, else null.
+   */
+  public String getTermination() {
+    return termination;
+  }
+
+  /**
+   * @param termination The reason of the termination of the game to record in the Termination tag of the PGN.
+   */
+  public void setTermination(String termination) {
+    this.termination = termination;
+  }
+
   /**
    * Sets the state of the game in case of draw by agreement, resignation, or time out. Otherwise it is a no-op.
    *
@@ -314,24 +336,34 @@ public class Game {
     }
   }
 
-  private void updateState() {
+  /**
+   * Determines the state of a game based on its current position.
+   *
+   * @param position The current position of the game.
+   * @return The state of the game as defined by the rules of chess.
+   */
+  static GameState determineState(Position position) {
     if (position.getMoves().size() == 0) {
-      state = position.isInCheck() ?
+      return position.isInCheck() ?
           (position.isWhitesTurn() ? GameState.BLACK_MATES : GameState.WHITE_MATES) :
           GameState.STALE_MATE;
     } else {
       if (Evaluator.isMaterialInsufficient(position)) {
-        state = GameState.DRAW_BY_INSUFFICIENT_MATERIAL;
+        return GameState.DRAW_BY_INSUFFICIENT_MATERIAL;
       } else if (position.hasRepeated(2)) {
-        state = GameState.DRAW_BY_3_FOLD_REPETITION;
+        return GameState.DRAW_BY_3_FOLD_REPETITION;
       } else if (position.getFiftyMoveRuleClock() >= 100) {
-        state = GameState.DRAW_BY_50_MOVE_RULE;
+        return GameState.DRAW_BY_50_MOVE_RULE;
       } else {
-        state = GameState.IN_PROGRESS;
+        return GameState.IN_PROGRESS;
       }
     }
   }
 
+  private void updateState() {
+    state = determineState(position);
+  }
+
   /**
    * Plays a move defined either in PACN or SAN format if legal.
    *
@@ -397,12 +429,15 @@ public class Game {
     String pgn = "";
     pgn += "[Event \"" + (event == null ? "N/A" : event) + "\"]\n";
     pgn += "[Site \"" + (site == null ? "N/A" : site) + "\"]\n";
-    pgn += "[Date \"" + date + "\"]\n";
+    pgn += "[Date \"" + getDate() + "\"]\n";
     pgn += "[Round \"" + (round == -1 ? "?" : round) + "\"]\n";
     pgn += "[White \"" + (whitePlayerName == null ? "N/A" : whitePlayerName) + "\"]\n";
     pgn += "[Black \"" + (blackPlayerName == null ? "N/A" : blackPlayerName) + "\"]\n";
     pgn += "[Result \"" + state.getPGNCode() + "\"]\n";
     pgn += "[FEN \"" + startPosition.toString() + "\"]\n";
+    if (termination != null) {
+      pgn += "[Termination \"" + termination + "\"]\n";
+    }
     pgn += moveListToSAN();
     return pgn;
   }
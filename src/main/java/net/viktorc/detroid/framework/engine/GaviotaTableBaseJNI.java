@@ -3,7 +3,6 @@ package net.viktorc.detroid.framework.engine;
 import java.util.Arrays;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import net.viktorc.detroid.framework.util.BitOperations;
 
 /**
  * A Gaviota tablebase probing implementation using JNI.
@@ -70,6 +69,7 @@ public class GaviotaTableBaseJNI extends EndGameTableBase {
   private static final GaviotaTableBaseJNI INSTANCE = new GaviotaTableBaseJNI();
 
   private final Lock probeLock;
+  private final ThreadLocal<ProbeBuffers> probeBuffers;
   private boolean hasBeenInit;
 
   /**
@@ -77,6 +77,7 @@ public class GaviotaTableBaseJNI extends EndGameTableBase {
    */
   private GaviotaTableBaseJNI() {
     probeLock = new ReentrantLock(true);
+    probeBuffers = ThreadLocal.withInitial(ProbeBuffers::new);
   }
 
   /**
@@ -108,6 +109,27 @@ public class GaviotaTableBaseJNI extends EndGameTableBase {
     }
   }
 
+  /**
+   * Writes the squares and the piece types of the pieces on the specified bitboard into the arrays followed by the terminating
+   * {@link #NO_SQUARE} and {@link #NO_PIECE} values.
+   *
+   * @param pos The position.
+   * @param occupied The bitboard of the pieces of one side.
+   * @param squares The array of the squares.
+   * @param pieces The array of the piece types.
+   */
+  private static void marshal(Position pos, long occupied, int[] squares, char[] pieces) {
+    int i = 0;
+    for (; occupied != 0; occupied &= occupied - 1) {
+      int square = Long.numberOfTrailingZeros(occupied);
+      squares[i] = square;
+      byte piece = pos.getPiece(square);
+      pieces[i++] = (char) (Piece.W_PAWN.ind - ((piece - 1) % Piece.W_PAWN.ind));
+    }
+    squares[i] = NO_SQUARE;
+    pieces[i] = NO_PIECE;
+  }
+
   /**
    * Probes the loaded tablebase files or cache for the specified position.
    *
@@ -126,30 +148,13 @@ public class GaviotaTableBaseJNI extends EndGameTableBase {
         pos.getBlackCastlingRights() : pos.getBlackCastlingRights() ^ CastlingRights.ALL.ind) |
         ((pos.getWhiteCastlingRights() % CastlingRights.ALL.ind == 0 ? pos.getWhiteCastlingRights() :
             pos.getWhiteCastlingRights() ^ CastlingRights.ALL.ind) << 2);
-    byte[] wAllOccuppied = BitOperations.serialize(pos.getAllWhiteOccupied());
-    int[] wSquares = new int[wAllOccuppied.length + 1];
-    char[] wPieces = new char[wAllOccuppied.length + 1];
-    int i = 0;
-    for (; i < wAllOccuppied.length; i++) {
-      int square = wAllOccuppied[i];
-      wSquares[i] = square;
-      byte piece = pos.getPiece(square);
-      wPieces[i] = (char) (Piece.W_PAWN.ind - ((piece - 1) % Piece.W_PAWN.ind));
-    }
-    wSquares[i] = NO_SQUARE;
-    wPieces[i] = NO_PIECE;
-    byte[] bAllOccupied = BitOperations.serialize(pos.getAllBlackOccupied());
-    int[] bSquares = new int[bAllOccupied.length + 1];
-    char[] bPieces = new char[bAllOccupied.length + 1];
-    i = 0;
-    for (; i < bAllOccupied.length; i++) {
-      int square = bAllOccupied[i];
-      bSquares[i] = square;
-      byte piece = pos.getPiece(square);
-      bPieces[i] = (char) (Piece.W_PAWN.ind - ((piece - 1) % Piece.W_PAWN.ind));
-    }
-    bSquares[i] = NO_SQUARE;
-    bPieces[i] = NO_PIECE;
+    ProbeBuffers buffers = probeBuffers.get();
+    int[] wSquares = buffers.wSquares;
+    char[] wPieces = buffers.wPieces;
+    int[] bSquares = buffers.bSquares;
+    char[] bPieces = buffers.bPieces;
+    marshal(pos, pos.getAllWhiteOccupied(), wSquares, wPieces);
+    marshal(pos, pos.getAllBlackOccupied(), bSquares, bPieces);
     boolean lockAcquired;
     if (soft) {
       lockAcquired = probeLock.tryLock();
@@ -435,4 +440,18 @@ public class GaviotaTableBaseJNI extends EndGameTableBase {
 
   }
 
+  /**
+   * The arrays the pieces of a position are marshalled into before being passed to the probing code. As the arrays are terminated by
+   * {@link #NO_SQUARE} and {@link #NO_PIECE}, they can be reused for any position, thus each thread only needs one set of them.
+   */
+  private static class ProbeBuffers {
+
+    // At most 16 pieces per side plus the terminating value.
+    final int[] wSquares = new int[17];
+    final char[] wPieces = new char[17];
+    final int[] bSquares = new int[17];
+    final char[] bPieces = new char[17];
+
+  }
+
 }
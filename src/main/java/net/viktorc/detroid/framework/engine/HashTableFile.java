@@ -0,0 +1,239 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import net.viktorc.detroid.framework.util.Cache;
+import net.viktorc.detroid.framework.util.Checkpoint;
+
+/**
+ * A utility for saving the contents of the transposition table and optionally the evaluation table to a file and loading them back
+ * into hash tables of any size and scheme. The file starts with a header describing the layouts of the entries, the hash size in MB, and
+ * the hash generation at the time of saving, followed by the numbers of the entries of both tables and the entries themselves. The
+ * entries are streamed through a direct buffer using bulk channel reads and writes. When saved, each entry is copied out of the table
+ * through {@link Cache#get(long, Cache.Entry)} so that no torn entries are written. When loaded, the generations of the entries are rebased
+ * onto the current generation so that their relative ages are preserved.
+ *
+ * @author Viktor
+ */
+final class HashTableFile {
+
+  private static final int MAGIC = 0x44544854;
+  private static final int VERSION = 1;
+  // The layouts of the entry records; a file with different layouts is rejected.
+  private static final String TT_ENTRY_LAYOUT = "key:long,depth:short,type:byte,score:short,bestMove:int,generation:byte";
+  private static final String ET_ENTRY_LAYOUT = "key:long,score:short,generation:byte";
+  private static final int TT_ENTRY_SIZE = Long.BYTES + Short.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES + Byte.BYTES;
+  private static final int ET_ENTRY_SIZE = Long.BYTES + Short.BYTES + Byte.BYTES;
+  private static final int MAX_LAYOUT_LENGTH = 1 << 10;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private HashTableFile() {
+  }
+
+  private static void putString(ByteBuffer buffer, String string) {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Makes sure that the buffer holds at least the specified number of bytes by compacting it and reading from the channel.
+   */
+  private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+    if (buffer.remaining() >= bytes) {
+      return;
+    }
+    buffer.compact();
+    while (buffer.position() < bytes) {
+      if (channel.read(buffer) == -1) {
+        throw new IOException("Unexpected end of hash file.");
+      }
+    }
+    buffer.flip();
+  }
+
+  private static String readString(FileChannel channel, ByteBuffer buffer) throws IOException {
+    ensureRemaining(channel, buffer, Integer.BYTES);
+    int length = buffer.getInt();
+    if (length < 0 || length > MAX_LAYOUT_LENGTH) {
+      throw new IOException("Illegal string length in hash file header: " + length);
+    }
+    ensureRemaining(channel, buffer, length);
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte rebase(byte entryGeneration, byte fileGeneration, byte generation) {
+    return (byte) Math.max(0, entryGeneration - fileGeneration + generation);
+  }
+
+  /**
+   * Saves the non-empty entries of the hash tables to the specified file. Each entry is saved as a consistent snapshot; however, if the
+   * tables are modified while they are being saved, the file may contain a mix of entries from before and after the modifications.
+   *
+   * @param filePath The path to the hash file.
+   * @param transTable The transposition table.
+   * @param evalTable The evaluation table. If it is null, only the transposition table is saved.
+   * @param hashSize The hash size in MB.
+   * @param generation The current hash generation.
+   * @throws IOException If the file cannot be written.
+   */
+  static void save(String filePath, Cache<TTEntry> transTable, Cache<ETEntry> evalTable, int hashSize, byte generation)
+      throws IOException {
+    Checkpoint.writeAtomically(filePath, path -> {
+      try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        putString(buffer, TT_ENTRY_LAYOUT);
+        putString(buffer, ET_ENTRY_LAYOUT);
+        buffer.putInt(hashSize).put(generation);
+        long countsPosition = buffer.position();
+        // Placeholders for the numbers of entries which are only known once the entries have been written.
+        buffer.putLong(0).putLong(0);
+        long[] counts = new long[2];
+        TTEntry ttEntry = new TTEntry();
+        ETEntry etEntry = new ETEntry();
+        try {
+          transTable.forEach(e -> {
+            // The live entry may be overwritten concurrently; only a consistent copy of it is written.
+            if (transTable.get(e.hashKey(), ttEntry) == null) {
+              return;
+            }
+            try {
+              if (buffer.remaining() < TT_ENTRY_SIZE) {
+                writeFully(channel, buffer);
+              }
+            } catch (IOException ex) {
+              throw new UncheckedIOException(ex);
+            }
+            buffer.putLong(ttEntry.getKey()).putShort(ttEntry.getDepth()).put(ttEntry.getType()).putShort(ttEntry.getScore())
+                .putInt(ttEntry.getBestMove()).put(ttEntry.getGeneration());
+            counts[0]++;
+          });
+          if (evalTable != null) {
+            evalTable.forEach(e -> {
+              if (evalTable.get(e.hashKey(), etEntry) == null) {
+                return;
+              }
+              try {
+                if (buffer.remaining() < ET_ENTRY_SIZE) {
+                  writeFully(channel, buffer);
+                }
+              } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+              }
+              buffer.putLong(etEntry.getKey()).putShort(etEntry.getScore()).put(etEntry.getGeneration());
+              counts[1]++;
+            });
+          }
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+        writeFully(channel, buffer);
+        buffer.putLong(counts[0]).putLong(counts[1]).flip();
+        long position = countsPosition;
+        while (buffer.hasRemaining()) {
+          position += channel.write(buffer, position);
+        }
+      }
+    });
+  }
+
+  /**
+   * Loads the entries saved in the specified file into the hash tables. The entries are inserted as if they were new entries, thus
+   * depending on the capacities and the replacement schemes of the tables, not all of them may be retained.
+   *
+   * @param filePath The path to the hash file.
+   * @param transTable The transposition table.
+   * @param evalTable The evaluation table. If it is null, the evaluation table entries in the file are skipped.
+   * @param generation The current hash generation.
+   * @return The header of the file along with the numbers of entries inserted.
+   * @throws IOException If the file cannot be read or its header is invalid.
+   */
+  static Header load(String filePath, Cache<TTEntry> transTable, Cache<ETEntry> evalTable, byte generation) throws IOException {
+    try (FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buffer.flip();
+      ensureRemaining(channel, buffer, 2 * Integer.BYTES);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Illegal hash file header: " + filePath);
+      }
+      String ttEntryLayout = readString(channel, buffer);
+      String etEntryLayout = readString(channel, buffer);
+      if (!TT_ENTRY_LAYOUT.equals(ttEntryLayout) || !ET_ENTRY_LAYOUT.equals(etEntryLayout)) {
+        throw new IOException("Incompatible hash entry layouts: " + ttEntryLayout + "; " + etEntryLayout);
+      }
+      ensureRemaining(channel, buffer, Integer.BYTES + Byte.BYTES + 2 * Long.BYTES);
+      int hashSize = buffer.getInt();
+      byte fileGeneration = buffer.get();
+      long ttEntries = buffer.getLong();
+      long etEntries = buffer.getLong();
+      long ttEntriesLoaded = 0;
+      long etEntriesLoaded = 0;
+      TTEntry ttEntry = new TTEntry();
+      for (long i = 0; i < ttEntries; i++) {
+        ensureRemaining(channel, buffer, TT_ENTRY_SIZE);
+        ttEntry.set(buffer.getLong(), buffer.getShort(), buffer.get(), buffer.getShort(), buffer.getInt(),
+            rebase(buffer.get(), fileGeneration, generation), false);
+        if (transTable.put(ttEntry)) {
+          ttEntriesLoaded++;
+        }
+      }
+      if (evalTable != null) {
+        ETEntry etEntry = new ETEntry();
+        for (long i = 0; i < etEntries; i++) {
+          ensureRemaining(channel, buffer, ET_ENTRY_SIZE);
+          etEntry.set(buffer.getLong(), buffer.getShort(), rebase(buffer.get(), fileGeneration, generation));
+          if (evalTable.put(etEntry)) {
+            etEntriesLoaded++;
+          }
+        }
+      }
+      return new Header(hashSize, fileGeneration, ttEntries, etEntries, ttEntriesLoaded, etEntriesLoaded);
+    }
+  }
+
+  /**
+   * The information stored in the header of a hash file along with the numbers of entries inserted into the hash tables.
+   */
+  static final class Header {
+
+    final int hashSize;
+    final byte generation;
+    final long ttEntries;
+    final long etEntries;
+    final long ttEntriesLoaded;
+    final long etEntriesLoaded;
+
+    Header(int hashSize, byte generation, long ttEntries, long etEntries, long ttEntriesLoaded, long etEntriesLoaded) {
+      this.hashSize = hashSize;
+      this.generation = generation;
+      this.ttEntries = ttEntries;
+      this.etEntries = etEntries;
+      this.ttEntriesLoaded = ttEntriesLoaded;
+      this.etEntriesLoaded = etEntriesLoaded;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Hash size: %dMB; Generation: %d; TT entries loaded: %d/%d; ET entries loaded: %d/%d", hashSize,
+          generation, ttEntriesLoaded, ttEntries, etEntriesLoaded, etEntries);
+    }
+
+  }
+
+}
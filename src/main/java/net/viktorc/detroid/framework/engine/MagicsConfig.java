@@ -4,12 +4,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.AbstractMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 /**
- * A singleton class for reading and writing magic numbers and magic shifts for sliding pieces on specific squares.
+ * A singleton class for reading and writing magic numbers and magic shifts for sliding pieces on specific squares. Besides the magics, the
+ * offsets of the move set tables of the squares within the contiguous move set array of all sliding pieces may be stored as well; if they
+ * are not, the tables are laid out one after the other. The offsets have to be stored either for all the squares or for none of them.
  *
  * @author Viktor
  */
@@ -19,7 +21,7 @@ public class MagicsConfig {
   private static final String ROOK_KEY_FORMAT = "R%d";
   private static final String BISHOP_KEY_FORMAT = "B%d";
   private static final String VALUE_SEPARATOR = ":";
-  private static final String DESCRIPTION = "Magic numbers and magic shift values.";
+  private static final String DESCRIPTION = "Magic numbers, magic shift values, and table offsets.";
   private static final MagicsConfig INSTANCE = new MagicsConfig();
 
   private Properties props;
@@ -45,8 +47,18 @@ public class MagicsConfig {
     return new AbstractMap.SimpleEntry<>(Long.valueOf(magics[0]), Byte.valueOf(magics[1]));
   }
 
-  private void setMagics(String key, Map.Entry<Long, Byte> magics) {
-    props.setProperty(key, magics.getKey() + VALUE_SEPARATOR + magics.getValue());
+  private Integer getOffset(String key) {
+    String val = props.getProperty(key);
+    if (val == null) {
+      return null;
+    }
+    String[] magics = val.split(VALUE_SEPARATOR);
+    return magics.length > 2 ? Integer.valueOf(magics[2]) : null;
+  }
+
+  private void setMagics(String key, Map.Entry<Long, Byte> magics, Integer offset) {
+    props.setProperty(key, magics.getKey() + VALUE_SEPARATOR + magics.getValue() +
+        (offset == null ? "" : VALUE_SEPARATOR + offset));
   }
 
   /**
@@ -62,7 +74,25 @@ public class MagicsConfig {
    * @param magics A key-value pair containing the magic number and the magic shift for a rook on the specified square.
    */
   public synchronized void setRookMagics(int sqrInd, Map.Entry<Long, Byte> magics) {
-    setMagics(String.format(ROOK_KEY_FORMAT, sqrInd), magics);
+    setMagics(String.format(ROOK_KEY_FORMAT, sqrInd), magics, null);
+  }
+
+  /**
+   * @param sqrInd The square index.
+   * @return The offset of the move set table of a rook on the specified square within the contiguous move set array or null if it is not
+   * specified.
+   */
+  public Integer getRookTableOffset(int sqrInd) {
+    return getOffset(String.format(ROOK_KEY_FORMAT, sqrInd));
+  }
+
+  /**
+   * @param sqrInd The square index.
+   * @param magics A key-value pair containing the magic number and the magic shift for a rook on the specified square.
+   * @param offset The offset of the move set table of a rook on the specified square within the contiguous move set array.
+   */
+  public synchronized void setRookMagics(int sqrInd, Map.Entry<Long, Byte> magics, int offset) {
+    setMagics(String.format(ROOK_KEY_FORMAT, sqrInd), magics, offset);
   }
 
   /**
@@ -78,7 +108,25 @@ public class MagicsConfig {
    * @param magics A key-value pair containing the magic number and the magic shift for a bishop on the specified square.
    */
   public synchronized void setBishopMagics(int sqrInd, Map.Entry<Long, Byte> magics) {
-    setMagics(String.format(BISHOP_KEY_FORMAT, sqrInd), magics);
+    setMagics(String.format(BISHOP_KEY_FORMAT, sqrInd), magics, null);
+  }
+
+  /**
+   * @param sqrInd The square index.
+   * @return The offset of the move set table of a bishop on the specified square within the contiguous move set array or null if it is
+   * not specified.
+   */
+  public Integer getBishopTableOffset(int sqrInd) {
+    return getOffset(String.format(BISHOP_KEY_FORMAT, sqrInd));
+  }
+
+  /**
+   * @param sqrInd The square index.
+   * @param magics A key-value pair containing the magic number and the magic shift for a bishop on the specified square.
+   * @param offset The offset of the move set table of a bishop on the specified square within the contiguous move set array.
+   */
+  public synchronized void setBishopMagics(int sqrInd, Map.Entry<Long, Byte> magics, int offset) {
+    setMagics(String.format(BISHOP_KEY_FORMAT, sqrInd), magics, offset);
   }
 
   /**
@@ -96,6 +144,16 @@ public class MagicsConfig {
     loaded = true;
   }
 
+  /**
+   * @return The CRC32 checksum of the properties file.
+   * @throws IOException If the properties file cannot be read.
+   */
+  public long checksum() throws IOException {
+    try (InputStream in = getClass().getResourceAsStream(PROPERTIES_FILE)) {
+      return StartupSnapshot.checksum(in);
+    }
+  }
+
   /**
    * It reloads the key-values from the properties file whether they have been loaded before or not.
    *
@@ -118,17 +176,22 @@ public class MagicsConfig {
     }
   }
 
+  /**
+   * Searches for magics that minimize the total size of the move set array starting from the current magics and saves them along with the
+   * table offsets.
+   *
+   * @param args The optional number of threads to search on, by default the number of available processors, and the search time in
+   * seconds, by default 60.
+   * @throws Exception If the magics cannot be loaded, searched for, or saved.
+   */
   public static void main(String[] args) throws Exception {
+    int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    long searchTime = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 60000;
     MagicsConfig config = MagicsConfig.getInstance();
     config.load();
-    List<Map.Entry<Long, Byte>> rookMagics = Bitboard.generateAllMagics(true);
-    List<Map.Entry<Long, Byte>> bishopMagics = Bitboard.generateAllMagics(false);
-    for (int i = 0; i < 64; i++) {
-      config.setRookMagics(i, rookMagics.get(i));
-      config.setBishopMagics(i, bishopMagics.get(i));
-    }
+    new MagicsGenerator(concurrency, Logger.getAnonymousLogger()).generate(config, searchTime);
     config.save();
-    config.load();
+    config.reload();
   }
 
 }
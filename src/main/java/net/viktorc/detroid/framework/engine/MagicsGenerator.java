@@ -0,0 +1,219 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * A parallel search for 'fancy' magics that minimize the total size of the contiguous move set array of sliding pieces. For each square
+ * and sliding piece, random sparse magic numbers are tried with both the usual magic shift and one greater than that and a magic is only
+ * accepted if it hashes all the occupancy variations without destructive collisions onto a shorter table than the best magic found so
+ * far or onto a table of the same length leaving more slots unused thanks to constructive collisions. The search starts out from the
+ * magics of the configuration, thus the results are never worse than those. Once the time allotted to the search is up, the tables are
+ * packed into the move set array largest first, each at the lowest offset at which none of its move sets collides with the move sets of
+ * the already placed tables, making use of the slots the other tables do not use.
+ *
+ * @author Viktor
+ */
+public final class MagicsGenerator {
+
+  // The number of magic numbers tried between two checks of the search deadline.
+  private static final int TRIALS_PER_CHECK = 1 << 10;
+
+  private final int concurrency;
+  private final Logger logger;
+
+  /**
+   * Constructs an instance using the specified number of threads.
+   *
+   * @param concurrency The number of threads to search for magics on.
+   * @param logger A logger to log the results of the search. It may be null.
+   * @throws IllegalArgumentException If the concurrency is less than 1.
+   */
+  public MagicsGenerator(int concurrency, Logger logger) throws IllegalArgumentException {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("The concurrency has to be at least 1.");
+    }
+    this.concurrency = concurrency;
+    this.logger = logger;
+  }
+
+  private void log(String message) {
+    if (logger != null) {
+      logger.info(message);
+    }
+  }
+
+  /**
+   * Searches for the magics of the move set table of a rook or bishop on a square until the deadline.
+   */
+  private static Magics search(long[] occupancyVariations, long[] moveSetVariations, Magics best, long deadline) {
+    Random random = new Random();
+    long occupancyMask = 0;
+    for (long occupancyVariation : occupancyVariations) {
+      occupancyMask |= occupancyVariation;
+    }
+    byte shift = (byte) (64 - Long.bitCount(occupancyMask));
+    long[] table = new long[occupancyVariations.length];
+    int[] stamps = new int[occupancyVariations.length];
+    int stamp = 0;
+    for (long trials = 0; trials % TRIALS_PER_CHECK != 0 || System.currentTimeMillis() < deadline; trials++) {
+      long magicNumber = random.nextLong() & random.nextLong() & random.nextLong();
+      if (Long.bitCount((occupancyMask * magicNumber) & 0xFF00000000000000L) < 6) {
+        continue;
+      }
+      byte magicShift = (byte) (shift + (trials & 1));
+      stamp++;
+      int maxIndex = 0;
+      int usedSlots = 0;
+      boolean valid = true;
+      for (int i = 0; i < occupancyVariations.length && valid; i++) {
+        int index = (int) ((occupancyVariations[i] * magicNumber) >>> magicShift);
+        if (index >= best.span) {
+          valid = false;
+        } else if (stamps[index] != stamp) {
+          stamps[index] = stamp;
+          table[index] = moveSetVariations[i];
+          maxIndex = Math.max(maxIndex, index);
+          valid = ++usedSlots < best.usedSlots || maxIndex < best.span - 1;
+        } else {
+          valid = table[index] == moveSetVariations[i];
+        }
+      }
+      // Shorter tables are better and of two tables of the same length, the one with more unused slots is better.
+      if (valid) {
+        best = new Magics(magicNumber, magicShift, SlidingMoveSets.computeIndices(occupancyVariations, magicNumber,
+            magicShift));
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Packs the tables into one array and returns their offsets.
+   */
+  private static int[] pack(Magics[] magics, long[][] moveSetVariations) {
+    int totalSpan = 0;
+    Integer[] order = new Integer[magics.length];
+    for (int i = 0; i < magics.length; i++) {
+      totalSpan += magics[i].span;
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingInt((Integer i) -> magics[i].span).reversed());
+    long[] moveSets = new long[totalSpan];
+    int[] offsets = new int[magics.length];
+    for (int table : order) {
+      int[] indices = magics[table].indices;
+      long[] variations = moveSetVariations[table];
+      for (int offset = 0; ; offset++) {
+        boolean fits = true;
+        for (int i = 0; i < indices.length && fits; i++) {
+          long moveSet = moveSets[offset + indices[i]];
+          fits = moveSet == 0 || moveSet == variations[i];
+        }
+        if (fits) {
+          for (int i = 0; i < indices.length; i++) {
+            moveSets[offset + indices[i]] = variations[i];
+          }
+          offsets[table] = offset;
+          break;
+        }
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Searches for magics for the move set tables of rooks and bishops on all squares that minimize the total size of the move set array
+   * and sets them along with the offsets of the tables in the configuration. The search time is divided among the tables in proportion to
+   * the number of their occupancy variations. The configuration is not saved.
+   *
+   * @param config The magics configuration holding the initial magics. It has to be loaded.
+   * @param searchTime The total time to spend searching for magics in milliseconds.
+   * @return The length of the resulting move set array.
+   * @throws InterruptedException If the thread is interrupted while waiting for the search to complete.
+   * @throws ExecutionException If the search fails.
+   */
+  public synchronized int generate(MagicsConfig config, long searchTime) throws InterruptedException, ExecutionException {
+    long[][] occupancyVariations = new long[128][];
+    long[][] moveSetVariations = new long[128][];
+    Magics[] magics = new Magics[128];
+    int initialSize = 0;
+    int totalVariations = 0;
+    for (int i = 0; i < 128; i++) {
+      long[][] variations = SlidingMoveSets.computeVariations(i % 64, i < 64);
+      occupancyVariations[i] = variations[0];
+      moveSetVariations[i] = variations[1];
+      Map.Entry<Long, Byte> initialMagics = i < 64 ? config.getRookMagics(i) : config.getBishopMagics(i - 64);
+      magics[i] = new Magics(initialMagics.getKey(), initialMagics.getValue(), SlidingMoveSets.computeIndices(variations[0],
+          initialMagics.getKey(), initialMagics.getValue()));
+      initialSize += magics[i].span;
+      totalVariations += variations[0].length;
+    }
+    log(String.format("Initial size of the move set tables: %dKB", initialSize * Long.BYTES / 1024));
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<Magics>> futures = new ArrayList<>(128);
+      for (int i = 0; i < 128; i++) {
+        int table = i;
+        long tableSearchTime = searchTime * concurrency * occupancyVariations[i].length / totalVariations;
+        futures.add(pool.submit(() -> search(occupancyVariations[table], moveSetVariations[table], magics[table],
+            System.currentTimeMillis() + tableSearchTime)));
+      }
+      for (int i = 0; i < 128; i++) {
+        magics[i] = futures.get(i).get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    int searchedSize = 0;
+    for (Magics m : magics) {
+      searchedSize += m.span;
+    }
+    log(String.format("Size of the move set tables after the search: %dKB", searchedSize * Long.BYTES / 1024));
+    int[] offsets = pack(magics, moveSetVariations);
+    int packedSize = 0;
+    for (int i = 0; i < 128; i++) {
+      packedSize = Math.max(packedSize, offsets[i] + magics[i].span);
+      Map.Entry<Long, Byte> entry = new AbstractMap.SimpleEntry<>(magics[i].magicNumber, magics[i].magicShift);
+      if (i < 64) {
+        config.setRookMagics(i, entry, offsets[i]);
+      } else {
+        config.setBishopMagics(i - 64, entry, offsets[i]);
+      }
+    }
+    log(String.format("Size of the packed move set array: %dKB", packedSize * Long.BYTES / 1024));
+    return packedSize;
+  }
+
+  /**
+   * The magic number and magic shift of a table along with the indices the occupancy variations hash onto.
+   */
+  private static class Magics {
+
+    final long magicNumber;
+    final byte magicShift;
+    final int[] indices;
+    final int span;
+    final int usedSlots;
+
+    Magics(long magicNumber, byte magicShift, int[] indices) {
+      this.magicNumber = magicNumber;
+      this.magicShift = magicShift;
+      this.indices = indices;
+      span = SlidingMoveSets.getSpan(indices);
+      usedSlots = (int) Arrays.stream(indices).distinct().count();
+    }
+
+  }
+
+}
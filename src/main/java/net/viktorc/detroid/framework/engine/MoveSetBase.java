@@ -1,14 +1,11 @@
 package net.viktorc.detroid.framework.engine;
 
-import java.io.IOException;
-import java.util.Map;
 import net.viktorc.detroid.framework.engine.Bitboard.Square;
-import net.viktorc.detroid.framework.util.BitOperations;
 
 /**
  * An enum of pre-calculated move set databases for each square of a chess board for saving the time costs of calculating move sets on the
- * fly at the price of about 850KB. Each instance contains a so called 'fancy magic move tablebase' for sliding pieces and pre-calculated
- * move sets for all other pieces as well.
+ * fly at the price of less than 850KB. Each instance references its so called 'fancy magic move tablebases' for sliding pieces within
+ * the contiguous move set array shared by all squares and contains pre-calculated move sets for all other pieces as well.
  *
  * @author Viktor
  */
@@ -35,8 +32,9 @@ public enum MoveSetBase {
   private final byte bishopMagicShift;
   private final long rookMagicNumber;
   private final long bishopMagicNumber;
-  private final long[] rookMoveSets;
-  private final long[] bishopMoveSets;
+  private final int rookOffset;
+  private final int bishopOffset;
+  private final long[] slidingMoveSets;
 
   MoveSetBase() {
     int sqrInd = ordinal();
@@ -49,32 +47,14 @@ public enum MoveSetBase {
     blackPawnCaptureMoveMask = Bitboard.computeBlackPawnCaptureSets(bit, Bitboard.FULL_BOARD);
     rookOccupancyMask = Bitboard.computeRookOccupancyMasks(bit);
     bishopOccupancyMask = Bitboard.computeBishopOccupancyMasks(bit);
-    MagicsConfig magicsConfig = MagicsConfig.getInstance();
-    try {
-      magicsConfig.load();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-    Map.Entry<Long, Byte> rookMagics = magicsConfig.getRookMagics(sqrInd);
-    Map.Entry<Long, Byte> bishopMagics = magicsConfig.getBishopMagics(sqrInd);
-    rookMagicNumber = rookMagics.getKey();
-    rookMagicShift = rookMagics.getValue();
-    bishopMagicNumber = bishopMagics.getKey();
-    bishopMagicShift = bishopMagics.getValue();
-    rookMoveSets = new long[1 << (64 - rookMagicShift)];
-    bishopMoveSets = new long[1 << (64 - bishopMagicShift)];
-    long[] rookOccupancyVariations = BitOperations.getAllSubsets(rookOccupancyMask);
-    long[] bishopOccupancyVariations = BitOperations.getAllSubsets(bishopOccupancyMask);
-    long[] rookMoveSetVariations = Bitboard.computeRookMoveSetVariations(bit, rookOccupancyVariations);
-    long[] bishopMoveSetVariations = Bitboard.computeBishopMoveSetVariations(bit, bishopOccupancyVariations);
-    for (int i = 0; i < rookOccupancyVariations.length; i++) {
-      int index = (int) ((rookOccupancyVariations[i] * rookMagicNumber) >>> rookMagicShift);
-      rookMoveSets[index] = rookMoveSetVariations[i];
-    }
-    for (int i = 0; i < bishopOccupancyVariations.length; i++) {
-      int index = (int) ((bishopOccupancyVariations[i] * bishopMagicNumber) >>> bishopMagicShift);
-      bishopMoveSets[index] = bishopMoveSetVariations[i];
-    }
+    SlidingMoveSets moveSets = SlidingMoveSets.getInstance();
+    rookMagicNumber = moveSets.rookMagicNumbers[sqrInd];
+    rookMagicShift = moveSets.rookMagicShifts[sqrInd];
+    rookOffset = moveSets.rookOffsets[sqrInd];
+    bishopMagicNumber = moveSets.bishopMagicNumbers[sqrInd];
+    bishopMagicShift = moveSets.bishopMagicShifts[sqrInd];
+    bishopOffset = moveSets.bishopOffsets[sqrInd];
+    slidingMoveSets = moveSets.moveSets;
   }
 
   /**
@@ -82,14 +62,14 @@ public enum MoveSetBase {
    * enum instance.
    */
   public long getQueenMoveMask() {
-    return rookMoveSets[0] | bishopMoveSets[0];
+    return slidingMoveSets[rookOffset] | slidingMoveSets[bishopOffset];
   }
 
   /**
    * @return A simple rook move mask, i.e. the file and rank that cross each other on the square indexed by this enum instance.
    */
   public long getRookMoveMask() {
-    return rookMoveSets[0];
+    return slidingMoveSets[rookOffset];
   }
 
   /**
@@ -97,7 +77,7 @@ public enum MoveSetBase {
    * instance.
    */
   public long getBishopMoveMask() {
-    return bishopMoveSets[0];
+    return slidingMoveSets[bishopOffset];
   }
 
   /**
@@ -114,8 +94,8 @@ public enum MoveSetBase {
    * @return A queen's pseudo-legal move set given the occupancies fed to the method.
    */
   public long getQueenMoveSet(long allNonSameColorOccupied, long allOccupied) {
-    return (rookMoveSets[(int) (((rookOccupancyMask & allOccupied) * rookMagicNumber) >>> rookMagicShift)] |
-        bishopMoveSets[(int) (((bishopOccupancyMask & allOccupied) * bishopMagicNumber) >>> bishopMagicShift)]) &
+    return (slidingMoveSets[rookOffset + (int) (((rookOccupancyMask & allOccupied) * rookMagicNumber) >>> rookMagicShift)] |
+        slidingMoveSets[bishopOffset + (int) (((bishopOccupancyMask & allOccupied) * bishopMagicNumber) >>> bishopMagicShift)]) &
         allNonSameColorOccupied;
   }
 
@@ -125,7 +105,7 @@ public enum MoveSetBase {
    * @return A rook's pseudo-legal move set given the occupancies fed to the method.
    */
   public long getRookMoveSet(long allNonSameColorOccupied, long allOccupied) {
-    return rookMoveSets[(int) (((rookOccupancyMask & allOccupied) * rookMagicNumber) >>> rookMagicShift)] &
+    return slidingMoveSets[rookOffset + (int) (((rookOccupancyMask & allOccupied) * rookMagicNumber) >>> rookMagicShift)] &
         allNonSameColorOccupied;
   }
 
@@ -135,7 +115,7 @@ public enum MoveSetBase {
    * @return A bishop's pseudo-legal move set given the occupancies fed to the method.
    */
   public long getBishopMoveSet(long allNonSameColorOccupied, long allOccupied) {
-    return bishopMoveSets[(int) (((bishopOccupancyMask & allOccupied) * bishopMagicNumber) >>> bishopMagicShift)] &
+    return slidingMoveSets[bishopOffset + (int) (((bishopOccupancyMask & allOccupied) * bishopMagicNumber) >>> bishopMagicShift)] &
         allNonSameColorOccupied;
   }
 
@@ -395,6 +395,201 @@ public class MoveStringUtils {
     return new Move(from, to, movedPiece, capturedPiece, type);
   }
 
+  /**
+   * Returns the index of the square denoted by the file and rank characters or -1 if they do not denote a square.
+   *
+   * @param file The file character.
+   * @param rank The rank character.
+   * @return The index of the square.
+   */
+  private static int toSquareIndex(char file, char rank) {
+    if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+      return -1;
+    }
+    return (file - 'a') + 8 * (rank - '1');
+  }
+
+  /**
+   * Resolves a move string in SAN format without generating all the legal moves in the position. Only the pieces of the moved piece type
+   * that can reach the destination square from the position are considered, and the legality of these candidate moves is checked
+   * individually. Unlike {@link #parseSAN(Position, String)}, it does not rely on regular expressions and it guarantees that the
+   * returned move is legal in the position. Annotations and check symbols are ignored and castling moves may also be denoted using
+   * zeros.
+   *
+   * @param pos The position in which the move is to be made.
+   * @param san The move string to resolve.
+   * @return The legal move denoted by the move string.
+   * @throws ChessParseException If the move string is in an illegal format, or it does not denote exactly one legal move.
+   */
+  public static Move resolveSAN(Position pos, String san) throws ChessParseException {
+    int len = san.length();
+    while (len > 0 && "+#!?".indexOf(san.charAt(len - 1)) >= 0) {
+      len--;
+    }
+    if (len > 4 && san.startsWith("e.p.", len - 4)) {
+      len -= 4;
+    }
+    if (len < 2) {
+      throw new ChessParseException("The move String violates the SAN standard.");
+    }
+    boolean whitesTurn = pos.isWhitesTurn();
+    char firstChar = san.charAt(0);
+    if (firstChar == 'O' || firstChar == '0') {
+      Move move;
+      if (len == 3 && san.charAt(1) == '-' && san.charAt(2) == firstChar) {
+        move = whitesTurn ?
+            new Move(Bitboard.Square.E1.ind, Bitboard.Square.G1.ind, Piece.W_KING.ind, Piece.NULL.ind, MoveType.SHORT_CASTLING.ind) :
+            new Move(Bitboard.Square.E8.ind, Bitboard.Square.G8.ind, Piece.B_KING.ind, Piece.NULL.ind, MoveType.SHORT_CASTLING.ind);
+      } else if (len == 5 && san.charAt(1) == '-' && san.charAt(2) == firstChar && san.charAt(3) == '-' &&
+          san.charAt(4) == firstChar) {
+        move = whitesTurn ?
+            new Move(Bitboard.Square.E1.ind, Bitboard.Square.C1.ind, Piece.W_KING.ind, Piece.NULL.ind, MoveType.LONG_CASTLING.ind) :
+            new Move(Bitboard.Square.E8.ind, Bitboard.Square.C8.ind, Piece.B_KING.ind, Piece.NULL.ind, MoveType.LONG_CASTLING.ind);
+      } else {
+        throw new ChessParseException("The move String violates the SAN standard.");
+      }
+      if (!pos.isLegal(move)) {
+        throw new ChessParseException("Illegal castling move: " + san);
+      }
+      return move;
+    }
+    byte pieceOffset = whitesTurn ? 0 : Piece.W_PAWN.ind;
+    byte movedPiece;
+    int start;
+    switch (firstChar) {
+      case 'K':
+        movedPiece = (byte) (Piece.W_KING.ind + pieceOffset);
+        start = 1;
+        break;
+      case 'Q':
+        movedPiece = (byte) (Piece.W_QUEEN.ind + pieceOffset);
+        start = 1;
+        break;
+      case 'R':
+        movedPiece = (byte) (Piece.W_ROOK.ind + pieceOffset);
+        start = 1;
+        break;
+      case 'B':
+        movedPiece = (byte) (Piece.W_BISHOP.ind + pieceOffset);
+        start = 1;
+        break;
+      case 'N':
+        movedPiece = (byte) (Piece.W_KNIGHT.ind + pieceOffset);
+        start = 1;
+        break;
+      default:
+        movedPiece = (byte) (Piece.W_PAWN.ind + pieceOffset);
+        start = 0;
+    }
+    boolean pawn = start == 0;
+    byte type = MoveType.NORMAL.ind;
+    if (pawn) {
+      int promotionPiece = "QRBN".indexOf(san.charAt(len - 1));
+      if (promotionPiece >= 0) {
+        type = (byte) (MoveType.PROMOTION_TO_QUEEN.ind + promotionPiece);
+        len--;
+        if (san.charAt(len - 1) == '=') {
+          len--;
+        }
+      }
+    }
+    if (len - start < 2) {
+      throw new ChessParseException("The move String violates the SAN standard.");
+    }
+    int to = toSquareIndex(san.charAt(len - 2), san.charAt(len - 1));
+    if (to == -1) {
+      throw new ChessParseException("Invalid destination square: " + san);
+    }
+    long restriction = Bitboard.FULL_BOARD;
+    boolean capture = false;
+    for (int i = start; i < len - 2; i++) {
+      char c = san.charAt(i);
+      if (c >= 'a' && c <= 'h') {
+        restriction &= Bitboard.File.values()[c - 'a'].bitboard;
+      } else if (c >= '1' && c <= '8') {
+        restriction &= Bitboard.Rank.values()[c - '1'].bitboard;
+      } else if (c == 'x' || c == ':') {
+        capture = true;
+      } else {
+        throw new ChessParseException("The move String violates the SAN standard.");
+      }
+    }
+    MoveSetBase dB = MoveSetBase.getByIndex(to);
+    byte capturedPiece = pos.getPiece(to);
+    long candidates;
+    if (pawn) {
+      if (capture || restriction != Bitboard.FULL_BOARD) {
+        candidates = (whitesTurn ? dB.getBlackPawnCaptureSet(pos.getWhitePawns()) : dB.getWhitePawnCaptureSet(pos.getBlackPawns())) &
+            restriction;
+        if (capturedPiece == Piece.NULL.ind && pos.getEnPassantRights() != EnPassantRights.NONE.ind &&
+            to == pos.getEnPassantRights() + (whitesTurn ? EnPassantRights.TO_W_DEST_SQR_IND : EnPassantRights.TO_B_DEST_SQR_IND)) {
+          capturedPiece = whitesTurn ? Piece.B_PAWN.ind : Piece.W_PAWN.ind;
+          type = MoveType.EN_PASSANT.ind;
+        }
+      } else {
+        long pawns = whitesTurn ? pos.getWhitePawns() : pos.getBlackPawns();
+        int oneBack = whitesTurn ? to - 8 : to + 8;
+        int twoBack = whitesTurn ? to - 16 : to + 16;
+        if (oneBack >= 0 && oneBack < 64 && (pawns & BitOperations.toBit(oneBack)) != Bitboard.EMPTY_BOARD) {
+          candidates = BitOperations.toBit(oneBack);
+        } else if (twoBack >= 0 && twoBack < 64) {
+          candidates = pawns & BitOperations.toBit(twoBack);
+        } else {
+          candidates = Bitboard.EMPTY_BOARD;
+        }
+      }
+    } else {
+      long occupied = pos.getAllOccupied();
+      switch (Piece.values()[movedPiece]) {
+        case W_KING:
+          candidates = dB.getKingMoveSet(pos.getWhiteKing());
+          break;
+        case W_QUEEN:
+          candidates = dB.getQueenMoveSet(pos.getWhiteQueens() & restriction, occupied);
+          break;
+        case W_ROOK:
+          candidates = dB.getRookMoveSet(pos.getWhiteRooks() & restriction, occupied);
+          break;
+        case W_BISHOP:
+          candidates = dB.getBishopMoveSet(pos.getWhiteBishops() & restriction, occupied);
+          break;
+        case W_KNIGHT:
+          candidates = dB.getKnightMoveSet(pos.getWhiteKnights() & restriction);
+          break;
+        case B_KING:
+          candidates = dB.getKingMoveSet(pos.getBlackKing());
+          break;
+        case B_QUEEN:
+          candidates = dB.getQueenMoveSet(pos.getBlackQueens() & restriction, occupied);
+          break;
+        case B_ROOK:
+          candidates = dB.getRookMoveSet(pos.getBlackRooks() & restriction, occupied);
+          break;
+        case B_BISHOP:
+          candidates = dB.getBishopMoveSet(pos.getBlackBishops() & restriction, occupied);
+          break;
+        default:
+          candidates = dB.getKnightMoveSet(pos.getBlackKnights() & restriction);
+      }
+    }
+    Move resolved = null;
+    while (candidates != Bitboard.EMPTY_BOARD) {
+      byte from = BitOperations.indexOfLSBit(candidates);
+      candidates = BitOperations.resetLSBit(candidates);
+      Move move = new Move(from, (byte) to, movedPiece, capturedPiece, type);
+      if (pos.isLegal(move)) {
+        if (resolved != null) {
+          throw new ChessParseException("Ambiguous move: " + san);
+        }
+        resolved = move;
+      }
+    }
+    if (resolved == null) {
+      throw new ChessParseException("Illegal move: " + san);
+    }
+    return resolved;
+  }
+
   /**
    * It creates a move string in SAN format.
    *
@@ -3,11 +3,8 @@ package net.viktorc.detroid.framework.engine;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 
 /**
  * A base class for reading and selecting moves from a chess opening book. It should allow for using an alternative book once out of the
@@ -18,7 +15,6 @@ import java.nio.file.StandardOpenOption;
 public abstract class OpeningBook implements Closeable {
 
   protected Path path;
-  protected SeekableByteChannel bookStream;
   protected OpeningBook secondaryBook;
 
   /**
@@ -35,7 +31,6 @@ public abstract class OpeningBook implements Closeable {
     } else {
       throw new IllegalArgumentException();
     }
-    bookStream = Files.newByteChannel(path, StandardOpenOption.READ);
   }
 
   /**
@@ -58,7 +53,6 @@ public abstract class OpeningBook implements Closeable {
 
   @Override
   public void close() throws IOException {
-    bookStream.close();
     if (secondaryBook != null) {
       secondaryBook.close();
     }
@@ -88,4 +82,4 @@ public abstract class OpeningBook implements Closeable {
 
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
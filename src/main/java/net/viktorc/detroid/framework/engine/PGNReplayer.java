@@ -0,0 +1,174 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.util.function.Consumer;
+import net.viktorc.detroid.framework.validation.GameState;
+
+/**
+ * A utility class for replaying games in PGN on a single {@link net.viktorc.detroid.framework.engine.Position} instance while streaming
+ * the positions of the game to a consumer. As opposed to {@link net.viktorc.detroid.framework.engine.Game#parse(String)}, it does not
+ * preprocess the move text using regular expressions, it resolves the moves using
+ * {@link net.viktorc.detroid.framework.engine.MoveStringUtils#resolveSAN(Position, String)} which only considers the pieces of the moved
+ * piece type, and it does not build a game object that would have to be walked backwards to retrieve the positions.
+ *
+ * @author Viktor
+ */
+public final class PGNReplayer {
+
+  private PGNReplayer() {
+  }
+
+  /**
+   * Returns the index of the first character at or after the specified index that is not a whitespace character.
+   *
+   * @param pgn The PGN string.
+   * @param i The index to start from.
+   * @return The index of the first non-whitespace character or the length of the string if there is none.
+   */
+  private static int skipWhitespace(String pgn, int i) {
+    while (i < pgn.length() && Character.isWhitespace(pgn.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the index of the first character after the first occurrence of the specified character at or after the specified index.
+   *
+   * @param pgn The PGN string.
+   * @param i The index to start from.
+   * @param c The character to skip to.
+   * @return The index of the character after the specified character or the length of the string if it does not occur.
+   */
+  private static int skipPast(String pgn, int i, char c) {
+    int ind = pgn.indexOf(c, i);
+    return ind == -1 ? pgn.length() : ind + 1;
+  }
+
+  /**
+   * Returns the index of the first character after the recursive annotation variation starting at the specified index.
+   *
+   * @param pgn The PGN string.
+   * @param i The index of the opening parenthesis.
+   * @return The index of the character after the closing parenthesis or the length of the string if it is not closed.
+   */
+  private static int skipVariation(String pgn, int i) {
+    int depth = 0;
+    for (; i < pgn.length(); i++) {
+      char c = pgn.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        if (--depth == 0) {
+          return i + 1;
+        }
+      } else if (c == '{') {
+        i = skipPast(pgn, i, '}') - 1;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * Returns whether the character terminates a move text token.
+   *
+   * @param c The character.
+   * @return Whether the character is a whitespace character or the start of a comment or variation.
+   */
+  private static boolean isTokenDelimiter(char c) {
+    return Character.isWhitespace(c) || c == '{' || c == '(' || c == ';' || c == ')';
+  }
+
+  /**
+   * Replays the game and passes each position of it, starting with the start position, to the consumer right after the position is
+   * reached. The consumer is always passed the same position instance which must not be modified and whose state is only valid for the
+   * duration of the call.
+   *
+   * @param pgn The game in PGN.
+   * @param positionConsumer The consumer of the positions.
+   * @return The state of the game after the last move. If the position is not terminal, the state is derived from the result tag.
+   * @throws ChessParseException If the PGN string cannot be parsed or it contains an illegal move. In this case, some of the positions of
+   * the game may have already been passed to the consumer.
+   */
+  public static GameState replay(String pgn, Consumer<Position> positionConsumer) throws ChessParseException {
+    String fen = null;
+    String result = null;
+    int i = skipWhitespace(pgn, 0);
+    while (i < pgn.length() && pgn.charAt(i) == '[') {
+      int end = pgn.indexOf(']', i);
+      if (end == -1) {
+        throw new ChessParseException("Unterminated tag.");
+      }
+      int nameEnd = pgn.indexOf(' ', i);
+      int valueStart = pgn.indexOf('"', i);
+      int valueEnd = pgn.lastIndexOf('"', end);
+      if (nameEnd != -1 && nameEnd < end && valueStart != -1 && valueStart < valueEnd) {
+        String name = pgn.substring(i + 1, nameEnd);
+        if ("FEN".equalsIgnoreCase(name)) {
+          fen = pgn.substring(valueStart + 1, valueEnd);
+        } else if ("Result".equalsIgnoreCase(name)) {
+          result = pgn.substring(valueStart + 1, valueEnd);
+        }
+      }
+      i = skipWhitespace(pgn, end + 1);
+    }
+    Position position = Position.parse(fen == null ? Position.START_POSITION_FEN : fen);
+    positionConsumer.accept(position);
+    while ((i = skipWhitespace(pgn, i)) < pgn.length()) {
+      char c = pgn.charAt(i);
+      if (c == '{') {
+        i = skipPast(pgn, i, '}');
+        continue;
+      } else if (c == ';') {
+        i = skipPast(pgn, i, '\n');
+        continue;
+      } else if (c == '(') {
+        i = skipVariation(pgn, i);
+        continue;
+      } else if (c == ')') {
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < pgn.length() && !isTokenDelimiter(pgn.charAt(end))) {
+        end++;
+      }
+      String token = pgn.substring(i, end);
+      i = end;
+      if (c == '$' || c == '.' || "1-0".equals(token) || "0-1".equals(token) || "1/2-1/2".equals(token) || "*".equals(token)) {
+        continue;
+      }
+      if (Character.isDigit(c)) {
+        int moveStart = 0;
+        while (moveStart < token.length() && Character.isDigit(token.charAt(moveStart))) {
+          moveStart++;
+        }
+        if (moveStart < token.length() && token.charAt(moveStart) == '.') {
+          while (moveStart < token.length() && token.charAt(moveStart) == '.') {
+            moveStart++;
+          }
+          token = token.substring(moveStart);
+          if (token.isEmpty()) {
+            continue;
+          }
+        }
+      }
+      position.makeMove(MoveStringUtils.resolveSAN(position, token));
+      positionConsumer.accept(position);
+    }
+    GameState state = Game.determineState(position);
+    if (state == GameState.IN_PROGRESS && result != null) {
+      switch (result) {
+        case "1-0":
+          return GameState.UNSPECIFIED_WHITE_WIN;
+        case "0-1":
+          return GameState.UNSPECIFIED_BLACK_WIN;
+        case "1/2-1/2":
+          return GameState.DRAW_BY_AGREEMENT;
+        default:
+          return state;
+      }
+    }
+    return state;
+  }
+
+}
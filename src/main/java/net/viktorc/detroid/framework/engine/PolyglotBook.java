@@ -3,21 +3,40 @@ package net.viktorc.detroid.framework.engine;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
 import net.viktorc.detroid.framework.engine.Bitboard.Square;
 
 /**
- * An implementation of the Book interface for PolyGlot opening books.
+ * An implementation of the Book interface for PolyGlot opening books. Books of up to {@link #MAX_INDEXED_ENTRIES} entries are loaded into
+ * a compact in-memory index of keys and move-weight pairs, while larger books are memory-mapped and paged in on demand. Either way, the
+ * book file is only opened on instantiation, lookups are binary searches that do not allocate, and instances are immutable, thus they can
+ * be shared by all the engine instances and threads of a process.
  *
  * @author Viktor
  */
 public class PolyglotBook extends OpeningBook {
 
+  /**
+   * The maximum number of entries a book can have to be loaded into the heap instead of being memory-mapped.
+   */
+  public static final int MAX_INDEXED_ENTRIES = 1 << 22;
   // Polyglot entry size in bytes: U64 hash + U16 move + U16 weight + U32 learning
-  private static final byte ENTRY_SIZE = 8 + 2 + 2 + 4;
+  static final byte ENTRY_SIZE = 8 + 2 + 2 + 4;
+  // The maximum weight of an entry.
+  static final int MAX_WEIGHT = 0xFFFF;
+  // The number of entries per memory-mapped segment of large books.
+  private static final int ENTRIES_PER_SEGMENT = Integer.MAX_VALUE / ENTRY_SIZE;
 
-  private ZobristKeyGenerator gen;
+  private final ZobristKeyGenerator gen;
+  private final long entries;
+  // The keys and the move-weight pairs of the indexed books; null if the book is memory-mapped.
+  private final long[] keys;
+  private final int[] movesAndWeights;
+  // The memory-mapped segments of large books; null if the book is indexed.
+  private final ByteBuffer[] segments;
 
   /**
    * It instantiates a Book object on the opening book file specified by filePath; if the file cannot be accessed, an IOException is
@@ -29,6 +48,29 @@ public class PolyglotBook extends OpeningBook {
   public PolyglotBook(String filePath) throws Exception {
     super(filePath);
     gen = ZobristKeyGenerator.getInstance();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      entries = channel.size() / ENTRY_SIZE;
+      if (entries <= MAX_INDEXED_ENTRIES) {
+        keys = new long[(int) entries];
+        movesAndWeights = new int[(int) entries];
+        segments = null;
+        ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, entries * ENTRY_SIZE);
+        for (int i = 0; i < entries; i++) {
+          keys[i] = buffer.getLong();
+          movesAndWeights[i] = buffer.getInt();
+          buffer.getInt();
+        }
+      } else {
+        keys = null;
+        movesAndWeights = null;
+        segments = new ByteBuffer[(int) ((entries + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT)];
+        for (int i = 0; i < segments.length; i++) {
+          long offset = (long) i * ENTRIES_PER_SEGMENT;
+          // The segments are not loaded eagerly; the pages touched by the lookups are read in on demand.
+          segments[i] = channel.map(MapMode.READ_ONLY, offset * ENTRY_SIZE, Math.min(ENTRIES_PER_SEGMENT, entries - offset) * ENTRY_SIZE);
+        }
+      }
+    }
   }
 
   /**
@@ -48,75 +90,130 @@ public class PolyglotBook extends OpeningBook {
     }
   }
 
-  private ArrayList<Entry> getRelevantEntries(Position pos) {
-    long low, mid, hi, temp = -1;
-    long readerPos, currKey, key = gen.generatePolyglotHashKey(pos);
-    ArrayList<Entry> entries = new ArrayList<>();
-    ByteBuffer buff = ByteBuffer.allocateDirect(ENTRY_SIZE);
-    try {
-      // A simple binary search on the position hash values.
-      low = 0;
-      hi = bookStream.size();
-      while ((mid = (((hi + low) / 2) / ENTRY_SIZE) * ENTRY_SIZE) != temp) {
-        if (Thread.currentThread().isInterrupted()) {
-          return entries;
+  private long keyAt(long index) {
+    if (keys != null) {
+      return keys[(int) index];
+    }
+    return segments[(int) (index / ENTRIES_PER_SEGMENT)].getLong((int) (index % ENTRIES_PER_SEGMENT) * ENTRY_SIZE);
+  }
+
+  private int moveAndWeightAt(long index) {
+    if (movesAndWeights != null) {
+      return movesAndWeights[(int) index];
+    }
+    return segments[(int) (index / ENTRIES_PER_SEGMENT)].getInt((int) (index % ENTRIES_PER_SEGMENT) * ENTRY_SIZE + 8);
+  }
+
+  private static short move(int moveAndWeight) {
+    return (short) (moveAndWeight >>> 16);
+  }
+
+  private static int weight(int moveAndWeight) {
+    return moveAndWeight & 0xFFFF;
+  }
+
+  /**
+   * Returns the index of the first entry whose key is not less than the specified key. PolyGlot books are sorted by their keys as unsigned
+   * 64 bit integers.
+   *
+   * @param key The key to search for.
+   * @return The index of the first entry with a key greater than or equal to the specified one or the number of entries if there is
+   * no such entry.
+   */
+  private long lowerBound(long key) {
+    long low = 0;
+    long high = entries;
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Looks up the entries of the position and picks one of them based on the selection model. If the position is not in the book, the
+   * secondary book is searched.
+   *
+   * @param pos The position.
+   * @param selection The selection model.
+   * @return The PolyGlot move of the selected entry or -1 if the position is not in any of the books.
+   */
+  private int selectMove(Position pos, SelectionModel selection) {
+    long key = gen.generatePolyglotHashKey(pos);
+    long first = lowerBound(key);
+    long end = first;
+    int totalWeight = 0;
+    while (end < entries && keyAt(end) == key) {
+      totalWeight += weight(moveAndWeightAt(end));
+      end++;
+    }
+    if (first == end) {
+      /* No matching entries have been found; we are out of book. If this method is called on ALTERNATIVE_BOOK
+       * and its useDefaultBook is set to true, we search the DEFAULT_BOOK, too. */
+      return secondaryBook != null ? ((PolyglotBook) secondaryBook).selectMove(pos, selection) : -1;
+    }
+    switch (selection) {
+      case RANDOM:
+        return move(moveAndWeightAt(first + ThreadLocalRandom.current().nextLong(end - first))) & 0xFFFF;
+      case STOCHASTIC: {
+        if (totalWeight == 0) {
+          return -1;
         }
-        bookStream.position(mid);
-        bookStream.read(buff);
-        buff.clear();
-        currKey = buff.getLong();
-        /* If our reader head falls onto the right entry, run it in both directions until it encounters entries
-         * with a different hash code to collect all the relevant moves for p. */
-        if (currKey == key) {
-          readerPos = mid;
-          do {
-            entries.add(new Entry(buff.getShort(), buff.getShort()));
-            bookStream.position((readerPos -= ENTRY_SIZE));
-            buff.clear();
-            bookStream.read(buff);
-            buff.clear();
-            if (Thread.currentThread().isInterrupted()) {
-              return entries;
-            }
-          }
-          while (buff.getLong() == key && readerPos >= 0);
-          readerPos = mid + ENTRY_SIZE;
-          bookStream.position((readerPos));
-          buff.clear();
-          while (bookStream.read(buff) != -1) {
-            buff.clear();
-            if (buff.getLong() != key) {
-              break;
-            }
-            entries.add(new Entry(buff.getShort(), buff.getShort()));
-            bookStream.position((readerPos += ENTRY_SIZE));
-            buff.clear();
-            if (Thread.currentThread().isInterrupted()) {
-              return entries;
-            }
+        int randomWeight = ThreadLocalRandom.current().nextInt(totalWeight);
+        int weightSum = 0;
+        for (long i = first; i < end; i++) {
+          int moveAndWeight = moveAndWeightAt(i);
+          weightSum += weight(moveAndWeight);
+          if (weightSum > randomWeight) {
+            return move(moveAndWeight) & 0xFFFF;
           }
-          return entries;
         }
-        /* If not, we compare p's hash code to the hash code of the entry the reader head fell on. We have to
-         * consider that PolyGlot books use unsigned 64 bitboard integers for hashing. */
-        else {
-          if ((currKey + Long.MIN_VALUE) > (key + Long.MIN_VALUE)) {
-            hi = mid;
-          } else {
-            low = mid;
+        return -1;
+      }
+      case DETERMINISTIC: {
+        int maxWeight = -1;
+        int bestMove = -1;
+        for (long i = first; i < end; i++) {
+          int moveAndWeight = moveAndWeightAt(i);
+          if (weight(moveAndWeight) > maxWeight) {
+            maxWeight = weight(moveAndWeight);
+            bestMove = move(moveAndWeight) & 0xFFFF;
           }
         }
-        buff.clear();
-        temp = mid;
+        return bestMove;
       }
-      /* No matching entries have been found; we are out of book. If this method is called on ALTERNATIVE_BOOK
-       * and its useDefaultBook is set to true, we search the DEFAULT_BOOK, too. */
-      return secondaryBook != null ? ((PolyglotBook) secondaryBook).getRelevantEntries(pos) : null;
+      default:
+        return -1;
     }
-    // Some IO error has occured.
-    catch (IOException e) {
-      return null;
+  }
+
+  /**
+   * Encodes the move in the Polyglot move format in which castling moves are represented as the king capturing its own rook.
+   *
+   * @param move The move.
+   * @return The Polyglot move.
+   */
+  static short toPolyglotMove(Move move) {
+    int to = move.to;
+    int promotion = 0;
+    if (move.type == MoveType.SHORT_CASTLING.ind) {
+      to = move.from + 3;
+    } else if (move.type == MoveType.LONG_CASTLING.ind) {
+      to = move.from - 4;
+    } else if (move.type == MoveType.PROMOTION_TO_KNIGHT.ind) {
+      promotion = 1;
+    } else if (move.type == MoveType.PROMOTION_TO_BISHOP.ind) {
+      promotion = 2;
+    } else if (move.type == MoveType.PROMOTION_TO_ROOK.ind) {
+      promotion = 3;
+    } else if (move.type == MoveType.PROMOTION_TO_QUEEN.ind) {
+      promotion = 4;
     }
+    return (short) (to | (move.from << 6) | (promotion << 12));
   }
 
   private static String polyglotMoveToPACN(Position pos, short polyglotMove) throws IllegalArgumentException {
@@ -148,16 +245,16 @@ public class PolyglotBook extends OpeningBook {
         promPiece = "";
         break;
       case 1:
-        promPiece = "=n";
+        promPiece = "n";
         break;
       case 2:
-        promPiece = "=b";
+        promPiece = "b";
         break;
       case 3:
-        promPiece = "=r";
+        promPiece = "r";
         break;
       case 4:
-        promPiece = "=q";
+        promPiece = "q";
         break;
       default:
         throw new IllegalArgumentException();
@@ -167,69 +264,8 @@ public class PolyglotBook extends OpeningBook {
 
   @Override
   public Move getMove(Position pos, SelectionModel selection) throws Exception {
-    short max;
-    double totalWeight, randomDouble, weightSum;
-    Entry e;
-    ArrayList<Entry> relEntries = getRelevantEntries(pos);
-    if (relEntries == null) {
-      return null;
-    }
-    switch (selection) {
-      case RANDOM: {
-        Random rand = new Random(System.currentTimeMillis());
-        e = relEntries.get(rand.nextInt(relEntries.size()));
-      }
-      break;
-      case STOCHASTIC: {
-        totalWeight = 0;
-        for (Entry ent : relEntries) {
-          totalWeight += ent.weight;
-        }
-        Random rand = new Random(System.currentTimeMillis());
-        randomDouble = rand.nextDouble();
-        weightSum = 0;
-        e = null;
-        totalWeight = Math.max(Double.MIN_VALUE, totalWeight);
-        for (Entry ent : relEntries) {
-          weightSum += ((double) ent.weight) / totalWeight;
-          if (weightSum >= randomDouble) {
-            e = ent;
-            break;
-          }
-        }
-      }
-      break;
-      case DETERMINISTIC: {
-        max = -1;
-        e = null;
-        for (Entry ent : relEntries) {
-          if (ent.weight > max) {
-            max = ent.weight;
-            e = ent;
-          }
-        }
-      }
-      break;
-      default:
-        return null;
-    }
-    return e == null ? null : MoveStringUtils.parsePACN(pos, polyglotMoveToPACN(pos, e.move));
-  }
-
-  /**
-   * A simple container class for Polyglot book entries. Only stores relevant information, i.e. move and weight.
-   *
-   * @author Viktor
-   */
-  private class Entry {
-
-    final short move;
-    final short weight;
-
-    Entry(short move, short weight) {
-      this.move = move;
-      this.weight = weight;
-    }
+    int move = selectMove(pos, selection);
+    return move == -1 ? null : MoveStringUtils.parsePACN(pos, polyglotMoveToPACN(pos, (short) move));
   }
 
 }
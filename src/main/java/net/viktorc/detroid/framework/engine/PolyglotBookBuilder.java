@@ -0,0 +1,689 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import net.viktorc.detroid.framework.validation.GameState;
+
+/**
+ * A builder of Polyglot opening books from games in PGN. The games are replayed in parallel by a pool of worker threads using
+ * {@link net.viktorc.detroid.framework.engine.PGNReplayer} and every move played within the first plies of a game is recorded along with
+ * the Polyglot key of the position it was played in and the result of the game from the point of view of the side that made the move. Each
+ * worker accumulates the moves in a fixed size buffer which, once full, is sorted, aggregated, and spilled to a temporary run file. Once all
+ * games have been replayed, the runs are merged into the book which is thus written sorted by the keys as required by the Polyglot format.
+ * The memory footprint of the build is therefore bounded by the memory limit regardless of the number of games; only the disk space
+ * required by the runs grows with it.
+ * <p>
+ * The weight of a move is the number of games won plus half the number of games drawn by the side that played it, i.e. two points per win
+ * and one per draw as in Polyglot. Moves played in fewer games than the specified minimum and moves that never scored are left out. If the
+ * weights of the moves of a position exceed the 16 bits of the Polyglot weight field, they are scaled down proportionally.
+ *
+ * @author Viktor
+ */
+public final class PolyglotBookBuilder {
+
+  /**
+   * The default number of plies from the start of each game whose moves are recorded.
+   */
+  public static final int DEF_MAX_PLY = 32;
+  /**
+   * The default minimum number of games a move has to have been played in to be included in the book.
+   */
+  public static final int DEF_MIN_GAMES = 3;
+  /**
+   * The default number of MBs the move buffers of the workers may use.
+   */
+  public static final int DEF_MEMORY_LIMIT = 256;
+  /**
+   * The case-insensitive prefix of the first line of every game in PGN.
+   */
+  private static final String FIRST_PGN_LINE_PREFIX = "[Event ";
+  /**
+   * The number of bytes a buffered move occupies: a long key and an int holding the move and the score.
+   */
+  private static final int BUFFERED_MOVE_SIZE = 8 + 4;
+  /**
+   * The maximum number of runs merged at once. If there are more runs, they are merged in multiple passes.
+   */
+  private static final int MAX_MERGE_FAN_IN = 64;
+  /**
+   * The number of games allowed to be in the queue per worker thread.
+   */
+  private static final int GAMES_QUEUED_PER_WORKER = 32;
+  /**
+   * The number of milliseconds blocking queue operations wait before checking whether the build has been aborted.
+   */
+  private static final long POLL_TIMEOUT = 100;
+  /**
+   * The size of the buffers of the run file streams in bytes.
+   */
+  private static final int STREAM_BUFFER_SIZE = 1 << 16;
+  /**
+   * The marker of the end of the stream of games.
+   */
+  private static final String END = new String();
+
+  private final int maxPly;
+  private final int minGames;
+  private final int concurrency;
+  private final int bufferCapacity;
+  private final Logger logger;
+  private final AtomicLong gamesRead;
+  private final AtomicLong gamesReplayed;
+  private final AtomicLong movesRecorded;
+  private final List<File> runFiles;
+  private final AtomicReference<Throwable> failure;
+
+  /**
+   * Constructs a book builder according to the specified parameters.
+   *
+   * @param maxPly The number of plies from the start of each game whose moves are to be included in the book. If it is null, it defaults
+   * to {@link #DEF_MAX_PLY}.
+   * @param minGames The minimum number of games a move has to have been played in to be included in the book. If it is null, it defaults
+   * to {@link #DEF_MIN_GAMES}.
+   * @param memoryLimit The approximate number of MBs the move buffers of the workers may use altogether. If it is null, it defaults to
+   * {@link #DEF_MEMORY_LIMIT}.
+   * @param concurrency The number of worker threads to replay the games on.
+   * @param logger The logger to log the statistics of the build to. It may be null.
+   * @throws IllegalArgumentException If any of the numeric parameters is less than 1.
+   */
+  public PolyglotBookBuilder(Integer maxPly, Integer minGames, Integer memoryLimit, int concurrency, Logger logger)
+      throws IllegalArgumentException {
+    maxPly = maxPly == null ? DEF_MAX_PLY : maxPly;
+    minGames = minGames == null ? DEF_MIN_GAMES : minGames;
+    memoryLimit = memoryLimit == null ? DEF_MEMORY_LIMIT : memoryLimit;
+    if (maxPly < 1 || minGames < 1 || memoryLimit < 1 || concurrency < 1) {
+      throw new IllegalArgumentException("The maximum ply, the minimum number of games, the memory limit, and the concurrency have to " +
+          "be greater than 0.");
+    }
+    this.maxPly = maxPly;
+    this.minGames = minGames;
+    this.concurrency = concurrency;
+    this.logger = logger;
+    bufferCapacity = (int) Math.max(maxPly, Math.min(Integer.MAX_VALUE - 8,
+        memoryLimit * 1024L * 1024L / BUFFERED_MOVE_SIZE / concurrency));
+    gamesRead = new AtomicLong();
+    gamesReplayed = new AtomicLong();
+    movesRecorded = new AtomicLong();
+    runFiles = new ArrayList<>();
+    failure = new AtomicReference<>();
+  }
+
+  /**
+   * Returns whether the line is the first line of a game in PGN.
+   *
+   * @param line The trimmed line.
+   * @return Whether the line is an Event tag pair.
+   */
+  private static boolean isFirstLineOfGame(String line) {
+    return line.length() > FIRST_PGN_LINE_PREFIX.length() && line.charAt(0) == '[' && line.charAt(line.length() - 1) == ']' &&
+        line.regionMatches(true, 0, FIRST_PGN_LINE_PREFIX, 0, FIRST_PGN_LINE_PREFIX.length());
+  }
+
+  /**
+   * Compares two buffered moves by their keys as unsigned numbers and then by their moves.
+   */
+  private static int compare(long key1, int moveAndScore1, long key2, int moveAndScore2) {
+    int res = Long.compareUnsigned(key1, key2);
+    return res != 0 ? res : Integer.compare(moveAndScore1, moveAndScore2);
+  }
+
+  private static void swap(long[] keys, int[] movesAndScores, int i, int j) {
+    long key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    int moveAndScore = movesAndScores[i];
+    movesAndScores[i] = movesAndScores[j];
+    movesAndScores[j] = moveAndScore;
+  }
+
+  /**
+   * Sorts the buffered moves in the specified range using quicksort with a median-of-three pivot, recursing into the smaller partition
+   * only, and insertion sort for short ranges.
+   *
+   * @param keys The keys of the buffered moves.
+   * @param movesAndScores The moves and scores of the buffered moves.
+   * @param from The inclusive start of the range.
+   * @param to The exclusive end of the range.
+   */
+  private static void sort(long[] keys, int[] movesAndScores, int from, int to) {
+    while (to - from > 16) {
+      int mid = (from + to) >>> 1;
+      int last = to - 1;
+      if (compare(keys[mid], movesAndScores[mid], keys[from], movesAndScores[from]) < 0) {
+        swap(keys, movesAndScores, mid, from);
+      }
+      if (compare(keys[last], movesAndScores[last], keys[from], movesAndScores[from]) < 0) {
+        swap(keys, movesAndScores, last, from);
+      }
+      if (compare(keys[last], movesAndScores[last], keys[mid], movesAndScores[mid]) < 0) {
+        swap(keys, movesAndScores, last, mid);
+      }
+      long pivotKey = keys[mid];
+      int pivotMoveAndScore = movesAndScores[mid];
+      int i = from;
+      int j = last;
+      while (i <= j) {
+        while (compare(keys[i], movesAndScores[i], pivotKey, pivotMoveAndScore) < 0) {
+          i++;
+        }
+        while (compare(keys[j], movesAndScores[j], pivotKey, pivotMoveAndScore) > 0) {
+          j--;
+        }
+        if (i <= j) {
+          swap(keys, movesAndScores, i++, j--);
+        }
+      }
+      if (j + 1 - from < to - i) {
+        sort(keys, movesAndScores, from, j + 1);
+        from = i;
+      } else {
+        sort(keys, movesAndScores, i, to);
+        to = j + 1;
+      }
+    }
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && compare(keys[j], movesAndScores[j], keys[j - 1], movesAndScores[j - 1]) < 0; j--) {
+        swap(keys, movesAndScores, j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * Creates a new temporary run file and registers it for deletion.
+   *
+   * @return The run file.
+   * @throws IOException If the file cannot be created.
+   */
+  private File newRunFile() throws IOException {
+    File runFile = File.createTempFile("book_run_", ".tmp");
+    runFile.deleteOnExit();
+    synchronized (runFiles) {
+      runFiles.add(runFile);
+    }
+    return runFile;
+  }
+
+  private static DataOutputStream newRunOutputStream(File runFile) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), STREAM_BUFFER_SIZE));
+  }
+
+  private static void writeRecord(DataOutputStream out, long key, short move, long weight, long games) throws IOException {
+    out.writeLong(key);
+    out.writeShort(move);
+    out.writeLong(weight);
+    out.writeLong(games);
+  }
+
+  /**
+   * Sorts the buffered moves, aggregates the ones with the same key and move, and writes them to a new run file.
+   *
+   * @param keys The keys of the buffered moves.
+   * @param movesAndScores The moves and scores of the buffered moves.
+   * @param size The number of buffered moves.
+   * @return The run file.
+   * @throws IOException If the run file cannot be written.
+   */
+  private File spill(long[] keys, int[] movesAndScores, int size) throws IOException {
+    sort(keys, movesAndScores, 0, size);
+    File runFile = newRunFile();
+    try (DataOutputStream out = newRunOutputStream(runFile)) {
+      int i = 0;
+      while (i < size) {
+        long key = keys[i];
+        int move = movesAndScores[i] >>> 2;
+        long weight = 0;
+        long games = 0;
+        for (; i < size && keys[i] == key && movesAndScores[i] >>> 2 == move; i++) {
+          weight += movesAndScores[i] & 3;
+          games++;
+        }
+        writeRecord(out, key, (short) move, weight, games);
+      }
+    }
+    return runFile;
+  }
+
+  /**
+   * Replays the game and adds the moves within the maximum ply along with the keys of the positions they were played in and the scores of
+   * the sides that played them to the buffer.
+   *
+   * @param pgn The game in PGN.
+   * @param gameKeys The buffer for the keys of the positions of the game.
+   * @param gameMoves The buffer for the moves of the game with the 17th bit set if the move was made by white.
+   * @param keys The keys of the buffered moves.
+   * @param movesAndScores The moves and scores of the buffered moves.
+   * @param size The number of buffered moves.
+   * @return The number of moves added to the buffer or -1 if the game cannot be parsed or it has not ended.
+   */
+  private int record(String pgn, long[] gameKeys, int[] gameMoves, long[] keys, int[] movesAndScores, int size) {
+    ZobristKeyGenerator gen = ZobristKeyGenerator.getInstance();
+    int[] plies = new int[1];
+    GameState state;
+    try {
+      state = PGNReplayer.replay(pgn, pos -> {
+        int ply = plies[0]++;
+        if (ply > 0 && ply <= maxPly) {
+          gameMoves[ply - 1] = (PolyglotBook.toPolyglotMove(pos.getLastMove()) & 0xFFFF) | (pos.isWhitesTurn() ? 0 : 1 << 16);
+        }
+        if (ply < maxPly) {
+          gameKeys[ply] = gen.generatePolyglotHashKey(pos);
+        }
+      });
+    } catch (ChessParseException e) {
+      return -1;
+    }
+    int whiteScore;
+    switch (state.getPGNCode()) {
+      case "1-0":
+        whiteScore = 2;
+        break;
+      case "0-1":
+        whiteScore = 0;
+        break;
+      case "1/2-1/2":
+        whiteScore = 1;
+        break;
+      default:
+        return -1;
+    }
+    int moves = Math.min(plies[0] - 1, maxPly);
+    for (int i = 0; i < moves; i++) {
+      int score = (gameMoves[i] >>> 16) == 1 ? whiteScore : 2 - whiteScore;
+      keys[size + i] = gameKeys[i];
+      movesAndScores[size + i] = ((gameMoves[i] & 0xFFFF) << 2) | score;
+    }
+    return moves;
+  }
+
+  /**
+   * Puts the item into the queue, waiting for space to become available if necessary.
+   *
+   * @param queue The queue.
+   * @param item The item to insert.
+   * @throws InterruptedException If the thread is interrupted or the build has been aborted while waiting.
+   */
+  private void put(BlockingQueue<String> queue, String item) throws InterruptedException {
+    while (!queue.offer(item, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+      checkAborted();
+    }
+  }
+
+  /**
+   * Takes the head of the queue, waiting for an item to become available if necessary.
+   *
+   * @param queue The queue.
+   * @return The head of the queue.
+   * @throws InterruptedException If the thread is interrupted or the build has been aborted while waiting.
+   */
+  private String take(BlockingQueue<String> queue) throws InterruptedException {
+    String item;
+    while ((item = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) == null) {
+      checkAborted();
+    }
+    return item;
+  }
+
+  /**
+   * Throws an exception if one of the workers has failed.
+   *
+   * @throws InterruptedException If the build has been aborted.
+   */
+  private void checkAborted() throws InterruptedException {
+    if (failure.get() != null) {
+      throw new InterruptedException("The build has been aborted.");
+    }
+  }
+
+  /**
+   * The worker stage. It takes the games from the queue, replays them, and spills its buffer to a run file whenever it cannot hold the
+   * moves of another game.
+   *
+   * @param games The queue of games.
+   * @throws Exception If the thread is interrupted, the build has been aborted, or a run file cannot be written.
+   */
+  private void replay(BlockingQueue<String> games) throws Exception {
+    long[] keys = new long[bufferCapacity];
+    int[] movesAndScores = new int[bufferCapacity];
+    long[] gameKeys = new long[maxPly];
+    int[] gameMoves = new int[maxPly];
+    int size = 0;
+    String pgn;
+    // The end marker is compared by identity.
+    while ((pgn = take(games)) != END) {
+      if (size + maxPly > bufferCapacity) {
+        spill(keys, movesAndScores, size);
+        size = 0;
+      }
+      int moves = record(pgn, gameKeys, gameMoves, keys, movesAndScores, size);
+      if (moves >= 0) {
+        size += moves;
+        gamesReplayed.incrementAndGet();
+        movesRecorded.addAndGet(moves);
+      }
+    }
+    if (size > 0) {
+      spill(keys, movesAndScores, size);
+    }
+  }
+
+  /**
+   * Splits the PGN file into games and feeds them to the workers.
+   *
+   * @param pgnFilePath The path to the PGN file.
+   * @param maxNumOfGames The maximum number of games to process.
+   * @param games The queue of games.
+   * @throws Exception If the thread is interrupted, the build has been aborted, or the file cannot be read.
+   */
+  private void split(String pgnFilePath, long maxNumOfGames, BlockingQueue<String> games) throws Exception {
+    try (BufferedReader reader = new BufferedReader(new FileReader(pgnFilePath))) {
+      StringBuilder pgnBuilder = new StringBuilder();
+      String line;
+      boolean eof = false;
+      while (!eof && gamesRead.get() < maxNumOfGames) {
+        line = reader.readLine();
+        if (line == null) {
+          eof = true;
+        } else {
+          line = line.trim();
+          if (line.isEmpty()) {
+            continue;
+          }
+        }
+        if ((eof || isFirstLineOfGame(line)) && pgnBuilder.length() > 0) {
+          gamesRead.incrementAndGet();
+          put(games, pgnBuilder.toString());
+          pgnBuilder.setLength(0);
+        }
+        if (!eof) {
+          pgnBuilder.append(line).append("\n");
+        }
+      }
+    }
+  }
+
+  /**
+   * Merges the sorted runs into a single sorted stream of records in which the records of the same key and move are aggregated.
+   *
+   * @param runs The run files.
+   * @param sink The consumer of the merged records.
+   * @throws IOException If a run file cannot be read or the sink cannot write the records.
+   */
+  private static void merge(List<File> runs, RecordSink sink) throws IOException {
+    PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()), (r1, r2) -> {
+      int res = Long.compareUnsigned(r1.key, r2.key);
+      return res != 0 ? res : Short.compare(r1.move, r2.move);
+    });
+    try {
+      for (File run : runs) {
+        RunReader reader = new RunReader(run);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        long key = reader.key;
+        short move = reader.move;
+        long weight = 0;
+        long games = 0;
+        while (reader != null && reader.key == key && reader.move == move) {
+          weight += reader.weight;
+          games += reader.games;
+          if (reader.next()) {
+            queue.add(reader);
+          } else {
+            reader.close();
+          }
+          reader = queue.peek();
+          if (reader != null && reader.key == key && reader.move == move) {
+            queue.poll();
+          }
+        }
+        sink.accept(key, move, weight, games);
+      }
+    } finally {
+      for (RunReader reader : queue) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Merges the runs into the book, in multiple passes if there are more runs than what can be merged at once.
+   *
+   * @param bookFilePath The path to the book file.
+   * @return The number of entries written to the book.
+   * @throws IOException If a run file cannot be read or written or the book file cannot be written.
+   */
+  private long mergeRuns(String bookFilePath) throws IOException {
+    List<File> runs = new ArrayList<>(runFiles);
+    while (runs.size() > MAX_MERGE_FAN_IN) {
+      List<File> mergedRuns = new ArrayList<>();
+      for (int i = 0; i < runs.size(); i += MAX_MERGE_FAN_IN) {
+        List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_FAN_IN));
+        File mergedRun = newRunFile();
+        try (DataOutputStream out = newRunOutputStream(mergedRun)) {
+          merge(group, (key, move, weight, games) -> writeRecord(out, key, move, weight, games));
+        }
+        for (File run : group) {
+          run.delete();
+        }
+        mergedRuns.add(mergedRun);
+      }
+      runs = mergedRuns;
+    }
+    try (BookWriter writer = new BookWriter(bookFilePath, minGames)) {
+      merge(runs, writer);
+      writer.flush();
+      return writer.entries;
+    }
+  }
+
+  /**
+   * Builds a Polyglot book from the games in the PGN file. If the book file exists, it is overwritten. Games that cannot be parsed or
+   * that have not ended are skipped.
+   *
+   * @param pgnFilePath The path to the file containing the games in PGN.
+   * @param bookFilePath The path to the book file.
+   * @param maxNumOfGames The maximum number of games to process.
+   * @return The number of entries written to the book.
+   * @throws Exception If the PGN file cannot be read, if the book or the temporary run files cannot be written, or if an exception occurs
+   * in one of the worker threads.
+   */
+  public synchronized long build(String pgnFilePath, String bookFilePath, long maxNumOfGames) throws Exception {
+    gamesRead.set(0);
+    gamesReplayed.set(0);
+    movesRecorded.set(0);
+    failure.set(null);
+    long startTime = System.currentTimeMillis();
+    BlockingQueue<String> games = new ArrayBlockingQueue<>(GAMES_QUEUED_PER_WORKER * concurrency);
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        futures.add(pool.submit(() -> {
+          try {
+            replay(games);
+            return null;
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            throw t;
+          }
+        }));
+      }
+      try {
+        split(pgnFilePath, maxNumOfGames, games);
+        for (int i = 0; i < concurrency; i++) {
+          put(games, END);
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+        throw t;
+      }
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          Throwable cause = failure.get();
+          throw cause instanceof Exception ? (Exception) cause : e;
+        }
+      }
+      int runs = runFiles.size();
+      long entries = mergeRuns(bookFilePath);
+      if (logger != null) {
+        logger.info(String.format("Games read: %d; games replayed: %d; moves recorded: %d; runs: %d; book entries: %d; time: %.1fs",
+            gamesRead.get(), gamesReplayed.get(), movesRecorded.get(), runs, entries,
+            (System.currentTimeMillis() - startTime) / 1000d));
+      }
+      return entries;
+    } finally {
+      pool.shutdownNow();
+      for (File runFile : runFiles) {
+        runFile.delete();
+      }
+      runFiles.clear();
+    }
+  }
+
+  /**
+   * A consumer of aggregated records.
+   */
+  @FunctionalInterface
+  private interface RecordSink {
+
+    /**
+     * Consumes the record.
+     *
+     * @param key The Polyglot key of the position.
+     * @param move The move in Polyglot format.
+     * @param weight The sum of the scores of the move.
+     * @param games The number of games the move was played in.
+     * @throws IOException If the record cannot be written.
+     */
+    void accept(long key, short move, long weight, long games) throws IOException;
+
+  }
+
+  /**
+   * A reader of the records of a run file.
+   */
+  private static class RunReader implements AutoCloseable {
+
+    final DataInputStream in;
+    long key;
+    short move;
+    long weight;
+    long games;
+
+    RunReader(File runFile) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), STREAM_BUFFER_SIZE));
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return Whether there was a record to read.
+     * @throws IOException If the file cannot be read.
+     */
+    boolean next() throws IOException {
+      try {
+        key = in.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+      move = in.readShort();
+      weight = in.readLong();
+      games = in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  }
+
+  /**
+   * A sink that writes the records to the book file position by position, filtering and scaling the weights of the moves of each
+   * position.
+   */
+  private static class BookWriter implements RecordSink, AutoCloseable {
+
+    final DataOutputStream out;
+    final int minGames;
+    final List<long[]> moves;
+    long key;
+    long entries;
+
+    BookWriter(String bookFilePath, int minGames) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bookFilePath), STREAM_BUFFER_SIZE));
+      this.minGames = minGames;
+      moves = new ArrayList<>();
+    }
+
+    @Override
+    public void accept(long key, short move, long weight, long games) throws IOException {
+      if (key != this.key) {
+        flush();
+        this.key = key;
+      }
+      if (games >= minGames && weight > 0) {
+        moves.add(new long[]{move, weight});
+      }
+    }
+
+    /**
+     * Writes the moves of the current position to the book with the moves of higher weights first.
+     *
+     * @throws IOException If the entries cannot be written.
+     */
+    void flush() throws IOException {
+      if (moves.isEmpty()) {
+        return;
+      }
+      moves.sort((m1, m2) -> Long.compare(m2[1], m1[1]));
+      long maxWeight = moves.get(0)[1];
+      for (long[] move : moves) {
+        long weight = maxWeight > PolyglotBook.MAX_WEIGHT ? Math.max(1, move[1] * PolyglotBook.MAX_WEIGHT / maxWeight) : move[1];
+        out.writeLong(key);
+        out.writeShort((short) move[0]);
+        out.writeShort((short) weight);
+        out.writeInt(0);
+        entries++;
+      }
+      moves.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+  }
+
+}
@@ -19,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import net.viktorc.detroid.framework.engine.EndGameTableBase.DTM;
 import net.viktorc.detroid.framework.engine.EndGameTableBase.EGTBStats;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.WDL;
 import net.viktorc.detroid.framework.engine.KillerTable.KTEntry;
 import net.viktorc.detroid.framework.uci.ScoreType;
 import net.viktorc.detroid.framework.uci.SearchResults;
@@ -44,17 +45,26 @@ public class Search implements Runnable, Future<SearchResults> {
    * The maximum nominal base search depth.
    */
   private static final byte MAX_NOMINAL_SEARCH_DEPTH = 64;
+  /**
+   * The maximum length of the principal variation of a stand-alone quiescence search which is not bounded by the nominal search depth.
+   */
+  private static final int MAX_QUIESCENCE_PV_LENGTH = 2 * 2 * MAX_NOMINAL_SEARCH_DEPTH;
   /**
    * The number of ply fractions that make up a full ply.
    */
   private static final byte FULL_PLY = 8;
+  // The score of positions won according to tablebases without distances to mate; greater than any evaluation but less than mate scores.
+  private static final int TABLEBASE_WIN_SCORE = Score.WINNING_CHECK_MATE.value / 2;
 
   private final Position rootPos;
   private final DetroidParameters params;
   private final Evaluator eval;
   private final EndGameTableBase egtb;
   private final boolean useEgtb;
+  private final boolean useEgtbDtm;
   private final Set<Integer> availableEgtbs;
+  private final int rootNumOfPieces;
+  private final int rootNumOfPawns;
   private final DetroidSearchInformation info;
   private final Cache<TTEntry> transTable;
   private final byte hashEntryGen;
@@ -116,6 +126,9 @@ public class Search implements Runnable, Future<SearchResults> {
     } else {
       availableEgtbs = null;
     }
+    useEgtbDtm = useEgtb && egtb.providesDistanceToMate();
+    rootNumOfPieces = BitOperations.hammingWeight(pos.getAllOccupied());
+    rootNumOfPawns = BitOperations.hammingWeight(pos.getWhitePawns() | pos.getBlackPawns());
     this.rootPos = pos;
     this.analysisMode = analysisMode;
     this.ponder = ponder;
@@ -200,11 +213,12 @@ public class Search implements Runnable, Future<SearchResults> {
     }
     if (useEgtb) {
       EGTBStats egtbStats = egtb.getStats();
-      egtbHits += egtbStats.getTotalDriveHits() + egtbStats.getTotalCacheHits();
+      egtbHits += egtbStats.getTotalDriveHits() + egtbStats.getTotalCacheHits() + egtbStats.getTotalResultCacheHits();
       if (analysisMode) {
-        statInfo += String.format(" egtb_hp %d egtb_sp %d egtb_chits %d egtb_dhits %d",
-            egtbStats.getTotalHardProbes(), egtbStats.getTotalSoftProbes(), egtbStats.getTotalCacheHits(),
-            egtbStats.getTotalDriveHits());
+        statInfo += String.format(" egtb_hp %d egtb_sp %d egtb_chits %d egtb_dhits %d egtb_rchits %d egtb_rcmisses %d " +
+                "egtb_latency_ns %.0f", egtbStats.getTotalHardProbes(), egtbStats.getTotalSoftProbes(),
+            egtbStats.getTotalCacheHits(), egtbStats.getTotalDriveHits(), egtbStats.getTotalResultCacheHits(),
+            egtbStats.getTotalResultCacheMisses(), egtbStats.getAverageProbeLatency());
       }
     }
     // Update stats.
@@ -377,6 +391,27 @@ public class Search implements Runnable, Future<SearchResults> {
     return doStopSearch;
   }
 
+  /**
+   * Runs a quiescence search from the root position on the calling thread and returns its principal variation, i.e. the sequence of
+   * tactical moves and check evasions leading to the quiet position the score of the root position is based on. It is meant for
+   * resolving positions for static evaluation tuning.
+   *
+   * @return The principal variation of the quiescence search. If standing pat is the best option in the root position, it is empty.
+   */
+  public List<Move> searchQuiescencePv() {
+    searchStats = new SearchStats();
+    SearchThread searchThread = new SearchThread(rootPos, null);
+    searchThread.pos = new Position(rootPos);
+    searchThread.maxQuiescenceDistFromRoot = MAX_QUIESCENCE_PV_LENGTH;
+    List<Move> pv = new ArrayList<>();
+    try {
+      searchThread.quiescence(0, Score.MIN.value, Score.MAX.value, pv);
+    } catch (AbnormalSearchTerminationException e) {
+      pv.clear();
+    }
+    return pv;
+  }
+
   @Override
   public void run() {
     startTime = System.currentTimeMillis();
@@ -424,8 +459,10 @@ public class Search implements Runnable, Future<SearchResults> {
     private final KillerTable killerTable;
     private final RelativeHistoryTable historyTable;
     private final TTEntry transTableEntry;
+    private final TTEntry probeEntry;
     private final ETEntry evalTableEntry;
     private Position pos; // The pos instance to use for the search.
+    private int maxQuiescenceDistFromRoot;
     private AtomicLong nodes;
     private int alpha;
     private int beta;
@@ -452,7 +489,9 @@ public class Search implements Runnable, Future<SearchResults> {
         historyTable = null;
       }
       transTableEntry = new TTEntry();
+      probeEntry = new TTEntry();
       evalTableEntry = new ETEntry();
+      maxQuiescenceDistFromRoot = maxExpectedSearchDepth;
     }
 
     /**
@@ -591,10 +630,12 @@ public class Search implements Runnable, Future<SearchResults> {
      * @param distFromRoot The distance from the root position in plies.
      * @param alpha The alpha bound.
      * @param beta The beta bound.
+     * @param pv A list to collect the principal variation of the node in. It should be empty when passed in. If it is null, the principal
+     * variation is not tracked.
      * @return The score of the leaf node.
      * @throws AbnormalSearchTerminationException If the search is cancelled or the maximum allowed number of nodes have been searched.
      */
-    private int quiescence(int distFromRoot, int alpha, int beta) throws AbnormalSearchTerminationException {
+    private int quiescence(int distFromRoot, int alpha, int beta, List<Move> pv) throws AbnormalSearchTerminationException {
       int mateValue = Score.LOSING_CHECK_MATE.value + distFromRoot;
       if (!ponder && getTotalNodes() >= maxNodes) {
         doStopSearch = true;
@@ -620,12 +661,13 @@ public class Search implements Runnable, Future<SearchResults> {
         }
       }
       // Limit the maximum depth of the quiescence search.
-      if (distFromRoot > maxExpectedSearchDepth) {
+      if (distFromRoot > maxQuiescenceDistFromRoot) {
         return alpha;
       }
       // Generate all the material moves or if in check, all moves.
       List<Move> moves = pos.isInCheck() ? pos.getMoves() : pos.getTacticalMoves();
       Move[] sortedMoves = orderMaterialMovesMVVLVA(moves);
+      List<Move> childPv = pv == null ? null : new ArrayList<>();
       for (Move move : sortedMoves) {
         if (!pos.isInCheck()) {
           // If the SEE value is below 0 or the delta pruning limit, skip.
@@ -634,13 +676,21 @@ public class Search implements Runnable, Future<SearchResults> {
             continue;
           }
         }
+        if (childPv != null) {
+          childPv.clear();
+        }
         pos.makeMove(move);
-        int searchScore = -quiescence(distFromRoot + 1, -beta, -alpha);
+        int searchScore = -quiescence(distFromRoot + 1, -beta, -alpha, childPv);
         pos.unmakeMove();
         if (searchScore > bestScore) {
           bestScore = searchScore;
           if (searchScore > alpha) {
             alpha = searchScore;
+            if (pv != null) {
+              pv.clear();
+              pv.add(move);
+              pv.addAll(childPv);
+            }
             if (searchScore >= beta) {
               break;
             }
@@ -772,19 +822,41 @@ public class Search implements Runnable, Future<SearchResults> {
           int numOfPieces = BitOperations.hammingWeight(pos.getAllOccupied());
           // Check if there are tablebases loaded for the current number of pieces on the board.
           if (numOfPieces <= EndGameTableBase.MAX_NUMBER_OF_PIECES && availableEgtbs.contains(numOfPieces)) {
-            DTM dtm = egtb.probeDTM(pos, distFromRoot > params.maxDistFromRootForHardEgtbProbe);
-            // If the pos is found...
-            if (dtm != null && dtm.getWdl() != null) {
-              // Return the appropriate score.
-              switch (dtm.getWdl()) {
-                case DRAW:
-                  return Score.STALE_MATE.value;
-                case LOSS:
-                  return mateScore + dtm.getDistance();
-                case WIN:
-                  return -mateScore - dtm.getDistance();
-                default:
-                  break;
+            boolean softProbe = distFromRoot > params.maxDistFromRootForHardEgtbProbe;
+            if (useEgtbDtm) {
+              DTM dtm = egtb.probeDTM(pos, softProbe);
+              // If the pos is found...
+              if (dtm != null && dtm.getWdl() != null) {
+                // Return the appropriate score.
+                switch (dtm.getWdl()) {
+                  case DRAW:
+                    return Score.STALE_MATE.value;
+                  case LOSS:
+                    return mateScore + dtm.getDistance();
+                  case WIN:
+                    return -mateScore - dtm.getDistance();
+                  default:
+                    break;
+                }
+              }
+            } else if (numOfPieces < rootNumOfPieces ||
+                BitOperations.hammingWeight(pos.getWhitePawns() | pos.getBlackPawns()) < rootNumOfPawns) {
+              /* Without the distances to mate, the scores of won positions cannot lead the search to the mate, thus the tablebase is
+               * only used to score the conversions into the endgames it covers, i.e. the positions whose material differs from that of
+               * the root position. As the number of pieces and the number of pawns can only decrease, a capture or a promotion is
+               * detected by either of them being less than at the root. */
+              WDL wdl = egtb.probeWDL(pos, softProbe);
+              if (wdl != null) {
+                switch (wdl) {
+                  case DRAW:
+                    return Score.STALE_MATE.value;
+                  case LOSS:
+                    return -TABLEBASE_WIN_SCORE + distFromRoot;
+                  case WIN:
+                    return TABLEBASE_WIN_SCORE - distFromRoot;
+                  default:
+                    break;
+                }
               }
             }
           }
@@ -799,13 +871,13 @@ public class Search implements Runnable, Future<SearchResults> {
         boolean doQuiescence = depth / FULL_PLY <= 0;
         /* Check the hash move and return its score for the pos if it is exact or set alpha or beta according
          * to its score if it is not. */
-        hashEntry = transTable.get(pos.getKey());
+        hashEntry = transTable.get(pos.getKey(), probeEntry);
         if (hashEntry != null) {
-          int hashDepth = hashEntry.getDepth();
-          int hashType = hashEntry.getType();
-          int hashScore = hashEntry.getScore();
-          int hashMoveInt = hashEntry.getBestMove();
-          boolean hashBusy = hashEntry.isBusy();
+          int hashDepth = probeEntry.getDepth();
+          int hashType = probeEntry.getType();
+          int hashScore = probeEntry.getScore();
+          int hashMoveInt = probeEntry.getBestMove();
+          boolean hashBusy = probeEntry.isBusy();
           // Make sure that entry was not overwritten in another thread.
           if (hashEntry.hashKey() == pos.getKey()) {
             hashEntry.setGeneration(hashEntryGen);
@@ -816,7 +888,7 @@ public class Search implements Runnable, Future<SearchResults> {
               // Mate score adjustment to root distance.
               if (hashScore <= lCheckMateLimit) {
                 score = hashScore + distFromRoot;
-              } else if (hashEntry.getScore() >= wCheckMateLimit) {
+              } else if (hashScore >= wCheckMateLimit) {
                 score = hashScore - distFromRoot;
               } else {
                 score = hashScore;
@@ -872,7 +944,7 @@ public class Search implements Runnable, Future<SearchResults> {
         if (doQuiescence) {
           nodes.decrementAndGet();
           searchStats.mainNodes.decrementAndGet();
-          bestScore = quiescence(distFromRoot, alpha, beta);
+          bestScore = quiescence(distFromRoot, alpha, beta, null);
           bestMove = null;
           break Search;
         }
@@ -947,9 +1019,9 @@ public class Search implements Runnable, Future<SearchResults> {
             resetBusyFlag(nodeBlocked);
             throw e;
           }
-          hashEntry = transTable.get(pos.getKey());
+          hashEntry = transTable.get(pos.getKey(), probeEntry);
           int hashMoveInt;
-          if (hashEntry != null && (hashMoveInt = hashEntry.getBestMove()) != 0 &&
+          if (hashEntry != null && (hashMoveInt = probeEntry.getBestMove()) != 0 &&
               hashEntry.hashKey() == pos.getKey()) {
             searchStats.successfulIids.incrementAndGet();
             hashMove = Move.toMove(hashMoveInt);
@@ -1402,7 +1474,7 @@ public class Search implements Runnable, Future<SearchResults> {
         pos = new Position(origPos);
         // If ply equals 0, perform quiescence search only.
         if (ply == 0) {
-          return quiescence(0, alpha, beta);
+          return quiescence(0, alpha, beta, null);
         }
         searchStats.mainNodes.incrementAndGet();
         // Check for the 3-fold repetition rule.
@@ -1433,12 +1505,12 @@ public class Search implements Runnable, Future<SearchResults> {
         Move lastMove = pos.getLastMove();
         depth = lastMove != null && isPawnPush(lastMove) ? depth + params.pawnPushExtension : depth;
         // Hash look-up.
-        TTEntry entry = transTable.get(pos.getKey());
+        TTEntry entry = transTable.get(pos.getKey(), probeEntry);
         if (entry != null) {
-          int hashDepth = entry.getDepth();
-          int hashType = entry.getType();
-          int hashScore = entry.getScore();
-          int hashMoveInt = entry.getBestMove();
+          int hashDepth = probeEntry.getDepth();
+          int hashType = probeEntry.getType();
+          int hashScore = probeEntry.getScore();
+          int hashMoveInt = probeEntry.getBestMove();
           // Make sure the entry was not modified while retrieving the information contained in it.
           if (entry.hashKey() == pos.getKey()) {
             entry.setGeneration(hashEntryGen);
@@ -0,0 +1,183 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.IOException;
+import java.util.Map;
+import net.viktorc.detroid.framework.engine.Bitboard.Square;
+import net.viktorc.detroid.framework.util.BitOperations;
+
+/**
+ * The 'fancy magic' move set tables of rooks and bishops on all squares laid out in a single contiguous array for better cache locality.
+ * Each table is only as long as the greatest index its magics hash an occupancy variation onto and it starts at its own offset into the
+ * array. If the magics configuration specifies the offsets, the tables may overlap; a slot can be shared by multiple tables as long as
+ * at most one of them uses it or all of them map it to the same move set. Otherwise, the tables are laid out one after the other.
+ *
+ * @author Viktor
+ */
+final class SlidingMoveSets {
+
+  private static SlidingMoveSets instance;
+
+  final long[] moveSets;
+  final long[] rookMagicNumbers;
+  final byte[] rookMagicShifts;
+  final int[] rookOffsets;
+  final long[] bishopMagicNumbers;
+  final byte[] bishopMagicShifts;
+  final int[] bishopOffsets;
+
+  /**
+   * Constructs an instance from the specified move set array, magics, and offsets.
+   */
+  SlidingMoveSets(long[] moveSets, long[] rookMagicNumbers, byte[] rookMagicShifts, int[] rookOffsets, long[] bishopMagicNumbers,
+      byte[] bishopMagicShifts, int[] bishopOffsets) {
+    this.moveSets = moveSets;
+    this.rookMagicNumbers = rookMagicNumbers;
+    this.rookMagicShifts = rookMagicShifts;
+    this.rookOffsets = rookOffsets;
+    this.bishopMagicNumbers = bishopMagicNumbers;
+    this.bishopMagicShifts = bishopMagicShifts;
+    this.bishopOffsets = bishopOffsets;
+  }
+
+  private SlidingMoveSets(MagicsConfig config) {
+    rookMagicNumbers = new long[64];
+    rookMagicShifts = new byte[64];
+    rookOffsets = new int[64];
+    bishopMagicNumbers = new long[64];
+    bishopMagicShifts = new byte[64];
+    bishopOffsets = new int[64];
+    long[][] occupancyVariations = new long[128][];
+    long[][] moveSetVariations = new long[128][];
+    int[][] indices = new int[128][];
+    int missingOffset = -1;
+    int offsetsSpecified = 0;
+    int size = 0;
+    for (int i = 0; i < 128; i++) {
+      int sqrInd = i % 64;
+      boolean rook = i < 64;
+      Map.Entry<Long, Byte> magics = rook ? config.getRookMagics(sqrInd) : config.getBishopMagics(sqrInd);
+      Integer offset = rook ? config.getRookTableOffset(sqrInd) : config.getBishopTableOffset(sqrInd);
+      long[][] variations = computeVariations(sqrInd, rook);
+      occupancyVariations[i] = variations[0];
+      moveSetVariations[i] = variations[1];
+      indices[i] = computeIndices(variations[0], magics.getKey(), magics.getValue());
+      if (rook) {
+        rookMagicNumbers[sqrInd] = magics.getKey();
+        rookMagicShifts[sqrInd] = magics.getValue();
+      } else {
+        bishopMagicNumbers[sqrInd] = magics.getKey();
+        bishopMagicShifts[sqrInd] = magics.getValue();
+      }
+      if (offset == null) {
+        missingOffset = missingOffset == -1 ? i : missingOffset;
+      } else {
+        setOffset(i, offset);
+        offsetsSpecified++;
+      }
+    }
+    // The offsets are either specified for all the tables or for none of them, as a partial packing cannot be completed reliably.
+    if (offsetsSpecified > 0 && missingOffset != -1) {
+      throw new IllegalStateException("The table offset of " + (missingOffset < 64 ? "rook" : "bishop") + " square " +
+          (missingOffset % 64) + " is missing while " + offsetsSpecified + " other offsets are specified.");
+    }
+    if (offsetsSpecified == 0) {
+      for (int i = 0; i < 128; i++) {
+        setOffset(i, size);
+        size += getSpan(indices[i]);
+      }
+    } else {
+      for (int i = 0; i < 128; i++) {
+        size = Math.max(size, getOffset(i) + getSpan(indices[i]));
+      }
+    }
+    moveSets = new long[size];
+    for (int i = 0; i < 128; i++) {
+      int offset = getOffset(i);
+      for (int j = 0; j < indices[i].length; j++) {
+        int slot = offset + indices[i][j];
+        long moveSet = moveSetVariations[i][j];
+        if (moveSets[slot] != 0 && moveSets[slot] != moveSet) {
+          throw new IllegalStateException("The magics of " + (i < 64 ? "rook" : "bishop") + " square " + (i % 64) +
+              " conflict with the move sets at offset " + offset + ".");
+        }
+        moveSets[slot] = moveSet;
+      }
+    }
+  }
+
+  /**
+   * @return The one and only instance holding the move set tables taken from the {@link StartupSnapshot} if it contains them or otherwise
+   * built using the magics and offsets read from the magics configuration.
+   */
+  static synchronized SlidingMoveSets getInstance() {
+    if (instance == null) {
+      instance = StartupSnapshot.getInstance().getSlidingMoveSets();
+    }
+    if (instance == null) {
+      MagicsConfig config = MagicsConfig.getInstance();
+      try {
+        config.load();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      instance = new SlidingMoveSets(config);
+    }
+    return instance;
+  }
+
+  /**
+   * Computes all the occupancy variations of the relevant occupancy mask of a rook or bishop on the specified square and the
+   * corresponding move sets.
+   *
+   * @param sqrInd The index of the square.
+   * @param rook Whether the variations are to be computed for a rook or a bishop.
+   * @return An array of two arrays; the occupancy variations and the move sets.
+   */
+  static long[][] computeVariations(int sqrInd, boolean rook) {
+    long bit = Square.values()[sqrInd].bitboard;
+    long[] occupancyVariations = BitOperations.getAllSubsets(rook ? Bitboard.computeRookOccupancyMasks(bit) :
+        Bitboard.computeBishopOccupancyMasks(bit));
+    long[] moveSetVariations = rook ? Bitboard.computeRookMoveSetVariations(bit, occupancyVariations) :
+        Bitboard.computeBishopMoveSetVariations(bit, occupancyVariations);
+    return new long[][]{occupancyVariations, moveSetVariations};
+  }
+
+  /**
+   * @param occupancyVariations The occupancy variations.
+   * @param magicNumber The magic number.
+   * @param magicShift The magic shift.
+   * @return The indices the occupancy variations hash onto.
+   */
+  static int[] computeIndices(long[] occupancyVariations, long magicNumber, byte magicShift) {
+    int[] indices = new int[occupancyVariations.length];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = (int) ((occupancyVariations[i] * magicNumber) >>> magicShift);
+    }
+    return indices;
+  }
+
+  /**
+   * @param indices The indices a table is accessed at.
+   * @return The length of the table.
+   */
+  static int getSpan(int[] indices) {
+    int max = 0;
+    for (int index : indices) {
+      max = Math.max(max, index);
+    }
+    return max + 1;
+  }
+
+  private int getOffset(int table) {
+    return table < 64 ? rookOffsets[table] : bishopOffsets[table - 64];
+  }
+
+  private void setOffset(int table, int offset) {
+    if (table < 64) {
+      rookOffsets[table] = offset;
+    } else {
+      bishopOffsets[table - 64] = offset;
+    }
+  }
+
+}
@@ -0,0 +1,237 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import net.viktorc.detroid.framework.tuning.EngineParameters;
+import net.viktorc.detroid.framework.util.Checkpoint;
+
+/**
+ * A snapshot of the data the engine would otherwise compute or parse on every start-up, i.e. the move set tables of the sliding pieces
+ * along with the magics they are indexed by and the parameter values read from a parameters file. The snapshot is stored in a binary file
+ * which is memory-mapped and read in bulk. Each section of the snapshot records the CRC32 checksum of the source it was derived from, the
+ * magics configuration and the parameters file respectively, and a section is ignored if its source has changed since the snapshot was
+ * taken. If there is no snapshot file, everything is computed and parsed as usual.
+ *
+ * @author Viktor
+ */
+public final class StartupSnapshot {
+
+  /**
+   * The default path to the snapshot file which is looked up at start-up.
+   */
+  public static final String DEFAULT_FILE_PATH = "startup.snapshot";
+
+  private static final int MAGIC = 0x44545353;
+  private static final int VERSION = 1;
+  private static StartupSnapshot instance;
+
+  private final SlidingMoveSets slidingMoveSets;
+  private final String parametersFilePath;
+  private final long parametersChecksum;
+  private final Map<String, String> parameterValues;
+
+  private StartupSnapshot(SlidingMoveSets slidingMoveSets, String parametersFilePath, long parametersChecksum,
+      Map<String, String> parameterValues) {
+    this.slidingMoveSets = slidingMoveSets;
+    this.parametersFilePath = parametersFilePath;
+    this.parametersChecksum = parametersChecksum;
+    this.parameterValues = parameterValues;
+  }
+
+  /**
+   * Returns the snapshot loaded from the default snapshot file. If the file does not exist or it cannot be read, an empty snapshot is
+   * returned.
+   *
+   * @return The one and only instance.
+   */
+  static synchronized StartupSnapshot getInstance() {
+    if (instance == null) {
+      File file = new File(DEFAULT_FILE_PATH);
+      try {
+        instance = file.exists() ? load(file) : null;
+      } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+        // Ignore.
+      }
+      if (instance == null) {
+        instance = new StartupSnapshot(null, null, 0, null);
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Computes the CRC32 checksum of the bytes of the stream.
+   */
+  static long checksum(InputStream in) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      crc.update(buffer, 0, read);
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Computes the checksum of the parameters file which is looked up the same way as by {@link EngineParameters#readValues(String)}.
+   */
+  private static long checksumOfParameters(String filePath) throws IOException {
+    File file = new File(filePath);
+    try (InputStream in = file.exists() ? new FileInputStream(file) : ClassLoader.getSystemClassLoader()
+        .getResourceAsStream(filePath)) {
+      if (in == null) {
+        throw new IOException("Parameters file not found: " + filePath);
+      }
+      return checksum(in);
+    }
+  }
+
+  private static void putString(ByteBuffer buffer, String string) {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  /**
+   * Reads a number of elements and makes sure that the rest of the buffer can hold that many elements of the specified minimum size, so
+   * that a corrupted snapshot cannot lead to the allocation of a negative sized or excessively large array.
+   */
+  private static int getLength(ByteBuffer buffer, int minElementSize) throws IOException {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining() / minElementSize) {
+      throw new IOException("Illegal length in snapshot file: " + length);
+    }
+    return length;
+  }
+
+  private static String getString(ByteBuffer buffer) throws IOException {
+    byte[] bytes = new byte[getLength(buffer, Byte.BYTES)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int sizeOf(String string) {
+    return Integer.BYTES + string.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static StartupSnapshot load(File file) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Illegal snapshot file header: " + file);
+    }
+    long magicsChecksum = buffer.getLong();
+    long[] rookMagicNumbers = new long[64];
+    long[] bishopMagicNumbers = new long[64];
+    byte[] rookMagicShifts = new byte[64];
+    byte[] bishopMagicShifts = new byte[64];
+    int[] rookOffsets = new int[64];
+    int[] bishopOffsets = new int[64];
+    buffer.asLongBuffer().get(rookMagicNumbers).get(bishopMagicNumbers);
+    buffer.position(buffer.position() + 2 * 64 * Long.BYTES);
+    buffer.get(rookMagicShifts).get(bishopMagicShifts);
+    buffer.asIntBuffer().get(rookOffsets).get(bishopOffsets);
+    buffer.position(buffer.position() + 2 * 64 * Integer.BYTES);
+    long[] moveSets = new long[getLength(buffer, Long.BYTES)];
+    buffer.asLongBuffer().get(moveSets);
+    buffer.position(buffer.position() + moveSets.length * Long.BYTES);
+    String parametersFilePath = getString(buffer);
+    long parametersChecksum = buffer.getLong();
+    // Each parameter takes at least the lengths of its name and value.
+    int numOfParameters = getLength(buffer, 2 * Integer.BYTES);
+    Map<String, String> parameterValues = new LinkedHashMap<>();
+    for (int i = 0; i < numOfParameters; i++) {
+      parameterValues.put(getString(buffer), getString(buffer));
+    }
+    MagicsConfig magicsConfig = MagicsConfig.getInstance();
+    SlidingMoveSets slidingMoveSets = magicsChecksum == magicsConfig.checksum() ? new SlidingMoveSets(moveSets, rookMagicNumbers,
+        rookMagicShifts, rookOffsets, bishopMagicNumbers, bishopMagicShifts, bishopOffsets) : null;
+    return new StartupSnapshot(slidingMoveSets, parametersFilePath, parametersChecksum,
+        Collections.unmodifiableMap(parameterValues));
+  }
+
+  /**
+   * Takes a snapshot of the move set tables of the sliding pieces and the values of the parameters in the specified file and writes it to
+   * the specified snapshot file.
+   *
+   * @param filePath The path to the snapshot file.
+   * @param parametersFilePath The path to the parameters file as it is to be looked up at start-up.
+   * @throws Exception If the parameters cannot be read or the snapshot cannot be written.
+   */
+  public static void write(String filePath, String parametersFilePath) throws Exception {
+    SlidingMoveSets slidingMoveSets = SlidingMoveSets.getInstance();
+    long magicsChecksum = MagicsConfig.getInstance().checksum();
+    Map<String, String> parameterValues = EngineParameters.readValues(parametersFilePath);
+    long parametersChecksum = checksumOfParameters(parametersFilePath);
+    int size = 2 * Integer.BYTES + Long.BYTES + 2 * 64 * (Long.BYTES + 1 + Integer.BYTES) + Integer.BYTES +
+        slidingMoveSets.moveSets.length * Long.BYTES + sizeOf(parametersFilePath) + Long.BYTES + Integer.BYTES;
+    for (Map.Entry<String, String> entry : parameterValues.entrySet()) {
+      size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(magicsChecksum);
+    buffer.asLongBuffer().put(slidingMoveSets.rookMagicNumbers).put(slidingMoveSets.bishopMagicNumbers);
+    buffer.position(buffer.position() + 2 * 64 * Long.BYTES);
+    buffer.put(slidingMoveSets.rookMagicShifts).put(slidingMoveSets.bishopMagicShifts);
+    buffer.asIntBuffer().put(slidingMoveSets.rookOffsets).put(slidingMoveSets.bishopOffsets);
+    buffer.position(buffer.position() + 2 * 64 * Integer.BYTES);
+    buffer.putInt(slidingMoveSets.moveSets.length);
+    buffer.asLongBuffer().put(slidingMoveSets.moveSets);
+    buffer.position(buffer.position() + slidingMoveSets.moveSets.length * Long.BYTES);
+    putString(buffer, parametersFilePath);
+    buffer.putLong(parametersChecksum).putInt(parameterValues.size());
+    for (Map.Entry<String, String> entry : parameterValues.entrySet()) {
+      putString(buffer, entry.getKey());
+      putString(buffer, entry.getValue());
+    }
+    buffer.flip();
+    Checkpoint.writeAtomically(filePath, path -> {
+      try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return The move set tables of the sliding pieces or null if the snapshot does not contain them or the magics have changed since the
+   * snapshot was taken.
+   */
+  SlidingMoveSets getSlidingMoveSets() {
+    return slidingMoveSets;
+  }
+
+  /**
+   * Returns the parameter values read from the specified file when the snapshot was taken provided that the file has not changed since.
+   *
+   * @param filePath The path to the parameters file.
+   * @return The parameter values by the names of the parameters or null if the snapshot does not contain the values of the file or the
+   * file has changed since the snapshot was taken.
+   */
+  Map<String, String> getParameterValues(String filePath) {
+    if (parameterValues == null || !filePath.equals(parametersFilePath)) {
+      return null;
+    }
+    try {
+      return checksumOfParameters(filePath) == parametersChecksum ? parameterValues : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+}
@@ -104,9 +104,10 @@ class TTEntry implements Entry<TTEntry> {
   }
 
   /**
-   * XORs the data fields into the key.
+   * XORs the data fields into the key. It is only ever invoked on entries owned by a single thread before they are inserted into the
+   * hash table, thus it requires no synchronization.
    */
-  public synchronized void setupKey() {
+  public void setupKey() {
     key ^= depth ^ type ^ score ^ bestMove;
   }
 
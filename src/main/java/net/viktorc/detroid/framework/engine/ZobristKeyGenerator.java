@@ -4,9 +4,10 @@ import java.util.Random;
 import net.viktorc.detroid.framework.util.BitOperations;
 
 /**
- * A class for hashing chess positions. Two position objects with identical states will always have the same Zobrist keys within one runtime
- * and two position objects with different states (as defined by the side to move, the board state, the castling rights, and the en passant
- * rights) will almost always have different Zobrist keys.
+ * A class for hashing chess positions. Two position objects with identical states will always have the same Zobrist keys and two position
+ * objects with different states (as defined by the side to move, the board state, the castling rights, and the en passant rights) will
+ * almost always have different Zobrist keys. The random numbers the keys are composed of are generated from a fixed seed, thus the keys
+ * are the same across runtimes which allows for hash tables to be saved and loaded.
  *
  * @author Viktor
  */
@@ -211,6 +212,8 @@ public class ZobristKeyGenerator {
       0xF8D626AAAF278509L
   };
 
+  // The seed of the random numbers of the main Zobrist keys.
+  private static final long SEED = 0x44455452L;
   private static final ZobristKeyGenerator INSTANCE = new ZobristKeyGenerator();
 
   private long turn;
@@ -220,7 +223,7 @@ public class ZobristKeyGenerator {
   private long[] enPassantRights = new long[EnPassantRights.values().length];
 
   private ZobristKeyGenerator() {
-    Random random = new Random();
+    Random random = new Random(SEED);
     turn = random.nextLong();
     for (int i = 0; i < board[0].length; i++) {
       board[Piece.NULL.ind][i] = Bitboard.EMPTY_BOARD;
@@ -0,0 +1,206 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Map.Entry;
+import java.util.Optional;
+import net.viktorc.detroid.framework.engine.ChessParseException;
+import net.viktorc.detroid.framework.engine.EndGameTableBase;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.WDL;
+import net.viktorc.detroid.framework.engine.Position;
+import net.viktorc.detroid.framework.uci.ScoreType;
+import net.viktorc.detroid.framework.uci.SearchResults;
+import net.viktorc.detroid.framework.validation.GameState;
+
+/**
+ * The rules for adjudicating self-play games in the {@link net.viktorc.detroid.framework.tuning.Arena} before they end by the rules of
+ * chess. Games whose outcome is already clear consume a disproportionate amount of the time spent on self-play; adjudication ends them as
+ * soon as both engines agree on the result or the result is known from the endgame tablebases. The rules are the following:
+ * <ul>
+ * <li>Resignation: the game is won by the side both engines see ahead by at least the resignation score for the specified number of
+ * consecutive moves of each engine.</li>
+ * <li>Draw: after the specified number of plies, the game is drawn if the absolute scores reported by both engines do not exceed the draw
+ * score for the specified number of consecutive moves of each engine.</li>
+ * <li>Tablebase: the game is adjudicated according to the endgame tablebases as soon as it reaches a position they cover.</li>
+ * </ul>
+ * Each rule is optional. The scores are only considered if they are exact or mate scores. The instances of this class are immutable and
+ * can be shared between arenas; the state of the adjudication of a game is held by a {@link Tracker}.
+ *
+ * @author Viktor
+ */
+public final class Adjudication {
+
+  /**
+   * The default number of consecutive moves of each engine for which the resignation score has to be reported.
+   */
+  public static final int RESIGN_MOVES = 3;
+  /**
+   * The default maximum absolute score in centi-pawns for draw adjudication.
+   */
+  public static final short DRAW_SCORE = 10;
+  /**
+   * The default number of consecutive moves of each engine for which the scores have to be within the draw score.
+   */
+  public static final int DRAW_MOVES = 8;
+  /**
+   * The prefix of the termination reasons of adjudicated games.
+   */
+  public static final String REASON_PREFIX = "Adjudication: ";
+
+  private final Short resignScore;
+  private final int resignMoves;
+  private final Integer drawMinPly;
+  private final short drawScore;
+  private final int drawMoves;
+  private final EndGameTableBase egtb;
+
+  /**
+   * Constructs an instance according to the specified parameters.
+   *
+   * @param resignScore The score in centi-pawns both engines have to see one side ahead by for the game to be adjudicated as a win for
+   * that side. If it is null, resignation adjudication is disabled.
+   * @param resignMoves The number of consecutive moves of each engine with a score beyond the resignation score needed for resignation
+   * adjudication. If it is null, it defaults to {@link #RESIGN_MOVES}.
+   * @param drawMinPly The number of plies that have to be played in the game before it can be adjudicated a draw based on the scores. If
+   * it is null, draw adjudication is disabled.
+   * @param drawScore The maximum absolute score in centi-pawns considered drawish. If it is null, it defaults to {@link #DRAW_SCORE}.
+   * @param drawMoves The number of consecutive moves of each engine with drawish scores needed for draw adjudication. If it is null, it
+   * defaults to {@link #DRAW_MOVES}.
+   * @param egtb The endgame tablebase to adjudicate the games by. It is only probed if it is initialized and the tablebases are available
+   * for the number of pieces on the board. If it is null, tablebase adjudication is disabled.
+   * @throws IllegalArgumentException If any of the scores, move counts, or the ply count is negative, or the resignation score or a move
+   * count is 0.
+   */
+  public Adjudication(Short resignScore, Integer resignMoves, Integer drawMinPly, Short drawScore, Integer drawMoves,
+      EndGameTableBase egtb) throws IllegalArgumentException {
+    resignMoves = resignMoves == null ? RESIGN_MOVES : resignMoves;
+    drawScore = drawScore == null ? DRAW_SCORE : drawScore;
+    drawMoves = drawMoves == null ? DRAW_MOVES : drawMoves;
+    if ((resignScore != null && resignScore <= 0) || resignMoves <= 0 || (drawMinPly != null && drawMinPly < 0) || drawScore < 0 ||
+        drawMoves <= 0) {
+      throw new IllegalArgumentException("The resignation score and the move counts have to be greater than 0, the draw score and the " +
+          "minimum ply count cannot be negative.");
+    }
+    this.resignScore = resignScore;
+    this.resignMoves = resignMoves;
+    this.drawMinPly = drawMinPly;
+    this.drawScore = drawScore;
+    this.drawMoves = drawMoves;
+    this.egtb = egtb;
+  }
+
+  /**
+   * Returns a new tracker for adjudicating a game.
+   *
+   * @return A tracker with a clean state.
+   */
+  Tracker newTracker() {
+    return new Tracker();
+  }
+
+  /**
+   * The state of the adjudication of a single game.
+   */
+  final class Tracker {
+
+    private int resignPlies;
+    private int resignWinner;
+    private int drawPlies;
+    private int plies;
+
+    private Tracker() {
+    }
+
+    /**
+     * Returns the score of the search results from white's point of view with mate scores mapped beyond any resignation score.
+     *
+     * @param results The search results.
+     * @param white Whether the engine that reported the results plays with the white pieces.
+     * @return The score from white's point of view or null if the results do not contain a usable score.
+     */
+    private Integer toWhiteScore(SearchResults results, boolean white) {
+      Optional<Short> score = results.getScore();
+      Optional<ScoreType> scoreType = results.getScoreType();
+      if (!score.isPresent() || !scoreType.isPresent()) {
+        return null;
+      }
+      int value;
+      if (scoreType.get() == ScoreType.MATE) {
+        value = score.get() > 0 ? Integer.MAX_VALUE : -Integer.MAX_VALUE;
+      } else if (scoreType.get() == ScoreType.EXACT) {
+        value = score.get();
+      } else {
+        return null;
+      }
+      return white ? value : -value;
+    }
+
+    /**
+     * Probes the endgame tablebase for the position.
+     *
+     * @param fen The position in FEN.
+     * @return The state of the game according to the tablebase or null if the position is not covered or cannot be parsed.
+     */
+    private GameState probe(String fen) {
+      if (egtb == null || !egtb.isProbingLibLoaded() || !egtb.isInit()) {
+        return null;
+      }
+      Position pos;
+      try {
+        pos = Position.parse(fen);
+      } catch (ChessParseException e) {
+        return null;
+      }
+      int numOfPieces = Long.bitCount(pos.getAllOccupied());
+      if (numOfPieces > EndGameTableBase.MAX_NUMBER_OF_PIECES || !egtb.areTableBasesAvailable(numOfPieces)) {
+        return null;
+      }
+      WDL wdl = egtb.probeWDL(pos, false);
+      if (wdl == null) {
+        return null;
+      }
+      switch (wdl) {
+        case WIN:
+          return pos.isWhitesTurn() ? GameState.UNSPECIFIED_WHITE_WIN : GameState.UNSPECIFIED_BLACK_WIN;
+        case LOSS:
+          return pos.isWhitesTurn() ? GameState.UNSPECIFIED_BLACK_WIN : GameState.UNSPECIFIED_WHITE_WIN;
+        default:
+          return GameState.DRAW_BY_AGREEMENT;
+      }
+    }
+
+    /**
+     * Updates the state of the adjudication after a move has been played and returns the verdict if the game can be adjudicated.
+     *
+     * @param results The search results of the engine that made the move.
+     * @param white Whether the engine that made the move plays with the white pieces.
+     * @param fen The position after the move in FEN.
+     * @return The adjudicated state of the game and the reason of the adjudication or null if the game cannot be adjudicated yet.
+     */
+    Entry<GameState, String> update(SearchResults results, boolean white, String fen) {
+      plies++;
+      GameState egtbState = probe(fen);
+      if (egtbState != null) {
+        return new SimpleEntry<>(egtbState, REASON_PREFIX + "tablebase");
+      }
+      Integer score = toWhiteScore(results, white);
+      if (resignScore != null) {
+        int winner = score == null || Math.abs(score) < resignScore ? 0 : Integer.signum(score);
+        resignPlies = winner != 0 && winner == resignWinner ? resignPlies + 1 : (winner != 0 ? 1 : 0);
+        resignWinner = winner;
+        if (resignPlies >= 2 * resignMoves) {
+          return new SimpleEntry<>(winner > 0 ? GameState.UNSPECIFIED_WHITE_WIN : GameState.UNSPECIFIED_BLACK_WIN,
+              REASON_PREFIX + (winner > 0 ? "Black" : "White") + " resigns");
+        }
+      }
+      if (drawMinPly != null) {
+        drawPlies = score != null && Math.abs(score) <= drawScore ? drawPlies + 1 : 0;
+        if (plies >= drawMinPly && drawPlies >= 2 * drawMoves) {
+          return new SimpleEntry<>(GameState.DRAW_BY_AGREEMENT, REASON_PREFIX + "draw");
+        }
+      }
+      return null;
+    }
+
+  }
+
+}
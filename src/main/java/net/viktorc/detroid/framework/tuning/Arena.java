@@ -1,11 +1,9 @@
 package net.viktorc.detroid.framework.tuning;
 
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import net.viktorc.detroid.framework.uci.SearchResults;
 import net.viktorc.detroid.framework.uci.UCIEngine;
@@ -13,7 +11,12 @@ import net.viktorc.detroid.framework.validation.ControllerEngine;
 import net.viktorc.detroid.framework.validation.GameState;
 
 /**
- * A class for pitting two UCI compatible engines against each other, supervised by a controller engine.
+ * A class for pitting two UCI compatible engines against each other, supervised by a controller engine. The time controls are enforced
+ * by {@link net.viktorc.detroid.framework.tuning.GameClock}s and the time usage of both engines is tracked by
+ * {@link net.viktorc.detroid.framework.tuning.ClockStatistics}. Alternatively, the arena can limit each search to a fixed depth or
+ * number of nodes, in which case the clocks are not enforced and the results of the games do not depend on the speed or the load of the
+ * machine. Games can be ended early according to the rules of an {@link net.viktorc.detroid.framework.tuning.Adjudication}, in which case
+ * the reason of the adjudication is recorded in the PGN of the game.
  *
  * @author Viktor
  * @see UCIEngine
@@ -29,31 +32,62 @@ class Arena implements AutoCloseable {
   private static final long MIN_TC = 500;
 
   private ControllerEngine controller;
-  private ExecutorService pool;
   private Random rand;
   private Logger resultLogger;
   private Logger pgnLogger;
   private long id;
+  private final Integer depthPerMove;
+  private final Long nodesPerMove;
+  private final Adjudication adjudication;
+  private final ClockStatistics engine1ClockStats;
+  private final ClockStatistics engine2ClockStats;
 
   /**
-   * Constructs an arena controlled by the specified engine. A logger can be provided that will be used to log game results.
+   * Constructs an arena controlled by the specified engine. A logger can be provided that will be used to log game results. If a depth or
+   * node limit is specified, the engines search each position up to the limit instead of playing on the clock and the time controls
+   * passed to the arena are ignored.
    *
    * @param controller The engine to control the match.
    * @param resultLogger The logger to log the results of the games.
    * @param pgnLogger The logger to log the complete games in PGN format.
+   * @param depthPerMove The depth each move is to be searched to. It may be null.
+   * @param nodesPerMove The maximum number of nodes to search per move. It may be null.
+   * @param adjudication The rules by which the games are to be adjudicated. If it is null, the games are played until they end by the
+   * rules of chess.
    * @throws Exception If the controller engine cannot be initialised.
+   * @throws IllegalArgumentException If depthPerMove or nodesPerMove is not null and less than 1.
    */
-  public Arena(ControllerEngine controller, Logger resultLogger, Logger pgnLogger) throws Exception {
+  public Arena(ControllerEngine controller, Logger resultLogger, Logger pgnLogger, Integer depthPerMove, Long nodesPerMove,
+      Adjudication adjudication) throws Exception {
+    if ((depthPerMove != null && depthPerMove < 1) || (nodesPerMove != null && nodesPerMove < 1)) {
+      throw new IllegalArgumentException("The depth and node limits have to be greater than 0.");
+    }
     this.controller = controller;
     if (!this.controller.isInit()) {
       this.controller.init();
     }
     this.controller.setControllerMode(true);
-    pool = Executors.newCachedThreadPool();
     this.resultLogger = resultLogger;
     this.pgnLogger = pgnLogger;
     rand = new Random(System.nanoTime());
     id = rand.nextLong();
+    engine1ClockStats = new ClockStatistics();
+    engine2ClockStats = new ClockStatistics();
+    this.depthPerMove = depthPerMove;
+    this.nodesPerMove = nodesPerMove;
+    this.adjudication = adjudication;
+  }
+
+  /**
+   * Constructs an arena controlled by the specified engine. A logger can be provided that will be used to log game results.
+   *
+   * @param controller The engine to control the match.
+   * @param resultLogger The logger to log the results of the games.
+   * @param pgnLogger The logger to log the complete games in PGN format.
+   * @throws Exception If the controller engine cannot be initialised.
+   */
+  public Arena(ControllerEngine controller, Logger resultLogger, Logger pgnLogger) throws Exception {
+    this(controller, resultLogger, pgnLogger, null, null, null);
   }
 
   /**
@@ -75,28 +109,88 @@ class Arena implements AutoCloseable {
     return id;
   }
 
-  private SearchResults searchPosition(UCIEngine engine, Timer timer, AtomicLong timeLeft, AtomicLong oppTimeLeft,
-      long timeIncPerMove, boolean white) throws Exception {
-    timeLeft.set(timeLeft.get() + timeIncPerMove);
-    TimerTask task = new TimerTask() {
+  /**
+   * Returns the time usage statistics of the engines that played as engine1 in the arena since its creation or the last reset.
+   *
+   * @return The clock statistics of engine1.
+   */
+  public ClockStatistics getEngine1ClockStatistics() {
+    return engine1ClockStats;
+  }
+
+  /**
+   * Returns the time usage statistics of the engines that played as engine2 in the arena since its creation or the last reset.
+   *
+   * @return The clock statistics of engine2.
+   */
+  public ClockStatistics getEngine2ClockStatistics() {
+    return engine2ClockStats;
+  }
 
-      @Override
-      public void run() {
-        engine.stop();
+  /**
+   * Clears the time usage statistics of both engines. It should not be called while a game is being played in the arena.
+   */
+  public void resetClockStatistics() {
+    engine1ClockStats.reset();
+    engine2ClockStats.reset();
+  }
+
+  /**
+   * Returns whether the searches are limited by depth or nodes instead of the clock.
+   *
+   * @return Whether the arena plays games with fixed search limits.
+   */
+  public boolean isFixedLimitMode() {
+    return depthPerMove != null || nodesPerMove != null;
+  }
+
+  /**
+   * Has the engine to move search the current position and plays its move on the controller and on both engines. Only the time spent
+   * searching is charged to the engine's clock; the time spent on processing the move is recorded as overhead. In fixed limit mode, the
+   * search is not timed out and the clock is only used to record the time usage.
+   *
+   * @param engine The engine to move.
+   * @param opponent The opponent engine.
+   * @param clock The game clock.
+   * @param white Whether the engine to move plays with the white pieces.
+   * @param clockStats The time usage statistics of the engine to move.
+   * @return The results of the search of the engine to move.
+   * @throws Exception If the engine runs out of time or returns an illegal move.
+   */
+  private SearchResults makeMove(UCIEngine engine, UCIEngine opponent, GameClock clock, boolean white, ClockStatistics clockStats)
+      throws Exception {
+    String side = white ? "White" : "Black";
+    long inc = clock.getIncrementMillis();
+    SearchResults res;
+    long searchTime;
+    if (isFixedLimitMode()) {
+      long searchStart = System.nanoTime();
+      res = engine.search(null, null, null, null, null, null, null, depthPerMove, nodesPerMove, null, null, null);
+      searchTime = System.nanoTime() - searchStart;
+    } else {
+      clock.start(white, engine::stop);
+      try {
+        res = engine.search(null, null, clock.getRemainingMillis(true), clock.getRemainingMillis(false), inc, inc, null, null, null,
+            null, null, null);
+      } finally {
+        searchTime = clock.stop();
       }
-    };
-    timer.schedule(task, timeLeft.get());
-    long start = System.nanoTime();
-    SearchResults res = engine.search(null, null, white ? timeLeft.get() : oppTimeLeft.get(),
-        white ? oppTimeLeft.get() : timeLeft.get(), timeIncPerMove, timeIncPerMove, null, null,
-        null, null, null, null);
-    long end = System.nanoTime();
-    task.cancel();
-    timeLeft.set(timeLeft.get() - Math.round((double) (end - start) / 1e6));
-    if (timeLeft.get() <= 0 || !controller.play(res.getBestMove())) {
-      throw new GameOverException(timeLeft.get() <= 0 ?
-          "Engine1 lost on time." : "Engine1 returned an illegal move: " + res.getBestMove() + ".");
     }
+    if (res == null) {
+      throw new GameOverException(side + " failed to return a move.");
+    }
+    if (!isFixedLimitMode() && clock.isFlagFallen(white)) {
+      clockStats.recordTimeLoss(clock.getOverrunNanos());
+      throw new GameOverException(side + " lost on time.");
+    }
+    long overheadStart = System.nanoTime();
+    String move = res.getBestMove();
+    if (!controller.play(move)) {
+      throw new GameOverException(side + " returned an illegal move: " + move + ".");
+    }
+    engine.play(move);
+    opponent.play(move);
+    clockStats.recordMove(searchTime, System.nanoTime() - overheadStart);
     return res;
   }
 
@@ -109,10 +203,16 @@ class Arena implements AutoCloseable {
   private void logArenaHeader(String engine1Name, String engine2Name, int games, long timePerGame,
       long timeIncPerMove) {
     if (resultLogger != null) {
+      String limits;
+      if (isFixedLimitMode()) {
+        limits = (depthPerMove != null ? " Depth: " + depthPerMove : "") + (nodesPerMove != null ? " Nodes: " + nodesPerMove : "");
+      } else {
+        limits = " TC: " + timePerGame + (timeIncPerMove != 0 ? " + " + timeIncPerMove : "");
+      }
       resultLogger.info("--------------------------------------MATCH STARTED" +
           "--------------------------------------\n" + "Arena: " + id + "\n" +
           "Engine1: " + engine1Name + " - Engine2: " + engine2Name + "\n" +
-          "Games: " + games + " TC: " + timePerGame + (timeIncPerMove != 0 ? " + " + timeIncPerMove : "") +
+          "Games: " + games + limits +
           "\n\n");
     }
   }
@@ -154,6 +254,10 @@ class Arena implements AutoCloseable {
           result = "DRAW";
           state = "Fifty move rule";
           break;
+        case DRAW_BY_AGREEMENT:
+          result = "DRAW";
+          state = "Agreement";
+          break;
         default:
           result = "";
           state = "";
@@ -165,10 +269,137 @@ class Arena implements AutoCloseable {
     }
   }
 
+  /**
+   * Plays a single game between the two engines starting from the specified position.
+   *
+   * @param engine1 Contender number one. It has to be initialised.
+   * @param engine2 Contender number two. It has to be initialised.
+   * @param engine1White Whether engine1 plays with the white pieces.
+   * @param startPosition The position in FEN to start the game from. If it is null, the game starts from the standard initial position.
+   * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of the game.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @return The final state of the game and the reason of the termination if the game was forfeited.
+   */
+  private Entry<GameState, String> playGame(UCIEngine engine1, UCIEngine engine2, boolean engine1White, String startPosition,
+      long timePerGame, long timeIncPerMove) {
+    GameClock clock = new GameClock(timePerGame, timeIncPerMove);
+    boolean engine1Turn = engine1White == (startPosition == null || isWhitesTurn(startPosition));
+    Adjudication.Tracker adjudicationTracker = adjudication == null ? null : adjudication.newTracker();
+    engine1.newGame();
+    engine2.newGame();
+    controller.newGame();
+    if (startPosition == null) {
+      engine1.setPosition();
+      engine2.setPosition();
+      controller.setPosition();
+    } else if (!controller.setPosition(startPosition) || !engine1.setPosition(startPosition) ||
+        !engine2.setPosition(startPosition)) {
+      throw new IllegalArgumentException("Illegal start position: " + startPosition);
+    }
+    assignEngineNames(engine1White);
+    while (controller.getGameState() == GameState.IN_PROGRESS) {
+      boolean white = engine1Turn == engine1White;
+      SearchResults res;
+      try {
+        res = engine1Turn ? makeMove(engine1, engine2, clock, white, engine1ClockStats) :
+            makeMove(engine2, engine1, clock, white, engine2ClockStats);
+      } catch (Exception e) {
+        return terminate(white ? GameState.UNSPECIFIED_BLACK_WIN : GameState.UNSPECIFIED_WHITE_WIN, String.valueOf(e.getMessage()));
+      }
+      if (adjudicationTracker != null && controller.getGameState() == GameState.IN_PROGRESS) {
+        Entry<GameState, String> verdict = adjudicationTracker.update(res, white, controller.toFEN());
+        if (verdict != null) {
+          return terminate(verdict.getKey(), verdict.getValue());
+        }
+      }
+      engine1Turn = !engine1Turn;
+    }
+    return new SimpleEntry<>(controller.getGameState(), "");
+  }
+
+  /**
+   * Ends the game on the controller before it would end by the rules of chess and records the reason of the termination.
+   *
+   * @param state The state of the game. It is either a draw by agreement or an unspecified win.
+   * @param reason The reason of the termination.
+   * @return The final state of the game and the reason of its termination.
+   */
+  private Entry<GameState, String> terminate(GameState state, String reason) {
+    if (state == GameState.UNSPECIFIED_WHITE_WIN) {
+      controller.blackForfeit();
+    } else if (state == GameState.UNSPECIFIED_BLACK_WIN) {
+      controller.whiteForfeit();
+    } else {
+      controller.drawByAgreement();
+    }
+    controller.setTermination(reason);
+    return new SimpleEntry<>(state, reason);
+  }
+
+  /**
+   * Returns whether it is white's turn in the position.
+   *
+   * @param fen The position in FEN.
+   * @return Whether white is to move.
+   */
+  private static boolean isWhitesTurn(String fen) {
+    String[] fields = fen.trim().split("\\s+");
+    return fields.length < 2 || !"b".equalsIgnoreCase(fields[1]);
+  }
+
+  /**
+   * Plays a single game between the two engines and returns the result from the point of view of engine1.
+   *
+   * @param engine1 Contender number one.
+   * @param engine2 Contender number two.
+   * @param engine1White Whether engine1 plays with the white pieces.
+   * @param startPosition The position in FEN to start the game from. If it is null, the game starts from the standard initial position.
+   * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of each game. If it is
+   * less than 500, it will default to 500.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @return The result of the game.
+   * @throws Exception If either of the engines is not initialised and an attempt at initialisation fails.
+   */
+  public synchronized MatchResult play(UCIEngine engine1, UCIEngine engine2, boolean engine1White, String startPosition,
+      long timePerGame, long timeIncPerMove) throws Exception {
+    if (!engine1.isInit()) {
+      engine1.init();
+    }
+    if (!engine2.isInit()) {
+      engine2.init();
+    }
+    Entry<GameState, String> outcome = playGame(engine1, engine2, engine1White, startPosition, Math.max(MIN_TC, timePerGame),
+        Math.max(0, timeIncPerMove));
+    MatchResult result = toMatchResult(outcome.getKey(), engine1White);
+    logResults(outcome.getKey(), outcome.getValue(), engine1White, result.getEngine1Wins(), result.getEngine2Wins(),
+        result.getDraws());
+    return result;
+  }
+
+  /**
+   * Returns the last game played in the arena in PGN.
+   *
+   * @return The PGN of the last game.
+   */
+  public synchronized String toPGN() {
+    return controller.toPGN();
+  }
+
+  private static MatchResult toMatchResult(GameState state, boolean engine1White) {
+    if (state == GameState.WHITE_MATES || state == GameState.UNSPECIFIED_WHITE_WIN) {
+      return engine1White ? new MatchResult(1, 0, 0) : new MatchResult(0, 1, 0);
+    } else if (state == GameState.BLACK_MATES || state == GameState.UNSPECIFIED_BLACK_WIN) {
+      return engine1White ? new MatchResult(0, 1, 0) : new MatchResult(1, 0, 0);
+    }
+    return new MatchResult(0, 0, 1);
+  }
+
   /**
    * Pits the two engines against each other playing the specified number of games with the number of milliseconds per game allotted for
    * each engine to make their moves. The engines play alternating their colours after each game so it is recommended to specify an even
-   * number for the number of games to play.
+   * number for the number of games to play. If openings are specified, each consecutive pair of games is started from the next opening in
+   * the list, cycling through the list if there are more game pairs than openings, so that both engines play each opening with both
+   * colours.
    *
    * @param engine1 Contender number one.
    * @param engine2 Contender number two.
@@ -176,12 +407,12 @@ class Arena implements AutoCloseable {
    * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of each game. If it is
    * less than 500, it will default to 500.
    * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @param openings A list of start positions in FEN. If it is null or empty, all games start from the standard initial position.
    * @return The results of the match.
    * @throws Exception If either of the engines is not initialised and an attempt at initialisation fails.
    */
   public synchronized MatchResult match(UCIEngine engine1, UCIEngine engine2, int games, long timePerGame,
-      long timeIncPerMove) throws Exception {
-    Timer timer = null;
+      long timeIncPerMove, List<String> openings) throws Exception {
     int engine1Wins = 0;
     int engine2Wins = 0;
     int draws = 0;
@@ -196,79 +427,48 @@ class Arena implements AutoCloseable {
     }
     logArenaHeader(engine1.getName(), engine2.getName(), games, timePerGame, timeIncPerMove);
     boolean engine1White = rand.nextBoolean();
-    Games:
     for (int i = 0; i < games; i++, engine1White = !engine1White) {
-      SearchResults res;
-      AtomicLong engine1Time = new AtomicLong(timePerGame);
-      AtomicLong engine2Time = new AtomicLong(timePerGame);
-      boolean engine1Turn = engine1White;
-      if (timer != null) {
-        timer.cancel();
-      }
-      timer = new Timer();
-      engine1.newGame();
-      engine2.newGame();
-      controller.newGame();
-      engine1.setPosition();
-      engine2.setPosition();
-      controller.setPosition();
-      assignEngineNames(engine1White);
-      while (controller.getGameState() == GameState.IN_PROGRESS) {
-        if (engine1Turn) {
-          try {
-            res = searchPosition(engine1, timer, engine1Time, engine2Time, timeIncPerMove, engine1White);
-          } catch (Exception e) {
-            timer.cancel();
-            engine2Wins++;
-            logResults(GameState.UNSPECIFIED_BLACK_WIN, e.getMessage(), engine1White, engine1Wins, engine2Wins, draws);
-            continue Games;
-          }
-        } else {
-          try {
-            res = searchPosition(engine2, timer, engine2Time, engine1Time, timeIncPerMove, !engine1White);
-          } catch (Exception e) {
-            timer.cancel();
-            engine1Wins++;
-            logResults(GameState.UNSPECIFIED_WHITE_WIN, e.getMessage(), engine1White, engine1Wins, engine2Wins, draws);
-            continue Games;
-          }
-        }
-        engine1.play(res.getBestMove());
-        engine2.play(res.getBestMove());
-        engine1Turn = !engine1Turn;
-      }
-      GameState state = controller.getGameState();
-      if (state == GameState.WHITE_MATES || state == GameState.UNSPECIFIED_WHITE_WIN) {
-        if (engine1White) {
-          engine1Wins++;
-        } else {
-          engine2Wins++;
-        }
-      } else if (state == GameState.BLACK_MATES || state == GameState.UNSPECIFIED_BLACK_WIN) {
-        if (engine1White) {
-          engine2Wins++;
-        } else {
-          engine1Wins++;
-        }
-      } else {
-        draws++;
-      }
-      logResults(state, "", engine1White, engine1Wins, engine2Wins, draws);
+      String opening = openings == null || openings.isEmpty() ? null : openings.get((i / 2) % openings.size());
+      Entry<GameState, String> outcome = playGame(engine1, engine2, engine1White, opening, timePerGame, timeIncPerMove);
+      MatchResult result = toMatchResult(outcome.getKey(), engine1White);
+      engine1Wins += result.getEngine1Wins();
+      engine2Wins += result.getEngine2Wins();
+      draws += result.getDraws();
+      logResults(outcome.getKey(), outcome.getValue(), engine1White, engine1Wins, engine2Wins, draws);
+      // Forfeited and adjudicated games are logged as well; the reason of their termination is recorded in the PGN.
       if (pgnLogger != null) {
         String pgn = controller.toPGN();
         pgnLogger.info(pgn);
       }
     }
-    if (timer != null) {
-      timer.cancel();
+    if (resultLogger != null) {
+      resultLogger.info("Arena: " + id + "\n" + "Engine1 clock (total): " + engine1ClockStats + "\n" +
+          "Engine2 clock (total): " + engine2ClockStats + "\n\n");
     }
     return new MatchResult(engine1Wins, engine2Wins, draws);
   }
 
+  /**
+   * Pits the two engines against each other playing the specified number of games from the standard initial position with the number of
+   * milliseconds per game allotted for each engine to make their moves. The engines play alternating their colours after each game so it
+   * is recommended to specify an even number for the number of games to play.
+   *
+   * @param engine1 Contender number one.
+   * @param engine2 Contender number two.
+   * @param games The number of games to play. Should be an even number.
+   * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of each game. If it is
+   * less than 500, it will default to 500.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @return The results of the match.
+   * @throws Exception If either of the engines is not initialised and an attempt at initialisation fails.
+   */
+  public MatchResult match(UCIEngine engine1, UCIEngine engine2, int games, long timePerGame, long timeIncPerMove) throws Exception {
+    return match(engine1, engine2, games, timePerGame, timeIncPerMove, null);
+  }
+
   @Override
   public void close() {
     controller.close();
-    pool.shutdown();
   }
 
   /**
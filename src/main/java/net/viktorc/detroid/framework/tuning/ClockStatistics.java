@@ -0,0 +1,148 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe statistics about the time usage of an engine in the {@link net.viktorc.detroid.framework.tuning.Arena}. Besides the number
+ * of moves and time losses, it records the time the arena spent between the engine's moves without charging any of the clocks (e.g.
+ * legality checks and updating the engines' positions) and the time it took the engine to return its move after having been signalled to
+ * stop because its time was up. At short time controls these overheads can make up a considerable fraction of the time per move.
+ *
+ * @author Viktor
+ */
+final class ClockStatistics {
+
+  private final LongAdder moves;
+  private final LongAdder timeLosses;
+  private final LongAdder searchNanos;
+  private final LongAdder overheadNanos;
+  private final LongAccumulator maxOverheadNanos;
+  private final LongAccumulator maxOverrunNanos;
+
+  /**
+   * Constructs an empty instance.
+   */
+  ClockStatistics() {
+    moves = new LongAdder();
+    timeLosses = new LongAdder();
+    searchNanos = new LongAdder();
+    overheadNanos = new LongAdder();
+    maxOverheadNanos = new LongAccumulator(Math::max, 0);
+    maxOverrunNanos = new LongAccumulator(Math::max, 0);
+  }
+
+  /**
+   * Records a move.
+   *
+   * @param searchTimeNanos The time the engine's clock was charged for the move.
+   * @param overheadTimeNanos The time spent by the arena on processing the move that was not charged to any of the clocks.
+   */
+  void recordMove(long searchTimeNanos, long overheadTimeNanos) {
+    moves.increment();
+    searchNanos.add(searchTimeNanos);
+    overheadNanos.add(overheadTimeNanos);
+    maxOverheadNanos.accumulate(overheadTimeNanos);
+  }
+
+  /**
+   * Records a loss on time.
+   *
+   * @param overrunNanos The number of nanoseconds by which the engine exceeded its remaining time.
+   */
+  void recordTimeLoss(long overrunNanos) {
+    timeLosses.increment();
+    maxOverrunNanos.accumulate(overrunNanos);
+  }
+
+  /**
+   * Adds the statistics of another instance to this one.
+   *
+   * @param other The statistics to merge into this instance.
+   */
+  void merge(ClockStatistics other) {
+    moves.add(other.moves.sum());
+    timeLosses.add(other.timeLosses.sum());
+    searchNanos.add(other.searchNanos.sum());
+    overheadNanos.add(other.overheadNanos.sum());
+    maxOverheadNanos.accumulate(other.maxOverheadNanos.get());
+    maxOverrunNanos.accumulate(other.maxOverrunNanos.get());
+  }
+
+  /**
+   * Clears the statistics. It should not be called while moves are being recorded.
+   */
+  void reset() {
+    moves.reset();
+    timeLosses.reset();
+    searchNanos.reset();
+    overheadNanos.reset();
+    maxOverheadNanos.reset();
+    maxOverrunNanos.reset();
+  }
+
+  /**
+   * Returns the number of moves recorded.
+   *
+   * @return The number of moves.
+   */
+  long getMoves() {
+    return moves.sum();
+  }
+
+  /**
+   * Returns the number of games lost on time.
+   *
+   * @return The number of time losses.
+   */
+  long getTimeLosses() {
+    return timeLosses.sum();
+  }
+
+  /**
+   * Returns the average time charged to the engine's clock per move in microseconds.
+   *
+   * @return The average search time per move.
+   */
+  double getAverageSearchTimeMicros() {
+    long moves = getMoves();
+    return moves == 0 ? 0 : ((double) TimeUnit.NANOSECONDS.toMicros(searchNanos.sum())) / moves;
+  }
+
+  /**
+   * Returns the average uncharged overhead per move in microseconds.
+   *
+   * @return The average overhead per move.
+   */
+  double getAverageOverheadMicros() {
+    long moves = getMoves();
+    return moves == 0 ? 0 : ((double) TimeUnit.NANOSECONDS.toMicros(overheadNanos.sum())) / moves;
+  }
+
+  /**
+   * Returns the greatest uncharged overhead of a single move in microseconds.
+   *
+   * @return The maximum overhead.
+   */
+  long getMaxOverheadMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxOverheadNanos.get());
+  }
+
+  /**
+   * Returns the greatest time by which the engine exceeded its remaining time in microseconds.
+   *
+   * @return The maximum time overrun.
+   */
+  long getMaxOverrunMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxOverrunNanos.get());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Moves: %d; Time losses: %d; Avg. search time: %.1fus; Avg. overhead: %.1fus; Max. overhead: %dus; " +
+        "Max. overrun: %dus", getMoves(), getTimeLosses(), getAverageSearchTimeMicros(), getAverageOverheadMicros(),
+        getMaxOverheadMicros(), getMaxOverrunMicros());
+  }
+
+}
@@ -6,20 +6,22 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.logging.FileHandler;
-import java.util.logging.Formatter;
-import java.util.logging.LogRecord;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import net.viktorc.detroid.framework.engine.Position;
 import net.viktorc.detroid.framework.uci.UCIEngine;
 import net.viktorc.detroid.framework.validation.ControllerEngine;
 import net.viktorc.detroid.framework.validation.EPDRecord;
@@ -33,11 +35,17 @@ import net.viktorc.detroid.framework.validation.GameState;
 public final class DataSetUtils {
 
   /**
-   * The pattern of the first line of every game in PGN.
+   * The number of EPD records processed by a thread at a time when filtering or transforming.
    */
-  private static final String FIRST_PGN_LINE_REGEX = "(?i)^\\[EVENT (.)+\\]$";
-  private static final Pattern WHITE_ELO_PATTERN = Pattern.compile("\\[WhiteElo \"([0-9]+)\"\\]");
-  private static final Pattern BLACK_ELO_PATTERN = Pattern.compile("\\[BlackElo \"([0-9]+)\"\\]");
+  private static final int CHUNK_SIZE = 4096;
+  /**
+   * The default number of MBs the de-duplication of EPD records may use.
+   */
+  private static final int DEF_DEDUPLICATION_MEMORY_LIMIT = 1024;
+  /**
+   * The estimated number of bytes of heap space a record held in memory for de-duplication requires per byte of its size in the file.
+   */
+  private static final int DEDUPLICATION_MEMORY_FACTOR = 6;
 
   private DataSetUtils() {
   }
@@ -47,81 +55,82 @@ public final class DataSetUtils {
    *
    * @param engines A list of {@link net.viktorc.detroid.framework.tuning.SelfPlayEngines} instances that each contain the engines needed
    * for playing games in the {@link net.viktorc.detroid.framework.tuning.Arena}. For each non-null element in the list, a new thread will
-   * be utilized for the optimization. E.g. if engines is a list of four non-null elements, the games in the fitness function will be
-   * distributed and played parallel on four threads. The list's first element cannot be null or a {@link java.lang.NullPointerException} is
-   * thrown.
+   * be utilized for playing games. E.g. if engines is a list of four non-null elements, the games will be scheduled onto the four engine
+   * slots by a {@link net.viktorc.detroid.framework.tuning.Tournament} and played parallel on four threads.
    * @param games The number of games to play.
    * @param timePerGame The time each engine will have per game in milliseconds.
    * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move. be
    * done.
+   * @param depthPerMove The depth each move is to be searched to instead of playing on the clock. It may be null.
+   * @param nodesPerMove The maximum number of nodes to search per move instead of playing on the clock. It may be null.
+   * @param adjudication The rules by which the games are to be adjudicated. It may be null.
+   * @param openings A list of start positions in FEN. Each opening is played with both colours and the opening pairs are distributed over
+   * the engine slots. If it is null or empty, all games start from the standard initial position.
    * @param pgnFilePath The path to the output PGN file.
-   * @throws IOException If the file specified by filePath doesn't exist and cannot be created.
+   * @throws Exception If the file specified by filePath doesn't exist and cannot be created, the engines cannot be initialised, or an
+   * execution exception occurs in one of the threads.
    * @throws NullPointerException If the parameter engines is null.
-   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element.
-   * @throws ExecutionException If an execution exception occurs in one of the threads.
-   * @throws InterruptedException If the current thread is interrupted while waiting for the worker threads to finish.
+   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element or either of the search limits is less
+   * than 1.
    */
   public static void generatePGNFile(List<SelfPlayEngines<UCIEngine>> engines, int games, long timePerGame, long timeIncPerMove,
-      String pgnFilePath) throws IOException, InterruptedException, ExecutionException {
-    ArrayList<SelfPlayEngines<UCIEngine>> enginesList = new ArrayList<>();
-    for (SelfPlayEngines<UCIEngine> e : engines) {
-      if (e != null) {
-        enginesList.add(e);
-      }
-    }
-    if (enginesList.size() == 0) {
-      throw new IllegalArgumentException("The parameter engines has to contain at least 1 non-null element.");
+      Integer depthPerMove, Long nodesPerMove, Adjudication adjudication, List<String> openings, String pgnFilePath)
+      throws Exception {
+    try (Tournament tournament = new Tournament(engines, null, pgnFilePath, depthPerMove, nodesPerMove, adjudication)) {
+      tournament.play(games, timePerGame, timeIncPerMove, openings, null);
     }
-    ExecutorService pool = Executors.newFixedThreadPool(Math.min(Runtime.getRuntime().availableProcessors(),
-        enginesList.size()));
-    try {
-      ArrayList<Future<Void>> futures = new ArrayList<>();
-      int remainingGames = games;
-      int remainingEngines = engines.size();
-      for (SelfPlayEngines<UCIEngine> e : engines) {
-        int workLoad = remainingGames / remainingEngines;
-        remainingGames -= workLoad;
-        remainingEngines--;
-        futures.add(pool.submit(() -> {
-          Logger pgnLogger = Logger.getAnonymousLogger();
-          pgnLogger.setUseParentHandlers(false);
-          FileHandler handler = new FileHandler(pgnFilePath, true);
-          handler.setFormatter(new Formatter() {
+  }
 
-            @Override
-            public String format(LogRecord record) {
-              return record.getMessage() + System.lineSeparator() + System.lineSeparator();
-            }
-          });
-          pgnLogger.addHandler(handler);
-          Arena a = new Arena(e.getController(), null, pgnLogger);
-          a.match(e.getEngine(), e.getOpponentEngine(), workLoad, timePerGame, timeIncPerMove);
-          a.close();
-          handler.flush();
-          handler.close();
-          return null;
-        }));
-      }
-      for (Future<?> f : futures) {
-        f.get();
-      }
-    } finally {
-      pool.shutdown();
-      for (int i = 1; i < enginesList.size(); i++) {
-        String fileName = pgnFilePath + "." + i;
-        File extraFile = new File(fileName);
-        if (extraFile.exists()) {
-          try (BufferedReader reader = new BufferedReader(new FileReader(fileName));
-              BufferedWriter writer = new BufferedWriter(new FileWriter(pgnFilePath, true))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-              writer.write(line + System.lineSeparator());
-            }
-          }
-          Files.delete(extraFile.toPath());
-        }
-      }
-    }
+  /**
+   * Generates a PGN file of self-play games started from the standard initial position.
+   *
+   * @param engines A list of {@link net.viktorc.detroid.framework.tuning.SelfPlayEngines} instances that each contain the engines needed
+   * for playing games in the {@link net.viktorc.detroid.framework.tuning.Arena}. For each non-null element in the list, a new thread will
+   * be utilized for playing games.
+   * @param games The number of games to play.
+   * @param timePerGame The time each engine will have per game in milliseconds.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @param pgnFilePath The path to the output PGN file.
+   * @throws Exception If the file specified by filePath doesn't exist and cannot be created, the engines cannot be initialised, or an
+   * execution exception occurs in one of the threads.
+   * @throws NullPointerException If the parameter engines is null.
+   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element.
+   */
+  public static void generatePGNFile(List<SelfPlayEngines<UCIEngine>> engines, int games, long timePerGame, long timeIncPerMove,
+      String pgnFilePath) throws Exception {
+    generatePGNFile(engines, games, timePerGame, timeIncPerMove, null, null, null, null, pgnFilePath);
+  }
+
+  /**
+   * Generates an EPD file of positions labelled by the results of the games the positions occurred. This file can then be used for the
+   * optimization of engine parameters. The games are split, replayed, and written by a streaming
+   * {@link net.viktorc.detroid.framework.tuning.PGNConversionPipeline} that replays the games in parallel using one thread per controller
+   * engine.
+   *
+   * @param engines The controller engines that will be responsible for parsing the PGNs and providing FEN descriptions for each position.
+   * For each non-null element in the list, a new thread will be utilized for replaying games.
+   * @param pgnFilePath The path to the file containing the games in PGN.
+   * @param epdFilePath The output file path.
+   * @param gameResultOpCode The operation code of the label.
+   * @param maxNumOfGames The maximum number of games that will be parsed and converted into EPD records.
+   * @param minElo The minimum Elo rating required for each party to process the game.
+   * @param minHalfMoveIndex The half move index from which positions of a game are saved in the EPD file.
+   * @param positionsPerGame The maximum number of positions to save per game. If a game has more eligible positions, a random sample of
+   * this size is saved. If it is null, all the eligible positions are saved.
+   * @param ordered Whether the positions should be written in the order of the games in the PGN file. If it is false, the positions of
+   * each game are written as soon as the game is converted which may yield a higher throughput.
+   * @param logger The logger to log the progress and throughput of the conversion to. It may be null.
+   * @return The number of games processed.
+   * @throws Exception If the input file does not exist or cannot be read, if the output file path is invalid, if any of the engines is not
+   * initialized and cannot be initialized, or if an exception occurs in one of the threads.
+   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element.
+   */
+  public static int generateEPDFile(List<? extends ControllerEngine> engines, String pgnFilePath, String epdFilePath,
+      String gameResultOpCode, long maxNumOfGames, Integer minElo, Integer minHalfMoveIndex, Integer positionsPerGame, boolean ordered,
+      Logger logger) throws Exception {
+    PGNConversionPipeline pipeline = new PGNConversionPipeline(engines, gameResultOpCode, minElo, minHalfMoveIndex, positionsPerGame,
+        ordered, logger);
+    return (int) pipeline.run(pgnFilePath, epdFilePath, maxNumOfGames);
   }
 
   /**
@@ -141,72 +150,353 @@ public final class DataSetUtils {
    */
   public static int generateEPDFile(ControllerEngine engine, String pgnFilePath, String epdFilePath, String gameResultOpCode,
       long maxNumOfGames, Integer minElo, Integer minHalfMoveIndex) throws Exception {
-    try (BufferedReader reader = new BufferedReader(new FileReader(pgnFilePath));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(epdFilePath))) {
+    return generateEPDFile(Collections.singletonList(engine), pgnFilePath, epdFilePath, gameResultOpCode, maxNumOfGames, minElo,
+        minHalfMoveIndex, null, true, null);
+  }
+
+  /**
+   * Transforms a chunk of EPD records using one of the idle transformers.
+   *
+   * @param lines The EPD records.
+   * @param transformers The queue of idle transformers.
+   * @return The transformed records without the dropped ones.
+   * @throws Exception If the thread is interrupted or a record cannot be transformed.
+   */
+  private static List<String> transformChunk(List<String> lines, BlockingQueue<RecordTransformer> transformers) throws Exception {
+    RecordTransformer transformer = transformers.take();
+    try {
+      List<String> transformedLines = new ArrayList<>(lines.size());
+      for (String line : lines) {
+        String transformedLine = transformer.transform(line);
+        if (transformedLine != null) {
+          transformedLines.add(transformedLine);
+        }
+      }
+      return transformedLines;
+    } finally {
+      transformers.put(transformer);
+    }
+  }
+
+  /**
+   * Writes the lines to the writer.
+   *
+   * @param writer The writer.
+   * @param lines The lines to write.
+   * @return The number of lines written.
+   * @throws IOException If the lines cannot be written.
+   */
+  private static int writeLines(BufferedWriter writer, List<String> lines) throws IOException {
+    for (String line : lines) {
+      writer.write(line + System.lineSeparator());
+    }
+    return lines.size();
+  }
+
+  /**
+   * Transforms all the lines of the source EPD file and appends the results to the destination file in a single pass. The records are
+   * processed in chunks by the specified number of threads each of which uses its own transformer instance. The order of the records is
+   * preserved.
+   *
+   * @param sourceEpdFile The file path to the source EPD file.
+   * @param destinationEpdFile The path to the destination file. If it doesn't exist it will be created.
+   * @param transformerFactory A supplier of transformer instances. It is called once per thread.
+   * @param concurrency The number of threads to use.
+   * @param logger A logger to log the number of records read and written to. It may be null.
+   * @return The number of records written to the destination file.
+   * @throws Exception If there is an I/O issue or an exception occurs in one of the threads.
+   * @throws IllegalArgumentException If the source and destination paths are the same or concurrency is less than 1.
+   */
+  private static long transformPositions(String sourceEpdFile, String destinationEpdFile,
+      Supplier<? extends RecordTransformer> transformerFactory, int concurrency, Logger logger) throws Exception {
+    if (sourceEpdFile.equals(destinationEpdFile)) {
+      throw new IllegalArgumentException();
+    }
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("The parameter concurrency has to be greater than 0.");
+    }
+    BlockingQueue<RecordTransformer> transformers = new ArrayBlockingQueue<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      transformers.add(transformerFactory.get());
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+    Deque<Future<List<String>>> pendingChunks = new ArrayDeque<>();
+    long linesRead = 0;
+    long linesWritten = 0;
+    long startTime = System.currentTimeMillis();
+    try (BufferedReader reader = new BufferedReader(new FileReader(sourceEpdFile));
+        BufferedWriter writer = new BufferedWriter(new FileWriter(destinationEpdFile, true))) {
+      List<String> chunk = new ArrayList<>(CHUNK_SIZE);
       String line;
-      StringBuffer pgnBuffer = new StringBuffer();
-      int gameCount = 0;
+      do {
+        line = reader.readLine();
+        if (line != null && !line.trim().isEmpty()) {
+          chunk.add(line);
+          linesRead++;
+        }
+        if (chunk.size() == CHUNK_SIZE || (line == null && !chunk.isEmpty())) {
+          List<String> lines = chunk;
+          pendingChunks.add(pool.submit(() -> transformChunk(lines, transformers)));
+          chunk = new ArrayList<>(CHUNK_SIZE);
+          if (pendingChunks.size() > 2 * concurrency) {
+            linesWritten += writeLines(writer, pendingChunks.poll().get());
+          }
+        }
+      } while (line != null);
+      while (!pendingChunks.isEmpty()) {
+        linesWritten += writeLines(writer, pendingChunks.poll().get());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    if (logger != null) {
+      logger.info(String.format("Records read: %d; records written: %d; time: %.1fs", linesRead, linesWritten,
+          (System.currentTimeMillis() - startTime) / 1000d));
+    }
+    return linesWritten;
+  }
+
+  /**
+   * Copies all the lines from the source EPD file that pass the filter to the destination file in a single pass. The records are
+   * processed in chunks by the specified number of threads each of which uses its own filter instance. The order of the records is
+   * preserved.
+   *
+   * @param sourceEpdFile The file path to the source EPD file.
+   * @param destinationEpdFile The path to the destination file. If it doesn't exist it will be created.
+   * @param filterFactory A supplier of filter instances. It is called once per thread; filters that rely on engines should be created
+   * with their own engine instances. Multiple filters can be chained using {@link EPDFilter#and(EPDFilter)}.
+   * @param concurrency The number of threads to use.
+   * @param logger A logger to log the number of records read and kept to. It may be null.
+   * @return The number of records copied to the destination file.
+   * @throws Exception If the source and destination paths are the same, there is an I/O issue, or an exception occurs in one of the
+   * threads.
+   * @throws IllegalArgumentException If the source and destination paths are the same or concurrency is less than 1.
+   */
+  public static long filterPositions(String sourceEpdFile, String destinationEpdFile, Supplier<? extends EPDFilter> filterFactory,
+      int concurrency, Logger logger) throws Exception {
+    return transformPositions(sourceEpdFile, destinationEpdFile, () -> {
+      EPDFilter filter = filterFactory.get();
+      return line -> filter.accept(EPDRecord.parse(line)) ? line : null;
+    }, concurrency, logger);
+  }
+
+  /**
+   * Replaces the position of each record of the source EPD file by the quiet position at the end of the principal variation of a
+   * quiescence search from the position and appends the resulting records to the destination file. The operations of the records,
+   * including the labels, are left unchanged. This way, the static evaluation function is tuned on positions whose score it can actually
+   * express. The records are processed in chunks by as many threads as there are engines. The order of the records is preserved. If an
+   * engine does not support quiescence resolution, the records are copied unchanged.
+   *
+   * @param sourceEpdFile The file path to the source EPD file.
+   * @param destinationEpdFile The path to the destination file. If it doesn't exist it will be created.
+   * @param engines The engines to use for the quiescence searches. Each engine is used exclusively by one thread. The engines are
+   * initialized if necessary and set to deterministic evaluation mode.
+   * @param logger A logger to log the number of records read and written to. It may be null.
+   * @return The number of records written to the destination file.
+   * @throws Exception If an engine cannot be initialized, there is an I/O issue, or an exception occurs in one of the threads.
+   * @throws IllegalArgumentException If the source and destination paths are the same or engines is empty.
+   */
+  public static long resolveQuiescence(String sourceEpdFile, String destinationEpdFile, List<? extends TunableEngine> engines,
+      Logger logger) throws Exception {
+    if (engines.isEmpty()) {
+      throw new IllegalArgumentException("The parameter engines has to contain at least 1 element.");
+    }
+    for (TunableEngine engine : engines) {
       if (!engine.isInit()) {
         engine.init();
       }
-      while ((line = reader.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty()) {
-          continue;
+      engine.setDeterministicEvaluationMode(true);
+    }
+    BlockingQueue<TunableEngine> idleEngines = new ArrayBlockingQueue<>(engines.size(), false, engines);
+    return transformPositions(sourceEpdFile, destinationEpdFile, () -> {
+      TunableEngine engine = idleEngines.poll();
+      return line -> {
+        EPDRecord record = EPDRecord.parse(line);
+        engine.setPosition(record.getPosition());
+        String leaf = engine.resolveQuiescence();
+        return leaf == null ? line : new EPDRecord(leaf, record.getOperations()).toString();
+      };
+    }, engines.size(), logger);
+  }
+
+  /**
+   * Returns the label of the record as a decimal from the point of view of white.
+   *
+   * @param record The EPD record.
+   * @param gameResultOpCode The operation code of the label.
+   * @return The label or null if the record is not labelled.
+   */
+  private static Double toNumericLabel(EPDRecord record, String gameResultOpCode) {
+    String result = record.getOperand(gameResultOpCode);
+    if (result == null) {
+      return null;
+    }
+    result = result.trim();
+    if (GameState.WHITE_MATES.getPGNCode().equals(result)) {
+      return 1d;
+    } else if (GameState.BLACK_MATES.getPGNCode().equals(result)) {
+      return 0d;
+    } else if (GameState.STALE_MATE.getPGNCode().equals(result)) {
+      return .5;
+    }
+    try {
+      return Double.parseDouble(result);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the label value to write for a numeric label. Labels corresponding to game results are written as game results in PGN.
+   *
+   * @param label The numeric label.
+   * @return The label string.
+   */
+  private static String toLabelString(double label) {
+    if (label == 1) {
+      return GameState.WHITE_MATES.getPGNCode();
+    } else if (label == 0) {
+      return GameState.BLACK_MATES.getPGNCode();
+    } else if (label == .5) {
+      return GameState.STALE_MATE.getPGNCode();
+    }
+    return String.format(Locale.ROOT, "%.4f", label);
+  }
+
+  /**
+   * De-duplicates the records of a partition held in memory and writes them to the writer. If labels are not averaged, the first
+   * occurrence of each position is written as soon as it is encountered.
+   *
+   * @param reader The reader of the partition whose lines consist of the hexadecimal key of the position followed by the EPD record.
+   * @param writer The writer of the destination file.
+   * @param gameResultOpCode The operation code of the label.
+   * @param averageLabels Whether the labels of duplicates are to be averaged.
+   * @return The number of records written.
+   * @throws IOException If the partition cannot be read or the destination cannot be written to.
+   */
+  private static long deduplicatePartition(BufferedReader reader, BufferedWriter writer, String gameResultOpCode, boolean averageLabels)
+      throws IOException {
+    Map<Long, DuplicateGroup> groups = new LinkedHashMap<>();
+    long recordsWritten = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int separatorInd = line.indexOf(' ');
+      long key = Long.parseUnsignedLong(line.substring(0, separatorInd), 16);
+      String epd = line.substring(separatorInd + 1);
+      DuplicateGroup group = groups.get(key);
+      if (group == null) {
+        if (averageLabels) {
+          group = new DuplicateGroup(epd);
+        } else {
+          group = DuplicateGroup.SEEN;
+          writer.write(epd + System.lineSeparator());
+          recordsWritten++;
         }
-        boolean doProcess = false;
-        if (line.matches(FIRST_PGN_LINE_REGEX) && pgnBuffer.length() > 0) {
-          doProcess = true;
-        } else if (!reader.ready()) {
-          pgnBuffer.append(line).append("\n");
-          doProcess = true;
+        groups.put(key, group);
+      }
+      if (averageLabels) {
+        Double label = toNumericLabel(EPDRecord.parse(epd), gameResultOpCode);
+        if (label != null) {
+          group.labelSum += label;
+          group.labelCount++;
         }
-        if (doProcess) {
-          String pgn = pgnBuffer.toString().trim();
-          boolean skip = false;
-          if (minElo != null) {
-            Matcher whiteEloMatcher = WHITE_ELO_PATTERN.matcher(pgn);
-            Matcher blackEloMatcher = BLACK_ELO_PATTERN.matcher(pgn);
-            if (whiteEloMatcher.find() && blackEloMatcher.find()) {
-              try {
-                int whiteElo = Integer.parseInt(whiteEloMatcher.group(1));
-                int blackElo = Integer.parseInt(blackEloMatcher.group(1));
-                skip = whiteElo < minElo || blackElo < minElo;
-              } catch (Exception e) {
-                skip = true;
-              }
-            } else {
-              skip = true;
-            }
-          }
-          if (!skip) {
-            gameCount++;
-            engine.setGame(pgn);
-            GameState state = engine.getGameState();
-            if (state != GameState.IN_PROGRESS) {
-              String result = state.getPGNCode();
-              List<EPDRecord> records = new ArrayList<>();
-              do {
-                String fen = engine.toFEN();
-                records.add(new EPDRecord(fen, Collections.singletonMap(gameResultOpCode, "\"" + result + "\"")));
-              } while (engine.unplayLastMove() != null);
-              if (minHalfMoveIndex != null) {
-                records = records.subList(0, Math.max(0, records.size() - Math.max(0, minHalfMoveIndex)));
-              }
-              for (EPDRecord record : records) {
-                writer.write(record + System.lineSeparator());
-              }
+      }
+    }
+    if (averageLabels) {
+      for (DuplicateGroup group : groups.values()) {
+        String epd = group.firstRecord;
+        if (group.labelCount > 0) {
+          EPDRecord record = EPDRecord.parse(epd);
+          Map<String, String> operations = new LinkedHashMap<>(record.getOperations());
+          operations.put(gameResultOpCode, "\"" + toLabelString(group.labelSum / group.labelCount) + "\"");
+          epd = new EPDRecord(record.getPosition(), operations).toString();
+        }
+        writer.write(epd + System.lineSeparator());
+        recordsWritten++;
+      }
+    }
+    return recordsWritten;
+  }
+
+  /**
+   * Copies the records of the source EPD file to the destination file, keeping only one record per position. Positions are identified by
+   * their Zobrist keys as returned by {@link Position#getKey()} after parsing the records into positions. If the estimated memory
+   * requirement of the de-duplication exceeds the memory limit, the records are first partitioned by their keys into temporary files small
+   * enough to be de-duplicated in memory one by one, thus the size of the data set is only limited by the available disk space. In this
+   * case, the records are grouped by partitions in the destination file; otherwise, their original order is preserved.
+   *
+   * @param sourceEpdFile The file path to the source EPD file.
+   * @param destinationEpdFile The path to the destination file. If it doesn't exist it will be created.
+   * @param gameResultOpCode The operation code of the label.
+   * @param averageLabels Whether the labels of duplicate positions should be averaged. If it is false, the first occurrence of each
+   * position is kept as it is. If it is true, the label of the record kept is replaced by the average of the labels of all occurrences of
+   * the position, written as a game result in PGN if possible and as a decimal otherwise.
+   * @param memoryLimit The approximate number of MBs the de-duplication may use. If it is null, a default limit of 1024 MBs is used.
+   * @param logger A logger to log the number of records read and kept to. It may be null.
+   * @return The number of records written to the destination file.
+   * @throws Exception If there is an I/O issue or a record cannot be parsed.
+   * @throws IllegalArgumentException If the source and destination paths are the same or the memory limit is not positive.
+   */
+  public static long deduplicatePositions(String sourceEpdFile, String destinationEpdFile, String gameResultOpCode,
+      boolean averageLabels, Integer memoryLimit, Logger logger) throws Exception {
+    if (sourceEpdFile.equals(destinationEpdFile)) {
+      throw new IllegalArgumentException();
+    }
+    memoryLimit = memoryLimit == null ? DEF_DEDUPLICATION_MEMORY_LIMIT : memoryLimit;
+    if (memoryLimit <= 0) {
+      throw new IllegalArgumentException("The parameter memoryLimit has to be greater than 0.");
+    }
+    long memoryRequirement = new File(sourceEpdFile).length() * DEDUPLICATION_MEMORY_FACTOR;
+    int partitions = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+        (memoryRequirement + (memoryLimit * 1024L * 1024L) - 1) / (memoryLimit * 1024L * 1024L)));
+    long startTime = System.currentTimeMillis();
+    long recordsRead = 0;
+    long recordsWritten = 0;
+    List<File> partitionFiles = new ArrayList<>(partitions);
+    try {
+      List<BufferedWriter> partitionWriters = new ArrayList<>(partitions);
+      try {
+        for (int i = 0; i < partitions; i++) {
+          File partitionFile = File.createTempFile("epd_partition_" + i + "_", ".tmp");
+          partitionFile.deleteOnExit();
+          partitionFiles.add(partitionFile);
+          partitionWriters.add(new BufferedWriter(new FileWriter(partitionFile)));
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(sourceEpdFile))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+              continue;
             }
+            recordsRead++;
+            long key = Position.parse(EPDRecord.parse(line).getPosition()).getKey();
+            BufferedWriter partitionWriter = partitionWriters.get((int) Math.floorMod(key, (long) partitions));
+            partitionWriter.write(Long.toHexString(key) + " " + line + System.lineSeparator());
           }
-          pgnBuffer = new StringBuffer();
         }
-        if (gameCount >= maxNumOfGames) {
-          break;
+      } finally {
+        for (BufferedWriter w : partitionWriters) {
+          w.close();
+        }
+      }
+      try (BufferedWriter writer = new BufferedWriter(new FileWriter(destinationEpdFile, true))) {
+        for (File partitionFile : partitionFiles) {
+          try (BufferedReader reader = new BufferedReader(new FileReader(partitionFile))) {
+            recordsWritten += deduplicatePartition(reader, writer, gameResultOpCode, averageLabels);
+          }
         }
-        pgnBuffer.append(line).append("\n");
       }
-      return gameCount;
+    } finally {
+      for (File partitionFile : partitionFiles) {
+        partitionFile.delete();
+      }
     }
+    if (logger != null) {
+      logger.info(String.format("Records read: %d; unique positions: %d; partitions: %d; time: %.1fs", recordsRead, recordsWritten,
+          partitions, (System.currentTimeMillis() - startTime) / 1000d));
+    }
+    return recordsWritten;
   }
 
   /**
@@ -222,25 +512,8 @@ public final class DataSetUtils {
    */
   public static void filterUnbalancedPositions(String sourceEpdFile, String destinationEpdFile, short imbalance, TunableEngine engine)
       throws Exception {
-    if (sourceEpdFile.equals(destinationEpdFile)) {
-      throw new IllegalArgumentException();
-    }
-    if (!engine.isInit()) {
-      engine.init();
-    }
-    engine.setDeterministicEvaluationMode(true);
-    try (BufferedReader reader = new BufferedReader(new FileReader(sourceEpdFile));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(destinationEpdFile, true))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        EPDRecord record = EPDRecord.parse(line);
-        engine.setPosition(record.getPosition());
-        double score = engine.eval(null);
-        if ((imbalance >= 0 && Math.abs(score) < imbalance) || (imbalance < 0 && Math.abs(score) > -imbalance)) {
-          writer.write(line + System.lineSeparator());
-        }
-      }
-    }
+    EPDFilter filter = EPDFilter.excludeUnbalancedPositions(imbalance, engine);
+    filterPositions(sourceEpdFile, destinationEpdFile, () -> filter, 1, null);
   }
 
   /**
@@ -252,22 +525,12 @@ public final class DataSetUtils {
    * @throws IOException If the source cannot be read from and the destination cannot be created or written to.
    */
   public static void filterDraws(String sourceEpdFile, String destinationEpdFile, String gameResultOpCode) throws IOException {
-    if (sourceEpdFile.equals(destinationEpdFile)) {
-      throw new IllegalArgumentException();
-    }
-    try (BufferedReader reader = new BufferedReader(new FileReader(sourceEpdFile));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(destinationEpdFile, true))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        EPDRecord record = EPDRecord.parse(line);
-        String result = record.getOperand(gameResultOpCode);
-        if (result != null) {
-          result = result.trim();
-        }
-        if (!GameState.STALE_MATE.getPGNCode().equals(result)) {
-          writer.write(line + System.lineSeparator());
-        }
-      }
+    try {
+      filterPositions(sourceEpdFile, destinationEpdFile, () -> EPDFilter.excludeDraws(gameResultOpCode), 1, null);
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
     }
   }
 
@@ -281,23 +544,45 @@ public final class DataSetUtils {
    */
   public static void filterTacticalPositions(String sourceEpdFile, String destinationEpdFile, ControllerEngine engine)
       throws Exception {
-    if (sourceEpdFile.equals(destinationEpdFile)) {
-      throw new IllegalArgumentException();
-    }
-    if (!engine.isInit()) {
-      engine.init();
-    }
-    try (BufferedReader reader = new BufferedReader(new FileReader(sourceEpdFile));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(destinationEpdFile, true))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        EPDRecord record = EPDRecord.parse(line);
-        engine.setPosition(record.getPosition());
-        if (engine.isQuiet()) {
-          writer.write(line + System.lineSeparator());
-        }
-      }
+    EPDFilter filter = EPDFilter.excludeTacticalPositions(engine);
+    filterPositions(sourceEpdFile, destinationEpdFile, () -> filter, 1, null);
+  }
+
+  /**
+   * A function mapping an EPD record to the record to write in its place.
+   */
+  @FunctionalInterface
+  private interface RecordTransformer {
+
+    /**
+     * Transforms the record.
+     *
+     * @param line The EPD record.
+     * @return The transformed record or null if it should be dropped.
+     * @throws Exception If the record cannot be transformed.
+     */
+    String transform(String line) throws Exception;
+
+  }
+
+  /**
+   * The first record of a position and the sum and count of the labels of all its occurrences.
+   */
+  private static class DuplicateGroup {
+
+    /**
+     * A shared marker for positions that have already been written when labels are not averaged.
+     */
+    static final DuplicateGroup SEEN = new DuplicateGroup(null);
+
+    final String firstRecord;
+    double labelSum;
+    int labelCount;
+
+    DuplicateGroup(String firstRecord) {
+      this.firstRecord = firstRecord;
     }
+
   }
 
 }
@@ -0,0 +1,93 @@
+package net.viktorc.detroid.framework.tuning;
+
+import net.viktorc.detroid.framework.validation.ControllerEngine;
+import net.viktorc.detroid.framework.validation.EPDRecord;
+import net.viktorc.detroid.framework.validation.GameState;
+
+/**
+ * A functional interface for predicates deciding which records of an EPD file to keep. Filters can be chained using
+ * {@link #and(EPDFilter)} so that multiple filters can be applied in a single pass over the data. Filters relying on engines are not
+ * thread-safe; each thread has to use its own instance with its own engines.
+ *
+ * @author Viktor
+ */
+@FunctionalInterface
+public interface EPDFilter {
+
+  /**
+   * Returns whether the record should be kept.
+   *
+   * @param record The EPD record.
+   * @return Whether the record passes the filter.
+   * @throws Exception If the record cannot be evaluated.
+   */
+  boolean accept(EPDRecord record) throws Exception;
+
+  /**
+   * Returns a filter that only accepts records that pass both this filter and the other one. The other filter is only applied to the
+   * records accepted by this filter, thus cheaper filters should come first in the chain.
+   *
+   * @param other The filter to apply after this one.
+   * @return The composite filter.
+   */
+  default EPDFilter and(EPDFilter other) {
+    return record -> accept(record) && other.accept(record);
+  }
+
+  /**
+   * Returns a filter that rejects the positions from drawn games.
+   *
+   * @param gameResultOpCode The operation code of the label.
+   * @return The filter.
+   */
+  static EPDFilter excludeDraws(String gameResultOpCode) {
+    return record -> {
+      String result = record.getOperand(gameResultOpCode);
+      if (result != null) {
+        result = result.trim();
+      }
+      return !GameState.STALE_MATE.getPGNCode().equals(result);
+    };
+  }
+
+  /**
+   * Returns a filter that rejects the positions that allow for legal tactical moves.
+   *
+   * @param engine The engine to use for tactical position detection. It is used exclusively by the filter. If it is not initialized,
+   * it is initialized by this method.
+   * @return The filter.
+   * @throws Exception If the engine cannot be initialized.
+   */
+  static EPDFilter excludeTacticalPositions(ControllerEngine engine) throws Exception {
+    if (!engine.isInit()) {
+      engine.init();
+    }
+    return record -> {
+      engine.setPosition(record.getPosition());
+      return engine.isQuiet();
+    };
+  }
+
+  /**
+   * Returns a filter that rejects either too unbalanced or too balanced positions based on the engine to tune's evaluation function.
+   *
+   * @param imbalance The maximum allowed absolute score difference in centi-pawns. If it is negative, the minimum necessary score
+   * difference.
+   * @param engine The engine to use for unbalanced position detection. It is used exclusively by the filter. If it is not initialized,
+   * it is initialized by this method.
+   * @return The filter.
+   * @throws Exception If the engine cannot be initialized.
+   */
+  static EPDFilter excludeUnbalancedPositions(short imbalance, TunableEngine engine) throws Exception {
+    if (!engine.isInit()) {
+      engine.init();
+    }
+    engine.setDeterministicEvaluationMode(true);
+    return record -> {
+      engine.setPosition(record.getPosition());
+      double score = engine.eval(null);
+      return (imbalance >= 0 && Math.abs(score) < imbalance) || (imbalance < 0 && Math.abs(score) > -imbalance);
+    };
+  }
+
+}
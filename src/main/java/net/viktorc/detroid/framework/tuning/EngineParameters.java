@@ -8,6 +8,9 @@ import java.lang.reflect.Modifier;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +52,7 @@ public abstract class EngineParameters {
   private static final String XML_ROOT_ELEMENT_NAME = "parameters";
 
   private final transient List<Field> allParamFields;
+  private final transient Map<String, Field> ownParamFieldsByName;
   private final transient List<Field> staticEvalParamFields;
   private final transient List<Field> searchControlParamFields;
   private final transient List<Field> engineManagementParamFields;
@@ -61,6 +65,7 @@ public abstract class EngineParameters {
    */
   protected EngineParameters() throws ParameterException {
     allParamFields = new ArrayList<>();
+    ownParamFieldsByName = new HashMap<>();
     staticEvalParamFields = new ArrayList<>();
     searchControlParamFields = new ArrayList<>();
     engineManagementParamFields = new ArrayList<>();
@@ -85,6 +90,9 @@ public abstract class EngineParameters {
               "to be annotated as parameters.");
         }
         allParamFields.add(f);
+        if (f.getDeclaringClass() == getClass()) {
+          ownParamFieldsByName.put(f.getName(), f);
+        }
         if (param.type() == ParameterType.STATIC_EVALUATION) {
           staticEvalParamFields.add(f);
         } else if (param.type() == ParameterType.SEARCH_CONTROL) {
@@ -97,19 +105,16 @@ public abstract class EngineParameters {
   }
 
   /**
-   * Reads the parameter values from an XML file and sets the instance's fields accordingly.
+   * Reads the parameter values from an XML file without setting any fields. The returned map can be shared by any number of instances
+   * which then load the values using {@link #loadFrom(Map)}, thus the file only needs to be parsed once.
    *
    * @param filePath The path to the file.
-   * @throws Exception If an error occurs from which it is not possible to recover.
+   * @return An unmodifiable map of the parameter values by the names of the parameters in the order they appear in the file.
+   * @throws Exception If the file cannot be read or parsed.
    */
-  public final void loadFrom(String filePath) throws Exception {
-    File file;
-    String name;
-    String value;
-    Class<?> clazz = getClass();
-    Field field;
-    Class<?> fieldType;
-    file = new File(filePath);
+  public static Map<String, String> readValues(String filePath) throws Exception {
+    Map<String, String> values = new LinkedHashMap<>();
+    File file = new File(filePath);
     try (InputStream input = file.exists() ? new FileInputStream(filePath) : ClassLoader.getSystemClassLoader()
         .getResourceAsStream(filePath)) {
       DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
@@ -118,44 +123,62 @@ public abstract class EngineParameters {
       NodeList parameters = document.getDocumentElement().getChildNodes();
       for (int i = 0; i < parameters.getLength(); i++) {
         Node node = parameters.item(i);
-        if (node.getNodeType() != Node.ELEMENT_NODE) {
-          continue;
-        }
-        Element parameter = (Element) node;
-        name = parameter.getNodeName();
-        try {
-          field = clazz.getDeclaredField(name);
-        } catch (NoSuchFieldException | SecurityException e1) {
-          continue;
-        }
-        if (!allParamFields.contains(field)) {
-          continue;
-        }
-        field.setAccessible(true);
-        value = parameter.getTextContent();
-        if (value.length() == 0) {
-          continue;
-        }
-        fieldType = field.getType();
-        if (fieldType.equals(boolean.class)) {
-          field.set(this, Boolean.parseBoolean(value));
-        } else if (fieldType.equals(byte.class)) {
-          field.set(this, Byte.parseByte(value));
-        } else if (fieldType.equals(short.class)) {
-          field.set(this, Short.parseShort(value));
-        } else if (fieldType.equals(int.class)) {
-          field.set(this, Integer.parseInt(value));
-        } else if (fieldType.equals(long.class)) {
-          field.set(this, Long.parseLong(value));
-        } else if (fieldType.equals(float.class)) {
-          field.set(this, Float.parseFloat(value));
-        } else if (fieldType.equals(double.class)) {
-          field.set(this, Double.parseDouble(value));
-        } else if (fieldType.equals(char.class)) {
-          field.set(this, value.charAt(0));
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+          Element parameter = (Element) node;
+          values.put(parameter.getNodeName(), parameter.getTextContent());
         }
       }
     }
+    return Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * Sets the instance's fields according to the parameter values. Values of parameters the instance does not have and empty values are
+   * ignored.
+   *
+   * @param values The parameter values by the names of the parameters as returned by {@link #readValues(String)}.
+   * @throws Exception If a value cannot be parsed or set.
+   */
+  public final void loadFrom(Map<String, String> values) throws Exception {
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      // Only the parameters declared by the class itself are looked up; the fields have already been made accessible.
+      Field field = ownParamFieldsByName.get(entry.getKey());
+      if (field == null) {
+        continue;
+      }
+      String value = entry.getValue();
+      if (value.length() == 0) {
+        continue;
+      }
+      Class<?> fieldType = field.getType();
+      if (fieldType.equals(boolean.class)) {
+        field.set(this, Boolean.parseBoolean(value));
+      } else if (fieldType.equals(byte.class)) {
+        field.set(this, Byte.parseByte(value));
+      } else if (fieldType.equals(short.class)) {
+        field.set(this, Short.parseShort(value));
+      } else if (fieldType.equals(int.class)) {
+        field.set(this, Integer.parseInt(value));
+      } else if (fieldType.equals(long.class)) {
+        field.set(this, Long.parseLong(value));
+      } else if (fieldType.equals(float.class)) {
+        field.set(this, Float.parseFloat(value));
+      } else if (fieldType.equals(double.class)) {
+        field.set(this, Double.parseDouble(value));
+      } else if (fieldType.equals(char.class)) {
+        field.set(this, value.charAt(0));
+      }
+    }
+  }
+
+  /**
+   * Reads the parameter values from an XML file and sets the instance's fields accordingly.
+   *
+   * @param filePath The path to the file.
+   * @throws Exception If an error occurs from which it is not possible to recover.
+   */
+  public final void loadFrom(String filePath) throws Exception {
+    loadFrom(readValues(filePath));
   }
 
   /**
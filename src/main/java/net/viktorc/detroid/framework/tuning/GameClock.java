@@ -0,0 +1,120 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chess clock for a single game based on the monotonic {@link System#nanoTime()} timer. The time-outs of all the clocks are enforced by
+ * a single scheduler thread shared by all concurrently running games, thus arming and disarming a clock for a move does not require the
+ * creation of any threads or timers.
+ *
+ * @author Viktor
+ */
+final class GameClock {
+
+  /**
+   * The scheduler shared by all the clocks.
+   */
+  private static final ScheduledThreadPoolExecutor SCHEDULER;
+
+  static {
+    SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "game-clock");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MAX_PRIORITY);
+      return thread;
+    });
+    SCHEDULER.setRemoveOnCancelPolicy(true);
+  }
+
+  private final long incrementNanos;
+  private final long[] remainingNanos;
+  private boolean whiteRunning;
+  private long startNanos;
+  private ScheduledFuture<?> timeOut;
+
+  /**
+   * Constructs a clock for a game with the specified time control.
+   *
+   * @param timePerGame The number of milliseconds each side has for the entire game.
+   * @param timeIncPerMove The number of milliseconds each side's time is incremented by per move.
+   */
+  GameClock(long timePerGame, long timeIncPerMove) {
+    incrementNanos = TimeUnit.MILLISECONDS.toNanos(timeIncPerMove);
+    long timePerGameNanos = TimeUnit.MILLISECONDS.toNanos(timePerGame);
+    remainingNanos = new long[]{timePerGameNanos, timePerGameNanos};
+  }
+
+  private static int index(boolean white) {
+    return white ? 0 : 1;
+  }
+
+  /**
+   * Returns the remaining time of the specified side in milliseconds.
+   *
+   * @param white Whether the remaining time of white or black is to be returned.
+   * @return The remaining time in milliseconds.
+   */
+  long getRemainingMillis(boolean white) {
+    return TimeUnit.NANOSECONDS.toMillis(remainingNanos[index(white)]);
+  }
+
+  /**
+   * Returns the increment per move in milliseconds.
+   *
+   * @return The time increment per move.
+   */
+  long getIncrementMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(incrementNanos);
+  }
+
+  /**
+   * Adds the increment to the time of the specified side and starts its clock. If the side runs out of time before the clock is stopped,
+   * the time-out action is executed on the shared scheduler thread.
+   *
+   * @param white Whether white's clock is to be started.
+   * @param onTimeOut The action to execute if the side runs out of time.
+   */
+  void start(boolean white, Runnable onTimeOut) {
+    int ind = index(white);
+    remainingNanos[ind] += incrementNanos;
+    whiteRunning = white;
+    startNanos = System.nanoTime();
+    timeOut = SCHEDULER.schedule(onTimeOut, remainingNanos[ind], TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stops the running clock and charges the elapsed time to the side whose clock was running.
+   *
+   * @return The number of nanoseconds elapsed since the clock was started.
+   */
+  long stop() {
+    long now = System.nanoTime();
+    timeOut.cancel(false);
+    timeOut = null;
+    long elapsed = now - startNanos;
+    remainingNanos[index(whiteRunning)] -= elapsed;
+    return elapsed;
+  }
+
+  /**
+   * Returns the number of nanoseconds by which the last stopped side exceeded its time. It is 0 if the side did not run out of time.
+   *
+   * @return The time by which the deadline was overrun.
+   */
+  long getOverrunNanos() {
+    return Math.max(0, -remainingNanos[index(whiteRunning)]);
+  }
+
+  /**
+   * Returns whether the specified side has run out of time.
+   *
+   * @param white Whether white's or black's flag is to be checked.
+   * @return Whether the side's flag has fallen.
+   */
+  boolean isFlagFallen(boolean white) {
+    return remainingNanos[index(white)] <= 0;
+  }
+
+}
@@ -0,0 +1,30 @@
+package net.viktorc.detroid.framework.tuning;
+
+/**
+ * An engine slot of the {@link net.viktorc.detroid.framework.tuning.SelfPlayOptimizer} which can play a batch of games between the tuned
+ * engine and the opponent engine at a time. The slot may be backed by engines running in the same process or in a
+ * {@link net.viktorc.detroid.framework.tuning.SelfPlayWorker} process.
+ *
+ * @author Viktor
+ */
+interface MatchSlot extends AutoCloseable {
+
+  /**
+   * Plays the specified number of games between the tuned engine and the opponent engine with the tuned engine being the first player of
+   * the returned match result.
+   *
+   * @param genotype The genotype of the parameters of the tuned engine.
+   * @param opponentGenotype The genotype of the parameters of the opponent engine.
+   * @param games The number of games to play.
+   * @param opening The start position of the games in FEN. If it is null, the games start from the standard initial position.
+   * @return The result of the match.
+   * @throws java.io.IOException If the slot is a remote one and the connection to it has been lost or it did not respond in time.
+   * @throws SelfPlayWorker.WorkerErrorException If the slot is a remote one and it failed to play the games, but it is still usable.
+   * @throws Exception If the games cannot be played.
+   */
+  MatchResult play(String genotype, String opponentGenotype, int games, String opening) throws Exception;
+
+  @Override
+  void close();
+
+}
@@ -0,0 +1,96 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import net.viktorc.detroid.framework.engine.ChessParseException;
+import net.viktorc.detroid.framework.engine.PGNReplayer;
+import net.viktorc.detroid.framework.engine.Position;
+
+/**
+ * A utility class for loading opening suites, i.e. lists of start positions for self-play games. Starting the games from a diverse set of
+ * balanced positions and playing each of them with both colours makes every game pair more informative than games from the standard
+ * initial position which only differ by the engines' books and timing noise.
+ *
+ * @author Viktor
+ */
+public final class OpeningSuite {
+
+  private OpeningSuite() {
+  }
+
+  /**
+   * Converts an EPD record or a FEN string into a FEN string with the fifty-move rule clock and the move number fields.
+   *
+   * @param line The EPD record or FEN string.
+   * @return The position in FEN.
+   * @throws IllegalArgumentException If the line has less than four fields.
+   */
+  private static String toFEN(String line) {
+    String[] fields = line.trim().split("\\s+");
+    if (fields.length < 4) {
+      throw new IllegalArgumentException("Illegal opening position: " + line);
+    }
+    String position = fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+    if (fields.length >= 6 && fields[4].matches("\\d+") && fields[5].matches("\\d+")) {
+      return position + " " + fields[4] + " " + fields[5];
+    }
+    return position + " 0 1";
+  }
+
+  /**
+   * Replays the game and returns its final position.
+   *
+   * @param pgn The game in PGN.
+   * @return The position after the last move of the game in FEN.
+   * @throws ChessParseException If the game cannot be parsed.
+   */
+  private static String toFENFromPGN(String pgn) throws ChessParseException {
+    AtomicReference<Position> lastPosition = new AtomicReference<>();
+    PGNReplayer.replay(pgn, lastPosition::set);
+    return lastPosition.get().toString();
+  }
+
+  /**
+   * Loads the opening positions from the file. If the name of the file ends with <code>.pgn</code>, the file is expected to contain games
+   * in PGN and each game's final position is an opening. Otherwise, each non-empty line of the file is expected to be an EPD record or a
+   * FEN string, and the operations of EPD records are ignored.
+   *
+   * @param filePath The path to the opening suite file.
+   * @return An unmodifiable list of the start positions in FEN in the order of their occurrence in the file.
+   * @throws IOException If the file cannot be read.
+   * @throws ChessParseException If a game in the PGN file cannot be parsed.
+   * @throws IllegalArgumentException If a line of the EPD file is not a valid position description.
+   */
+  public static List<String> load(String filePath) throws IOException, ChessParseException {
+    List<String> openings = new ArrayList<>();
+    boolean pgn = filePath.toLowerCase().endsWith(".pgn");
+    try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+      StringBuilder pgnBuilder = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!pgn) {
+          if (!line.isEmpty()) {
+            openings.add(toFEN(line));
+          }
+          continue;
+        }
+        if (PGNConversionPipeline.isFirstLineOfGame(line) && pgnBuilder.length() > 0) {
+          openings.add(toFENFromPGN(pgnBuilder.toString()));
+          pgnBuilder.setLength(0);
+        }
+        pgnBuilder.append(line).append("\n");
+      }
+      if (pgn && !pgnBuilder.toString().trim().isEmpty()) {
+        openings.add(toFENFromPGN(pgnBuilder.toString()));
+      }
+    }
+    return Collections.unmodifiableList(openings);
+  }
+
+}
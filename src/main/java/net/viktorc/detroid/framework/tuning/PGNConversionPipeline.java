@@ -0,0 +1,459 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.viktorc.detroid.framework.validation.ControllerEngine;
+import net.viktorc.detroid.framework.validation.EPDRecord;
+import net.viktorc.detroid.framework.validation.GameState;
+
+/**
+ * A streaming pipeline for converting PGN files into EPD files of positions labelled by the results of the games they occurred in. The
+ * pipeline consists of three stages connected by bounded queues. The calling thread splits the PGN file into games, a pool of worker
+ * threads, one per controller engine, replays the games forward and converts the positions streamed by the engines into EPD records, and a
+ * writer thread writes the records to the output file either in the order the games appear in the PGN file or in the order they are
+ * converted. The number of games in flight is bounded so that the memory footprint of the pipeline is independent of the size of the PGN
+ * file. Progress and throughput information is logged periodically if a logger is provided.
+ *
+ * @author Viktor
+ */
+class PGNConversionPipeline {
+
+  /**
+   * The case-insensitive prefix of the first line of every game in PGN.
+   */
+  private static final String FIRST_PGN_LINE_PREFIX = "[Event ";
+  private static final Pattern WHITE_ELO_PATTERN = Pattern.compile("\\[WhiteElo \"([0-9]+)\"\\]");
+  private static final Pattern BLACK_ELO_PATTERN = Pattern.compile("\\[BlackElo \"([0-9]+)\"\\]");
+  /**
+   * The number of games allowed to be in flight per worker thread.
+   */
+  private static final int GAMES_IN_FLIGHT_PER_WORKER = 32;
+  /**
+   * The number of milliseconds blocking queue operations wait before checking whether the pipeline has been aborted.
+   */
+  private static final long POLL_TIMEOUT = 100;
+  /**
+   * The number of milliseconds between two progress log entries.
+   */
+  private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+  private final List<ControllerEngine> engines;
+  private final String gameResultOpCode;
+  private final Integer minElo;
+  private final Integer minHalfMoveIndex;
+  private final Integer positionsPerGame;
+  private final boolean ordered;
+  private final Logger logger;
+  private final AtomicLong bytesRead;
+  private final AtomicLong gamesRead;
+  private final AtomicLong gamesConverted;
+  private final AtomicLong positionsWritten;
+  private final AtomicReference<Throwable> failure;
+
+  /**
+   * Constructs a pipeline using the specified controller engines.
+   *
+   * @param engines The controller engines to replay the games with. For each non-null element, a worker thread is started.
+   * @param gameResultOpCode The operation code of the label.
+   * @param minElo The minimum Elo rating required for each party to process the game. If it is null, no constraint is applied.
+   * @param minHalfMoveIndex The half move index from which positions of a game are saved in the EPD file. If it is null, all positions
+   * are saved.
+   * @param positionsPerGame The maximum number of positions to save per game. If a game has more positions eligible to be saved, a random
+   * sample of this size is taken. If it is null, all eligible positions are saved.
+   * @param ordered Whether the EPD records should be written in the order the games appear in the PGN file.
+   * @param logger The logger to log the progress to. It may be null.
+   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element.
+   */
+  PGNConversionPipeline(List<? extends ControllerEngine> engines, String gameResultOpCode, Integer minElo, Integer minHalfMoveIndex,
+      Integer positionsPerGame, boolean ordered, Logger logger) {
+    this.engines = new ArrayList<>();
+    for (ControllerEngine e : engines) {
+      if (e != null) {
+        this.engines.add(e);
+      }
+    }
+    if (this.engines.isEmpty()) {
+      throw new IllegalArgumentException("The parameter engines has to contain at least 1 non-null element.");
+    }
+    this.gameResultOpCode = gameResultOpCode;
+    this.minElo = minElo;
+    this.minHalfMoveIndex = minHalfMoveIndex;
+    this.positionsPerGame = positionsPerGame;
+    this.ordered = ordered;
+    this.logger = logger;
+    bytesRead = new AtomicLong();
+    gamesRead = new AtomicLong();
+    gamesConverted = new AtomicLong();
+    positionsWritten = new AtomicLong();
+    failure = new AtomicReference<>();
+  }
+
+  /**
+   * Returns whether the line is the first line of a game in PGN.
+   *
+   * @param line The trimmed line.
+   * @return Whether the line is an Event tag pair.
+   */
+  static boolean isFirstLineOfGame(String line) {
+    return line.length() > FIRST_PGN_LINE_PREFIX.length() && line.charAt(0) == '[' && line.charAt(line.length() - 1) == ']' &&
+        line.regionMatches(true, 0, FIRST_PGN_LINE_PREFIX, 0, FIRST_PGN_LINE_PREFIX.length());
+  }
+
+  /**
+   * Returns whether the players of the game satisfy the minimum Elo rating constraint.
+   *
+   * @param pgn The game in PGN.
+   * @return Whether the game should be processed.
+   */
+  private boolean isEloSufficient(String pgn) {
+    if (minElo == null) {
+      return true;
+    }
+    Matcher whiteEloMatcher = WHITE_ELO_PATTERN.matcher(pgn);
+    Matcher blackEloMatcher = BLACK_ELO_PATTERN.matcher(pgn);
+    if (whiteEloMatcher.find() && blackEloMatcher.find()) {
+      try {
+        int whiteElo = Integer.parseInt(whiteEloMatcher.group(1));
+        int blackElo = Integer.parseInt(blackEloMatcher.group(1));
+        return whiteElo >= minElo && blackElo >= minElo;
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Replays the game and converts all its positions into EPD records labelled by the result of the game. The positions are streamed from
+   * the engine in chronological order as it plays the game forward using
+   * {@link net.viktorc.detroid.framework.validation.ControllerEngine#replayGame(String, java.util.function.Consumer)}. As the label is
+   * only known once the game has been replayed, the positions are buffered in the specified list. If the number of positions to save per
+   * game is limited, a random sample of the eligible positions is taken.
+   *
+   * @param engine The controller engine to replay the game with.
+   * @param pgn The game in PGN.
+   * @param positions The buffer for the positions of the game in FEN. It is cleared before use.
+   * @return The EPD records. If the game cannot be parsed or it has not ended, the list is empty.
+   */
+  private List<String> convert(ControllerEngine engine, String pgn, List<String> positions) {
+    positions.clear();
+    int minIndex = minHalfMoveIndex == null ? 0 : Math.max(0, minHalfMoveIndex);
+    int[] index = new int[1];
+    GameState state = engine.replayGame(pgn, fen -> {
+      if (index[0]++ >= minIndex) {
+        positions.add(fen);
+      }
+    });
+    if (state == null || state == GameState.IN_PROGRESS || positions.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> sample = positions;
+    if (positionsPerGame != null && positions.size() > positionsPerGame) {
+      Random random = ThreadLocalRandom.current();
+      for (int i = 0; i < positionsPerGame; i++) {
+        Collections.swap(positions, i, i + random.nextInt(positions.size() - i));
+      }
+      sample = positions.subList(0, Math.max(0, positionsPerGame));
+    }
+    Map<String, String> label = Collections.singletonMap(gameResultOpCode, "\"" + state.getPGNCode() + "\"");
+    List<String> records = new ArrayList<>(sample.size());
+    for (String fen : sample) {
+      records.add(new EPDRecord(fen, label).toString());
+    }
+    return records;
+  }
+
+  /**
+   * Puts the item into the queue, waiting for space to become available if necessary.
+   *
+   * @param queue The queue.
+   * @param item The item to insert.
+   * @param <T> The type of the item.
+   * @throws InterruptedException If the thread is interrupted or the pipeline has been aborted while waiting.
+   */
+  private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+    while (!queue.offer(item, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+      checkAborted();
+    }
+  }
+
+  /**
+   * Takes the head of the queue, waiting for an item to become available if necessary.
+   *
+   * @param queue The queue.
+   * @param <T> The type of the items.
+   * @return The head of the queue.
+   * @throws InterruptedException If the thread is interrupted or the pipeline has been aborted while waiting.
+   */
+  private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+    T item;
+    while ((item = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) == null) {
+      checkAborted();
+    }
+    return item;
+  }
+
+  /**
+   * Throws an exception if one of the stages of the pipeline has failed.
+   *
+   * @throws InterruptedException If the pipeline has been aborted.
+   */
+  private void checkAborted() throws InterruptedException {
+    if (failure.get() != null) {
+      throw new InterruptedException("The pipeline has been aborted.");
+    }
+  }
+
+  /**
+   * Logs the progress of the conversion.
+   *
+   * @param startTime The time the conversion started at in nanoseconds.
+   */
+  private void logProgress(long startTime) {
+    if (logger == null) {
+      return;
+    }
+    double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+    long games = gamesConverted.get();
+    long positions = positionsWritten.get();
+    logger.info(String.format("Games read: %d; games converted: %d; positions written: %d; MB read: %.1f%n" +
+            "Throughput: %.1f games/s; %.1f positions/s; %.2f MB/s",
+        gamesRead.get(), games, positions, bytesRead.get() / 1e6, games / seconds, positions / seconds,
+        bytesRead.get() / 1e6 / seconds));
+  }
+
+  /**
+   * The worker stage. It takes the games from the input queue, converts them, and passes the records on to the output queue.
+   *
+   * @param engine The controller engine of the worker.
+   * @param input The queue of games.
+   * @param output The queue of converted games.
+   * @throws InterruptedException If the thread is interrupted or the pipeline has been aborted.
+   */
+  private void replay(ControllerEngine engine, BlockingQueue<Job> input, BlockingQueue<Job> output) throws InterruptedException {
+    List<String> positions = new ArrayList<>();
+    Job game;
+    while ((game = take(input)) != Job.END) {
+      List<String> records = convert(engine, game.pgn, positions);
+      gamesConverted.incrementAndGet();
+      put(output, new Job(game.index, null, records));
+    }
+    put(output, Job.END);
+  }
+
+  /**
+   * The writer stage. It takes the converted games from the output queue and writes their records to the EPD file. In ordered mode, the
+   * games are buffered until all games preceding them in the PGN file have been written.
+   *
+   * @param epdFilePath The output file path.
+   * @param output The queue of converted games.
+   * @param inFlight The semaphore limiting the number of games in flight.
+   * @param startTime The time the conversion started at in nanoseconds.
+   * @throws Exception If the thread is interrupted, the pipeline has been aborted, or the file cannot be written to.
+   */
+  private void write(String epdFilePath, BlockingQueue<Job> output, Semaphore inFlight, long startTime) throws Exception {
+    Map<Long, Job> pending = new HashMap<>();
+    long nextIndex = 0;
+    long lastLogTime = System.currentTimeMillis();
+    int finishedWorkers = 0;
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(epdFilePath))) {
+      while (finishedWorkers < engines.size()) {
+        Job game = take(output);
+        if (game == Job.END) {
+          finishedWorkers++;
+          continue;
+        }
+        if (ordered) {
+          pending.put(game.index, game);
+          while ((game = pending.remove(nextIndex)) != null) {
+            writeRecords(writer, game.records);
+            nextIndex++;
+            inFlight.release();
+          }
+        } else {
+          writeRecords(writer, game.records);
+          inFlight.release();
+        }
+        if (System.currentTimeMillis() - lastLogTime >= PROGRESS_LOG_INTERVAL) {
+          logProgress(startTime);
+          lastLogTime = System.currentTimeMillis();
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the EPD records to the writer.
+   *
+   * @param writer The writer.
+   * @param records The EPD records.
+   * @throws Exception If the records cannot be written.
+   */
+  private void writeRecords(BufferedWriter writer, List<String> records) throws Exception {
+    for (String record : records) {
+      writer.write(record);
+      writer.newLine();
+    }
+    positionsWritten.addAndGet(records.size());
+  }
+
+  /**
+   * Splits the PGN file into games and feeds the ones satisfying the Elo constraint to the worker stage.
+   *
+   * @param pgnFilePath The path to the PGN file.
+   * @param maxNumOfGames The maximum number of games to process.
+   * @param input The queue of games.
+   * @param inFlight The semaphore limiting the number of games in flight.
+   * @return The number of games fed to the worker stage.
+   * @throws Exception If the thread is interrupted, the pipeline has been aborted, or the file cannot be read.
+   */
+  private long split(String pgnFilePath, long maxNumOfGames, BlockingQueue<Job> input, Semaphore inFlight) throws Exception {
+    long gameCount = 0;
+    try (BufferedReader reader = new BufferedReader(new FileReader(pgnFilePath))) {
+      StringBuilder pgnBuilder = new StringBuilder();
+      String line;
+      boolean eof = false;
+      while (!eof && gameCount < maxNumOfGames) {
+        line = reader.readLine();
+        if (line == null) {
+          eof = true;
+        } else {
+          bytesRead.addAndGet(line.length() + 1);
+          line = line.trim();
+          if (line.isEmpty()) {
+            continue;
+          }
+        }
+        if ((eof || isFirstLineOfGame(line)) && pgnBuilder.length() > 0) {
+          String pgn = pgnBuilder.toString();
+          pgnBuilder.setLength(0);
+          gamesRead.incrementAndGet();
+          if (isEloSufficient(pgn)) {
+            while (!inFlight.tryAcquire(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+              checkAborted();
+            }
+            put(input, new Job(gameCount++, pgn, null));
+          }
+        }
+        if (!eof) {
+          pgnBuilder.append(line).append("\n");
+        }
+      }
+    }
+    return gameCount;
+  }
+
+  /**
+   * Converts the games in the PGN file into EPD records and writes them to the EPD file. If the EPD file exists, it is overwritten.
+   *
+   * @param pgnFilePath The path to the file containing the games in PGN.
+   * @param epdFilePath The output file path.
+   * @param maxNumOfGames The maximum number of games that will be parsed and converted into EPD records.
+   * @return The number of games processed.
+   * @throws Exception If the input file does not exist or cannot be read, if the output file path is invalid, if any of the engines is not
+   * initialized and cannot be initialized, or if an exception occurs in any of the stages of the pipeline.
+   */
+  long run(String pgnFilePath, String epdFilePath, long maxNumOfGames) throws Exception {
+    for (ControllerEngine e : engines) {
+      if (!e.isInit()) {
+        e.init();
+      }
+    }
+    int capacity = GAMES_IN_FLIGHT_PER_WORKER * engines.size();
+    BlockingQueue<Job> input = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Job> output = new ArrayBlockingQueue<>(capacity);
+    Semaphore inFlight = new Semaphore(capacity);
+    long startTime = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(engines.size() + 1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (ControllerEngine e : engines) {
+        futures.add(pool.submit(() -> {
+          try {
+            replay(e, input, output);
+            return null;
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            throw t;
+          }
+        }));
+      }
+      futures.add(pool.submit(() -> {
+        try {
+          write(epdFilePath, output, inFlight, startTime);
+          return null;
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+          throw t;
+        }
+      }));
+      long gameCount;
+      try {
+        gameCount = split(pgnFilePath, maxNumOfGames, input, inFlight);
+        for (int i = 0; i < engines.size(); i++) {
+          put(input, Job.END);
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+        throw t;
+      }
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          Throwable cause = failure.get();
+          throw cause instanceof Exception ? (Exception) cause : e;
+        }
+      }
+      logProgress(startTime);
+      return gameCount;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * A game passing through the pipeline. Before the worker stage, it holds the PGN of the game, after it, the EPD records.
+   */
+  private static class Job {
+
+    /**
+     * The marker of the end of the stream.
+     */
+    static final Job END = new Job(-1, null, null);
+
+    final long index;
+    final String pgn;
+    final List<String> records;
+
+    Job(long index, String pgn, List<String> records) {
+      this.index = index;
+      this.pgn = pgn;
+      this.records = records;
+    }
+
+  }
+
+}
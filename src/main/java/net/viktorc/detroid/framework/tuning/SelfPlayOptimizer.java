@@ -1,19 +1,43 @@
 package net.viktorc.detroid.framework.tuning;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjDoubleConsumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import net.viktorc.detroid.framework.uci.UCIEngine;
+import net.viktorc.detroid.framework.util.Checkpoint;
 import net.viktorc.detroid.framework.util.PBIL;
 import net.viktorc.detroid.framework.validation.Elo;
+import net.viktorc.detroid.framework.validation.SPRT;
 
 /**
- * A class for optimizing chess engine parameters using a PBIL algorithm with a possibly parallel, game play based fitness function.
+ * A class for optimizing chess engine parameters using a PBIL algorithm with a possibly parallel, game play based fitness function. The
+ * games of all the genotypes of a generation are split into small batches and scheduled onto a shared pool of engine slots (engine pairs
+ * with their arenas) so that no slot stays idle while there are still games to play in the generation. The fitness of each genotype is
+ * reported as soon as all its games have been played, but the probability vector is only updated at the end of the generation (see
+ * {@link net.viktorc.detroid.framework.util.PBIL}); as the batches are small, the slots only idle while the last few batches of a
+ * generation are being played. If a sequential probability ratio test is specified, the assessment of a genotype is
+ * stopped as soon as the test is decided and the games saved this way are given to genotypes whose tests are still undecided after having
+ * played the original number of games. If an opening suite is specified, each batch is played from an opening of the suite with both
+ * colours, and the genotypes of a generation are all assessed on the same sequence of openings while successive generations move on
+ * along the suite. If a worker port is specified, {@link net.viktorc.detroid.framework.tuning.SelfPlayWorker} instances running in other
+ * processes, on the same machine or on others, can connect to the optimizer at any time and serve as additional engine slots. The batches
+ * of a worker that disconnects or does not respond in time are rescheduled onto the remaining slots, while a batch a worker reports to
+ * have failed is retried without dropping the worker. As the workers are not authenticated, they are only accepted on the loopback
+ * interface unless another bind address is specified.
  *
  * @author Viktor
  */
@@ -35,170 +59,605 @@ public final class SelfPlayOptimizer extends PBIL implements AutoCloseable {
    * The mutation shift of the genotypes.
    */
   private static final double DEF_MUTATION_SHIFT = .05d;
+  /**
+   * The number of games in a batch scheduled onto an engine slot; two so that the tuned engine plays both colours.
+   */
+  private static final int GAMES_PER_BATCH = 2;
+  /**
+   * The number of times a batch is attempted before the fitness assessment is failed if the workers report errors playing it.
+   */
+  private static final int MAX_BATCH_ATTEMPTS = 3;
+  /**
+   * The number of milliseconds to wait for an idle engine slot before checking whether there are any engine slots left at all.
+   */
+  private static final long SLOT_POLL_INTERVAL = 1000L;
+  /**
+   * The minimum number of milliseconds to wait for a worker's response to a request for a batch of games.
+   */
+  private static final long MIN_WORKER_TIMEOUT = 10L * 60 * 1000;
+  /**
+   * The number of moves per game assumed when deriving the worker timeout from the time increment per move.
+   */
+  private static final int MAX_EXPECTED_MOVES_PER_GAME = 300;
+  /**
+   * The checkpoint key of the offset of the openings of the next generation in the opening suite.
+   */
+  private static final String OPENING_OFFSET_KEY = "selfplay.openingOffset";
+  /**
+   * The suffix of the path of the parameters file attached to the checkpoints.
+   */
+  public static final String PARAMETERS_FILE_SUFFIX = ".params.xml";
 
-  private final List<SelfPlayEngines<TunableEngine>> engines;
   private final Set<ParameterType> parameterTypes;
   private final int games;
   private final long timePerGame;
   private final long timeIncPerMove;
+  private final List<String> openings;
   private final double validationFactor;
-  private final Arena[] arenas;
-  private final ExecutorService pool;
-  private int tempGeneration;
+  private final SPRT sprt;
+  private final Logger logger;
+  private final AtomicInteger savedGames;
+  private final String workerConfig;
+  private final List<LocalSlot> localSlots;
+  private final List<WorkerConnection> workers;
+  private final BlockingQueue<MatchSlot> idleSlots;
+  private final ThreadPoolExecutor pool;
+  private final ServerSocket workerServer;
+  private final int workerTimeout;
+  private volatile String opponentGenotype;
+  private int openingOffset;
 
   /**
-   * Constructs a new instance according to the specified parameters.
+   * Constructs a new instance according to the specified settings.
    *
-   * @param engines A list of {@link net.viktorc.detroid.framework.tuning.SelfPlayEngines} instances that each contain the engines needed
-   * for one optimization thread. For each non-null element in the list, a new thread will be utilized for the optimization. E.g. if engines
-   * is a list of four non-null elements, the games in the fitness function will be distributed and played parallel on four threads. The
-   * list's first element cannot be null or a {@link java.lang.NullPointerException} is thrown.
-   * @param parameterTypes The set of chess engine parameter types to tune with game play. If it is null, all parameters will be tuned.
-   * @param games The number of games to play to assess the fitness of the parameters.
-   * @param timePerGame The time each engine will have per game in milliseconds.
-   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
-   * @param validationFactor The factor of the original number of games to play in addition when assessing the fitness of a parameter set
-   * whose fitness surpassed the current highest fitness after having played the original number of games.
-   * @param initialProbabilityVector The starting probability vector for the optimization. It allows the algorithm to pick up where a
-   * previous, terminated optimization process left off. If the array's length is smaller than the engine to be tuned's parameters' binary
-   * string's length, it will be extended with elements of the value 0.5d; if the length of the array is greater than engine to be tuned's
-   * parameters' binary string's length, only the first x elements will be considered, where x equals the parameters' binary string's
-   * length. If it is null, an array with a length equal to the parameters' binary string's length, only containing elements that have the
-   * value 0.5d will be used.
-   * @param populationSize The number of samples to produce per generation.
-   * @param learningRate The learning rate of the evolutionary algorithm.
-   * @param negativeLearningRate The negative learning rate of the evolutionary algorithm.
-   * @param mutationProbability The mutation probability of the genotypes.
-   * @param mutationShift The mutation shift of the genotypes.
-   * @param generations The number of generations to complete. If it is null, the training will go on until convergence or until it's
-   * manually stopped.
+   * @param engines A list of {@link net.viktorc.detroid.framework.tuning.SelfPlayEngines} instances each of which constitutes an engine
+   * slot. For each non-null element in the list, a game is played concurrently; e.g. if engines is a list of four non-null elements, the
+   * games of the genotypes of each generation will be distributed and played parallel on four threads. In fixed limit mode, the number of
+   * slots may exceed the number of available cores. The list's first element cannot be null or a {@link java.lang.NullPointerException}
+   * is thrown.
+   * @param settings The settings of the fitness function and the evolutionary algorithm.
    * @param logger A logger to log the optimization process. It cannot be null.
-   * @throws Exception If the engines cannot be initialized.
+   * @throws Exception If the engines cannot be initialized or the worker port cannot be bound to the worker bind address.
    * @throws IllegalArgumentException If logger is null.
    */
-  public SelfPlayOptimizer(List<SelfPlayEngines<TunableEngine>> engines, Set<ParameterType> parameterTypes, int games, long timePerGame,
-      long timeIncPerMove, double validationFactor, double[] initialProbabilityVector, int populationSize, Double learningRate,
-      Double negativeLearningRate, Double mutationProbability, Double mutationShift, Integer generations, Logger logger)
+  public SelfPlayOptimizer(List<SelfPlayEngines<TunableEngine>> engines, SelfPlaySettings settings, Logger logger)
       throws Exception, IllegalArgumentException {
-    super(engines.get(0).getEngine().getParameters().toGrayCodeString(parameterTypes).length(), populationSize,
-        mutationProbability == null ? DEF_MUTATION_PROB : mutationProbability, mutationShift == null ? DEF_MUTATION_SHIFT : mutationShift,
-        learningRate == null ? DEF_LEARNING_RATE : learningRate,
-        negativeLearningRate == null ? DEF_NEGATIVE_LEARNING_RATE : negativeLearningRate, generations, null, initialProbabilityVector,
-        logger);
+    super(engines.get(0).getEngine().getParameters().toGrayCodeString(settings.getParameterTypes()).length(),
+        settings.getPopulationSize(),
+        settings.getMutationProbability() == null ? DEF_MUTATION_PROB : settings.getMutationProbability(),
+        settings.getMutationShift() == null ? DEF_MUTATION_SHIFT : settings.getMutationShift(),
+        settings.getLearningRate() == null ? DEF_LEARNING_RATE : settings.getLearningRate(),
+        settings.getNegativeLearningRate() == null ? DEF_NEGATIVE_LEARNING_RATE : settings.getNegativeLearningRate(),
+        settings.getGenerations(), null, settings.getInitialProbabilityVector(), logger);
     if (logger == null) {
       throw new IllegalArgumentException("The logger cannot be null.");
     }
-    int engineCount = 0;
-    this.engines = new ArrayList<>();
+    this.parameterTypes = settings.getParameterTypes();
+    logger.info("Tuning parameters of type: " + this.parameterTypes);
+    this.games = settings.getGames();
+    this.timePerGame = settings.getTimePerGame();
+    this.timeIncPerMove = settings.getTimeIncPerMove();
+    this.openings = settings.getOpenings();
+    this.validationFactor = settings.getValidationFactor();
+    this.sprt = settings.getSprt();
+    this.logger = logger;
+    Integer depthPerMove = settings.getDepthPerMove();
+    Long nodesPerMove = settings.getNodesPerMove();
+    if (settings.isFixedLimitMode()) {
+      logger.info("Depth per move: " + depthPerMove + "; Nodes per move: " + nodesPerMove);
+    }
+    if (!this.openings.isEmpty()) {
+      logger.info("Openings: " + this.openings.size());
+    }
+    if (sprt != null) {
+      logger.info("SPRT elo0: " + sprt.getElo0() + "; elo1: " + sprt.getElo1());
+    }
+    savedGames = new AtomicInteger();
+    workerConfig = SelfPlayWorker.formatConfig(parameterTypes, timePerGame, timeIncPerMove, depthPerMove, nodesPerMove);
+    localSlots = new ArrayList<>();
+    workers = new CopyOnWriteArrayList<>();
+    idleSlots = new LinkedBlockingQueue<>();
     for (SelfPlayEngines<TunableEngine> e : engines) {
-      if (e != null && engineCount++ < games) {
-        this.engines.add(e);
+      if (e == null) {
+        continue;
       }
+      LocalSlot slot = new LocalSlot(e, new Arena(e.getController(), Logger.getAnonymousLogger(), null, depthPerMove,
+          nodesPerMove, settings.getAdjudication()));
+      localSlots.add(slot);
+      idleSlots.add(slot);
     }
-    this.parameterTypes = parameterTypes;
-    logger.info("Tuning parameters of type: " + this.parameterTypes);
-    this.games = games;
-    this.timePerGame = timePerGame;
-    this.timeIncPerMove = timeIncPerMove;
-    this.validationFactor = validationFactor;
-    arenas = new Arena[this.engines.size()];
-    for (int i = 0; i < this.engines.size(); i++) {
-      arenas[i] = new Arena(this.engines.get(i).getController(), Logger.getAnonymousLogger(), null);
+    // One thread per slot as each thread blocks on its slot while a batch is being played.
+    int poolSize = localSlots.size();
+    pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    Integer workerPort = settings.getWorkerPort();
+    if (settings.getWorkerTimeout() != null) {
+      workerTimeout = (int) (long) settings.getWorkerTimeout();
+    } else {
+      // Both engines may use up all their time in each game of the batch; allow for twice as much.
+      long batchTime = 2 * GAMES_PER_BATCH * 2 * (timePerGame + MAX_EXPECTED_MOVES_PER_GAME * timeIncPerMove);
+      workerTimeout = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_WORKER_TIMEOUT, batchTime));
+    }
+    if (workerPort != null) {
+      String bindAddress = settings.getWorkerBindAddress();
+      workerServer = new ServerSocket(workerPort, 0, bindAddress == null ? InetAddress.getLoopbackAddress() :
+          InetAddress.getByName(bindAddress));
+      logger.info("Accepting workers on: " + workerServer.getLocalSocketAddress() + "; Timeout: " + workerTimeout + "ms");
+      Thread acceptor = new Thread(this::acceptWorkers);
+      acceptor.setDaemon(true);
+      acceptor.start();
+    } else {
+      workerServer = null;
     }
-    pool = Executors.newFixedThreadPool(Math.min(Math.max(1, Runtime.getRuntime().availableProcessors()), this.engines.size()));
-    tempGeneration = -1;
   }
 
-  private double assessResults(List<Future<MatchResult>> futures, int initEngine1Wins, int initEngine2Wins,
-      int initDraws) {
-    for (Future<MatchResult> f : futures) {
+  /**
+   * Accepts the connections of workers until the server socket is closed and adds them to the engine slots. Each worker increases the
+   * size of the pool by one until it is lost.
+   */
+  private void acceptWorkers() {
+    while (!workerServer.isClosed()) {
+      Socket socket;
       try {
-        MatchResult res = f.get();
-        initEngine1Wins += res.getEngine1Wins();
-        initEngine2Wins += res.getEngine2Wins();
-        initDraws += res.getDraws();
-      } catch (InterruptedException | ExecutionException e) {
-        Thread.currentThread().interrupt();
-        throw new RuntimeException(e);
+        socket = workerServer.accept();
+      } catch (IOException e) {
+        if (!workerServer.isClosed()) {
+          logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        continue;
+      }
+      WorkerConnection worker;
+      try {
+        worker = new WorkerConnection(socket, workerConfig, workerTimeout);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, e.getMessage(), e);
+        try {
+          socket.close();
+        } catch (IOException e1) {
+          // Ignore.
+        }
+        continue;
       }
+      resizePool(1);
+      workers.add(worker);
+      idleSlots.add(worker);
+      logger.info("Worker connected: " + worker + "; Workers: " + workers.size());
     }
-    return Elo.calculateDifference(initEngine1Wins, initEngine2Wins, initDraws);
   }
 
-  @Override
-  protected double computeFitness(String genotype) {
-    int currGen = getCurrentGeneration();
-    if (tempGeneration != currGen) {
-      tempGeneration = currGen;
-      double[] probVec = getProbabilityVector();
-      StringBuilder setBuilder = new StringBuilder();
-      for (double prob : probVec) {
-        setBuilder.append(prob >= 0.5 ? "1" : "0");
-      }
-      for (SelfPlayEngines<TunableEngine> tunableEngines : engines) {
-        TunableEngine oppEngine = tunableEngines.getOpponentEngine();
-        if (!oppEngine.isInit()) {
+  /**
+   * Changes the number of threads of the pool by the specified amount, keeping one thread per engine slot. Surplus threads terminate once
+   * they finish their current tasks.
+   *
+   * @param delta The number of threads to add to the pool; negative to remove threads.
+   */
+  private void resizePool(int delta) {
+    synchronized (pool) {
+      int poolSize = Math.max(1, pool.getMaximumPoolSize() + delta);
+      // The core pool size may not exceed the maximum pool size at any time.
+      if (delta > 0) {
+        pool.setMaximumPoolSize(poolSize);
+        pool.setCorePoolSize(poolSize);
+      } else {
+        pool.setCorePoolSize(poolSize);
+        pool.setMaximumPoolSize(poolSize);
+      }
+    }
+  }
+
+  /**
+   * Waits for an engine slot to become idle and takes it.
+   *
+   * @return The idle engine slot.
+   * @throws InterruptedException If the thread is interrupted while waiting for an idle engine slot.
+   * @throws IllegalStateException If all the engine slots have been lost.
+   */
+  private MatchSlot takeIdleSlot() throws InterruptedException {
+    MatchSlot slot;
+    while ((slot = idleSlots.poll(SLOT_POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+      if (localSlots.isEmpty() && workers.isEmpty()) {
+        throw new IllegalStateException("There are no engine slots left to play the games on.");
+      }
+    }
+    return slot;
+  }
+
+  /**
+   * Returns the port the optimizer accepts workers on.
+   *
+   * @return The local port of the worker server socket or -1 if workers are not accepted.
+   */
+  public int getWorkerPort() {
+    return workerServer == null ? -1 : workerServer.getLocalPort();
+  }
+
+  /**
+   * Sets the genotype of the opponent engines to the most probable parameter set given the current probability vector. The engine slots
+   * apply it to their opponent engines before playing their next batch.
+   */
+  private void updateOpponentGenotype() {
+    opponentGenotype = getMostProbableGenotype();
+  }
+
+  /**
+   * Returns the opening of the batch of the evaluation with the specified index.
+   *
+   * @param batchIndex The index of the batch within the evaluation.
+   * @return The start position of the batch in FEN or null if there is no opening suite.
+   */
+  private String getOpening(int batchIndex) {
+    return openings.isEmpty() ? null : openings.get((openingOffset + batchIndex) % openings.size());
+  }
+
+  /**
+   * Splits the games into batches and submits them to the pool. The batches are played on whichever engine slot becomes idle first.
+   * Each batch is assigned the next opening of the evaluation.
+   *
+   * @param evaluation The fitness evaluation the games belong to.
+   * @param games The number of games to schedule.
+   */
+  private void schedule(FitnessEvaluation evaluation, int games) {
+    evaluation.addPendingGames(games);
+    for (int remainingGames = games; remainingGames > 0; remainingGames -= GAMES_PER_BATCH) {
+      int batchSize = Math.min(GAMES_PER_BATCH, remainingGames);
+      String opening = getOpening(evaluation.nextBatchIndex());
+      pool.execute(() -> playBatch(evaluation, batchSize, opening));
+    }
+  }
+
+  /**
+   * Takes at most the specified number of games from the games saved by early terminated fitness assessments in the current generation.
+   *
+   * @param games The number of games requested.
+   * @return The number of games granted.
+   */
+  private int borrowSavedGames(int games) {
+    int available;
+    int granted;
+    do {
+      available = savedGames.get();
+      granted = Math.min(available, games);
+    } while (granted > 0 && !savedGames.compareAndSet(available, available - granted));
+    return granted;
+  }
+
+  /**
+   * Plays a batch of games for the evaluation on the next idle engine slot unless the evaluation has already been decided by the SPRT, in
+   * which case the games are added to the saved games of the generation. If a worker is lost while playing the batch, the pool is shrunk
+   * and the batch is played on another slot, failing the evaluation if there are no slots left; if a worker reports an error, the worker is
+   * kept and the batch is retried on the next idle slot up to {@link #MAX_BATCH_ATTEMPTS} times in total. If this batch concludes the
+   * evaluation, it either schedules additional games or reports the fitness of the genotype.
+   *
+   * @param evaluation The fitness evaluation the games belong to.
+   * @param games The number of games to play.
+   * @param opening The start position of the games in FEN. It may be null.
+   */
+  private void playBatch(FitnessEvaluation evaluation, int games, String opening) {
+    try {
+      MatchResult result = null;
+      if (evaluation.decided) {
+        savedGames.addAndGet(games);
+      } else {
+        int errors = 0;
+        while (result == null) {
+          MatchSlot slot = takeIdleSlot();
+          boolean lost = false;
           try {
-            oppEngine.init();
-          } catch (Exception e) {
-            throw new RuntimeException(e);
+            result = slot.play(evaluation.genotype, opponentGenotype, games, opening);
+          } catch (SelfPlayWorker.WorkerErrorException e) {
+            // The connection is intact, thus the worker is kept.
+            if (++errors >= MAX_BATCH_ATTEMPTS) {
+              throw e;
+            }
+            logger.log(Level.WARNING, "Rescheduling batch after error on worker: " + slot, e);
+          } catch (IOException e) {
+            if (!(slot instanceof WorkerConnection)) {
+              throw e;
+            }
+            lost = true;
+            slot.close();
+            workers.remove(slot);
+            resizePool(-1);
+            logger.log(Level.WARNING, "Worker lost: " + slot + "; Workers: " + workers.size(), e);
+          } finally {
+            if (!lost) {
+              idleSlots.put(slot);
+            }
           }
         }
-        oppEngine.getParameters().set(setBuilder.toString(), parameterTypes);
-        oppEngine.notifyParametersChanged();
       }
-    }
-    int engine1Wins = 0;
-    int engine2Wins = 0;
-    int draws = 0;
-    ArrayList<Future<MatchResult>> futures = new ArrayList<>(engines.size());
-    int remainingGames = games;
-    for (int i = 0; i < engines.size(); i++) {
-      final int index = i;
-      final int workLoad = remainingGames / (engines.size() - i);
-      remainingGames -= workLoad;
-      futures.add(pool.submit(() -> {
-        TunableEngine tunEngine = engines.get(index).getEngine();
-        UCIEngine oppEngine = engines.get(index).getOpponentEngine();
-        if (!tunEngine.isInit()) {
-          tunEngine.init();
-        }
-        if (!oppEngine.isInit()) {
-          oppEngine.init();
+      if (!evaluation.record(result, games, sprt)) {
+        return;
+      }
+      if (!evaluation.decided && !evaluation.validated && sprt != null && evaluation.extraGames < this.games) {
+        int extraGames = borrowSavedGames(Math.min(GAMES_PER_BATCH, this.games - evaluation.extraGames));
+        if (extraGames > 0) {
+          evaluation.extraGames += extraGames;
+          schedule(evaluation, extraGames);
+          return;
         }
-        tunEngine.getParameters().set(genotype, parameterTypes);
-        tunEngine.notifyParametersChanged();
-        return arenas[index].match(tunEngine, oppEngine, workLoad, timePerGame, timeIncPerMove);
-      }));
+      }
+      double fitness = evaluation.getFitness(sprt);
+      int encore = (int) (validationFactor * this.games);
+      if (!evaluation.validated && encore > 0 && fitness > getCurrentHighestFitness()) {
+        evaluation.validated = true;
+        evaluation.decided = false;
+        schedule(evaluation, encore);
+      } else {
+        evaluation.complete(fitness);
+      }
+    } catch (Exception e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      evaluation.fail(e);
     }
-    double fitness = assessResults(futures, engine1Wins, engine2Wins, draws);
-    int encore = (int) (validationFactor * games);
-    if (fitness > getCurrentHighestFitness() && encore > 0) {
-      int addGamesPlayed = 0;
-      futures = new ArrayList<>(engines.size());
-      for (int i = 0; i < engines.size() && addGamesPlayed < encore; i++) {
-        int index = i;
-        int gamesToPlay = (int) Math.min((double) encore - addGamesPlayed, Math.ceil(((double) encore) / engines.size()));
-        futures.add(pool.submit(() -> arenas[index].match(engines.get(index).getEngine(), engines.get(index).getOpponentEngine(),
-            gamesToPlay, timePerGame, timeIncPerMove)));
-        addGamesPlayed += gamesToPlay;
+  }
+
+  @Override
+  protected void computeFitness(List<String> genotypes, ObjDoubleConsumer<String> fitnessConsumer) {
+    updateOpponentGenotype();
+    savedGames.set(0);
+    for (LocalSlot slot : localSlots) {
+      slot.arena.resetClockStatistics();
+    }
+    CountDownLatch latch = new CountDownLatch(genotypes.size());
+    List<FitnessEvaluation> evaluations = new ArrayList<>(genotypes.size());
+    for (String genotype : genotypes) {
+      evaluations.add(new FitnessEvaluation(genotype, fitnessConsumer, latch));
+    }
+    for (FitnessEvaluation evaluation : evaluations) {
+      schedule(evaluation, games);
+    }
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    if (!openings.isEmpty()) {
+      openingOffset = (openingOffset + (games + GAMES_PER_BATCH - 1) / GAMES_PER_BATCH) % openings.size();
+    }
+    int gamesPlayed = 0;
+    int decided = 0;
+    for (FitnessEvaluation evaluation : evaluations) {
+      if (evaluation.error != null) {
+        throw new RuntimeException(evaluation.error);
       }
-      fitness = assessResults(futures, engine1Wins, engine2Wins, draws);
+      gamesPlayed += evaluation.getGamesPlayed();
+      decided += evaluation.decidedBySPRT ? 1 : 0;
+    }
+    if (sprt != null) {
+      logger.info("Generation: " + getCurrentGeneration() + "; Games played: " + gamesPlayed + "; Genotypes decided by SPRT: " +
+          decided + "/" + genotypes.size());
+    }
+    ClockStatistics tunedEngineClockStats = new ClockStatistics();
+    ClockStatistics oppEngineClockStats = new ClockStatistics();
+    for (LocalSlot slot : localSlots) {
+      tunedEngineClockStats.merge(slot.arena.getEngine1ClockStatistics());
+      oppEngineClockStats.merge(slot.arena.getEngine2ClockStatistics());
+    }
+    logger.info("Generation: " + getCurrentGeneration() + System.lineSeparator() + "Tuned engine clock (local slots): " +
+        tunedEngineClockStats + System.lineSeparator() + "Opponent engine clock (local slots): " + oppEngineClockStats);
+  }
+
+  /**
+   * Saves the opening offset and attaches the most probable parameter set given the current probability vector in the XML format of the
+   * engine's parameters file to the checkpoint. The parameters file is written using the opponent engine of the first local slot.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  @Override
+  protected void saveState(Checkpoint checkpoint) {
+    checkpoint.putInt(OPENING_OFFSET_KEY, openingOffset);
+    String genotype = getMostProbableGenotype();
+    LocalSlot slot = localSlots.get(0);
+    checkpoint.attach(PARAMETERS_FILE_SUFFIX, filePath -> {
+      if (!slot.writeOpponentParameters(genotype, filePath)) {
+        throw new IOException("Failed to write the parameters file: " + filePath);
+      }
+    });
+  }
+
+  @Override
+  protected void restoreState(Checkpoint checkpoint) {
+    Integer offset = checkpoint.getInt(OPENING_OFFSET_KEY);
+    if (offset != null && !openings.isEmpty()) {
+      openingOffset = offset % openings.size();
     }
-    return fitness;
+  }
+
+  @Override
+  protected double computeFitness(String genotype) {
+    double[] fitness = new double[1];
+    computeFitness(Collections.singletonList(genotype), (g, f) -> fitness[0] = f);
+    return fitness[0];
   }
 
   @Override
   public void close() {
     pool.shutdown();
-    for (Arena a : arenas) {
-      a.close();
+    if (workerServer != null) {
+      try {
+        workerServer.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, e.getMessage(), e);
+      }
     }
-    for (SelfPlayEngines<TunableEngine> e : engines) {
-      e.getEngine().close();
-      e.getOpponentEngine().close();
-      e.getController().close();
+    for (WorkerConnection worker : workers) {
+      worker.close();
+    }
+    for (LocalSlot slot : localSlots) {
+      slot.close();
+    }
+  }
+
+  /**
+   * An engine slot backed by engines running in this process. The parameters of the engines are only set if they differ from those of
+   * the slot's previous batch.
+   */
+  private final class LocalSlot implements MatchSlot {
+
+    final SelfPlayEngines<TunableEngine> engines;
+    final Arena arena;
+    String appliedGenotype;
+    String appliedOpponentGenotype;
+
+    LocalSlot(SelfPlayEngines<TunableEngine> engines, Arena arena) {
+      this.engines = engines;
+      this.arena = arena;
+    }
+
+    @Override
+    public MatchResult play(String genotype, String opponentGenotype, int games, String opening) throws Exception {
+      TunableEngine tunEngine = engines.getEngine();
+      TunableEngine oppEngine = engines.getOpponentEngine();
+      if (!tunEngine.isInit()) {
+        tunEngine.init();
+      }
+      if (!oppEngine.isInit()) {
+        oppEngine.init();
+      }
+      if (!genotype.equals(appliedGenotype)) {
+        tunEngine.getParameters().set(genotype, parameterTypes);
+        tunEngine.notifyParametersChanged();
+        appliedGenotype = genotype;
+      }
+      if (!opponentGenotype.equals(appliedOpponentGenotype)) {
+        oppEngine.getParameters().set(opponentGenotype, parameterTypes);
+        oppEngine.notifyParametersChanged();
+        appliedOpponentGenotype = opponentGenotype;
+      }
+      return arena.match(tunEngine, oppEngine, games, timePerGame, timeIncPerMove,
+          opening == null ? null : Collections.singletonList(opening));
+    }
+
+    /**
+     * Sets the parameters of the opponent engine to those defined by the genotype and writes them to the file. It must not be called
+     * while the slot is playing games.
+     *
+     * @param genotype The genotype of the parameters.
+     * @param filePath The path to the parameters file.
+     * @return Whether the parameters could be written to the file.
+     * @throws IOException If the opponent engine cannot be initialized.
+     */
+    boolean writeOpponentParameters(String genotype, String filePath) throws IOException {
+      TunableEngine oppEngine = engines.getOpponentEngine();
+      if (!oppEngine.isInit()) {
+        try {
+          oppEngine.init();
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      if (!genotype.equals(appliedOpponentGenotype)) {
+        oppEngine.getParameters().set(genotype, parameterTypes);
+        oppEngine.notifyParametersChanged();
+        appliedOpponentGenotype = genotype;
+      }
+      return oppEngine.getParameters().writeToFile(filePath);
+    }
+
+    @Override
+    public void close() {
+      arena.close();
+      engines.getEngine().close();
+      engines.getOpponentEngine().close();
+      engines.getController().close();
+    }
+
+  }
+
+  /**
+   * The state of the fitness assessment of a single genotype whose games may be played concurrently on multiple engine slots.
+   */
+  private static class FitnessEvaluation {
+
+    final String genotype;
+    final ObjDoubleConsumer<String> fitnessConsumer;
+    final CountDownLatch latch;
+    volatile boolean validated;
+    volatile boolean decided;
+    volatile boolean decidedBySPRT;
+    volatile Exception error;
+    int extraGames;
+    private SPRT.Result sprtResult;
+    private int wins;
+    private int losses;
+    private int draws;
+    private int pendingGames;
+    private int batches;
+
+    FitnessEvaluation(String genotype, ObjDoubleConsumer<String> fitnessConsumer, CountDownLatch latch) {
+      this.genotype = genotype;
+      this.fitnessConsumer = fitnessConsumer;
+      this.latch = latch;
     }
+
+    synchronized void addPendingGames(int games) {
+      pendingGames += games;
+    }
+
+    synchronized int nextBatchIndex() {
+      return batches++;
+    }
+
+    /**
+     * Records the result of a batch of games and, unless the evaluation is being validated, tests whether the evaluation can be stopped.
+     *
+     * @param result The match result where engine 1 is the tuned engine. If it is null, the games have been skipped.
+     * @param games The number of games the result covers.
+     * @param sprt The sequential probability ratio test. It may be null.
+     * @return Whether all the scheduled games of the evaluation have been played or skipped.
+     */
+    synchronized boolean record(MatchResult result, int games, SPRT sprt) {
+      if (result != null) {
+        wins += result.getEngine1Wins();
+        losses += result.getEngine2Wins();
+        draws += result.getDraws();
+        if (sprt != null && !validated && !decided) {
+          SPRT.Result outcome = sprt.test(wins, losses, draws);
+          if (outcome != SPRT.Result.UNDECIDED) {
+            sprtResult = outcome;
+            decided = true;
+            decidedBySPRT = true;
+          }
+        }
+      }
+      pendingGames -= games;
+      return pendingGames == 0 && error == null;
+    }
+
+    synchronized int getGamesPlayed() {
+      return wins + losses + draws;
+    }
+
+    /**
+     * Returns the fitness of the genotype. If the evaluation has been stopped early by the SPRT and not validated since, the fitness is the
+     * Elo rating difference of the accepted hypothesis, as the estimate based on the few games played is unreliable and may be as extreme
+     * as the rating difference of a clean sweep. Otherwise, it is the Elo rating difference estimated from the results of the games.
+     *
+     * @param sprt The sequential probability ratio test. It may be null.
+     * @return The fitness of the genotype.
+     */
+    synchronized double getFitness(SPRT sprt) {
+      if (sprt != null && sprtResult != null && !validated) {
+        return sprtResult == SPRT.Result.H1_ACCEPTED ? sprt.getElo1() : sprt.getElo0();
+      }
+      return Elo.calculateDifference(wins, losses, draws);
+    }
+
+    void complete(double fitness) {
+      fitnessConsumer.accept(genotype, fitness);
+      latch.countDown();
+    }
+
+    synchronized void fail(Exception e) {
+      if (error == null) {
+        error = e;
+        latch.countDown();
+      }
+    }
+
   }
 
 }
@@ -0,0 +1,437 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import net.viktorc.detroid.framework.validation.SPRT;
+
+/**
+ * The settings of a {@link net.viktorc.detroid.framework.tuning.SelfPlayOptimizer} covering the game play based fitness function and the
+ * evolutionary algorithm. Instances are immutable and can only be created using a {@link Builder}.
+ *
+ * @author Viktor
+ */
+public final class SelfPlaySettings {
+
+  private final Set<ParameterType> parameterTypes;
+  private final int games;
+  private final long timePerGame;
+  private final long timeIncPerMove;
+  private final Integer depthPerMove;
+  private final Long nodesPerMove;
+  private final Adjudication adjudication;
+  private final List<String> openings;
+  private final double validationFactor;
+  private final SPRT sprt;
+  private final double[] initialProbabilityVector;
+  private final int populationSize;
+  private final Double learningRate;
+  private final Double negativeLearningRate;
+  private final Double mutationProbability;
+  private final Double mutationShift;
+  private final Integer generations;
+  private final Integer workerPort;
+  private final String workerBindAddress;
+  private final Long workerTimeout;
+
+  private SelfPlaySettings(Builder builder) {
+    parameterTypes = builder.parameterTypes;
+    games = builder.games;
+    timePerGame = builder.timePerGame;
+    timeIncPerMove = builder.timeIncPerMove;
+    depthPerMove = builder.depthPerMove;
+    nodesPerMove = builder.nodesPerMove;
+    adjudication = builder.adjudication;
+    openings = builder.openings == null ? Collections.emptyList() :
+        Collections.unmodifiableList(new ArrayList<>(builder.openings));
+    validationFactor = builder.validationFactor;
+    sprt = builder.sprt;
+    initialProbabilityVector = builder.initialProbabilityVector == null ? null :
+        Arrays.copyOf(builder.initialProbabilityVector, builder.initialProbabilityVector.length);
+    populationSize = builder.populationSize;
+    learningRate = builder.learningRate;
+    negativeLearningRate = builder.negativeLearningRate;
+    mutationProbability = builder.mutationProbability;
+    mutationShift = builder.mutationShift;
+    generations = builder.generations;
+    workerPort = builder.workerPort;
+    workerBindAddress = builder.workerBindAddress;
+    workerTimeout = builder.workerTimeout;
+  }
+
+  /**
+   * @return The set of chess engine parameter types to tune with game play. If it is null, all parameters are tuned.
+   */
+  public Set<ParameterType> getParameterTypes() {
+    return parameterTypes;
+  }
+
+  /**
+   * @return The number of games to play to assess the fitness of the parameters.
+   */
+  public int getGames() {
+    return games;
+  }
+
+  /**
+   * @return The time each engine has per game in milliseconds.
+   */
+  public long getTimePerGame() {
+    return timePerGame;
+  }
+
+  /**
+   * @return The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   */
+  public long getTimeIncPerMove() {
+    return timeIncPerMove;
+  }
+
+  /**
+   * @return The depth each move is to be searched to or null if the games are not limited by depth.
+   */
+  public Integer getDepthPerMove() {
+    return depthPerMove;
+  }
+
+  /**
+   * @return The maximum number of nodes to search per move or null if the games are not limited by nodes.
+   */
+  public Long getNodesPerMove() {
+    return nodesPerMove;
+  }
+
+  /**
+   * @return Whether the games are played with fixed search limits instead of on the clock.
+   */
+  public boolean isFixedLimitMode() {
+    return depthPerMove != null || nodesPerMove != null;
+  }
+
+  /**
+   * @return The rules by which the games are to be adjudicated or null if the games are played until they end by the rules of chess.
+   */
+  public Adjudication getAdjudication() {
+    return adjudication;
+  }
+
+  /**
+   * @return An unmodifiable list of the start positions in FEN to play the games from. If it is empty, all games start from the standard
+   * initial position.
+   */
+  public List<String> getOpenings() {
+    return openings;
+  }
+
+  /**
+   * @return The factor of the original number of games to play in addition when validating a new fittest parameter set.
+   */
+  public double getValidationFactor() {
+    return validationFactor;
+  }
+
+  /**
+   * @return The sequential probability ratio test to terminate the fitness assessments with early or null if all the games are played.
+   */
+  public SPRT getSprt() {
+    return sprt;
+  }
+
+  /**
+   * @return A copy of the starting probability vector of the optimization or null if the optimization starts from an unbiased vector.
+   */
+  public double[] getInitialProbabilityVector() {
+    return initialProbabilityVector == null ? null :
+        Arrays.copyOf(initialProbabilityVector, initialProbabilityVector.length);
+  }
+
+  /**
+   * @return The number of samples to produce per generation.
+   */
+  public int getPopulationSize() {
+    return populationSize;
+  }
+
+  /**
+   * @return The learning rate of the evolutionary algorithm or null if the default is to be used.
+   */
+  public Double getLearningRate() {
+    return learningRate;
+  }
+
+  /**
+   * @return The negative learning rate of the evolutionary algorithm or null if the default is to be used.
+   */
+  public Double getNegativeLearningRate() {
+    return negativeLearningRate;
+  }
+
+  /**
+   * @return The mutation probability of the genotypes or null if the default is to be used.
+   */
+  public Double getMutationProbability() {
+    return mutationProbability;
+  }
+
+  /**
+   * @return The mutation shift of the genotypes or null if the default is to be used.
+   */
+  public Double getMutationShift() {
+    return mutationShift;
+  }
+
+  /**
+   * @return The number of generations to complete or null if the optimization goes on until convergence.
+   */
+  public Integer getGenerations() {
+    return generations;
+  }
+
+  /**
+   * @return The port on which to accept workers (0 for any free port) or null if workers are not accepted.
+   */
+  public Integer getWorkerPort() {
+    return workerPort;
+  }
+
+  /**
+   * @return The host name or address of the local interface to accept workers on or null if they are only accepted on the loopback
+   * interface.
+   */
+  public String getWorkerBindAddress() {
+    return workerBindAddress;
+  }
+
+  /**
+   * @return The number of milliseconds to wait for a worker's response to a request for a batch of games before considering the worker
+   * lost or null if the default is to be used.
+   */
+  public Long getWorkerTimeout() {
+    return workerTimeout;
+  }
+
+  /**
+   * A builder for {@link SelfPlaySettings} instances. The number of games per fitness assessment and the population size are mandatory;
+   * all other settings are optional, but the games have to be limited either by time or by depth or nodes.
+   *
+   * @author Viktor
+   */
+  public static final class Builder {
+
+    private final int games;
+    private final int populationSize;
+    private Set<ParameterType> parameterTypes;
+    private long timePerGame;
+    private long timeIncPerMove;
+    private Integer depthPerMove;
+    private Long nodesPerMove;
+    private Adjudication adjudication;
+    private List<String> openings;
+    private double validationFactor;
+    private SPRT sprt;
+    private double[] initialProbabilityVector;
+    private Double learningRate;
+    private Double negativeLearningRate;
+    private Double mutationProbability;
+    private Double mutationShift;
+    private Integer generations;
+    private Integer workerPort;
+    private String workerBindAddress;
+    private Long workerTimeout;
+
+    /**
+     * Constructs a builder with the mandatory settings.
+     *
+     * @param games The number of games to play to assess the fitness of the parameters. It has to be greater than 0.
+     * @param populationSize The number of samples to produce per generation. It has to be greater than 0.
+     * @throws IllegalArgumentException If games or populationSize is not greater than 0.
+     */
+    public Builder(int games, int populationSize) throws IllegalArgumentException {
+      if (games <= 0 || populationSize <= 0) {
+        throw new IllegalArgumentException("The number of games and the population size have to be greater than 0.");
+      }
+      this.games = games;
+      this.populationSize = populationSize;
+    }
+
+    /**
+     * @param parameterTypes The set of chess engine parameter types to tune with game play. If it is null, all parameters will be tuned.
+     * @return The builder instance.
+     */
+    public Builder parameterTypes(Set<ParameterType> parameterTypes) {
+      this.parameterTypes = parameterTypes;
+      return this;
+    }
+
+    /**
+     * @param timePerGame The time each engine will have per game in milliseconds.
+     * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+     * @return The builder instance.
+     */
+    public Builder timeControl(long timePerGame, long timeIncPerMove) {
+      this.timePerGame = timePerGame;
+      this.timeIncPerMove = timeIncPerMove;
+      return this;
+    }
+
+    /**
+     * @param depthPerMove The depth each move is to be searched to. If it or the node limit is not null, the games are played with fixed
+     * search limits instead of on the clock which makes the fitness assessments independent of the speed and load of the machine, thus
+     * allowing for more concurrent games than available cores. It may be null.
+     * @return The builder instance.
+     */
+    public Builder depthPerMove(Integer depthPerMove) {
+      this.depthPerMove = depthPerMove;
+      return this;
+    }
+
+    /**
+     * @param nodesPerMove The maximum number of nodes to search per move. It may be null.
+     * @return The builder instance.
+     */
+    public Builder nodesPerMove(Long nodesPerMove) {
+      this.nodesPerMove = nodesPerMove;
+      return this;
+    }
+
+    /**
+     * @param adjudication The rules by which the games are to be adjudicated to save the time spent on games whose outcome is already
+     * clear. If it is null, all games are played until they end by the rules of chess.
+     * @return The builder instance.
+     */
+    public Builder adjudication(Adjudication adjudication) {
+      this.adjudication = adjudication;
+      return this;
+    }
+
+    /**
+     * @param openings A list of start positions in FEN to play the games from. If it is null or empty, all games start from the standard
+     * initial position.
+     * @return The builder instance.
+     */
+    public Builder openings(List<String> openings) {
+      this.openings = openings;
+      return this;
+    }
+
+    /**
+     * @param validationFactor The factor of the original number of games to play in addition when assessing the fitness of a parameter
+     * set whose fitness surpassed the current highest fitness after having played the original number of games.
+     * @return The builder instance.
+     */
+    public Builder validationFactor(double validationFactor) {
+      this.validationFactor = validationFactor;
+      return this;
+    }
+
+    /**
+     * @param sprt The sequential probability ratio test to use for terminating the fitness assessment of the genotypes early. The tuned
+     * engine is the first player of the tested match records. The fitness of a genotype whose assessment is terminated early is the Elo
+     * rating difference of the hypothesis accepted by the test. If it is null, all the games are played for every genotype.
+     * @return The builder instance.
+     */
+    public Builder sprt(SPRT sprt) {
+      this.sprt = sprt;
+      return this;
+    }
+
+    /**
+     * @param initialProbabilityVector The starting probability vector for the optimization. It allows the algorithm to pick up where a
+     * previous, terminated optimization process left off. If the array's length is smaller than the engine to be tuned's parameters'
+     * binary string's length, it will be extended with elements of the value 0.5d; if it is greater, only the first x elements will be
+     * considered, where x equals the parameters' binary string's length. If it is null, an unbiased vector is used.
+     * @return The builder instance.
+     */
+    public Builder initialProbabilityVector(double[] initialProbabilityVector) {
+      this.initialProbabilityVector = initialProbabilityVector;
+      return this;
+    }
+
+    /**
+     * @param learningRate The learning rate of the evolutionary algorithm. If it is null, the default is used.
+     * @param negativeLearningRate The negative learning rate of the evolutionary algorithm. If it is null, the default is used.
+     * @return The builder instance.
+     */
+    public Builder learningRates(Double learningRate, Double negativeLearningRate) {
+      this.learningRate = learningRate;
+      this.negativeLearningRate = negativeLearningRate;
+      return this;
+    }
+
+    /**
+     * @param mutationProbability The mutation probability of the genotypes. If it is null, the default is used.
+     * @param mutationShift The mutation shift of the genotypes. If it is null, the default is used.
+     * @return The builder instance.
+     */
+    public Builder mutation(Double mutationProbability, Double mutationShift) {
+      this.mutationProbability = mutationProbability;
+      this.mutationShift = mutationShift;
+      return this;
+    }
+
+    /**
+     * @param generations The number of generations to complete. If it is null, the training will go on until convergence or until it's
+     * manually stopped.
+     * @return The builder instance.
+     */
+    public Builder generations(Integer generations) {
+      this.generations = generations;
+      return this;
+    }
+
+    /**
+     * @param workerPort The port on which to accept connections from
+     * {@link net.viktorc.detroid.framework.tuning.SelfPlayWorker} instances that play games in addition to the local engines. If it is
+     * 0, a free port is chosen. If it is null, workers are not accepted.
+     * @return The builder instance.
+     */
+    public Builder workerPort(Integer workerPort) {
+      this.workerPort = workerPort;
+      return this;
+    }
+
+    /**
+     * @param workerBindAddress The host name or address of the local interface to accept workers on. As the workers are not
+     * authenticated, only trusted networks should be exposed. If it is null, workers are only accepted on the loopback interface.
+     * @return The builder instance.
+     */
+    public Builder workerBindAddress(String workerBindAddress) {
+      this.workerBindAddress = workerBindAddress;
+      return this;
+    }
+
+    /**
+     * @param workerTimeout The number of milliseconds to wait for a worker's response to a request for a batch of games. If it elapses,
+     * the worker is considered lost and its games are rescheduled. If it is null, a default based on the time control is used.
+     * @return The builder instance.
+     */
+    public Builder workerTimeout(Long workerTimeout) {
+      this.workerTimeout = workerTimeout;
+      return this;
+    }
+
+    /**
+     * Builds the settings.
+     *
+     * @return The settings instance.
+     * @throws IllegalArgumentException If the games are limited neither by time nor by depth or nodes, if the depth or node limit is
+     * less than 1, or if the worker timeout is not a positive int.
+     */
+    public SelfPlaySettings build() throws IllegalArgumentException {
+      if ((depthPerMove != null && depthPerMove < 1) || (nodesPerMove != null && nodesPerMove < 1)) {
+        throw new IllegalArgumentException("The depth and node limits have to be greater than 0.");
+      }
+      if (timePerGame <= 0 && depthPerMove == null && nodesPerMove == null) {
+        throw new IllegalArgumentException("The games have to be limited either by time or by depth or nodes.");
+      }
+      if (workerTimeout != null && (workerTimeout <= 0 || workerTimeout > Integer.MAX_VALUE)) {
+        throw new IllegalArgumentException("The worker timeout has to be greater than 0 and fit in an int.");
+      }
+      return new SelfPlaySettings(this);
+    }
+
+  }
+
+}
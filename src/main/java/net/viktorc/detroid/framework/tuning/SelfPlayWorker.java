@@ -0,0 +1,245 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A worker that plays the self-play games of a {@link net.viktorc.detroid.framework.tuning.SelfPlayOptimizer} running in another process,
+ * possibly on another machine. The worker connects to the port the optimizer accepts workers on and serves as an additional engine slot
+ * of the optimizer until the connection is closed. The two sides communicate through a line based text protocol:
+ * <ul>
+ * <li>{@code config <parameter types> <time per game> <time increment per move> <depth per move> <nodes per move>}: sent by the optimizer
+ * once after the connection has been established. The parameter types are separated by commas and missing values are denoted by
+ * {@code -}.</li>
+ * <li>{@code play <genotype> <opponent genotype> <games> <opening>}: sent by the optimizer to request a batch of games. The opening is
+ * either a FEN string or {@code -}.</li>
+ * <li>{@code result <tuned engine wins> <opponent engine wins> <draws>}: sent by the worker in response to a play request.</li>
+ * <li>{@code error <message>}: sent by the worker if the games could not be played.</li>
+ * </ul>
+ * The parameters of the engines are set by applying the genotypes to the worker's own engine instances, thus the workers have to run the
+ * same engine as the optimizer. The game adjudication rules and the engine options are those of the worker.
+ *
+ * @author Viktor
+ */
+public final class SelfPlayWorker implements AutoCloseable {
+
+  static final String CONFIG = "config";
+  static final String PLAY = "play";
+  static final String RESULT = "result";
+  static final String ERROR = "error";
+  private static final String NONE = "-";
+
+  private final SelfPlayEngines<TunableEngine> engines;
+  private final Adjudication adjudication;
+  private final Logger logger;
+
+  /**
+   * Constructs a worker using the specified engines.
+   *
+   * @param engines The engines to play the games with.
+   * @param adjudication The rules by which the games are to be adjudicated. If it is null, all games are played until they end by the
+   * rules of chess.
+   * @param logger The logger to log the requests and errors to. It cannot be null.
+   * @throws IllegalArgumentException If engines or logger is null.
+   */
+  public SelfPlayWorker(SelfPlayEngines<TunableEngine> engines, Adjudication adjudication, Logger logger)
+      throws IllegalArgumentException {
+    if (engines == null || logger == null) {
+      throw new IllegalArgumentException("The engines and the logger cannot be null.");
+    }
+    this.engines = engines;
+    this.adjudication = adjudication;
+    this.logger = logger;
+  }
+
+  /**
+   * Returns the message the optimizer sends to the workers upon establishing the connection.
+   *
+   * @param parameterTypes The types of the tuned parameters. If it is null, all parameters are tuned.
+   * @param timePerGame The time each engine has per game in milliseconds.
+   * @param timeIncPerMove The time increment per move in milliseconds.
+   * @param depthPerMove The depth each move is to be searched to. It may be null.
+   * @param nodesPerMove The maximum number of nodes to search per move. It may be null.
+   * @return The configuration message.
+   */
+  static String formatConfig(Set<ParameterType> parameterTypes, long timePerGame, long timeIncPerMove, Integer depthPerMove,
+      Long nodesPerMove) {
+    StringBuilder types = new StringBuilder();
+    if (parameterTypes == null) {
+      types.append(NONE);
+    } else {
+      for (ParameterType type : parameterTypes) {
+        types.append(types.length() > 0 ? "," : "").append(type.name());
+      }
+    }
+    return String.join(" ", CONFIG, types, Long.toString(timePerGame), Long.toString(timeIncPerMove),
+        depthPerMove == null ? NONE : depthPerMove.toString(), nodesPerMove == null ? NONE : nodesPerMove.toString());
+  }
+
+  /**
+   * Returns the message requesting the worker to play a batch of games.
+   *
+   * @param genotype The genotype of the parameters of the tuned engine.
+   * @param opponentGenotype The genotype of the parameters of the opponent engine.
+   * @param games The number of games to play.
+   * @param opening The start position of the games in FEN. It may be null.
+   * @return The play request message.
+   */
+  static String formatPlay(String genotype, String opponentGenotype, int games, String opening) {
+    return String.join(" ", PLAY, genotype, opponentGenotype, Integer.toString(games), opening == null ? NONE : opening);
+  }
+
+  /**
+   * Parses the response of a worker to a play request.
+   *
+   * @param line The response.
+   * @return The result of the match.
+   * @throws IOException If the response cannot be parsed.
+   * @throws WorkerErrorException If the response is an error message.
+   */
+  static MatchResult parseResult(String line) throws IOException, WorkerErrorException {
+    String[] tokens = line.split(" ", 4);
+    if (RESULT.equals(tokens[0]) && tokens.length == 4) {
+      try {
+        return new MatchResult(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]));
+      } catch (NumberFormatException e) {
+        throw new IOException("Illegal result: " + line, e);
+      }
+    }
+    if (ERROR.equals(tokens[0])) {
+      throw new WorkerErrorException(line.substring(ERROR.length()).trim());
+    }
+    throw new IOException("Illegal result: " + line);
+  }
+
+  private static Set<ParameterType> parseParameterTypes(String token) {
+    if (NONE.equals(token)) {
+      return null;
+    }
+    Set<ParameterType> types = EnumSet.noneOf(ParameterType.class);
+    for (String type : token.split(",")) {
+      if (!type.isEmpty()) {
+        types.add(ParameterType.valueOf(type));
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Writes the line to the writer and flushes it.
+   *
+   * @param writer The writer.
+   * @param line The line to write without the line separator.
+   * @throws IOException If the line cannot be written.
+   */
+  static void write(Writer writer, String line) throws IOException {
+    writer.write(line);
+    writer.write('\n');
+    writer.flush();
+  }
+
+  /**
+   * Connects to the optimizer and serves its play requests until it closes the connection.
+   *
+   * @param host The host name or address of the machine the optimizer runs on.
+   * @param port The port the optimizer accepts workers on.
+   * @throws IOException If the connection cannot be established or the optimizer sends an illegal message.
+   * @throws Exception If the engines cannot be initialized.
+   */
+  public void serve(String host, int port) throws Exception {
+    TunableEngine tunEngine = engines.getEngine();
+    TunableEngine oppEngine = engines.getOpponentEngine();
+    if (!tunEngine.isInit()) {
+      tunEngine.init();
+    }
+    if (!oppEngine.isInit()) {
+      oppEngine.init();
+    }
+    try (Socket socket = new Socket(host, port);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+      socket.setTcpNoDelay(true);
+      String line = reader.readLine();
+      String[] config = line == null ? new String[0] : line.split(" ", 6);
+      if (config.length != 6 || !CONFIG.equals(config[0])) {
+        throw new IOException("Illegal configuration: " + line);
+      }
+      Set<ParameterType> parameterTypes = parseParameterTypes(config[1]);
+      long timePerGame = Long.parseLong(config[2]);
+      long timeIncPerMove = Long.parseLong(config[3]);
+      Integer depthPerMove = NONE.equals(config[4]) ? null : Integer.valueOf(config[4]);
+      Long nodesPerMove = NONE.equals(config[5]) ? null : Long.valueOf(config[5]);
+      logger.info("Connected to " + host + ":" + port + "; Parameter types: " + parameterTypes + "; TC: " + timePerGame + "; Inc: " +
+          timeIncPerMove + "; Depth per move: " + depthPerMove + "; Nodes per move: " + nodesPerMove);
+      String genotype = null;
+      String opponentGenotype = null;
+      int batches = 0;
+      try (Arena arena = new Arena(engines.getController(), Logger.getAnonymousLogger(), null, depthPerMove, nodesPerMove,
+          adjudication)) {
+        while ((line = reader.readLine()) != null) {
+          String[] request = line.split(" ", 5);
+          if (request.length != 5 || !PLAY.equals(request[0])) {
+            throw new IOException("Illegal request: " + line);
+          }
+          String response;
+          try {
+            if (!request[1].equals(genotype)) {
+              genotype = null;
+              tunEngine.getParameters().set(request[1], parameterTypes);
+              tunEngine.notifyParametersChanged();
+              genotype = request[1];
+            }
+            if (!request[2].equals(opponentGenotype)) {
+              opponentGenotype = null;
+              oppEngine.getParameters().set(request[2], parameterTypes);
+              oppEngine.notifyParametersChanged();
+              opponentGenotype = request[2];
+            }
+            MatchResult result = arena.match(tunEngine, oppEngine, Integer.parseInt(request[3]), timePerGame, timeIncPerMove,
+                NONE.equals(request[4]) ? null : Collections.singletonList(request[4]));
+            response = String.join(" ", RESULT, Integer.toString(result.getEngine1Wins()),
+                Integer.toString(result.getEngine2Wins()), Integer.toString(result.getDraws()));
+            batches++;
+          } catch (Exception e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            response = ERROR + " " + String.valueOf(e).replaceAll("\\s+", " ");
+          }
+          write(writer, response);
+        }
+      }
+      logger.info("Disconnected from " + host + ":" + port + "; Batches played: " + batches);
+    }
+  }
+
+  @Override
+  public void close() {
+    engines.getEngine().close();
+    engines.getOpponentEngine().close();
+    engines.getController().close();
+  }
+
+  /**
+   * An exception signalling that the worker could not play a batch of games although the connection to it is intact.
+   */
+  static final class WorkerErrorException extends Exception {
+
+    private static final long serialVersionUID = 0L;
+
+    WorkerErrorException(String message) {
+      super("Worker error: " + message);
+    }
+
+  }
+
+}
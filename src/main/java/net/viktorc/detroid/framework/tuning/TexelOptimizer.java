@@ -14,12 +14,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.viktorc.detroid.framework.util.Checkpoint;
+import net.viktorc.detroid.framework.util.GradientApproximation;
 import net.viktorc.detroid.framework.util.NadamSGD;
 import net.viktorc.detroid.framework.validation.EPDRecord;
 import net.viktorc.detroid.framework.validation.GameState;
@@ -75,6 +79,14 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
    * minimum is assumed to have been found.
    */
   private static final double MIN_K_1ST_DERIVATIVE = 1e-10;
+  /**
+   * The checkpoint key of the scaling constant of the sigmoid function.
+   */
+  private static final String K_KEY = "texel.k";
+  /**
+   * The suffix of the path of the parameters file attached to the checkpoints.
+   */
+  public static final String PARAMETERS_FILE_SUFFIX = ".params.xml";
 
   private final String epdFilePath;
   private final String gameResultOpCode;
@@ -113,20 +125,23 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
    * @param k A scaling constant for the sigmoid function used calculate the average error.
    * @param testDataProportion The proportion of the entire data set that should be used as test data. It has to be greater than or equal
    * to 0 and less than 1. If it is null, it defaults to {@link #DEF_TEST_DATA_PROPORTION}.
+   * @param gradientApproximation The method to use for approximating the gradient if the engines do not define the symbolic gradient of
+   * their evaluation functions. If it is null, finite differences are used.
    * @param logger A logger to log the status of the optimization. It cannot be null.
    * @throws Exception If the engines cannot be initialised.
    * @throws IllegalArgumentException If the logger is null, or the batch size is not greater than 0, or the data set is too small.
    */
   public TexelOptimizer(TunableEngine[] engines, long trainingBatchSize, int epochs, Double h, Double baseLearningRate,
       Double learningAnnealingRate, Double l1RegularizationCoeff, Double l2RegularizationCoeff, String epdFilePath, String gameResultOpCode,
-      Long costCalculationBatchSize, Double k, Double testDataProportion, Logger logger) throws Exception, IllegalArgumentException {
+      Long costCalculationBatchSize, Double k, Double testDataProportion, GradientApproximation gradientApproximation, Logger logger)
+      throws Exception, IllegalArgumentException {
     super(engines[0].getParameters().values(TYPE), (double[]) Array.newInstance(double.class,
         engines[0].getParameters().values(TYPE).length), engines[0].getParameters().maxValues(TYPE), trainingBatchSize,
         costCalculationBatchSize == null ? DEF_COST_CALC_BATCH_SIZE : costCalculationBatchSize, epochs, h == null ? 1d : h,
         baseLearningRate == null ? DEF_BASE_LEARNING_RATE : baseLearningRate,
         learningAnnealingRate == null ? DEF_ANNEALING_RATE : learningAnnealingRate, null, null,
         l1RegularizationCoeff == null ? DEF_L1_REG_COEFF : l1RegularizationCoeff,
-        l2RegularizationCoeff == null ? DEF_L2_REG_COEFF : l2RegularizationCoeff, null, logger);
+        l2RegularizationCoeff == null ? DEF_L2_REG_COEFF : l2RegularizationCoeff, null, gradientApproximation, logger);
     if (logger == null) {
       throw new IllegalArgumentException("The logger cannot be null.");
     }
@@ -185,7 +200,8 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
 
   /**
    * Reads the data into a list of key-pair values where the key is an EPD position and the value is the label denoting which side won the
-   * game in which the position occurred.
+   * game in which the position occurred. Besides game results in PGN, decimal labels between 0 and 1 such as the averaged results of
+   * de-duplicated positions are also accepted.
    *
    * @param fromInd The line number from which on the lines will be loaded into the data set.
    * @param toInd The line number up to which (exclusive) the lines will be loaded into the data set.
@@ -214,6 +230,15 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
               result = 0f;
             } else if (GameState.STALE_MATE.getPGNCode().equals(resultString)) {
               result = .5f;
+            } else if (resultString != null) {
+              try {
+                result = Float.parseFloat(resultString);
+              } catch (NumberFormatException e) {
+                continue;
+              }
+              if (result < 0 || result > 1) {
+                continue;
+              }
             } else {
               continue;
             }
@@ -280,14 +305,8 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
           int endInd = Math.min(dataSample.size(), finalStartInd + workLoadPerThread);
           for (int j = finalStartInd; j < endInd; j++) {
             Entry<String, Float> dataPair = dataSample.get(j);
-            String fen = dataPair.getKey();
-            e.setPosition(fen);
             Map<String, Double> gradientCache = partitionGradientCache != null ? new HashMap<>() : null;
-            double score = e.eval(gradientCache);
-            // Check if it's white's turn.
-            if (!fen.contains("w")) {
-              score = (short) -score;
-            }
+            double score = evaluate(e, dataPair.getKey(), gradientCache);
             predictions.add(score);
             if (partitionGradientCache != null) {
               // Use the chain rule to calculate the gradient of the loss function w.r.t. the evaluation parameters.
@@ -325,6 +344,64 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
     return allPredictions;
   }
 
+  /**
+   * Sets the position on the engine and returns its static evaluation score.
+   *
+   * @param engine The engine to use for the evaluation.
+   * @param fen The position to evaluate.
+   * @param gradientCache The map to record the gradient of the evaluation function in. It can be null.
+   * @return The evaluation score of the position.
+   * @throws Exception If the position cannot be set.
+   */
+  private static double evaluate(TunableEngine engine, String fen, Map<String, Double> gradientCache) throws Exception {
+    engine.setPosition(fen);
+    double score = engine.eval(gradientCache);
+    // Check if it's white's turn.
+    if (!fen.contains("w")) {
+      score = (short) -score;
+    }
+    return score;
+  }
+
+  /**
+   * Computes the costs of each parameter set over the data sample. Unlike {@link #predict(double[], List, boolean)} which splits the data
+   * sample between the engines, this method assigns each parameter set to a single engine so that the different parameter sets are
+   * evaluated concurrently on independent engine instances.
+   *
+   * @param parameterSets The parameter sets to evaluate.
+   * @param dataSample A data sample containing the chess position strings and their corresponding labels.
+   * @return The costs associated with the parameter sets.
+   * @throws ExecutionException If an execution error happens in one of the threads.
+   * @throws InterruptedException If the current thread is interrupted while waiting for the worker threads to finish.
+   */
+  private synchronized double[] computeCostsConcurrently(List<double[]> parameterSets, List<Entry<String, Float>> dataSample)
+      throws InterruptedException, ExecutionException {
+    BlockingQueue<TunableEngine> availableEngines = new ArrayBlockingQueue<>(engines.length);
+    Collections.addAll(availableEngines, engines);
+    List<Future<Double>> futures = new ArrayList<>(parameterSets.size());
+    for (double[] parameterSet : parameterSets) {
+      futures.add(pool.submit(() -> {
+        TunableEngine e = availableEngines.take();
+        try {
+          e.getParameters().set(parameterSet, TYPE);
+          e.notifyParametersChanged();
+          double cost = 0;
+          for (Entry<String, Float> dataPair : dataSample) {
+            cost += squaredError(dataPair.getValue(), sigmoid(evaluate(e, dataPair.getKey(), null)));
+          }
+          return cost;
+        } finally {
+          availableEngines.put(e);
+        }
+      }));
+    }
+    double[] costs = new double[futures.size()];
+    for (int i = 0; i < costs.length; i++) {
+      costs[i] = futures.get(i).get();
+    }
+    return costs;
+  }
+
   /**
    * Computes the total cost, the first derivative of the loss function w.r.t. K, and the second derivative of the loss function w.r.t. 
    * K over the training data set.
@@ -354,11 +431,16 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
           secondDerivative += (2d * dSigmoidWrtK + dSquaredErrorWrtSigmoid * d2SigmoidWrtK) * dSigmoidWrtK;
         }
         samples += batch.size();
-      } catch (InterruptedException | ExecutionException e) {
+      } catch (InterruptedException e) {
         if (logger != null) {
           logger.log(Level.SEVERE, e, e::getMessage);
         }
         Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        if (logger != null) {
+          logger.log(Level.SEVERE, e, e::getMessage);
+        }
       }
     }
     cost /= samples;
@@ -459,24 +541,81 @@ public final class TexelOptimizer extends NadamSGD<String, Float> implements Aut
         totalCost += squaredError(result, sigmoid(score));
       }
       return totalCost;
-    } catch (InterruptedException | ExecutionException e) {
+    } catch (InterruptedException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected double[] computeCosts(List<double[]> parameterSets, List<Entry<String, Float>> dataSample) {
+    if (parameterSets.size() < 2 || engines.length < 2) {
+      return super.computeCosts(parameterSets, dataSample);
+    }
+    try {
+      return computeCostsConcurrently(parameterSets, dataSample);
+    } catch (InterruptedException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       Thread.currentThread().interrupt();
       throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
     }
   }
 
   @Override
   protected double[] computeGradient(double[] parameters, List<Entry<String, Float>> dataSample) {
+    if (!engines[0].isGradientDefined()) {
+      return null;
+    }
     try {
       predict(parameters, dataSample, true);
       double[] gradientCopy = new double[gradient.length];
       System.arraycopy(gradient, 0, gradientCopy, 0, gradient.length);
       return gradientCopy;
-    } catch (InterruptedException | ExecutionException e) {
+    } catch (InterruptedException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       Thread.currentThread().interrupt();
       throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the scaling constant K and attaches the current parameters in the XML format of the engine's parameters file to the checkpoint.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  @Override
+  protected void saveState(Checkpoint checkpoint) {
+    checkpoint.putDouble(K_KEY, k);
+    double[] values = parameters.clone();
+    checkpoint.attach(PARAMETERS_FILE_SUFFIX, filePath -> {
+      EngineParameters params = engines[0].getParameters();
+      params.set(values, TYPE);
+      if (!params.writeToFile(filePath)) {
+        throw new IOException("Failed to write the parameters file: " + filePath);
+      }
+    });
+  }
+
+  /**
+   * Restores the scaling constant K the checkpointed optimization was performed with.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  @Override
+  protected void restoreState(Checkpoint checkpoint) {
+    Double savedK = checkpoint.getDouble(K_KEY);
+    if (savedK != null) {
+      k = savedK;
     }
   }
 
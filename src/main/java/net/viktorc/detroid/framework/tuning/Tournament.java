@@ -0,0 +1,262 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import net.viktorc.detroid.framework.uci.UCIEngine;
+
+/**
+ * A class for scheduling games onto a pool of {@link net.viktorc.detroid.framework.tuning.Arena} instances so that as many games are
+ * played concurrently as there are engine slots. Each slot consists of a pair of engines and a controller engine. Every game is played on
+ * its own thread with its own clocks on whichever slot becomes idle first. The games are paired up so that engine 1 plays each opening
+ * with both colours. The results are streamed to an optional consumer as the games end, and the games are written to the PGN file by a
+ * dedicated writer thread so that the game threads never wait on file I/O. Failures to write the PGN file are reported when the games
+ * of the tournament have ended.
+ *
+ * @author Viktor
+ */
+class Tournament implements AutoCloseable {
+
+  private final List<SelfPlayEngines<? extends UCIEngine>> engines;
+  private final Arena[] arenas;
+  private final BlockingQueue<Integer> idleSlots;
+  private final ExecutorService pool;
+  private final ExecutorService pgnWriterPool;
+  private final BufferedWriter pgnWriter;
+  private final Queue<Future<?>> pgnWrites;
+
+  /**
+   * Constructs a tournament using the specified engines.
+   *
+   * @param engines A list of {@link net.viktorc.detroid.framework.tuning.SelfPlayEngines} instances each of which constitutes an engine
+   * slot. The null elements of the list are ignored.
+   * @param resultLogger The logger to log the results of the games. It may be null.
+   * @param pgnFilePath The path to the file the games should be appended to in PGN. If it is null, the games are not recorded.
+   * @param depthPerMove The depth each move is to be searched to instead of playing on the clock. It may be null.
+   * @param nodesPerMove The maximum number of nodes to search per move instead of playing on the clock. It may be null.
+   * @param adjudication The rules by which the games are to be adjudicated. It may be null.
+   * @throws Exception If the controller engines cannot be initialised or the PGN file cannot be opened.
+   * @throws IllegalArgumentException If engines doesn't contain at least one non-null element or either of the search limits is less
+   * than 1.
+   */
+  Tournament(List<? extends SelfPlayEngines<? extends UCIEngine>> engines, Logger resultLogger, String pgnFilePath,
+      Integer depthPerMove, Long nodesPerMove, Adjudication adjudication) throws Exception {
+    this.engines = new ArrayList<>();
+    for (SelfPlayEngines<? extends UCIEngine> e : engines) {
+      if (e != null) {
+        this.engines.add(e);
+      }
+    }
+    if (this.engines.isEmpty()) {
+      throw new IllegalArgumentException("The parameter engines has to contain at least 1 non-null element.");
+    }
+    arenas = new Arena[this.engines.size()];
+    idleSlots = new LinkedBlockingQueue<>();
+    for (int i = 0; i < arenas.length; i++) {
+      arenas[i] = new Arena(this.engines.get(i).getController(), resultLogger, null, depthPerMove, nodesPerMove,
+          adjudication);
+      idleSlots.add(i);
+    }
+    pool = Executors.newFixedThreadPool(arenas.length);
+    pgnWrites = new ConcurrentLinkedQueue<>();
+    if (pgnFilePath != null) {
+      pgnWriter = new BufferedWriter(new FileWriter(pgnFilePath, true));
+      pgnWriterPool = Executors.newSingleThreadExecutor();
+    } else {
+      pgnWriter = null;
+      pgnWriterPool = null;
+    }
+  }
+
+  /**
+   * Returns the number of games that can be played concurrently.
+   *
+   * @return The number of engine slots.
+   */
+  public int getConcurrency() {
+    return arenas.length;
+  }
+
+  /**
+   * Returns the cumulative time usage statistics of engine 1 of all the slots.
+   *
+   * @return The merged clock statistics of engine 1 of the slots.
+   */
+  public ClockStatistics getEngine1ClockStatistics() {
+    ClockStatistics stats = new ClockStatistics();
+    for (Arena a : arenas) {
+      stats.merge(a.getEngine1ClockStatistics());
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the cumulative time usage statistics of engine 2 of all the slots.
+   *
+   * @return The merged clock statistics of engine 2 of the slots.
+   */
+  public ClockStatistics getEngine2ClockStatistics() {
+    ClockStatistics stats = new ClockStatistics();
+    for (Arena a : arenas) {
+      stats.merge(a.getEngine2ClockStatistics());
+    }
+    return stats;
+  }
+
+  /**
+   * Hands the PGN of a finished game over to the writer thread.
+   *
+   * @param pgn The game in PGN.
+   */
+  private void recordGame(String pgn) {
+    if (pgnWriterPool != null) {
+      pgnWrites.add(pgnWriterPool.submit(() -> {
+        pgnWriter.write(pgn + System.lineSeparator() + System.lineSeparator());
+        return null;
+      }));
+    }
+  }
+
+  /**
+   * Flushes the PGN file and waits for all the pending writes to complete.
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting for the writes.
+   * @throws ExecutionException If any of the writes failed. If multiple writes failed, the first failure is thrown.
+   */
+  private void awaitPGNWrites() throws InterruptedException, ExecutionException {
+    if (pgnWriterPool == null) {
+      return;
+    }
+    if (!pgnWriterPool.isShutdown()) {
+      pgnWrites.add(pgnWriterPool.submit(() -> {
+        pgnWriter.flush();
+        return null;
+      }));
+    }
+    ExecutionException failure = null;
+    Future<?> write;
+    while ((write = pgnWrites.poll()) != null) {
+      try {
+        write.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Plays a single game on the next idle slot.
+   *
+   * @param engine1White Whether engine 1 of the slot plays with the white pieces.
+   * @param opening The start position of the game in FEN. If it is null, the standard initial position is used.
+   * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of the game.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @return The result of the game from the point of view of engine 1.
+   * @throws Exception If the engines cannot be initialised.
+   */
+  private MatchResult playGame(boolean engine1White, String opening, long timePerGame, long timeIncPerMove) throws Exception {
+    int slot = idleSlots.take();
+    try {
+      SelfPlayEngines<? extends UCIEngine> slotEngines = engines.get(slot);
+      MatchResult result = arenas[slot].play(slotEngines.getEngine(), slotEngines.getOpponentEngine(), engine1White, opening,
+          timePerGame, timeIncPerMove);
+      recordGame(arenas[slot].toPGN());
+      return result;
+    } finally {
+      idleSlots.put(slot);
+    }
+  }
+
+  /**
+   * Plays the specified number of games concurrently on the engine slots. Engine 1 of the slots plays with the white pieces in every even
+   * game and with the black pieces in every odd game. If openings are specified, each consecutive pair of games is started from the
+   * next opening in the list, cycling through the list if there are more game pairs than openings.
+   *
+   * @param games The number of games to play. Should be an even number.
+   * @param timePerGame The number of milliseconds each engine will have to make all their moves during the course of each game.
+   * @param timeIncPerMove The number of milliseconds with which the remaining time of an engine is incremented after each legal move.
+   * @param openings A list of start positions in FEN. If it is null or empty, all games start from the standard initial position.
+   * @param resultConsumer A consumer the result of each game is passed to as soon as the game ends. It may be called from multiple threads
+   * concurrently. It may be null.
+   * @return The aggregated results of the games from the point of view of engine 1 of the slots.
+   * @throws InterruptedException If the thread is interrupted while waiting for the games to finish.
+   * @throws ExecutionException If an exception occurs in one of the game threads or the games cannot be written to the PGN file.
+   */
+  public synchronized MatchResult play(int games, long timePerGame, long timeIncPerMove, List<String> openings,
+      Consumer<MatchResult> resultConsumer) throws InterruptedException, ExecutionException {
+    AtomicInteger engine1Wins = new AtomicInteger();
+    AtomicInteger engine2Wins = new AtomicInteger();
+    AtomicInteger draws = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>(games);
+    for (int i = 0; i < games; i++) {
+      boolean engine1White = i % 2 == 0;
+      String opening = openings == null || openings.isEmpty() ? null : openings.get((i / 2) % openings.size());
+      futures.add(pool.submit(() -> {
+        MatchResult result = playGame(engine1White, opening, timePerGame, timeIncPerMove);
+        engine1Wins.addAndGet(result.getEngine1Wins());
+        engine2Wins.addAndGet(result.getEngine2Wins());
+        draws.addAndGet(result.getDraws());
+        if (resultConsumer != null) {
+          resultConsumer.accept(result);
+        }
+        return null;
+      }));
+    }
+    try {
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      for (Future<?> f : futures) {
+        f.cancel(true);
+      }
+    }
+    awaitPGNWrites();
+    return new MatchResult(engine1Wins.get(), engine2Wins.get(), draws.get());
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+    for (Arena a : arenas) {
+      a.close();
+    }
+    if (pgnWriterPool != null) {
+      pgnWriterPool.shutdown();
+      try {
+        pgnWriterPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        awaitPGNWrites();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      } finally {
+        try {
+          pgnWriter.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+}
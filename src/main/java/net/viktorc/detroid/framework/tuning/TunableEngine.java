@@ -46,6 +46,17 @@ public interface TunableEngine extends UCIEngine {
    */
   double eval(Map<String, Double> gradientCache);
 
+  /**
+   * Runs a quiescence search from the current position and returns the position at the end of its principal variation, i.e. the quiet
+   * position the static evaluation of the current position would be resolved to. The current position of the engine is left unchanged.
+   * The default implementation returns null which denotes that quiescence resolution is not supported by the engine.
+   *
+   * @return The leaf position of the principal variation of the quiescence search in FEN or null if it is not supported.
+   */
+  default String resolveQuiescence() {
+    return null;
+  }
+
   /**
    * Specifies whether the gradient of the evaluation function is mathematically defined. If it is not, numerical differentiation is
    * used to approximate the gradient when needed. If it is, the partial derivatives are resolved based on the entries of the
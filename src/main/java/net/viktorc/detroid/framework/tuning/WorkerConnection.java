@@ -0,0 +1,73 @@
+package net.viktorc.detroid.framework.tuning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An engine slot of the {@link net.viktorc.detroid.framework.tuning.SelfPlayOptimizer} backed by a
+ * {@link net.viktorc.detroid.framework.tuning.SelfPlayWorker} connected over a socket. If the connection is lost or the worker does not
+ * respond within the timeout, {@link #play(String, String, int, String)} throws an {@link java.io.IOException} and the slot should be
+ * discarded. If the worker responds with an error, a {@link SelfPlayWorker.WorkerErrorException} is thrown and the slot remains
+ * usable.
+ *
+ * @author Viktor
+ */
+final class WorkerConnection implements MatchSlot {
+
+  private final Socket socket;
+  private final BufferedReader reader;
+  private final Writer writer;
+  private final String address;
+
+  /**
+   * Sets up the connection and sends the configuration message to the worker.
+   *
+   * @param socket The socket connected to the worker.
+   * @param config The configuration message.
+   * @param timeout The number of milliseconds to wait for the response to a play request.
+   * @throws IOException If the configuration message cannot be sent.
+   */
+  WorkerConnection(Socket socket, String config, int timeout) throws IOException {
+    this.socket = socket;
+    address = socket.getRemoteSocketAddress().toString();
+    socket.setTcpNoDelay(true);
+    socket.setKeepAlive(true);
+    socket.setSoTimeout(timeout);
+    reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+    SelfPlayWorker.write(writer, config);
+  }
+
+  @Override
+  public MatchResult play(String genotype, String opponentGenotype, int games, String opening)
+      throws IOException, SelfPlayWorker.WorkerErrorException {
+    SelfPlayWorker.write(writer, SelfPlayWorker.formatPlay(genotype, opponentGenotype, games, opening));
+    String response = reader.readLine();
+    if (response == null) {
+      throw new EOFException("The worker at " + address + " closed the connection.");
+    }
+    return SelfPlayWorker.parseResult(response);
+  }
+
+  @Override
+  public void close() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+  }
+
+  @Override
+  public String toString() {
+    return address;
+  }
+
+}
@@ -2,7 +2,11 @@ package net.viktorc.detroid.framework.util;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * A generic, pre-allocated hash table to satisfy massive hash storage requirements where losslessness and dynamic heap allocation are
@@ -14,7 +18,22 @@ import java.util.function.Predicate;
  * The storage scheme is based on asymmetric hashing with two hash tables with different sizes in decreasing order, thus it does not really
  * have two unique hash functions. All it ever does is take the absolute value of the hash keys of the entries and derive mod [respective
  * table's size]; it applies no randomization whatsoever either. Due to the uneven table sizes, look up is biased towards the first table.
- * This data structure is not thread safe.
+ * In this mode, the data structure is not thread safe.
+ *
+ * Alternatively, the hash table can be configured to be bucketed. In bucketed mode, it consists of a single array of a power of two
+ * number of buckets with a fixed number of slots (ways) each, laid out one after the other. The bucket of an entry is determined by
+ * masking the lower bits of its hash key and the entry may be stored in any slot of its bucket; which entry is pushed out when the
+ * bucket is full is decided by a pluggable {@link net.viktorc.detroid.framework.util.Cache.ReplacementPolicy}.
+ *
+ * A bucketed hash table can also be made thread safe. In concurrent mode, the buckets are guarded by striped sequence locks. Each
+ * operation that modifies the table, including those of the replacement policy, holds the lock of the stripe of the bucket it modifies,
+ * thus concurrent insertions never lose entries or leave an entry with the fields of two different entries. Look-ups do not lock. The
+ * entry returned by {@link #get(long)} is the live entry in the table which may be overwritten by other threads while it is being read;
+ * however, {@link #get(long, Entry)} copies the entry into a thread-local target and retries until the copy is not interleaved with a
+ * modification of the stripe, guaranteeing a consistent snapshot as long as the fields of the entries are volatile. Fields not
+ * covered by the hash key (e.g. ages or flags) may be updated on live entries without locking; such updates are not ordered with
+ * respect to concurrent insertions and may end up on another entry. The size is maintained by a
+ * {@link java.util.concurrent.atomic.LongAdder} and is only exact when the table is not modified concurrently.
  *
  * @param <T> A hash table entry type that implements the {@link net.viktorc.detroid.framework.util.Cache.Entry} interface.
  * @author Viktor
@@ -26,10 +45,20 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    * higher. */
   private static final float T1_SHARE = 0.6f;
   private static final float T2_SHARE = 0.4f;
+  // The maximum number of lock stripes in concurrent mode.
+  private static final int MAX_STRIPES = 1 << 12;
+  // The distance between the sequence numbers of the stripes in longs so that each of them is on its own cache line.
+  private static final int SEQUENCE_PADDING = 8;
 
   private final int capacity;
   private final int recursions;
-  private T[] t1, t2; // The two hash tables.
+  private final int ways;
+  private final long bucketMask;
+  private final ReplacementPolicy<T> policy;
+  private final long stripeMask;
+  private final AtomicLongArray sequences; // The sequence numbers of the stripes in concurrent mode; odd while the stripe is locked.
+  private final LongAdder concurrentSize;
+  private T[] t1, t2; // The two hash tables. In bucketed mode, the first one holds the buckets and the second one is empty.
   private int size;
 
   /**
@@ -39,7 +68,6 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    * @param capacity The guaranteed minimum capacity the hash table is to have.
    * @param recursions The maximum number of relocation cycles to perform a la cuckoo hashing.
    */
-  @SuppressWarnings({"unchecked"})
   public Cache(EntryFactory<T> factory, int capacity, int recursions) {
     long s1, s2, tL1, tL2;
     if (factory == null) {
@@ -60,8 +88,8 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     if (tL1 == tL2) {
       tL1 = MillerRabin.leastGEPrime(tL1 + 1);
     }
-    t1 = (T[]) new Entry[(int) tL1];
-    t2 = (T[]) new Entry[(int) tL2];
+    t1 = newTable((int) tL1);
+    t2 = newTable((int) tL2);
     for (int i = 0; i < t1.length; i++) {
       t1[i] = factory.newInstance();
     }
@@ -70,6 +98,12 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     }
     this.capacity = t1.length + t2.length;
     this.recursions = recursions;
+    ways = 0;
+    bucketMask = 0;
+    policy = null;
+    stripeMask = 0;
+    sequences = null;
+    concurrentSize = null;
   }
 
   /**
@@ -82,6 +116,66 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     this(factory, capacity, 0);
   }
 
+  /**
+   * Constructs a bucketed lossy hash table with at most the specified capacity. The number of buckets is the greatest power of two
+   * whose product with the number of ways does not exceed the capacity; however, the table always has at least one bucket.
+   *
+   * @param factory The factory to construct the pre-initialized hash table entries.
+   * @param capacity The maximum capacity the hash table is to have.
+   * @param ways The number of slots in each bucket.
+   * @param policy The replacement policy deciding which entry to push out of a full bucket.
+   * @param concurrent Whether the hash table is to be thread safe.
+   */
+  public Cache(EntryFactory<T> factory, int capacity, int ways, ReplacementPolicy<T> policy, boolean concurrent) {
+    if (factory == null) {
+      throw new NullPointerException("The factory cannot be null.");
+    }
+    if (policy == null) {
+      throw new NullPointerException("The replacement policy cannot be null.");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Illegal capacity. The capacity has to be greater than 0.");
+    }
+    if (ways <= 0) {
+      throw new IllegalArgumentException("Illegal number of ways. The number of ways has to be greater than 0.");
+    }
+    int buckets = Integer.highestOneBit(Math.max(1, capacity / ways));
+    t1 = newTable(buckets * ways);
+    t2 = newTable(0);
+    for (int i = 0; i < t1.length; i++) {
+      t1[i] = factory.newInstance();
+    }
+    this.capacity = t1.length;
+    this.ways = ways;
+    this.policy = policy;
+    bucketMask = buckets - 1;
+    recursions = 0;
+    if (concurrent) {
+      int stripes = Math.min(buckets, MAX_STRIPES);
+      stripeMask = stripes - 1;
+      sequences = new AtomicLongArray(stripes * SEQUENCE_PADDING);
+      concurrentSize = new LongAdder();
+    } else {
+      stripeMask = 0;
+      sequences = null;
+      concurrentSize = null;
+    }
+  }
+
+  /**
+   * Constructs a bucketed lossy hash table with at most the specified capacity that is not thread safe. The number of buckets is the
+   * greatest power of two whose product with the number of ways does not exceed the capacity; however, the table always has at least
+   * one bucket.
+   *
+   * @param factory The factory to construct the pre-initialized hash table entries.
+   * @param capacity The maximum capacity the hash table is to have.
+   * @param ways The number of slots in each bucket.
+   * @param policy The replacement policy deciding which entry to push out of a full bucket.
+   */
+  public Cache(EntryFactory<T> factory, int capacity, int ways, ReplacementPolicy<T> policy) {
+    this(factory, capacity, ways, policy, false);
+  }
+
   /**
    * Returns the total number of slots in the hash table.
    *
@@ -97,16 +191,92 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    * @return The total number of non-empty entries.
    */
   public int size() {
-    return size;
+    return concurrentSize == null ? size : (int) concurrentSize.sum();
+  }
+
+  /**
+   * Returns whether the hash table is thread safe.
+   *
+   * @return Whether the hash table is in concurrent mode.
+   */
+  public boolean isConcurrent() {
+    return sequences != null;
   }
 
   /**
-   * Returns the size of the hash table in bytes.
+   * Creates an empty table of entries.
+   *
+   * @param length The length of the table.
+   * @param <T> The hash table entry type.
+   * @return The table.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends Entry<T>> T[] newTable(int length) {
+    return (T[]) new Entry<?>[length];
+  }
+
+  /**
+   * Adjusts the number of non-empty entries.
+   *
+   * @param delta The change in the number of entries.
+   */
+  private void addToSize(int delta) {
+    if (concurrentSize == null) {
+      size += delta;
+    } else {
+      concurrentSize.add(delta);
+    }
+  }
+
+  /**
+   * Returns the index of the sequence number of the stripe of the bucket the key maps to.
+   *
+   * @param key The 64 bit hash key.
+   * @return The index of the sequence number in the sequence array.
+   */
+  private int sequenceIndex(long key) {
+    return (int) (key & bucketMask & stripeMask) * SEQUENCE_PADDING;
+  }
+
+  /**
+   * Spins until it acquires the lock of the stripe.
+   *
+   * @param sequenceIndex The index of the sequence number of the stripe.
+   * @return The odd sequence number of the locked stripe.
+   */
+  private long lock(int sequenceIndex) {
+    while (true) {
+      long sequence = sequences.get(sequenceIndex);
+      if ((sequence & 1) == 0 && sequences.compareAndSet(sequenceIndex, sequence, sequence + 1)) {
+        return sequence + 1;
+      }
+    }
+  }
+
+  /**
+   * Releases the lock of the stripe.
+   *
+   * @param sequenceIndex The index of the sequence number of the stripe.
+   * @param sequence The odd sequence number returned by {@link #lock(int)}.
+   */
+  private void unlock(int sequenceIndex, long sequence) {
+    sequences.set(sequenceIndex, sequence + 1);
+  }
+
+  /**
+   * Returns the size of the hash table in bytes. The sizes of the tables and their entries are estimated using the
+   * {@link net.viktorc.detroid.framework.util.SizeEstimator} while the sequence numbers of the lock stripes are accounted for as a plain
+   * array so as not to reflect on the internals of the concurrent utilities of the JDK.
    *
    * @return The size of the hash table in bytes.
    */
   public long memorySize() {
-    return SizeEstimator.getInstance().sizeOf(this);
+    SizeEstimator estimator = SizeEstimator.getInstance();
+    long size = estimator.sizeOf(t1) + estimator.sizeOf(t2);
+    if (sequences != null) {
+      size += (long) sequences.length() * Long.BYTES;
+    }
+    return size;
   }
 
   /**
@@ -138,6 +308,69 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     }
   }
 
+  /**
+   * Returns the index of the first slot of the bucket the key maps to.
+   *
+   * @param key The 64 bit hash key.
+   * @return The offset of the bucket.
+   */
+  private int bucketOffset(long key) {
+    return (int) (key & bucketMask) * ways;
+  }
+
+  /**
+   * Inserts an entry into its bucket.
+   *
+   * @param entry The entry to be inserted.
+   * @param key The hash key of the entry.
+   * @return Whether the entry has been inserted into the bucket.
+   */
+  private boolean putIntoBucket(T entry, long key) {
+    int offset = bucketOffset(key);
+    int end = offset + ways;
+    T empty = null;
+    // Checking for an entry with the same key. If there is one, insertion can terminate regardless of its success.
+    for (int i = offset; i < end; i++) {
+      T slot = t1[i];
+      if (slot.isEmpty()) {
+        if (empty == null) {
+          empty = slot;
+        }
+      } else if (key == slot.hashKey()) {
+        if (policy.replacesSameKey(slot, entry)) {
+          slot.assume(entry);
+          return true;
+        }
+        return false;
+      }
+    }
+    // If there was no entry with the same key, but there was at least one empty slot, insert the entry into it.
+    if (empty != null) {
+      empty.assume(entry);
+      addToSize(1);
+      return true;
+    }
+    return policy.replace(t1, offset, ways, entry);
+  }
+
+  /**
+   * Returns the entry mapped to the key in the bucket the key maps to or null if there is no such entry.
+   *
+   * @param key The 64 bit hash key.
+   * @return The entry mapped to the specified key.
+   */
+  private T getFromBucket(long key) {
+    int offset = bucketOffset(key);
+    int end = offset + ways;
+    for (int i = offset; i < end; i++) {
+      T entry = t1[i];
+      if (!entry.isEmpty() && entry.hashKey() == key) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
   /**
    * Inserts an entry into the hash table. No null checks are made.
    *
@@ -153,6 +386,17 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
       return false;
     }
     key = entry.hashKey();
+    if (sequences != null) {
+      int sequenceIndex = sequenceIndex(key);
+      long sequence = lock(sequenceIndex);
+      try {
+        return putIntoBucket(entry, key);
+      } finally {
+        unlock(sequenceIndex, sequence);
+      }
+    } else if (policy != null) {
+      return putIntoBucket(entry, key);
+    }
     absKey = key & Long.MAX_VALUE;
     // Checking for an entry with the same key. If there is one, insertion can terminate regardless of its success.
     entry1 = t1[(int) (absKey % t1.length)];
@@ -216,6 +460,9 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    */
   public T get(long key) {
     T entry;
+    if (policy != null) {
+      return getFromBucket(key);
+    }
     long absKey = key & Long.MAX_VALUE;
     if (!(entry = t1[(int) (absKey % t1.length)]).isEmpty() && entry.hashKey() == key) {
       return entry;
@@ -226,6 +473,39 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     return null;
   }
 
+  /**
+   * Copies the entry identified by the key into the target entry and returns the entry in the table or null if it is not in the table.
+   * In concurrent mode, the copy is a consistent snapshot of the entry that is guaranteed to have the specified hash key even if the
+   * entry in the table has been overwritten since.
+   *
+   * @param key The 64 bit hash key.
+   * @param target The entry to copy the state of the entry mapped to the key into. Its state is unspecified if there is no such entry.
+   * @return The entry in the table mapped to the specified key.
+   */
+  public T get(long key, T target) {
+    if (sequences == null) {
+      T entry = get(key);
+      if (entry != null) {
+        target.assume(entry);
+      }
+      return entry;
+    }
+    int sequenceIndex = sequenceIndex(key);
+    while (true) {
+      long sequence = sequences.get(sequenceIndex);
+      if ((sequence & 1) != 0) {
+        continue;
+      }
+      T entry = getFromBucket(key);
+      if (entry != null) {
+        target.assume(entry);
+      }
+      if (sequences.get(sequenceIndex) == sequence) {
+        return entry;
+      }
+    }
+  }
+
   /**
    * Removes the entry identified by the input parameter long integer 'key' from the hash table and returns true if it is in the hash table;
    * returns false otherwise.
@@ -235,6 +515,29 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    */
   public boolean remove(long key) {
     T entry;
+    if (sequences != null) {
+      int sequenceIndex = sequenceIndex(key);
+      long sequence = lock(sequenceIndex);
+      try {
+        entry = getFromBucket(key);
+        if (entry == null) {
+          return false;
+        }
+        entry.empty();
+        addToSize(-1);
+        return true;
+      } finally {
+        unlock(sequenceIndex, sequence);
+      }
+    } else if (policy != null) {
+      entry = getFromBucket(key);
+      if (entry == null) {
+        return false;
+      }
+      entry.empty();
+      size--;
+      return true;
+    }
     long absKey = key & Long.MAX_VALUE;
     if (!(entry = t1[(int) (absKey % t1.length)]).isEmpty() && entry.hashKey() == key) {
       entry.empty();
@@ -255,6 +558,24 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    * @param condition The condition on which an entry should be removed.
    */
   public void remove(Predicate<T> condition) throws NullPointerException {
+    if (sequences != null) {
+      for (int bucket = 0; bucket <= bucketMask; bucket++) {
+        int sequenceIndex = sequenceIndex(bucket);
+        long sequence = lock(sequenceIndex);
+        try {
+          for (int i = bucket * ways; i < (bucket + 1) * ways; i++) {
+            T entry = t1[i];
+            if (!entry.isEmpty() && condition.test(entry)) {
+              entry.empty();
+              concurrentSize.decrement();
+            }
+          }
+        } finally {
+          unlock(sequenceIndex, sequence);
+        }
+      }
+      return;
+    }
     for (T entry : t1) {
       if (!entry.isEmpty() && condition.test(entry)) {
         entry.empty();
@@ -273,6 +594,23 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
    * Clears the hash table by emptying all entries.
    */
   public void clear() {
+    if (sequences != null) {
+      for (int bucket = 0; bucket <= bucketMask; bucket++) {
+        int sequenceIndex = sequenceIndex(bucket);
+        long sequence = lock(sequenceIndex);
+        try {
+          for (int i = bucket * ways; i < (bucket + 1) * ways; i++) {
+            if (!t1[i].isEmpty()) {
+              t1[i].empty();
+              concurrentSize.decrement();
+            }
+          }
+        } finally {
+          unlock(sequenceIndex, sequence);
+        }
+      }
+      return;
+    }
     for (T entry : t1) {
       entry.empty();
     }
@@ -282,6 +620,26 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
     size = 0;
   }
 
+  /**
+   * Performs the action on all non-empty entries without collecting them first. In concurrent mode, the entries are not locked while
+   * the action is performed on them.
+   *
+   * @param action The action to perform on the entries.
+   */
+  @Override
+  public void forEach(Consumer<? super T> action) {
+    for (T entry : t1) {
+      if (!entry.isEmpty()) {
+        action.accept(entry);
+      }
+    }
+    for (T entry : t2) {
+      if (!entry.isEmpty()) {
+        action.accept(entry);
+      }
+    }
+  }
+
   @Override
   public Iterator<T> iterator() {
     ArrayList<T> list;
@@ -350,6 +708,165 @@ public class Cache<T extends Cache.Entry<T>> implements Iterable<T> {
 
   }
 
+  /**
+   * A strategy for choosing the entry to push out of a full bucket of a bucketed hash table. The static factory methods of the
+   * interface provide the common transposition table replacement schemes.
+   *
+   * @param <T> A hash table entry type that implements the {@link net.viktorc.detroid.framework.util.Cache.Entry} interface.
+   * @author Viktor
+   */
+  public interface ReplacementPolicy<T extends Cache.Entry<T>> {
+
+    /**
+     * Returns the index of the least valuable entry of the slots in the specified range according to
+     * {@link java.lang.Comparable#compareTo(Object)}.
+     *
+     * @param table The array of the buckets.
+     * @param from The index of the first slot of the range (inclusive).
+     * @param to The index of the last slot of the range (exclusive).
+     * @param <T> The hash table entry type.
+     * @return The index of the least valuable entry.
+     */
+    static <T extends Cache.Entry<T>> int leastValuable(T[] table, int from, int to) {
+      int index = from;
+      for (int i = from + 1; i < to; i++) {
+        if (table[i].compareTo(table[index]) < 0) {
+          index = i;
+        }
+      }
+      return index;
+    }
+
+    /**
+     * Returns a policy that pushes out the least valuable entry of the bucket according to
+     * {@link java.lang.Comparable#compareTo(Object)} provided that the new entry is at least as valuable. This is how entries are
+     * replaced in the unbucketed mode without relocation.
+     *
+     * @param <T> The hash table entry type.
+     * @return The depth-preferred replacement policy.
+     */
+    static <T extends Cache.Entry<T>> ReplacementPolicy<T> depthPreferred() {
+      return (table, offset, ways, entry) -> {
+        T victim = table[leastValuable(table, offset, offset + ways)];
+        if (entry.compareTo(victim) >= 0) {
+          victim.assume(entry);
+          return true;
+        }
+        return false;
+      };
+    }
+
+    /**
+     * Returns a policy that always stores the new entry pushing out the least valuable entry of the bucket according to
+     * {@link java.lang.Comparable#compareTo(Object)} and which overwrites entries with the same key unconditionally.
+     *
+     * @param <T> The hash table entry type.
+     * @return The always-replace policy.
+     */
+    static <T extends Cache.Entry<T>> ReplacementPolicy<T> alwaysReplace() {
+      return new ReplacementPolicy<T>() {
+
+        @Override
+        public boolean replacesSameKey(T stored, T entry) {
+          return true;
+        }
+
+        @Override
+        public boolean replace(T[] table, int offset, int ways, T entry) {
+          table[leastValuable(table, offset, offset + ways)].assume(entry);
+          return true;
+        }
+      };
+    }
+
+    /**
+     * Returns a policy that treats the first slot of each bucket as a depth-preferred tier and the rest of the slots as an always-replace
+     * tier. If the new entry is at least as valuable as the entry in the first slot, it takes the entry's place and the entry is demoted
+     * into the always-replace tier; otherwise the new entry is stored in the always-replace tier. In buckets of a single slot, it behaves
+     * like the depth-preferred policy.
+     *
+     * @param <T> The hash table entry type.
+     * @return The two-tier replacement policy.
+     */
+    static <T extends Cache.Entry<T>> ReplacementPolicy<T> twoTier() {
+      return (table, offset, ways, entry) -> {
+        T first = table[offset];
+        boolean preferred = entry.compareTo(first) >= 0;
+        if (ways == 1) {
+          if (preferred) {
+            first.assume(entry);
+          }
+          return preferred;
+        }
+        T victim = table[leastValuable(table, offset + 1, offset + ways)];
+        if (preferred) {
+          victim.assume(first);
+          first.assume(entry);
+        } else {
+          victim.assume(entry);
+        }
+        return true;
+      };
+    }
+
+    /**
+     * Returns a policy that always stores the new entry pushing out the entry of the bucket with the lowest depth discounted by its age
+     * where the age of an entry is the number of generations it is older than the new entry. Entries from previous searches are thus
+     * replaced by entries of the current search unless they are deep enough to make up for their age.
+     *
+     * @param generation A function returning the generation of an entry.
+     * @param depth A function returning the depth of an entry. For entries without depth, it can return a constant.
+     * @param ageWeight The amount by which the depth of an entry is discounted per generation of its age.
+     * @param <T> The hash table entry type.
+     * @return The aging replacement policy.
+     */
+    static <T extends Cache.Entry<T>> ReplacementPolicy<T> aging(ToIntFunction<T> generation, ToIntFunction<T> depth,
+        int ageWeight) {
+      return (table, offset, ways, entry) -> {
+        int currentGeneration = generation.applyAsInt(entry);
+        T victim = null;
+        int victimValue = Integer.MAX_VALUE;
+        for (int i = offset; i < offset + ways; i++) {
+          T slot = table[i];
+          int age = Math.max(0, currentGeneration - generation.applyAsInt(slot));
+          int value = depth.applyAsInt(slot) - ageWeight * age;
+          if (value < victimValue) {
+            victim = slot;
+            victimValue = value;
+          }
+        }
+        victim.assume(entry);
+        return true;
+      };
+    }
+
+    /**
+     * Determines whether a stored entry should be overwritten by a new entry with the same key. By default, it is only overwritten if
+     * the new entry is at least as valuable according to {@link java.lang.Comparable#compareTo(Object)}.
+     *
+     * @param stored The entry in the bucket.
+     * @param entry The new entry.
+     * @return Whether the stored entry should assume the state of the new entry.
+     */
+    default boolean replacesSameKey(T stored, T entry) {
+      return entry.compareTo(stored) >= 0;
+    }
+
+    /**
+     * Stores the new entry in a full bucket by having one of the entries of the bucket assume its state unless the entry is not worth
+     * storing. None of the entries in the bucket are empty or have the same key as the new entry. The policy may also move entries
+     * around within the bucket.
+     *
+     * @param table The array of the buckets.
+     * @param offset The index of the first slot of the bucket.
+     * @param ways The number of slots in the bucket.
+     * @param entry The new entry.
+     * @return Whether the new entry has been stored.
+     */
+    boolean replace(T[] table, int offset, int ways, T entry);
+
+  }
+
   /**
    * A factory interface for creating table entries. It serves the purpose of initializing all the entries of the hash table so as to
    * pre-allocate the required heap memory and take advantage of spatial locality.
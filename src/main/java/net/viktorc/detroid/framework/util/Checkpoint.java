@@ -0,0 +1,269 @@
+package net.viktorc.detroid.framework.util;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * The persisted state of a long-running optimization process such as {@link PBIL} or {@link NadamSGD} which allows for resuming the
+ * process after it has been terminated. The state is stored as key-value pairs in a properties file; the numbers are stored in a format
+ * that preserves their exact values and random number generators are stored as seeds from which they are reseeded when saved so that a
+ * resumed process draws the same random numbers the original process would have drawn. Additional files, e.g. the best parameters found
+ * so far in a format directly usable by the optimized system, can be attached to the checkpoint. All files are written atomically, so a
+ * crash during saving never corrupts the previous checkpoint.
+ *
+ * @author Viktor
+ */
+public final class Checkpoint {
+
+  private final Properties properties;
+  private final Map<String, ContentWriter> attachments;
+
+  /**
+   * Constructs an empty checkpoint.
+   */
+  public Checkpoint() {
+    properties = new Properties();
+    attachments = new LinkedHashMap<>();
+  }
+
+  /**
+   * Loads the checkpoint from the specified file.
+   *
+   * @param filePath The path to the checkpoint file.
+   * @return The checkpoint.
+   * @throws IOException If the file cannot be read.
+   */
+  public static Checkpoint load(String filePath) throws IOException {
+    Checkpoint checkpoint = new Checkpoint();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+      checkpoint.properties.load(in);
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Writes the file by writing its content to a temporary file in the same directory first, flushing it to the storage device, and then
+   * moving it to its final path, replacing the existing file.
+   *
+   * @param filePath The path to the file.
+   * @param writer The function that writes the content of the file to the path it is given.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void writeAtomically(String filePath, ContentWriter writer) throws IOException {
+    Path target = Paths.get(filePath).toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    Files.deleteIfExists(temp);
+    try {
+      writer.write(temp.toString());
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static String toString(double[] values) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      builder.append(i == 0 ? "" : ",").append(values[i]);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Stores an integer value.
+   *
+   * @param key The key of the value.
+   * @param value The value.
+   */
+  public void putInt(String key, int value) {
+    properties.setProperty(key, Integer.toString(value));
+  }
+
+  /**
+   * Stores a long value.
+   *
+   * @param key The key of the value.
+   * @param value The value.
+   */
+  public void putLong(String key, long value) {
+    properties.setProperty(key, Long.toString(value));
+  }
+
+  /**
+   * Stores a double value.
+   *
+   * @param key The key of the value.
+   * @param value The value.
+   */
+  public void putDouble(String key, double value) {
+    properties.setProperty(key, Double.toString(value));
+  }
+
+  /**
+   * Stores an array of double values.
+   *
+   * @param key The key of the array.
+   * @param values The array.
+   */
+  public void putDoubleArray(String key, double[] values) {
+    properties.setProperty(key, toString(values));
+  }
+
+  /**
+   * Stores the state of a random number generator. A new seed is drawn from the generator and the generator is reseeded with it, so that
+   * it continues with the same sequence of random numbers as the generator restored from the stored seed.
+   *
+   * @param key The key of the random number generator.
+   * @param random The random number generator. It is reseeded.
+   */
+  public void putRandom(String key, Random random) {
+    long seed = random.nextLong();
+    random.setSeed(seed);
+    properties.setProperty(key, Long.toString(seed));
+  }
+
+  /**
+   * Returns the integer value associated with the key.
+   *
+   * @param key The key of the value.
+   * @return The value or null if there is no value associated with the key.
+   * @throws NumberFormatException If the value is not an integer.
+   */
+  public Integer getInt(String key) {
+    String value = properties.getProperty(key);
+    return value == null ? null : Integer.valueOf(value);
+  }
+
+  /**
+   * Returns the long value associated with the key.
+   *
+   * @param key The key of the value.
+   * @return The value or null if there is no value associated with the key.
+   * @throws NumberFormatException If the value is not an integer.
+   */
+  public Long getLong(String key) {
+    String value = properties.getProperty(key);
+    return value == null ? null : Long.valueOf(value);
+  }
+
+  /**
+   * Returns the double value associated with the key.
+   *
+   * @param key The key of the value.
+   * @return The value or null if there is no value associated with the key.
+   * @throws NumberFormatException If the value is not a number.
+   */
+  public Double getDouble(String key) {
+    String value = properties.getProperty(key);
+    return value == null ? null : Double.valueOf(value);
+  }
+
+  /**
+   * Returns the array of double values associated with the key.
+   *
+   * @param key The key of the array.
+   * @return The array or null if there is no array associated with the key.
+   * @throws NumberFormatException If an element of the array is not a number.
+   */
+  public double[] getDoubleArray(String key) {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return null;
+    }
+    if (value.isEmpty()) {
+      return new double[0];
+    }
+    String[] elements = value.split(",");
+    double[] values = new double[elements.length];
+    for (int i = 0; i < elements.length; i++) {
+      values[i] = Double.parseDouble(elements[i]);
+    }
+    return values;
+  }
+
+  /**
+   * Returns a random number generator seeded with the seed stored under the key.
+   *
+   * @param key The key of the random number generator.
+   * @return The random number generator or null if there is no random number generator associated with the key.
+   * @throws IllegalArgumentException If the value is not the seed of a random number generator.
+   */
+  public Random getRandom(String key) {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return new Random(Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Illegal random number generator seed: " + key, e);
+    }
+  }
+
+  /**
+   * Attaches a file to the checkpoint that is to be written alongside the checkpoint file whenever the checkpoint is saved. The path of
+   * the attached file is that of the checkpoint file extended by the suffix.
+   *
+   * @param suffix The suffix to append to the path of the checkpoint file to get the path of the attached file.
+   * @param writer The function that writes the content of the attached file to the path it is given.
+   */
+  public void attach(String suffix, ContentWriter writer) {
+    attachments.put(suffix, writer);
+  }
+
+  /**
+   * Writes the attached files and then the checkpoint file atomically.
+   *
+   * @param filePath The path to the checkpoint file.
+   * @throws IOException If any of the files cannot be written.
+   */
+  public void save(String filePath) throws IOException {
+    for (Entry<String, ContentWriter> attachment : attachments.entrySet()) {
+      writeAtomically(filePath + attachment.getKey(), attachment.getValue());
+    }
+    writeAtomically(filePath, path -> {
+      try (FileOutputStream out = new FileOutputStream(path)) {
+        properties.store(out, null);
+      }
+    });
+  }
+
+  /**
+   * A function that writes the content of a file.
+   */
+  @FunctionalInterface
+  public interface ContentWriter {
+
+    /**
+     * Writes the content to the file.
+     *
+     * @param filePath The path to the file.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(String filePath) throws IOException;
+
+  }
+
+}
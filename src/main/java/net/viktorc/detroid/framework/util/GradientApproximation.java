@@ -0,0 +1,21 @@
+package net.viktorc.detroid.framework.util;
+
+/**
+ * An enum for the numerical methods {@link NadamSGD} can use to estimate the gradient of the cost function when no symbolic gradient is
+ * available.
+ *
+ * @author Viktor
+ */
+public enum GradientApproximation {
+
+  /**
+   * Two-point finite differences for each parameter; two cost evaluations per parameter and update.
+   */
+  FINITE_DIFFERENCE,
+  /**
+   * Simultaneous perturbation stochastic approximation (SPSA) which perturbs all parameters at once along a random Rademacher direction;
+   * two cost evaluations per update regardless of the number of parameters.
+   */
+  SIMULTANEOUS_PERTURBATION
+
+}
@@ -1,13 +1,17 @@
 package net.viktorc.detroid.framework.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -19,6 +23,13 @@ import java.util.logging.Logger;
  * to the beginning of the training data, and {@link #getTestData(long)} and {@link #resetTestDataReader()} which do the same for the test
  * data.
  *
+ * If the symbolic gradient is not defined, the gradient is approximated numerically either by finite differences or by simultaneous
+ * perturbation (see {@link GradientApproximation}). The costs of the perturbed parameter sets are computed by
+ * {@link #computeCosts(List, List)} which subclasses may override to evaluate them concurrently.
+ *
+ * The state of the optimization, including the moment vectors, can be saved to a {@link Checkpoint} periodically and at the end of every
+ * epoch so that the process can be resumed after it has been terminated.
+ *
  * Nadam: <a href="http://cs229.stanford.edu/proj2015/054_report.pdf">http://cs229.stanford.edu/proj2015/054_report.pdf</a>
  *
  * @param <E> The type of the data entries.
@@ -59,6 +70,42 @@ public abstract class NadamSGD<E, L> {
    * The default constant used to avoid division by zero.
    */
   protected static final double EPSILON = 1e-8;
+  /**
+   * The minimum number of milliseconds between two checkpoints saved within an epoch.
+   */
+  protected static final long CHECKPOINT_INTERVAL = 60000;
+  /**
+   * The checkpoint key of the parameters.
+   */
+  private static final String PARAMETERS_KEY = "nadam.parameters";
+  /**
+   * The checkpoint key of the first moment vector.
+   */
+  private static final String FIRST_MOMENT_VECTOR_KEY = "nadam.firstMomentVector";
+  /**
+   * The checkpoint key of the second moment vector.
+   */
+  private static final String SECOND_MOMENT_VECTOR_KEY = "nadam.secondMomentVector";
+  /**
+   * The checkpoint key of the annealed learning rate.
+   */
+  private static final String LEARNING_RATE_KEY = "nadam.learningRate";
+  /**
+   * The checkpoint key of the index of the current epoch.
+   */
+  private static final String EPOCH_KEY = "nadam.epoch";
+  /**
+   * The checkpoint key of the number of training batches of the current epoch already processed.
+   */
+  private static final String BATCH_KEY = "nadam.batch";
+  /**
+   * The checkpoint key of the number of updates performed plus one.
+   */
+  private static final String UPDATES_KEY = "nadam.updates";
+  /**
+   * The checkpoint key of the random number generator.
+   */
+  private static final String RANDOM_KEY = "nadam.random";
 
   protected final double[] parameters;
   protected final double[] minValues;
@@ -75,9 +122,12 @@ public abstract class NadamSGD<E, L> {
   protected final long trainingBatchSize;
   protected final long costCalculationBatchSize;
   protected final int epochs;
+  protected final GradientApproximation gradientApproximation;
 
   protected final Logger logger;
 
+  private Random random;
+
   /**
    * Constructs an instance according to the specified parameters.
    *
@@ -118,14 +168,16 @@ public abstract class NadamSGD<E, L> {
    * @param l2RegularizationCoeff The coefficient to use for L2 parameter regularization, by default 0.
    * @param epsilon A constant used to better condition the denominator when calculating the Root-Mean-Squares. If it is null, the default
    * value of 1e-8 will be used. It is not recommended to change this value.
+   * @param gradientApproximation The method to use for approximating the gradient if the symbolic gradient is not defined. If it is null,
+   * finite differences are used.
    * @param logger A logger to log the status of the optimization. If it is null, no logging is performed.
    * @throws IllegalArgumentException If parameters is null or its length is 0. If the decay rate is greater than 1 or smaller than 0. If an
    * element in minValues is greater than the respective element in maxValues.
    */
   protected NadamSGD(double[] parameters, double[] minValues, double[] maxValues, long trainingBatchSize, long costCalculationBatchSize,
       int epochs, Double h, Double baseLearningRate, Double learningAnnealingRate, Double firstMomentDecayRate,
-      Double secondMomentDecayRate, Double l1RegularizationCoeff, Double l2RegularizationCoeff, Double epsilon, Logger logger)
-      throws IllegalArgumentException {
+      Double secondMomentDecayRate, Double l1RegularizationCoeff, Double l2RegularizationCoeff, Double epsilon,
+      GradientApproximation gradientApproximation, Logger logger) throws IllegalArgumentException {
     if (parameters == null || parameters.length == 0) {
       throw new IllegalArgumentException("The parameters array cannot be null and its length has to be greater than 0.");
     }
@@ -194,7 +246,42 @@ public abstract class NadamSGD<E, L> {
     }
     this.l2RegularizationCoeff = (l2RegularizationCoeff == null ? L2_REGULARIZATION_COEFF : l2RegularizationCoeff);
     this.epsilon = (epsilon == null ? EPSILON : epsilon);
+    this.gradientApproximation = (gradientApproximation == null ? GradientApproximation.FINITE_DIFFERENCE : gradientApproximation);
     this.logger = logger;
+    random = new Random();
+  }
+
+  /**
+   * Saves the state of the optimization including that of the random number generator to the checkpoint file so that a resumed process
+   * continues with the same sequence of random numbers. Failing to save the checkpoint is logged but does not stop the optimization.
+   *
+   * @param checkpointFilePath The path to the checkpoint file.
+   * @param firstMomentVector The first moment vector.
+   * @param secondMomentVector The second moment vector.
+   * @param learningRate The current, annealed learning rate.
+   * @param epoch The index of the epoch to resume from.
+   * @param batch The number of training batches of the epoch already processed.
+   * @param updates The number of updates performed plus one.
+   */
+  private void saveCheckpoint(String checkpointFilePath, double[] firstMomentVector, double[] secondMomentVector, double learningRate,
+      int epoch, int batch, int updates) {
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.putDoubleArray(PARAMETERS_KEY, parameters);
+    checkpoint.putDoubleArray(FIRST_MOMENT_VECTOR_KEY, firstMomentVector);
+    checkpoint.putDoubleArray(SECOND_MOMENT_VECTOR_KEY, secondMomentVector);
+    checkpoint.putDouble(LEARNING_RATE_KEY, learningRate);
+    checkpoint.putInt(EPOCH_KEY, epoch);
+    checkpoint.putInt(BATCH_KEY, batch);
+    checkpoint.putInt(UPDATES_KEY, updates);
+    checkpoint.putRandom(RANDOM_KEY, random);
+    saveState(checkpoint);
+    try {
+      checkpoint.save(checkpointFilePath);
+    } catch (IOException e) {
+      if (logger != null) {
+        logger.log(Level.SEVERE, "Failed to save checkpoint: " + e.getMessage(), e);
+      }
+    }
   }
 
   /**
@@ -204,6 +291,28 @@ public abstract class NadamSGD<E, L> {
    * @return The optimal parameter set.
    */
   public synchronized double[] optimize() {
+    try {
+      return optimize(null, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Optimizes the parameters and returns the set that is associated with the minimum of the cost function (whether it's a local or global
+   * one depends on the convexity of the function). It can resume a previous optimization process from its checkpoint and it can save the
+   * state of the process to a checkpoint at the end of every epoch and at most every {@link #CHECKPOINT_INTERVAL} milliseconds within
+   * epochs. When resuming from a checkpoint saved within an epoch, the training batches already processed in that epoch are skipped.
+   *
+   * @param resumeFilePath The path to the checkpoint file of the optimization process to resume. The parameters of the checkpoint take
+   * precedence over the starting values of the parameters. If it is null, the optimization starts from the first epoch.
+   * @param checkpointFilePath The path to the file to save the checkpoints to. It may be the same as the path of the file to resume from.
+   * If it is null, no checkpoints are saved.
+   * @return The optimal parameter set.
+   * @throws IOException If the checkpoint to resume from cannot be read.
+   * @throws IllegalArgumentException If the checkpoint to resume from does not contain a compatible optimization state.
+   */
+  public synchronized double[] optimize(String resumeFilePath, String checkpointFilePath) throws IOException {
     // Rolling average of the gradient (first moment).
     double[] firstMomentVector = new double[parameters.length];
     // Rolling uncentered variance of the gradient (second moment).
@@ -212,11 +321,50 @@ public abstract class NadamSGD<E, L> {
     double[] deltas = new double[parameters.length];
     double learningRate = this.learningRate;
     int updates = 1;
-    for (int t = 0; epochs <= 0 || t <= epochs; t++) {
+    int startEpoch = 0;
+    int batchesToSkip = 0;
+    if (resumeFilePath != null) {
+      Checkpoint checkpoint = Checkpoint.load(resumeFilePath);
+      double[] savedParameters = checkpoint.getDoubleArray(PARAMETERS_KEY);
+      double[] savedFirstMomentVector = checkpoint.getDoubleArray(FIRST_MOMENT_VECTOR_KEY);
+      double[] savedSecondMomentVector = checkpoint.getDoubleArray(SECOND_MOMENT_VECTOR_KEY);
+      Double savedLearningRate = checkpoint.getDouble(LEARNING_RATE_KEY);
+      Integer epoch = checkpoint.getInt(EPOCH_KEY);
+      Integer batch = checkpoint.getInt(BATCH_KEY);
+      Integer savedUpdates = checkpoint.getInt(UPDATES_KEY);
+      Random savedRandom = checkpoint.getRandom(RANDOM_KEY);
+      if (savedParameters == null || savedFirstMomentVector == null || savedSecondMomentVector == null || savedLearningRate == null ||
+          epoch == null || batch == null || savedUpdates == null || savedRandom == null) {
+        throw new IllegalArgumentException("The checkpoint does not contain the state of a Nadam optimization.");
+      }
+      if (savedParameters.length != parameters.length || savedFirstMomentVector.length != parameters.length ||
+          savedSecondMomentVector.length != parameters.length) {
+        throw new IllegalArgumentException("The length of the vectors of the checkpoint does not match the number of parameters.");
+      }
+      System.arraycopy(savedParameters, 0, parameters, 0, parameters.length);
+      firstMomentVector = savedFirstMomentVector;
+      secondMomentVector = savedSecondMomentVector;
+      learningRate = savedLearningRate;
+      startEpoch = epoch;
+      batchesToSkip = batch;
+      updates = savedUpdates;
+      random = savedRandom;
+      restoreState(checkpoint);
+      if (logger != null) {
+        logger.info("Resuming from epoch: " + startEpoch + "; Batch: " + batchesToSkip + "; Update: " + updates);
+      }
+    }
+    long lastCheckpointTime = System.currentTimeMillis();
+    for (int t = startEpoch; epochs <= 0 || t <= epochs; t++) {
       if (t != 0) {
         resetTrainingDataReader();
         int iterations = 0;
         List<Entry<E, L>> batch;
+        // Skip the batches already processed before the checkpoint the optimization was resumed from.
+        while (iterations < batchesToSkip && !getTrainingData(trainingBatchSize).isEmpty()) {
+          iterations++;
+        }
+        batchesToSkip = 0;
         while (!(batch = getTrainingData(trainingBatchSize)).isEmpty()) {
           // Compute the gradient.
           double[] gradient = computeGradient(batch);
@@ -256,14 +404,23 @@ public abstract class NadamSGD<E, L> {
             for (int j = 0; j < greatestDelta.length; j++) {
               greatestDelta[j] = sortedDelta.get(sortedDelta.size() - (j + 1));
             }
-            logger.info("Epoch: " + t + "; Update: " + (iterations++) + "; Batch size: " + batch.size() + System.lineSeparator() +
+            logger.info("Epoch: " + t + "; Update: " + iterations + "; Batch size: " + batch.size() + System.lineSeparator() +
                 "Greatest deltas: " + Arrays.toString(greatestDelta) + System.lineSeparator() +
                 "Deltas: " + Arrays.toString(deltas) + System.lineSeparator() +
                 "Gradient: " + Arrays.toString(gradient) + System.lineSeparator() +
                 "Parameters: " + Arrays.toString(parameters));
           }
+          iterations++;
+          if (checkpointFilePath != null && System.currentTimeMillis() - lastCheckpointTime >= CHECKPOINT_INTERVAL) {
+            saveCheckpoint(checkpointFilePath, firstMomentVector, secondMomentVector, learningRate, t, iterations, updates);
+            lastCheckpointTime = System.currentTimeMillis();
+          }
         }
         learningRate *= learningAnnealingRate;
+        if (checkpointFilePath != null) {
+          saveCheckpoint(checkpointFilePath, firstMomentVector, secondMomentVector, learningRate, t + 1, 0, updates);
+          lastCheckpointTime = System.currentTimeMillis();
+        }
       }
       /* Calculate the cost over the test data set. This is just to test how well the parameters generalize;
        * it is not used for learning! */
@@ -274,6 +431,23 @@ public abstract class NadamSGD<E, L> {
     return parameters;
   }
 
+  /**
+   * Adds the state of the subclass to the checkpoint of the optimization and attaches any files that should be saved with it. It is
+   * invoked whenever a checkpoint is saved. The default implementation does nothing.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  protected void saveState(Checkpoint checkpoint) {
+  }
+
+  /**
+   * Restores the state of the subclass from the checkpoint of the optimization to resume. The default implementation does nothing.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  protected void restoreState(Checkpoint checkpoint) {
+  }
+
   /**
    * Computes the gradient of the cost function for the current parameter values.
    *
@@ -301,39 +475,83 @@ public abstract class NadamSGD<E, L> {
   }
 
   /**
-   * It uses a two-point numerical differentiation formula (centered difference formula or in corner cases, Newton's difference quotient) to
-   * approximate the derivative of the cost function for the training data sample with respect to the parameters.
+   * Approximates the gradient of the cost function using the method specified by {@link #gradientApproximation}.
    *
    * @param dataSample An iterable data set on which the cost function is to be calculated.
    * @return The estimated gradient of the parameters.
    */
   private double[] approximateGradient(List<Entry<E, L>> dataSample) {
+    return gradientApproximation == GradientApproximation.SIMULTANEOUS_PERTURBATION ?
+        approximateGradientBySimultaneousPerturbation(dataSample) : approximateGradientByFiniteDifferences(dataSample);
+  }
+
+  /**
+   * It uses a two-point numerical differentiation formula (centered difference formula or in corner cases, Newton's difference quotient) to
+   * approximate the derivative of the cost function for the training data sample with respect to the parameters. All the perturbed
+   * parameter sets are passed to {@link #computeCosts(List, List)} at once so that they can be evaluated concurrently.
+   *
+   * @param dataSample An iterable data set on which the cost function is to be calculated.
+   * @return The estimated gradient of the parameters.
+   */
+  private double[] approximateGradientByFiniteDifferences(List<Entry<E, L>> dataSample) {
     double[] gradient = new double[parameters.length];
+    List<double[]> parameterSets = new ArrayList<>(2 * parameters.length);
+    List<Integer> indices = new ArrayList<>(parameters.length);
     for (int i = 0; i < gradient.length; i++) {
       if (indicesToIgnore.contains(i)) {
         continue;
       }
-      double cost1, cost2, denominator;
       double parameter = parameters[i];
+      double[] parameters1 = parameters.clone();
+      double[] parameters2 = parameters.clone();
       if (parameter > maxValues[i] - h) {
-        cost1 = computeCost(parameters, dataSample);
-        parameters[i] = parameter - h;
-        cost2 = computeCost(parameters, dataSample);
-        denominator = h;
-      } else if (parameter < minValues[i] - h) {
-        cost2 = computeCost(parameters, dataSample);
-        parameters[i] = parameter + h;
-        cost1 = computeCost(parameters, dataSample);
-        denominator = h;
+        parameters2[i] = parameter - h;
+      } else if (parameter < minValues[i] + h) {
+        parameters1[i] = parameter + h;
       } else {
-        parameters[i] = parameter + h;
-        cost1 = computeCost(parameters, dataSample);
-        parameters[i] = parameter - h;
-        cost2 = computeCost(parameters, dataSample);
-        denominator = 2 * h;
+        parameters1[i] = parameter + h;
+        parameters2[i] = parameter - h;
+      }
+      parameterSets.add(parameters1);
+      parameterSets.add(parameters2);
+      indices.add(i);
+    }
+    double[] costs = computeCosts(parameterSets, dataSample);
+    for (int j = 0; j < indices.size(); j++) {
+      int i = indices.get(j);
+      double denominator = parameterSets.get(2 * j)[i] - parameterSets.get(2 * j + 1)[i];
+      gradient[i] = (costs[2 * j] - costs[2 * j + 1]) / denominator;
+    }
+    return gradient;
+  }
+
+  /**
+   * It uses simultaneous perturbation stochastic approximation to estimate the gradient of the cost function. All the parameters are
+   * perturbed by h in the directions determined by a random Rademacher vector and the cost difference between the two perturbed parameter
+   * sets is used to estimate every partial derivative. It only requires two cost evaluations per update, but the estimates are noisy.
+   *
+   * @param dataSample An iterable data set on which the cost function is to be calculated.
+   * @return The estimated gradient of the parameters.
+   */
+  private double[] approximateGradientBySimultaneousPerturbation(List<Entry<E, L>> dataSample) {
+    double[] gradient = new double[parameters.length];
+    double[] parameters1 = parameters.clone();
+    double[] parameters2 = parameters.clone();
+    for (int i = 0; i < parameters.length; i++) {
+      if (indicesToIgnore.contains(i)) {
+        continue;
+      }
+      double delta = random.nextBoolean() ? h : -h;
+      parameters1[i] = Math.min(Math.max(parameters[i] + delta, minValues[i]), maxValues[i]);
+      parameters2[i] = Math.min(Math.max(parameters[i] - delta, minValues[i]), maxValues[i]);
+    }
+    double[] costs = computeCosts(Arrays.asList(parameters1, parameters2), dataSample);
+    double costDiff = costs[0] - costs[1];
+    for (int i = 0; i < parameters.length; i++) {
+      double denominator = parameters1[i] - parameters2[i];
+      if (denominator != 0) {
+        gradient[i] = costDiff / denominator;
       }
-      parameters[i] = parameter;
-      gradient[i] = (cost1 - cost2) / denominator;
     }
     return gradient;
   }
@@ -348,7 +566,7 @@ public abstract class NadamSGD<E, L> {
    */
   protected boolean verifyGradient(List<Entry<E, L>> dataSample, double absTol, double relTol) {
     double[] symbolicGradient = computeGradient(parameters, dataSample);
-    double[] numericalGradient = approximateGradient(dataSample);
+    double[] numericalGradient = approximateGradientByFiniteDifferences(dataSample);
     if (symbolicGradient == null) {
       return false;
     } else {
@@ -469,6 +687,24 @@ public abstract class NadamSGD<E, L> {
    */
   protected abstract double computeCost(double[] parameters, List<Entry<E, L>> dataSample);
 
+  /**
+   * Calculates the costs associated with each of the given parameter sets for the specified data sample. It is used for the numerical
+   * approximation of the gradient. By default, it simply invokes {@link #computeCost(double[], List)} for each parameter set one after the
+   * other; subclasses that can evaluate the cost function using independent resources should override it to compute the costs
+   * concurrently.
+   *
+   * @param parameterSets A list of parameter arrays. The arrays should not be modified.
+   * @param dataSample A list of the training data mapped to the correct labels on which the cost function is to be calculated.
+   * @return The costs associated with the parameter sets in the same order as the parameter sets.
+   */
+  protected double[] computeCosts(List<double[]> parameterSets, List<Entry<E, L>> dataSample) {
+    double[] costs = new double[parameterSets.size()];
+    for (int i = 0; i < costs.length; i++) {
+      costs[i] = computeCost(parameterSets.get(i), dataSample);
+    }
+    return costs;
+  }
+
   /**
    * Calculates the derivative of the cost function with respect to the parameters.
    *
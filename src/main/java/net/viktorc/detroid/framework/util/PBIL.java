@@ -1,13 +1,24 @@
 package net.viktorc.detroid.framework.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.function.ObjDoubleConsumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * An abstract Population-based Incremental Learning algorithm implementation for optimizing parameters represented by strings of binary
  * digits. The fitness of the individuals in each population is measured by the abstract method {@link #computeFitness(String)
- * computeFitness} which must be implemented.
+ * computeFitness} which must be implemented. Subclasses capable of assessing the fitness of multiple individuals concurrently can override
+ * {@link #computeFitness(List, ObjDoubleConsumer)} to evaluate the entire population at once and report the fitness of each individual as
+ * soon as it is known. The fittest and least fit individuals are tracked as the fitness scores arrive, but the probability vector is only
+ * updated once the whole generation has been assessed, as the update rule of PBIL is defined in terms of the fittest and least fit
+ * individuals of the entire population; updating it after every individual would turn it into a different, steady-state algorithm. The
+ * state of the optimization can be saved to a {@link Checkpoint} after every generation so that the process can be
+ * resumed after it has been terminated.
  *
  * PBIL: <a href="http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.61.8554">http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.61.8554</a>
  *
@@ -44,6 +55,18 @@ public abstract class PBIL {
    * The default constant used to ensure numerical stability.
    */
   protected static final double EPSILON = 1e-8;
+  /**
+   * The checkpoint key of the probability vector.
+   */
+  private static final String PROBABILITY_VECTOR_KEY = "pbil.probabilityVector";
+  /**
+   * The checkpoint key of the index of the next generation.
+   */
+  private static final String GENERATION_KEY = "pbil.generation";
+  /**
+   * The checkpoint key of the random number generator.
+   */
+  private static final String RANDOM_KEY = "pbil.random";
 
   protected final int genotypeLength;
   protected final int populationSize;
@@ -55,8 +78,12 @@ public abstract class PBIL {
   protected final double epsilon;
 
   private final double[] probabilityVector;
+  private final Object fitnessLock;
   private int currentGeneration;
-  private double currentHighestFitness;
+  private volatile double currentHighestFitness;
+  private double currentLowestFitness;
+  private String currentFittestGenotype;
+  private String currentLeastFitGenotype;
 
   private final Logger logger;
 
@@ -110,6 +137,7 @@ public abstract class PBIL {
     this.generations = generations;
     this.epsilon = (epsilon == null ? EPSILON : epsilon);
     this.logger = logger;
+    fitnessLock = new Object();
   }
 
   /**
@@ -122,7 +150,8 @@ public abstract class PBIL {
   }
 
   /**
-   * Returns the highest fitness score of the current generation so far.
+   * Returns the highest fitness score of the current generation so far. As the fitness of the individuals may be assessed concurrently, the
+   * value returned reflects the fitness scores reported up until the point of the invocation.
    *
    * @return The highest fitness score of the current generation.
    */
@@ -174,6 +203,70 @@ public abstract class PBIL {
     }
   }
 
+  /**
+   * Returns the genotype of the most probable individual given the current probability vector.
+   *
+   * @return The genotype whose genes are 1 where the corresponding element of the probability vector is at least 0.5.
+   */
+  protected String getMostProbableGenotype() {
+    StringBuilder genotypeBuilder = new StringBuilder();
+    for (double prob : probabilityVector) {
+      genotypeBuilder.append(prob >= 0.5 ? "1" : "0");
+    }
+    return genotypeBuilder.toString();
+  }
+
+  /**
+   * Saves the state of the optimization including that of the random number generator to the checkpoint file so that a resumed process
+   * continues with the same sequence of random numbers. Failing to save the checkpoint is logged but does not stop the optimization.
+   *
+   * @param checkpointFilePath The path to the checkpoint file.
+   * @param rand The random number generator of the optimization.
+   */
+  private void saveCheckpoint(String checkpointFilePath, Random rand) {
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.putDoubleArray(PROBABILITY_VECTOR_KEY, probabilityVector);
+    checkpoint.putInt(GENERATION_KEY, currentGeneration);
+    checkpoint.putRandom(RANDOM_KEY, rand);
+    saveState(checkpoint);
+    try {
+      checkpoint.save(checkpointFilePath);
+    } catch (IOException e) {
+      if (logger != null) {
+        logger.log(Level.SEVERE, "Failed to save checkpoint: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Restores the state of the optimization from the checkpoint file.
+   *
+   * @param resumeFilePath The path to the checkpoint file.
+   * @return The random number generator of the optimization in its saved state.
+   * @throws IOException If the checkpoint file cannot be read.
+   * @throws IllegalArgumentException If the checkpoint does not contain the state of the optimization or the length of its probability
+   * vector is not the genotype length.
+   */
+  private Random restoreCheckpoint(String resumeFilePath) throws IOException {
+    Checkpoint checkpoint = Checkpoint.load(resumeFilePath);
+    double[] savedProbabilityVector = checkpoint.getDoubleArray(PROBABILITY_VECTOR_KEY);
+    Integer generation = checkpoint.getInt(GENERATION_KEY);
+    Random rand = checkpoint.getRandom(RANDOM_KEY);
+    if (savedProbabilityVector == null || generation == null || rand == null) {
+      throw new IllegalArgumentException("The checkpoint does not contain the state of a PBIL optimization.");
+    }
+    if (savedProbabilityVector.length != genotypeLength) {
+      throw new IllegalArgumentException("The length of the probability vector of the checkpoint does not match the genotype length.");
+    }
+    System.arraycopy(savedProbabilityVector, 0, probabilityVector, 0, genotypeLength);
+    currentGeneration = generation;
+    restoreState(checkpoint);
+    if (logger != null) {
+      logger.info("Resuming from generation: " + currentGeneration + "; Entropy: " + getEntropy());
+    }
+    return rand;
+  }
+
   /**
    * An implementation of the Population-based Incremental Learning algorithm which optimizes a string of binary digits representing
    * the parameters of a fitness function.
@@ -181,9 +274,36 @@ public abstract class PBIL {
    * @return The probability vector.
    */
   public final synchronized double[] optimize() {
+    try {
+      return optimize(null, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * An implementation of the Population-based Incremental Learning algorithm which optimizes a string of binary digits representing
+   * the parameters of a fitness function. It can resume a previous optimization process from its checkpoint and it can save the state of
+   * the process to a checkpoint after every generation.
+   *
+   * @param resumeFilePath The path to the checkpoint file of the optimization process to resume. It takes precedence over the initial
+   * probability vector. If it is null, the optimization starts from the first generation.
+   * @param checkpointFilePath The path to the file to save the checkpoints to. It may be the same as the path of the file to resume from.
+   * If it is null, no checkpoints are saved.
+   * @return The probability vector.
+   * @throws IOException If the checkpoint to resume from cannot be read.
+   * @throws IllegalArgumentException If the checkpoint to resume from does not contain a compatible optimization state.
+   */
+  public final synchronized double[] optimize(String resumeFilePath, String checkpointFilePath) throws IOException {
     Random rand = new Random(System.nanoTime());
     String[] genotypes = new String[populationSize];
     currentGeneration = 0;
+    if (resumeFilePath != null) {
+      rand = restoreCheckpoint(resumeFilePath);
+      if (isOptimized(currentGeneration)) {
+        return getProbabilityVector();
+      }
+    }
     // Evolution.
     do {
       // Generate the new population by generating the genotypes using the probability vector.
@@ -195,22 +315,16 @@ public abstract class PBIL {
         genotypes[i] = genotypeBuffer.toString();
       }
       currentHighestFitness = -Double.MAX_VALUE;
-      double curLowestFitness = Double.MAX_VALUE;
-      String curFittestGenotype = null;
-      String curLeastFitGenotype = null;
+      currentLowestFitness = Double.MAX_VALUE;
+      currentFittestGenotype = null;
+      currentLeastFitGenotype = null;
       // Measure the fitness of each individual in the population.
-      for (int i = 0; i < populationSize; i++) {
-        String genome = genotypes[i];
-        double fitness = computeFitness(genome);
-        // Track the genotypes responsible for the fittest and least fit individuals.
-        if (fitness > currentHighestFitness) {
-          currentHighestFitness = fitness;
-          curFittestGenotype = genome;
-        }
-        if (fitness < curLowestFitness) {
-          curLowestFitness = fitness;
-          curLeastFitGenotype = genome;
-        }
+      computeFitness(Arrays.asList(genotypes), this::recordFitness);
+      String curFittestGenotype;
+      String curLeastFitGenotype;
+      synchronized (fitnessLock) {
+        curFittestGenotype = currentFittestGenotype;
+        curLeastFitGenotype = currentLeastFitGenotype;
       }
       /* Update the probability vector according to the fitness of the fittest and the least fit
        * individuals in the population sample and mutate it. */
@@ -233,10 +347,64 @@ public abstract class PBIL {
             System.lineSeparator() + "Probability vector: " + Arrays.toString(probabilityVector));
       }
       currentGeneration++;
+      if (checkpointFilePath != null) {
+        saveCheckpoint(checkpointFilePath, rand);
+      }
     } while (!isOptimized(currentGeneration));
     return getProbabilityVector();
   }
 
+  /**
+   * Tracks the genotypes responsible for the fittest and least fit individuals of the current generation. It may be called concurrently.
+   *
+   * @param genotype The genotype whose fitness has been assessed.
+   * @param fitness The fitness of the genotype.
+   */
+  private void recordFitness(String genotype, double fitness) {
+    synchronized (fitnessLock) {
+      if (fitness > currentHighestFitness) {
+        currentHighestFitness = fitness;
+        currentFittestGenotype = genotype;
+      }
+      if (fitness < currentLowestFitness) {
+        currentLowestFitness = fitness;
+        currentLeastFitGenotype = genotype;
+      }
+    }
+  }
+
+  /**
+   * Adds the state of the subclass to the checkpoint of the optimization and attaches any files that should be saved with it. It is
+   * invoked after every generation if checkpoints are saved. The default implementation does nothing.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  protected void saveState(Checkpoint checkpoint) {
+  }
+
+  /**
+   * Restores the state of the subclass from the checkpoint of the optimization to resume. The default implementation does nothing.
+   *
+   * @param checkpoint The checkpoint holding the state of the optimization.
+   */
+  protected void restoreState(Checkpoint checkpoint) {
+  }
+
+  /**
+   * Measures the fitness of all the genotypes of a generation and reports them to the consumer as soon as they are available. The method
+   * must not return before the fitness of every genotype has been reported as the probability vector is updated right after it returns.
+   * The default implementation assesses the genotypes one by one using {@link #computeFitness(String)}. The consumer is thread safe, thus
+   * implementations may report fitness scores from multiple threads in any order.
+   *
+   * @param genotypes The genotypes of the current generation.
+   * @param fitnessConsumer The consumer to report the fitness of the genotypes to.
+   */
+  protected void computeFitness(List<String> genotypes, ObjDoubleConsumer<String> fitnessConsumer) {
+    for (String genotype : genotypes) {
+      fitnessConsumer.accept(genotype, computeFitness(genotype));
+    }
+  }
+
   /**
    * Measures the fitness of the genotype. Higher values mean higher fitness levels. The genes will be optimized to increase the value
    * returned by this function.
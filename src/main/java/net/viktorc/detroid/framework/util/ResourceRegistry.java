@@ -0,0 +1,188 @@
+package net.viktorc.detroid.framework.util;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process-wide registry of read-only resources loaded from files such as opening books, endgame tablebases, and parameter files. The
+ * resources are keyed by their type and the paths of the files they are loaded from and are reference-counted; every acquisition of a
+ * resource that is already registered returns the same instance instead of loading it again, and the resource is disposed of once it has
+ * been released as many times as it has been acquired. This allows for running a large number of engine instances in the same process
+ * without opening the same files and holding the same data in memory over and over again. The resources managed by the registry have to
+ * be thread-safe.
+ *
+ * @author Viktor
+ */
+public final class ResourceRegistry {
+
+  private static final ResourceRegistry INSTANCE = new ResourceRegistry();
+
+  private final Map<List<Object>, Registration<?>> registrations;
+  private final Map<Object, Registration<?>> registrationsByResource;
+
+  private ResourceRegistry() {
+    registrations = new HashMap<>();
+    registrationsByResource = new IdentityHashMap<>();
+  }
+
+  /**
+   * @return The one and only instance.
+   */
+  public static ResourceRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  private static List<Object> toKey(Class<?> type, String... filePaths) {
+    List<Object> key = new ArrayList<>(filePaths.length + 1);
+    key.add(type);
+    for (String filePath : filePaths) {
+      if (filePath == null || filePath.isEmpty()) {
+        key.add(null);
+        continue;
+      }
+      try {
+        key.add(Paths.get(filePath).toAbsolutePath().normalize().toString());
+      } catch (InvalidPathException e) {
+        key.add(filePath);
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Returns the resource of the specified type loaded from the specified files and increments its reference count. If the resource is not
+   * registered yet, it is loaded using the loader.
+   *
+   * @param type The type of the resource.
+   * @param loader The function that loads the resource if it is not registered yet.
+   * @param disposer The function that disposes of the resource once it is not referenced anymore. If it is null, the resource is simply
+   * dropped from the registry.
+   * @param filePaths The paths to the files the resource is loaded from. The paths are normalized, and null and empty paths are considered
+   * equal.
+   * @param <T> The type of the resource.
+   * @return The shared instance of the resource.
+   * @throws IllegalArgumentException If the type or the loader is null, or the loader returns null or an object not of the specified
+   * type.
+   * @throws Exception If the resource cannot be loaded.
+   */
+  public synchronized <T> T acquire(Class<T> type, Loader<? extends T> loader, Disposer<? super T> disposer, String... filePaths)
+      throws Exception {
+    if (type == null || loader == null) {
+      throw new IllegalArgumentException("The type and the loader cannot be null.");
+    }
+    List<Object> key = toKey(type, filePaths);
+    Registration<?> registration = registrations.get(key);
+    if (registration == null) {
+      T resource = loader.load();
+      if (!type.isInstance(resource)) {
+        throw new IllegalArgumentException("The loader has to return an instance of " + type.getName() + ".");
+      }
+      Registration<T> newRegistration = new Registration<>(key, resource, disposer);
+      registrations.put(key, newRegistration);
+      registrationsByResource.put(resource, newRegistration);
+      registration = newRegistration;
+    }
+    registration.references++;
+    return type.cast(registration.resource);
+  }
+
+  /**
+   * Decrements the reference count of the resource and disposes of it if it is not referenced anymore.
+   *
+   * @param resource The resource returned by {@link #acquire(Class, Loader, Disposer, String...)}.
+   * @throws IllegalArgumentException If the resource is not registered.
+   * @throws IOException If the resource cannot be disposed of.
+   */
+  public synchronized void release(Object resource) throws IOException {
+    Registration<?> registration = registrationsByResource.get(resource);
+    if (registration == null) {
+      throw new IllegalArgumentException("The resource is not registered.");
+    }
+    if (--registration.references == 0) {
+      registrations.remove(registration.key);
+      registrationsByResource.remove(resource);
+      registration.dispose();
+    }
+  }
+
+  /**
+   * Returns the number of references held to the resource of the specified type loaded from the specified files.
+   *
+   * @param type The type of the resource.
+   * @param filePaths The paths to the files the resource is loaded from.
+   * @return The reference count of the resource or 0 if it is not registered.
+   */
+  public synchronized int getReferenceCount(Class<?> type, String... filePaths) {
+    Registration<?> registration = registrations.get(toKey(type, filePaths));
+    return registration == null ? 0 : registration.references;
+  }
+
+  /**
+   * A function that loads a resource.
+   *
+   * @param <T> The type of the resource.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+
+    /**
+     * Loads the resource.
+     *
+     * @return The resource.
+     * @throws Exception If the resource cannot be loaded.
+     */
+    T load() throws Exception;
+
+  }
+
+  /**
+   * A function that disposes of a resource and releases the system resources held by it.
+   *
+   * @param <T> The type of the resource.
+   */
+  @FunctionalInterface
+  public interface Disposer<T> {
+
+    /**
+     * Disposes of the resource.
+     *
+     * @param resource The resource.
+     * @throws IOException If the resource cannot be disposed of.
+     */
+    void dispose(T resource) throws IOException;
+
+  }
+
+  /**
+   * A registered resource and the number of references held to it.
+   *
+   * @param <T> The type of the resource.
+   */
+  private static class Registration<T> {
+
+    final List<Object> key;
+    final T resource;
+    final Disposer<? super T> disposer;
+    int references;
+
+    Registration(List<Object> key, T resource, Disposer<? super T> disposer) {
+      this.key = key;
+      this.resource = resource;
+      this.disposer = disposer;
+    }
+
+    void dispose() throws IOException {
+      if (disposer != null) {
+        disposer.dispose(resource);
+      }
+    }
+
+  }
+
+}
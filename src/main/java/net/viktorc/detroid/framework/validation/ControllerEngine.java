@@ -2,9 +2,11 @@ package net.viktorc.detroid.framework.validation;
 
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 import net.viktorc.detroid.framework.uci.UCIEngine;
 
 
@@ -111,6 +113,15 @@ public interface ControllerEngine extends UCIEngine {
    */
   void blackForfeit();
 
+  /**
+   * Sets the reason of the termination of the game, e.g. adjudication, loss on time, or an illegal move, to be recorded in the
+   * Termination tag of the PGN. The default implementation does not record it.
+   *
+   * @param reason The reason of the termination of the game.
+   */
+  default void setTermination(String reason) {
+  }
+
   /**
    * Converts a move legal in the current position from Pure Algebraic Coordinate Notation to Standard Algebraic Notation.
    *
@@ -159,6 +170,31 @@ public interface ControllerEngine extends UCIEngine {
     return moveHistory.get(moveHistory.size() - 1);
   }
 
+  /**
+   * Replays the game and passes the FEN of each of its positions, starting with the start position, to the consumer in chronological
+   * order. It is meant for the bulk conversion of games into training data and it does not necessarily affect the current game of the
+   * engine. The default implementation sets the game using {@link #setGame(String)} and walks it backwards using
+   * {@link #unplayLastMove()}; implementations are encouraged to override it with a method that streams the positions while playing the
+   * game forward.
+   *
+   * @param pgn The game in PGN.
+   * @param positionConsumer The consumer of the positions in FEN.
+   * @return The state of the game after the last move or null if the game cannot be parsed. If null is returned, some of the positions of
+   * the game may have already been passed to the consumer.
+   */
+  default GameState replayGame(String pgn, Consumer<String> positionConsumer) {
+    if (!setGame(pgn)) {
+      return null;
+    }
+    GameState state = getGameState();
+    LinkedList<String> positions = new LinkedList<>();
+    do {
+      positions.addFirst(toFEN());
+    } while (unplayLastMove() != null);
+    positions.forEach(positionConsumer);
+    return state;
+  }
+
   /**
    * Runs a perft to the specified depth in the current position and returns the number of leaf nodes counted while traversing the tree.
    *
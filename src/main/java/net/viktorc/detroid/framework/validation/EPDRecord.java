@@ -2,6 +2,7 @@ package net.viktorc.detroid.framework.validation;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +76,13 @@ public class EPDRecord {
     return position;
   }
 
+  /**
+   * @return An unmodifiable view of the map of the operation codes and the raw operation values.
+   */
+  public Map<String, String> getOperations() {
+    return Collections.unmodifiableMap(operations);
+  }
+
   /**
    * @param operationCode The code of the operation.
    * @return The operand.
@@ -55,4 +55,14 @@ public final class Elo {
     return (int) -Math.round(Math.log10(1 / winRatio - 1) * 400);
   }
 
+  /**
+   * Calculates the expected score of a player against an opponent given the Elo rating difference between them.
+   *
+   * @param difference The Elo rating difference.
+   * @return The expected score between 0 and 1.
+   */
+  public static double calculateExpectedScore(double difference) {
+    return 1 / (1 + Math.pow(10, -difference / 400));
+  }
+
 }
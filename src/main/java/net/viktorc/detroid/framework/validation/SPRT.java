@@ -0,0 +1,144 @@
+package net.viktorc.detroid.framework.validation;
+
+/**
+ * A sequential probability ratio test for deciding between two hypotheses about the Elo rating difference between two players based on
+ * the results of the games played so far. The log-likelihood ratio is approximated using the normal approximation of the trinomial
+ * distribution of the game results (as employed by fishtest and cutechess).
+ *
+ * SPRT: <a href="https://www.chessprogramming.org/Sequential_Probability_Ratio_Test">https://www.chessprogramming.org/Sequential_Probability_Ratio_Test</a>
+ *
+ * @author Viktor
+ */
+public final class SPRT {
+
+  /**
+   * The default probability of a type I error.
+   */
+  public static final double ALPHA = .05;
+  /**
+   * The default probability of a type II error.
+   */
+  public static final double BETA = .05;
+  /**
+   * The number added to each of the numbers of wins, losses, and draws to regularize the estimate of the variance.
+   */
+  private static final double PSEUDO_COUNT = .5;
+
+  private final double elo0;
+  private final double elo1;
+  private final double score0;
+  private final double score1;
+  private final double lowerBound;
+  private final double upperBound;
+
+  /**
+   * Constructs a test for the hypotheses H0: elo = elo0 and H1: elo = elo1.
+   *
+   * @param elo0 The Elo rating difference of the null hypothesis.
+   * @param elo1 The Elo rating difference of the alternative hypothesis. It has to be greater than elo0.
+   * @param alpha The probability of accepting H1 when H0 is true. If it is null, it defaults to {@link #ALPHA}.
+   * @param beta The probability of accepting H0 when H1 is true. If it is null, it defaults to {@link #BETA}.
+   * @throws IllegalArgumentException If elo1 is not greater than elo0 or alpha or beta are not between 0 and 1 (exclusive).
+   */
+  public SPRT(double elo0, double elo1, Double alpha, Double beta) throws IllegalArgumentException {
+    if (elo1 <= elo0) {
+      throw new IllegalArgumentException("Elo1 has to be greater than elo0.");
+    }
+    alpha = alpha == null ? ALPHA : alpha;
+    beta = beta == null ? BETA : beta;
+    if (alpha <= 0 || alpha >= 1 || beta <= 0 || beta >= 1) {
+      throw new IllegalArgumentException("Alpha and beta have to be greater than 0 and less than 1.");
+    }
+    this.elo0 = elo0;
+    this.elo1 = elo1;
+    score0 = Elo.calculateExpectedScore(elo0);
+    score1 = Elo.calculateExpectedScore(elo1);
+    lowerBound = Math.log(beta / (1 - alpha));
+    upperBound = Math.log((1 - beta) / alpha);
+  }
+
+  /**
+   * Returns the Elo rating difference of the null hypothesis.
+   *
+   * @return The Elo rating difference of H0.
+   */
+  public double getElo0() {
+    return elo0;
+  }
+
+  /**
+   * Returns the Elo rating difference of the alternative hypothesis.
+   *
+   * @return The Elo rating difference of H1.
+   */
+  public double getElo1() {
+    return elo1;
+  }
+
+  /**
+   * Calculates the log-likelihood ratio of the alternative hypothesis to the null hypothesis given the match record. A pseudo-count of
+   * 0.5 is added to each of the numbers of wins, losses, and draws so that the variance can be estimated even if some
+   * of them are 0, e.g. if no games were drawn or one of the players won all the games.
+   *
+   * @param wins The number of wins. It has to be 0 or greater.
+   * @param losses The number of losses. It has to be 0 or greater.
+   * @param draws The number of draws. It has to be 0 or greater.
+   * @return The log-likelihood ratio. If no games have been played, 0 is returned.
+   */
+  public double calculateLLR(int wins, int losses, int draws) {
+    if (wins < 0 || draws < 0 || losses < 0) {
+      throw new IllegalArgumentException("All parameters have to be 0 or greater.");
+    }
+    if (wins + losses + draws == 0) {
+      return 0;
+    }
+    double games = wins + losses + draws + 3 * PSEUDO_COUNT;
+    double winRatio = (wins + PSEUDO_COUNT) / games;
+    double drawRatio = (draws + PSEUDO_COUNT) / games;
+    double score = winRatio + drawRatio / 2;
+    double variance = (winRatio + drawRatio / 4 - score * score) / games;
+    if (variance <= 0) {
+      return 0;
+    }
+    return (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+  }
+
+  /**
+   * Performs the test on the match record.
+   *
+   * @param wins The number of wins. It has to be 0 or greater.
+   * @param losses The number of losses. It has to be 0 or greater.
+   * @param draws The number of draws. It has to be 0 or greater.
+   * @return The outcome of the test.
+   */
+  public Result test(int wins, int losses, int draws) {
+    double llr = calculateLLR(wins, losses, draws);
+    if (llr >= upperBound) {
+      return Result.H1_ACCEPTED;
+    } else if (llr <= lowerBound) {
+      return Result.H0_ACCEPTED;
+    }
+    return Result.UNDECIDED;
+  }
+
+  /**
+   * The possible outcomes of the test.
+   */
+  public enum Result {
+
+    /**
+     * The null hypothesis is accepted; the Elo rating difference is likely to be at most elo0.
+     */
+    H0_ACCEPTED,
+    /**
+     * The alternative hypothesis is accepted; the Elo rating difference is likely to be at least elo1.
+     */
+    H1_ACCEPTED,
+    /**
+     * More games are needed.
+     */
+    UNDECIDED
+
+  }
+
+}
@@ -0,0 +1,163 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.WDL;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * A test of the bitbase generator and the bitbase tablebase on the king and pawn versus king endgame. The bitbases are generated into a
+ * temporary directory and probed through the tablebase both for positions with known outcomes and for the consistency of the value of
+ * each position with the values of the positions its moves lead to.
+ *
+ * @author Viktor
+ */
+public final class BitbaseTest {
+
+  private static final int RANDOM_POSITIONS = 5000;
+
+  private static File directory;
+  private static List<String> generated;
+  private static BitbaseTableBase tableBase;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    directory = Files.createTempDirectory("bitbases").toFile();
+    generated = new BitbaseGenerator(1, null).generate(directory.getPath(), Collections.singletonList("KPK"));
+    tableBase = new BitbaseTableBase();
+    tableBase.init(directory.getPath(), 0);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    tableBase.close();
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Assert.assertTrue(file.delete());
+      }
+    }
+    Assert.assertTrue(directory.delete());
+  }
+
+  private static WDL probe(String fen) throws ChessParseException {
+    return tableBase.probeWDL(Position.parse(fen), false);
+  }
+
+  /**
+   * Returns the value of the position for the side to move as determined by the tablebase values of the positions its legal moves lead
+   * to.
+   */
+  private static WDL search(Position pos) {
+    List<Move> moves = pos.getMoves();
+    if (moves.isEmpty()) {
+      return pos.isInCheck() ? WDL.LOSS : WDL.DRAW;
+    }
+    WDL best = WDL.LOSS;
+    for (Move move : moves) {
+      pos.makeMove(move);
+      WDL childValue = tableBase.probeWDL(pos, false);
+      pos.unmakeMove();
+      Assert.assertNotNull("Missing value after " + move + " in " + pos, childValue);
+      if (childValue == WDL.LOSS) {
+        return WDL.WIN;
+      } else if (childValue == WDL.DRAW) {
+        best = WDL.DRAW;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the FEN of the position with the specified pieces on the specified squares or null if the position is illegal.
+   */
+  private static String fen(int whiteKing, int blackKing, int pawn, boolean whitePawn, boolean whitesTurn) {
+    int kingFileDiff = Math.abs(whiteKing % 8 - blackKing % 8);
+    int kingRankDiff = Math.abs(whiteKing / 8 - blackKing / 8);
+    if (whiteKing == blackKing || pawn == whiteKing || pawn == blackKing || (kingFileDiff <= 1 && kingRankDiff <= 1)) {
+      return null;
+    }
+    // The side of the pawn cannot be to move if its pawn attacks the king of the opponent.
+    int opponentKing = whitePawn ? blackKing : whiteKing;
+    if (whitePawn == whitesTurn && Math.abs(opponentKing % 8 - pawn % 8) == 1 && opponentKing / 8 - pawn / 8 == (whitePawn ? 1 : -1)) {
+      return null;
+    }
+    char[][] board = new char[8][8];
+    for (char[] rank : board) {
+      Arrays.fill(rank, '1');
+    }
+    board[whiteKing / 8][whiteKing % 8] = 'K';
+    board[blackKing / 8][blackKing % 8] = 'k';
+    board[pawn / 8][pawn % 8] = whitePawn ? 'P' : 'p';
+    StringBuilder fen = new StringBuilder();
+    for (int rank = 7; rank >= 0; rank--) {
+      fen.append(new String(board[rank])).append(rank > 0 ? "/" : "");
+    }
+    return fen + (whitesTurn ? " w" : " b") + " - - 0 1";
+  }
+
+  @Test
+  public void generatesTheDependencies() {
+    Assert.assertTrue(generated.containsAll(Arrays.asList("KPK", "KQK", "KRK", "KBK", "KNK")));
+    Assert.assertTrue(tableBase.isInit());
+    Assert.assertTrue(tableBase.areTableBasesAvailable(3));
+    Assert.assertFalse(tableBase.areTableBasesAvailable(4));
+  }
+
+  @Test
+  public void knownPositions() throws ChessParseException {
+    // The white king on a key square in front of the pawn wins regardless of the side to move.
+    Assert.assertEquals(WDL.WIN, probe("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1"));
+    Assert.assertEquals(WDL.LOSS, probe("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1"));
+    // The same with the colors reversed.
+    Assert.assertEquals(WDL.LOSS, probe("8/8/8/8/4p3/4k3/8/4K3 w - - 0 1"));
+    Assert.assertEquals(WDL.WIN, probe("8/8/8/8/4p3/4k3/8/4K3 b - - 0 1"));
+    // The side to move loses the opposition; the defender holds the draw only if it has the opposition.
+    Assert.assertEquals(WDL.DRAW, probe("8/4k3/8/4K3/4P3/8/8/8 w - - 0 1"));
+    Assert.assertEquals(WDL.LOSS, probe("8/4k3/8/4K3/4P3/8/8/8 b - - 0 1"));
+    // Stale mate.
+    Assert.assertEquals(WDL.DRAW, probe("4k3/4P3/4K3/8/8/8/8/8 b - - 0 1"));
+    // The defending king in front of a rook pawn holds the draw.
+    Assert.assertEquals(WDL.DRAW, probe("k7/8/8/P7/8/8/8/7K w - - 0 1"));
+    // The pawn outside the square of the defending king promotes.
+    Assert.assertEquals(WDL.WIN, probe("7k/8/8/8/P7/8/8/K7 w - - 0 1"));
+    // The undefended pawn is captured.
+    Assert.assertEquals(WDL.DRAW, probe("8/8/8/8/8/8/kP6/7K b - - 0 1"));
+    // The pawn promotes with check and the queen wins.
+    Assert.assertEquals(WDL.WIN, probe("3k4/1P6/2K5/8/8/8/8/8 w - - 0 1"));
+  }
+
+  @Test
+  public void valuesAreConsistentWithTheValuesOfTheMoves() throws ChessParseException {
+    Random random = new Random(0);
+    int positions = 0;
+    while (positions < RANDOM_POSITIONS) {
+      boolean whitePawn = random.nextBoolean();
+      String fen = fen(random.nextInt(64), random.nextInt(64), 8 + random.nextInt(48), whitePawn, random.nextBoolean());
+      if (fen == null) {
+        continue;
+      }
+      Position pos = Position.parse(fen);
+      WDL value = tableBase.probeWDL(pos, false);
+      Assert.assertNotNull("Missing value of " + fen, value);
+      Assert.assertEquals(fen, search(pos), value);
+      positions++;
+    }
+  }
+
+  @Test
+  public void uncoveredMaterialsAreNotFound() throws ChessParseException {
+    Assert.assertNull(probe("4k3/8/4K3/4P3/4P3/8/8/8 w - - 0 1"));
+    Assert.assertNull(probe("4k3/8/4K3/8/8/3Q1R2/8/8 w - - 0 1"));
+    // Two bare kings are always a draw.
+    Assert.assertEquals(WDL.DRAW, probe("4k3/8/4K3/8/8/8/8/8 w - - 0 1"));
+  }
+
+}
@@ -0,0 +1,211 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.DTM;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.EGTBStats;
+import net.viktorc.detroid.framework.engine.EndGameTableBase.WDL;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A test of the result cache in front of endgame tablebases using an in-memory tablebase.
+ *
+ * @author Viktor
+ */
+public final class CachedEndGameTableBaseTest {
+
+  private FakeTableBase tableBase;
+  private List<Position> positions;
+
+  /**
+   * Returns the FEN of the position with the white king on a1, the black king on h8, and a white queen on the specified square.
+   */
+  private static String kqkFen(int queenSquare) {
+    char[][] board = new char[8][8];
+    for (char[] rank : board) {
+      Arrays.fill(rank, '1');
+    }
+    board[0][0] = 'K';
+    board[7][7] = 'k';
+    board[queenSquare / 8][queenSquare % 8] = 'Q';
+    StringBuilder fen = new StringBuilder();
+    for (int rank = 7; rank >= 0; rank--) {
+      fen.append(new String(board[rank])).append(rank > 0 ? "/" : "");
+    }
+    return fen + " b - - 0 1";
+  }
+
+  @Before
+  public void setUp() throws ChessParseException {
+    tableBase = new FakeTableBase();
+    positions = new ArrayList<>();
+    for (int square = 1; square < 63; square++) {
+      Position pos = Position.parse(kqkFen(square));
+      positions.add(pos);
+      // Leave some of the positions out of the tablebase.
+      if (square % 5 != 0) {
+        tableBase.results.put(pos.getKey(), new DTM(square % 3 == 0 ? WDL.DRAW : WDL.LOSS, square));
+      }
+    }
+  }
+
+  @Test
+  public void repeatedProbesAreAnsweredByTheCache() {
+    CachedEndGameTableBase egtb = new CachedEndGameTableBase(tableBase, null);
+    Position pos = positions.get(0);
+    DTM first = egtb.probeDTM(pos, false);
+    DTM second = egtb.probeDTM(pos, false);
+    Assert.assertEquals(1, tableBase.probes.get());
+    Assert.assertEquals(first.getWdl(), second.getWdl());
+    Assert.assertEquals(first.getDistance(), second.getDistance());
+    Assert.assertEquals(first.getWdl(), egtb.probeWDL(pos, false));
+    Assert.assertEquals(1, tableBase.probes.get());
+    EGTBStats stats = egtb.getStats();
+    Assert.assertEquals(2, stats.getTotalResultCacheHits());
+    Assert.assertEquals(1, stats.getTotalResultCacheMisses());
+    Assert.assertTrue(stats.getAverageProbeLatency() > 0);
+    egtb.resetStats();
+    Assert.assertEquals(0, egtb.getStats().getTotalResultCacheHits());
+  }
+
+  @Test
+  public void wdlResultsDoNotAnswerDtmProbes() {
+    CachedEndGameTableBase egtb = new CachedEndGameTableBase(tableBase, null);
+    Position pos = positions.get(0);
+    Assert.assertEquals(WDL.LOSS, egtb.probeWDL(pos, false));
+    DTM dtm = egtb.probeDTM(pos, false);
+    Assert.assertEquals(2, tableBase.probes.get());
+    Assert.assertEquals(WDL.LOSS, dtm.getWdl());
+    Assert.assertEquals(1, dtm.getDistance());
+  }
+
+  @Test
+  public void onlyHardProbeMissesAreCached() {
+    CachedEndGameTableBase egtb = new CachedEndGameTableBase(tableBase, null);
+    // The queen on f1 (square 5) is left out of the tablebase.
+    Position pos = positions.get(4);
+    Assert.assertNull(egtb.probeDTM(pos, true));
+    Assert.assertNull(egtb.probeDTM(pos, true));
+    Assert.assertEquals(2, tableBase.probes.get());
+    Assert.assertNull(egtb.probeDTM(pos, false));
+    Assert.assertNull(egtb.probeDTM(pos, true));
+    Assert.assertNull(egtb.probeWDL(pos, false));
+    Assert.assertEquals(3, tableBase.probes.get());
+  }
+
+  @Test
+  public void clearingTheCacheDiscardsTheResults() {
+    CachedEndGameTableBase egtb = new CachedEndGameTableBase(tableBase, null);
+    Position pos = positions.get(0);
+    egtb.probeDTM(pos, false);
+    egtb.clearCache();
+    egtb.probeDTM(pos, false);
+    Assert.assertEquals(2, tableBase.probes.get());
+  }
+
+  @Test
+  public void concurrentProbesReturnCorrectResults() throws Exception {
+    // A cache of four slots to make the threads overwrite each other's entries all the time.
+    CachedEndGameTableBase egtb = new CachedEndGameTableBase(tableBase, 64L);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        int offset = i;
+        futures.add(pool.submit(() -> {
+          for (int j = 0; j < 20000; j++) {
+            Position pos = positions.get((offset + j * 7) % positions.size());
+            DTM expected = tableBase.results.get(pos.getKey());
+            if (j % 2 == 0) {
+              DTM dtm = egtb.probeDTM(pos, false);
+              Assert.assertEquals(expected == null, dtm == null);
+              if (dtm != null) {
+                Assert.assertEquals(expected.getWdl(), dtm.getWdl());
+                Assert.assertEquals(expected.getDistance(), dtm.getDistance());
+              }
+            } else {
+              Assert.assertEquals(expected == null ? null : expected.getWdl(), egtb.probeWDL(pos, false));
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    EGTBStats stats = egtb.getStats();
+    Assert.assertEquals(8 * 20000, stats.getTotalResultCacheHits() + stats.getTotalResultCacheMisses());
+    Assert.assertEquals(stats.getTotalResultCacheMisses(), tableBase.probes.get());
+  }
+
+  /**
+   * An in-memory tablebase whose soft probes always miss.
+   */
+  private static class FakeTableBase extends EndGameTableBase {
+
+    final Map<Long, DTM> results = new HashMap<>();
+    final AtomicInteger probes = new AtomicInteger();
+
+    @Override
+    public void init(String path, long cacheSize, Object... args) {
+    }
+
+    @Override
+    public boolean isInit() {
+      return true;
+    }
+
+    @Override
+    public void clearCache() {
+    }
+
+    @Override
+    public boolean areTableBasesAvailable(int piecesOnBoard) {
+      return piecesOnBoard == 3;
+    }
+
+    @Override
+    public EGTBStats getStats() {
+      return new EGTBStats(probes.get(), 0, 0, 0);
+    }
+
+    @Override
+    public void resetStats() {
+    }
+
+    @Override
+    public WDL probeWDL(Position pos, boolean soft) {
+      DTM dtm = probeDTM(pos, soft);
+      return dtm == null ? null : dtm.getWdl();
+    }
+
+    @Override
+    public DTM probeDTM(Position pos, boolean soft) {
+      probes.incrementAndGet();
+      // Simulate the latency of the probing code.
+      long start = System.nanoTime();
+      while (System.nanoTime() - start < 1000) {
+        Thread.yield();
+      }
+      return soft ? null : results.get(pos.getKey());
+    }
+
+    @Override
+    public void close() {
+    }
+
+  }
+
+}
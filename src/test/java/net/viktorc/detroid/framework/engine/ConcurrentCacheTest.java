@@ -0,0 +1,195 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import net.viktorc.detroid.framework.util.Cache;
+import net.viktorc.detroid.framework.util.Cache.EntryFactory;
+import net.viktorc.detroid.framework.util.Cache.ReplacementPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A concurrency stress test of the thread safe mode of the hash table with transposition and evaluation table entries. Multiple threads
+ * insert and look up entries whose contents are derived from their keys so that any lost or torn entries can be detected.
+ *
+ * @author Viktor
+ */
+public final class ConcurrentCacheTest {
+
+  private static final int THREADS = 4;
+  private static final int WAYS = 4;
+  private static final int BUCKETS = 1 << 12;
+  private static final int ROUNDS = 20;
+  private static final int OPERATIONS = 1 << 18;
+  private static final int KEY_SPACE = 4 * BUCKETS * WAYS;
+
+  private static short depthOf(long key) {
+    return (short) (key & 0x7F);
+  }
+
+  private static byte typeOf(long key) {
+    return (byte) ((key >>> 7) & 3);
+  }
+
+  private static short scoreOf(long key) {
+    return (short) (key >>> 16);
+  }
+
+  private static int bestMoveOf(long key) {
+    return (int) (key >>> 32);
+  }
+
+  private static void setUp(TTEntry entry, long key) {
+    entry.set(key, depthOf(key), typeOf(key), scoreOf(key), bestMoveOf(key), (byte) 0, false);
+    entry.setupKey();
+  }
+
+  private static boolean verify(TTEntry entry, long key) {
+    return entry.hashKey() == key && entry.getDepth() == depthOf(key) && entry.getType() == typeOf(key) &&
+        entry.getScore() == scoreOf(key) && entry.getBestMove() == bestMoveOf(key);
+  }
+
+  private static void setUp(ETEntry entry, long key) {
+    entry.set(key, scoreOf(key), (byte) 0);
+    entry.setupKey();
+  }
+
+  private static boolean verify(ETEntry entry, long key) {
+    return entry.hashKey() == key && entry.getScore() == scoreOf(key);
+  }
+
+  /**
+   * Runs the task on all threads at once and waits for all of them to complete.
+   */
+  private static void runConcurrently(ThreadTask task) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      CyclicBarrier barrier = new CyclicBarrier(THREADS);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        int thread = i;
+        futures.add(pool.submit(() -> {
+          barrier.await();
+          task.run(thread);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Has each thread insert an entry into every bucket so that all buckets fill up exactly and checks that none of the entries are lost.
+   */
+  private static <T extends Cache.Entry<T>> void testNoLostEntries(EntryFactory<T> factory, BiConsumer<T, Long> setUp,
+      BiPredicate<T, Long> verify) throws Exception {
+    Cache<T> cache = new Cache<>(factory, BUCKETS * WAYS, WAYS, ReplacementPolicy.depthPreferred(), true);
+    Assert.assertEquals(BUCKETS * WAYS, cache.capacity());
+    for (int round = 0; round < ROUNDS; round++) {
+      cache.clear();
+      Assert.assertEquals(0, cache.size());
+      runConcurrently(thread -> {
+        T entry = factory.newInstance();
+        for (int i = 0; i < BUCKETS; i++) {
+          // Each thread walks the buckets from a different starting point.
+          long key = ((long) (thread + 1) << 40) | ((i + thread * BUCKETS / THREADS) % BUCKETS);
+          setUp.accept(entry, key);
+          cache.put(entry);
+        }
+      });
+      Assert.assertEquals(BUCKETS * WAYS, cache.size());
+      T target = factory.newInstance();
+      for (int thread = 0; thread < THREADS; thread++) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+          long key = ((long) (thread + 1) << 40) | bucket;
+          Assert.assertNotNull("Lost entry " + key, cache.get(key, target));
+          Assert.assertTrue("Corrupted entry " + key, verify.test(target, key));
+        }
+      }
+    }
+  }
+
+  /**
+   * Has the threads insert and look up random entries of a key space much larger than the capacity of the table and checks that all
+   * the entries looked up and all the entries left in the table are consistent.
+   */
+  private static <T extends Cache.Entry<T>> void testNoCorruptedEntries(EntryFactory<T> factory, BiConsumer<T, Long> setUp,
+      BiPredicate<T, Long> verify, ReplacementPolicy<T> policy) throws Exception {
+    Cache<T> cache = new Cache<>(factory, BUCKETS * WAYS, WAYS, policy, true);
+    long[] keys = new Random(0).longs(KEY_SPACE).filter(k -> k != 0).toArray();
+    AtomicInteger hits = new AtomicInteger();
+    AtomicInteger corruptions = new AtomicInteger();
+    runConcurrently(thread -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      T entry = factory.newInstance();
+      T target = factory.newInstance();
+      for (int i = 0; i < OPERATIONS; i++) {
+        long key = keys[random.nextInt(keys.length)];
+        if (random.nextBoolean()) {
+          setUp.accept(entry, key);
+          cache.put(entry);
+        } else if (cache.get(key, target) != null) {
+          hits.incrementAndGet();
+          if (!verify.test(target, key)) {
+            corruptions.incrementAndGet();
+          }
+        }
+      }
+    });
+    Assert.assertTrue(hits.get() > 0);
+    Assert.assertEquals(0, corruptions.get());
+    int size = 0;
+    for (T entry : cache) {
+      Assert.assertTrue("Corrupted entry " + entry, verify.test(entry, entry.hashKey()));
+      size++;
+    }
+    Assert.assertEquals(size, cache.size());
+  }
+
+  @Test
+  public void testTranspositionTableNoLostEntries() throws Exception {
+    testNoLostEntries(TTEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify);
+  }
+
+  @Test
+  public void testEvaluationTableNoLostEntries() throws Exception {
+    testNoLostEntries(ETEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify);
+  }
+
+  @Test
+  public void testTranspositionTableNoCorruptedEntries() throws Exception {
+    testNoCorruptedEntries(TTEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify,
+        ReplacementPolicy.alwaysReplace());
+    testNoCorruptedEntries(TTEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify, ReplacementPolicy.twoTier());
+  }
+
+  @Test
+  public void testEvaluationTableNoCorruptedEntries() throws Exception {
+    testNoCorruptedEntries(ETEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify,
+        ReplacementPolicy.alwaysReplace());
+    testNoCorruptedEntries(ETEntry::new, ConcurrentCacheTest::setUp, ConcurrentCacheTest::verify, ReplacementPolicy.twoTier());
+  }
+
+  /**
+   * A task run on each of the threads.
+   */
+  private interface ThreadTask {
+
+    void run(int thread) throws Exception;
+
+  }
+
+}
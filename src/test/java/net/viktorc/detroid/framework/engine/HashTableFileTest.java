@@ -0,0 +1,174 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import net.viktorc.detroid.framework.util.Cache;
+import net.viktorc.detroid.framework.util.Cache.ReplacementPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the saving of the hash tables to files and the loading of the files into hash tables of different sizes and schemes.
+ *
+ * @author Viktor
+ */
+public final class HashTableFileTest {
+
+  private static final int WAYS = 4;
+  private static final int CAPACITY = 1 << 12;
+  private static final int ENTRIES = CAPACITY / 4;
+  private static final int HASH_SIZE = 16;
+  private static final byte FILE_GENERATION = 5;
+
+  private File file;
+
+  private static long keyOf(int i) {
+    return (i + 1) * 0x9E3779B97F4A7C15L;
+  }
+
+  private static byte generationOf(long key) {
+    return (byte) ((key >>> 8) & 3);
+  }
+
+  private static void setUp(TTEntry entry, long key) {
+    entry.set(key, (short) (key & 0x7F), (byte) ((key >>> 7) & 3), (short) (key >>> 16), (int) (key >>> 32), generationOf(key), false);
+    entry.setupKey();
+  }
+
+  private static void setUp(ETEntry entry, long key) {
+    entry.set(key, (short) (key >>> 16), generationOf(key));
+    entry.setupKey();
+  }
+
+  private static Cache<TTEntry> newTransTable(int capacity, boolean concurrent) {
+    return new Cache<>(TTEntry::new, capacity, WAYS, ReplacementPolicy.depthPreferred(), concurrent);
+  }
+
+  private static Cache<ETEntry> newEvalTable(int capacity, boolean concurrent) {
+    return new Cache<>(ETEntry::new, capacity, WAYS, ReplacementPolicy.alwaysReplace(), concurrent);
+  }
+
+  private static Cache<TTEntry> filledTransTable(boolean concurrent) {
+    Cache<TTEntry> transTable = newTransTable(CAPACITY, concurrent);
+    TTEntry entry = new TTEntry();
+    for (int i = 0; i < ENTRIES; i++) {
+      setUp(entry, keyOf(i));
+      transTable.put(entry);
+    }
+    return transTable;
+  }
+
+  private static Cache<ETEntry> filledEvalTable(boolean concurrent) {
+    Cache<ETEntry> evalTable = newEvalTable(CAPACITY, concurrent);
+    ETEntry entry = new ETEntry();
+    for (int i = 0; i < ENTRIES; i++) {
+      setUp(entry, keyOf(i));
+      evalTable.put(entry);
+    }
+    return evalTable;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("hash", ".dat");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file.toPath());
+  }
+
+  private void testRoundTrip(boolean concurrent) throws IOException {
+    Cache<TTEntry> transTable = filledTransTable(concurrent);
+    Cache<ETEntry> evalTable = filledEvalTable(concurrent);
+    HashTableFile.save(file.getPath(), transTable, evalTable, HASH_SIZE, FILE_GENERATION);
+    // Load the entries into larger tables of the other mode at a later generation.
+    byte generation = 10;
+    Cache<TTEntry> loadedTransTable = newTransTable(2 * CAPACITY, !concurrent);
+    Cache<ETEntry> loadedEvalTable = newEvalTable(2 * CAPACITY, !concurrent);
+    HashTableFile.Header header = HashTableFile.load(file.getPath(), loadedTransTable, loadedEvalTable, generation);
+    Assert.assertEquals(HASH_SIZE, header.hashSize);
+    Assert.assertEquals(FILE_GENERATION, header.generation);
+    Assert.assertEquals(transTable.size(), header.ttEntries);
+    Assert.assertEquals(evalTable.size(), header.etEntries);
+    Assert.assertEquals(header.ttEntries, header.ttEntriesLoaded);
+    Assert.assertEquals(header.etEntries, header.etEntriesLoaded);
+    Assert.assertEquals(transTable.size(), loadedTransTable.size());
+    Assert.assertEquals(evalTable.size(), loadedEvalTable.size());
+    TTEntry ttEntry = new TTEntry();
+    for (TTEntry expected : transTable) {
+      Assert.assertNotNull(loadedTransTable.get(expected.hashKey(), ttEntry));
+      Assert.assertEquals(expected.getKey(), ttEntry.getKey());
+      Assert.assertEquals(expected.getDepth(), ttEntry.getDepth());
+      Assert.assertEquals(expected.getType(), ttEntry.getType());
+      Assert.assertEquals(expected.getScore(), ttEntry.getScore());
+      Assert.assertEquals(expected.getBestMove(), ttEntry.getBestMove());
+      // The generations are rebased onto the current generation.
+      Assert.assertEquals(expected.getGeneration() - FILE_GENERATION + generation, ttEntry.getGeneration());
+    }
+    ETEntry etEntry = new ETEntry();
+    for (ETEntry expected : evalTable) {
+      Assert.assertNotNull(loadedEvalTable.get(expected.hashKey(), etEntry));
+      Assert.assertEquals(expected.getKey(), etEntry.getKey());
+      Assert.assertEquals(expected.getScore(), etEntry.getScore());
+      Assert.assertEquals(expected.getGeneration() - FILE_GENERATION + generation, etEntry.getGeneration());
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    testRoundTrip(false);
+  }
+
+  @Test
+  public void testConcurrentRoundTrip() throws IOException {
+    testRoundTrip(true);
+  }
+
+  @Test
+  public void testWithoutEvalTable() throws IOException {
+    Cache<TTEntry> transTable = filledTransTable(false);
+    HashTableFile.save(file.getPath(), transTable, null, HASH_SIZE, FILE_GENERATION);
+    Cache<ETEntry> evalTable = newEvalTable(CAPACITY, false);
+    HashTableFile.Header header = HashTableFile.load(file.getPath(), newTransTable(CAPACITY, false), evalTable, FILE_GENERATION);
+    Assert.assertEquals(transTable.size(), header.ttEntriesLoaded);
+    Assert.assertEquals(0, header.etEntries);
+    Assert.assertEquals(0, evalTable.size());
+    // The evaluation table entries in the file are skipped if there is no evaluation table to load them into.
+    HashTableFile.save(file.getPath(), transTable, filledEvalTable(false), HASH_SIZE, FILE_GENERATION);
+    header = HashTableFile.load(file.getPath(), newTransTable(CAPACITY, false), null, FILE_GENERATION);
+    Assert.assertEquals(transTable.size(), header.ttEntriesLoaded);
+    Assert.assertEquals(0, header.etEntriesLoaded);
+  }
+
+  @Test
+  public void testOldGenerationsAreNotNegative() throws IOException {
+    HashTableFile.save(file.getPath(), filledTransTable(false), null, HASH_SIZE, FILE_GENERATION);
+    Cache<TTEntry> transTable = newTransTable(CAPACITY, false);
+    HashTableFile.load(file.getPath(), transTable, null, (byte) 0);
+    for (TTEntry entry : transTable) {
+      Assert.assertEquals(0, entry.getGeneration());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testIllegalHeader() throws IOException {
+    Files.write(file.toPath(), "not a hash file".getBytes(StandardCharsets.UTF_8));
+    HashTableFile.load(file.getPath(), newTransTable(CAPACITY, false), null, (byte) 0);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedFile() throws IOException {
+    HashTableFile.save(file.getPath(), filledTransTable(false), null, HASH_SIZE, FILE_GENERATION);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 1);
+    }
+    HashTableFile.load(file.getPath(), newTransTable(CAPACITY, false), null, (byte) 0);
+  }
+
+}
@@ -0,0 +1,185 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.viktorc.detroid.framework.engine.OpeningBook.SelectionModel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the building of Polyglot books from games in PGN with a memory limit small enough for the moves to be spilled to more runs than
+ * what can be merged at once, and the reading of the books built through {@link net.viktorc.detroid.framework.engine.PolyglotBook}.
+ *
+ * @author Viktor
+ */
+public final class PolyglotBookBuilderTest {
+
+  private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+  private static final String D4_FEN = "rnbqkbnr/pppppppp/8/8/3P4/8/PPP1PPPP/RNBQKBNR b KQkq d3 0 1";
+  private static final String CASTLING_FEN = "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 6 4";
+  private static final String E4_GAME = "1. e4 e5";
+  private static final String D4_GAME = "1. d4 d5";
+  private static final String CASTLING_GAME = "1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. O-O Nf6";
+  private static final String C4_GAME = "1. c4 e5";
+  // Enough white wins for the weight of 1. e4 to exceed the 16 bits of the Polyglot weight field.
+  private static final int E4_GAMES = 40000;
+  private static final int D4_GAMES = 10000;
+  private static final int CASTLING_GAMES = 3;
+  private static final int C4_GAMES = 2;
+  private static final int MAX_PLY = 8;
+  private static final int MIN_GAMES = 3;
+  // With a memory limit of 1 MB, the buffers of this many workers hold about a thousand moves each.
+  private static final int CONCURRENCY = 80;
+  // The maximum number of runs the builder merges at once.
+  private static final int MAX_MERGE_FAN_IN = 64;
+
+  private File pgnFile;
+  private File bookFile;
+
+  private static void writeGames(BufferedWriter writer, String moves, String result, int games) throws IOException {
+    for (int i = 0; i < games; i++) {
+      writer.write("[Event \"Test\"]\n[Result \"" + result + "\"]\n\n" + moves + " " + result + "\n\n");
+    }
+  }
+
+  private static long key(String fen) throws ChessParseException {
+    return ZobristKeyGenerator.getInstance().generatePolyglotHashKey(Position.parse(fen));
+  }
+
+  private static String toSquares(long polyglotMove) {
+    return "" + (char) ('a' + ((polyglotMove >>> 6) & 7)) + (((polyglotMove >>> 9) & 7) + 1) + (char) ('a' + (polyglotMove & 7)) +
+        (((polyglotMove >>> 3) & 7) + 1);
+  }
+
+  private static List<long[]> readEntries(File bookFile) throws IOException {
+    List<long[]> entries = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new FileInputStream(bookFile))) {
+      for (long i = 0; i < bookFile.length() / PolyglotBook.ENTRY_SIZE; i++) {
+        long key = in.readLong();
+        int move = in.readUnsignedShort();
+        int weight = in.readUnsignedShort();
+        Assert.assertEquals(0, in.readInt());
+        entries.add(new long[]{key, move, weight});
+      }
+    }
+    return entries;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    pgnFile = File.createTempFile("games", ".pgn");
+    bookFile = File.createTempFile("book", ".bin");
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(pgnFile))) {
+      writeGames(writer, E4_GAME, "1-0", E4_GAMES);
+      writeGames(writer, D4_GAME, "1/2-1/2", D4_GAMES);
+      writeGames(writer, CASTLING_GAME, "1-0", CASTLING_GAMES);
+      writeGames(writer, C4_GAME, "1-0", C4_GAMES);
+      // Games that have not ended are skipped.
+      writeGames(writer, C4_GAME, "*", MIN_GAMES);
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(pgnFile.toPath());
+    Files.deleteIfExists(bookFile.toPath());
+  }
+
+  @Test
+  public void testBuild() throws Exception {
+    List<String> messages = new ArrayList<>();
+    Logger logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers(false);
+    logger.addHandler(new Handler() {
+
+      @Override
+      public void publish(LogRecord record) {
+        messages.add(record.getMessage());
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+
+    });
+    PolyglotBookBuilder builder = new PolyglotBookBuilder(MAX_PLY, MIN_GAMES, 1, CONCURRENCY, logger);
+    long entries = builder.build(pgnFile.getPath(), bookFile.getPath(), Long.MAX_VALUE);
+    // The runs have to be merged in multiple passes.
+    Assert.assertEquals(1, messages.size());
+    Matcher matcher = Pattern.compile("runs: (\\d+)").matcher(messages.get(0));
+    Assert.assertTrue(matcher.find());
+    Assert.assertTrue(Integer.parseInt(matcher.group(1)) > MAX_MERGE_FAN_IN);
+    List<long[]> bookEntries = readEntries(bookFile);
+    // 1. e4 and 1. d4 in the start position, 1... d5 which drew, and the white moves of the castling game after 1. e4 e5; the other moves
+    // of black never scored.
+    Assert.assertEquals(6, entries);
+    Assert.assertEquals(entries, bookEntries.size());
+    for (int i = 1; i < bookEntries.size(); i++) {
+      Assert.assertTrue(Long.compareUnsigned(bookEntries.get(i - 1)[0], bookEntries.get(i)[0]) <= 0);
+    }
+    long startKey = key(START_FEN);
+    List<long[]> startEntries = new ArrayList<>();
+    for (long[] entry : bookEntries) {
+      if (entry[0] == startKey) {
+        startEntries.add(entry);
+      }
+    }
+    // 1. c4 was played in fewer games than the minimum.
+    Assert.assertEquals(2, startEntries.size());
+    // The weights are scaled down proportionally so that the greatest one fits into 16 bits.
+    long e4Weight = 2L * (E4_GAMES + CASTLING_GAMES);
+    Assert.assertEquals(0x031C, startEntries.get(0)[1]);
+    Assert.assertEquals("e2e4", toSquares(startEntries.get(0)[1]));
+    Assert.assertEquals(PolyglotBook.MAX_WEIGHT, startEntries.get(0)[2]);
+    Assert.assertEquals("d2d4", toSquares(startEntries.get(1)[1]));
+    Assert.assertEquals(D4_GAMES * (long) PolyglotBook.MAX_WEIGHT / e4Weight, startEntries.get(1)[2]);
+    // The weights of the other positions are not affected by the scaling; a draw is worth one point.
+    long d4Key = key(D4_FEN);
+    long[] d5Entry = null;
+    for (long[] entry : bookEntries) {
+      if (entry[0] == d4Key) {
+        d5Entry = entry;
+      }
+    }
+    Assert.assertNotNull(d5Entry);
+    Assert.assertEquals("d7d5", toSquares(d5Entry[1]));
+    Assert.assertEquals(D4_GAMES, d5Entry[2]);
+    // Castling is encoded as the king capturing its own rook and weighted two points per win.
+    long castlingKey = key(CASTLING_FEN);
+    long[] castlingEntry = null;
+    for (long[] entry : bookEntries) {
+      if (entry[0] == castlingKey) {
+        castlingEntry = entry;
+      }
+    }
+    Assert.assertNotNull(castlingEntry);
+    Assert.assertEquals("e1h1", toSquares(castlingEntry[1]));
+    Assert.assertEquals(2 * CASTLING_GAMES, castlingEntry[2]);
+    try (PolyglotBook book = new PolyglotBook(bookFile.getPath())) {
+      Assert.assertEquals("e2e4", book.getMove(Position.parse(START_FEN), SelectionModel.DETERMINISTIC).toString());
+      Assert.assertEquals("e1g1", book.getMove(Position.parse(CASTLING_FEN), SelectionModel.DETERMINISTIC).toString());
+      // The moves of black after 1. c4 never scored.
+      Assert.assertNull(book.getMove(Position.parse("rnbqkbnr/pppppppp/8/8/2P5/8/PP1PPPPP/RNBQKBNR b KQkq c3 0 1"),
+          SelectionModel.DETERMINISTIC));
+    }
+  }
+
+}
@@ -0,0 +1,145 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import net.viktorc.detroid.framework.engine.OpeningBook.SelectionModel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the look-ups of {@link net.viktorc.detroid.framework.engine.PolyglotBook} both on books small enough to be indexed in memory and
+ * on books large enough to be memory-mapped. The books are generated with entries whose keys and weights do not fit into the signed
+ * ranges of their fields, so that they are only found and weighted correctly if they are treated as unsigned integers.
+ *
+ * @author Viktor
+ */
+public final class PolyglotBookTest {
+
+  private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+  private static final String E4_FEN = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+  private static final String D4_FEN = "rnbqkbnr/pppppppp/8/8/3P4/8/PPP1PPPP/RNBQKBNR b KQkq d3 0 1";
+  private static final String CASTLING_FEN = "r3k2r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w KQkq - 0 1";
+  private static final String OUT_OF_BOOK_FEN = "rnbqkbnr/pppppppp/8/8/2P5/8/PP1PPPPP/RNBQKBNR b KQkq c3 0 1";
+  // The Polyglot keys of the start position and the position after 1. e4 from the specification of the format.
+  private static final long START_KEY = 0x463B96181691FC9CL;
+  private static final long E4_KEY = 0x823C9B50FD114196L;
+
+  private File file;
+
+  /**
+   * Returns the book entries of the test positions as arrays of keys, moves, and weights sorted by the keys as unsigned integers.
+   */
+  private static long[][] entries() throws ChessParseException {
+    ZobristKeyGenerator gen = ZobristKeyGenerator.getInstance();
+    long d4Key = gen.generatePolyglotHashKey(Position.parse(D4_FEN));
+    long castlingKey = gen.generatePolyglotHashKey(Position.parse(CASTLING_FEN));
+    long[][] entries = new long[][]{
+        // e2e4 and d2d4; the weight of e2e4 is negative as a signed short.
+        {START_KEY, 0x031C, 0xFFFF},
+        {START_KEY, 0x02DB, 0x7FFF},
+        // c7c5 and e7e5 in a position whose key is negative as a signed long.
+        {E4_KEY, 0x0CA2, 0x8000},
+        {E4_KEY, 0x0D24, 1},
+        // d7d5 without any weight and g8f6.
+        {d4Key, 0x0CE3, 0},
+        {d4Key, 0x0FAD, 0xFFFF},
+        // Long castling as the king capturing its own rook.
+        {castlingKey, 0x0100, 1}
+    };
+    Arrays.sort(entries, (e1, e2) -> Long.compareUnsigned(e1[0], e2[0]));
+    return entries;
+  }
+
+  private static void writeEntry(DataOutputStream out, long key, long move, long weight) throws IOException {
+    out.writeLong(key);
+    out.writeShort((short) move);
+    out.writeShort((short) weight);
+    out.writeInt(0);
+  }
+
+  /**
+   * Writes the entries of the test positions to the book file interleaved with the specified number of filler entries whose keys are
+   * spread evenly over the whole unsigned range.
+   */
+  private void writeBook(long fillers) throws IOException, ChessParseException {
+    long[][] entries = entries();
+    long stride = Long.divideUnsigned(-1L, fillers);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      int i = 0;
+      for (long j = 0; j < fillers; j++) {
+        long fillerKey = j * stride;
+        for (; i < entries.length && Long.compareUnsigned(entries[i][0], fillerKey) <= 0; i++) {
+          writeEntry(out, entries[i][0], entries[i][1], entries[i][2]);
+        }
+        if (i == 0 || entries[i - 1][0] != fillerKey) {
+          writeEntry(out, fillerKey, 0, 1);
+        }
+      }
+      for (; i < entries.length; i++) {
+        writeEntry(out, entries[i][0], entries[i][1], entries[i][2]);
+      }
+    }
+  }
+
+  private static String getMove(PolyglotBook book, String fen, SelectionModel selection) throws Exception {
+    Move move = book.getMove(Position.parse(fen), selection);
+    return move == null ? null : move.toString();
+  }
+
+  private void testLookUps(long fillers) throws Exception {
+    writeBook(fillers);
+    try (PolyglotBook book = new PolyglotBook(file.getPath())) {
+      Assert.assertEquals("e2e4", getMove(book, START_FEN, SelectionModel.DETERMINISTIC));
+      Assert.assertEquals("c7c5", getMove(book, E4_FEN, SelectionModel.DETERMINISTIC));
+      Assert.assertEquals("g8f6", getMove(book, D4_FEN, SelectionModel.DETERMINISTIC));
+      Assert.assertEquals("e1c1", getMove(book, CASTLING_FEN, SelectionModel.DETERMINISTIC));
+      Assert.assertNull(getMove(book, OUT_OF_BOOK_FEN, SelectionModel.DETERMINISTIC));
+      for (int i = 0; i < 100; i++) {
+        // The entries without weight are never picked by the stochastic selection.
+        Assert.assertEquals("g8f6", getMove(book, D4_FEN, SelectionModel.STOCHASTIC));
+        Assert.assertTrue(Arrays.asList("e2e4", "d2d4").contains(getMove(book, START_FEN, SelectionModel.STOCHASTIC)));
+        Assert.assertTrue(Arrays.asList("c7c5", "e7e5").contains(getMove(book, E4_FEN, SelectionModel.RANDOM)));
+      }
+      Assert.assertNull(getMove(book, OUT_OF_BOOK_FEN, SelectionModel.RANDOM));
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("book", ".bin");
+  }
+
+  @After
+  public void tearDown() {
+    // Memory-mapped files cannot be deleted on some platforms until the mapping is garbage collected.
+    if (file.exists() && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  @Test
+  public void testPolyglotKeys() throws ChessParseException {
+    ZobristKeyGenerator gen = ZobristKeyGenerator.getInstance();
+    Assert.assertEquals(START_KEY, gen.generatePolyglotHashKey(Position.parse(START_FEN)));
+    Assert.assertEquals(E4_KEY, gen.generatePolyglotHashKey(Position.parse(E4_FEN)));
+  }
+
+  @Test
+  public void testIndexedBook() throws Exception {
+    testLookUps(1000);
+    Assert.assertTrue(file.length() / PolyglotBook.ENTRY_SIZE <= PolyglotBook.MAX_INDEXED_ENTRIES);
+  }
+
+  @Test
+  public void testMemoryMappedBook() throws Exception {
+    testLookUps(PolyglotBook.MAX_INDEXED_ENTRIES);
+    Assert.assertTrue(file.length() / PolyglotBook.ENTRY_SIZE > PolyglotBook.MAX_INDEXED_ENTRIES);
+  }
+
+}
@@ -0,0 +1,66 @@
+package net.viktorc.detroid.framework.engine;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * A test of resolving positions to the leaves of their quiescence search for static evaluation tuning.
+ *
+ * @author Viktor
+ */
+public final class QuiescenceResolutionTest {
+
+  private static final String[] POSITIONS = {
+      "r1bqkbnr/ppp2ppp/2n5/3pp3/3PP3/2N2N2/PPP2PPP/R1BQKB1R w KQkq - 0 1",
+      "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 1",
+      "rnbqkbnr/ppp2ppp/8/3pp3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 0 1",
+      "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 1",
+      "4k3/8/8/3p4/4P3/8/8/4K3 w - - 0 1"
+  };
+
+  private static Detroid engine;
+  private static Evaluator evaluator;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    engine = new Detroid();
+    engine.init();
+    evaluator = new Evaluator((DetroidParameters) engine.getParameters(), null);
+  }
+
+  @Test
+  public void testNoWinningCapturesLeft() throws ChessParseException {
+    for (String fen : POSITIONS) {
+      Assert.assertTrue(engine.setPosition(fen));
+      Position leaf = Position.parse(engine.resolveQuiescence());
+      if (leaf.isInCheck()) {
+        Assert.assertTrue("Unresolved check in the leaf of " + fen, leaf.getMoves().isEmpty());
+        continue;
+      }
+      for (Move move : leaf.getTacticalMoves()) {
+        if (move.capturedPiece != Piece.NULL.ind) {
+          Assert.assertTrue("Winning capture " + move + " left in the leaf of " + fen + ": " + leaf,
+              evaluator.SEE(leaf, move) <= 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLeafIsQuiet() {
+    for (String fen : POSITIONS) {
+      Assert.assertTrue(engine.setPosition(fen));
+      String leaf = engine.resolveQuiescence();
+      Assert.assertTrue(engine.setPosition(leaf));
+      Assert.assertEquals(leaf, engine.resolveQuiescence());
+    }
+  }
+
+  @AfterClass
+  public static void cleanUp() {
+    engine.close();
+  }
+
+}
@@ -0,0 +1,87 @@
+package net.viktorc.detroid.framework.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A benchmark of the start-up latency of the engine in UCI mode with and without a start-up snapshot. Each measurement is taken in a fresh
+ * JVM; the latency is measured from sending the {@code uci} command to the idle process to receiving {@code uciok}. The snapshot is
+ * expected to reduce the average latency by at least 10%. As it starts several engine processes, the test is excluded from the build
+ * unless the {@code startup.test} property is set to true.
+ *
+ * @author Viktor
+ */
+public final class StartupTimeTest {
+
+  private static final String LAUNCHER_CLASS_NAME = "net.viktorc.detroid.Launcher";
+  private static final int RUNS = 3;
+  // The minimum relative reduction in the average latency due to the snapshot.
+  private static final double MIN_SPEEDUP = 0.1;
+  // The time the JVM of the engine process is given to start up before the uci command is sent.
+  private static final long PROCESS_START_UP_TIME = 1000;
+  private static final long TIMEOUT = 60000;
+
+  /**
+   * Starts the engine in a new process in the specified working directory and measures the uci-uciok latency.
+   *
+   * @param workDir The working directory of the engine process.
+   * @return The latency in nanoseconds.
+   * @throws Exception If the process cannot be started or it does not respond in time.
+   */
+  private static long measure(File workDir) throws Exception {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LAUNCHER_CLASS_NAME, "-u")
+        .directory(workDir)
+        .redirectErrorStream(true)
+        .start();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        PrintStream out = new PrintStream(process.getOutputStream(), true)) {
+      Thread.sleep(PROCESS_START_UP_TIME);
+      long start = System.nanoTime();
+      out.println("uci");
+      String line;
+      while ((line = in.readLine()) != null && !"uciok".equals(line)) {
+        Assert.assertTrue("Engine did not respond in time", System.nanoTime() - start < TIMEOUT * 1000000);
+      }
+      long latency = System.nanoTime() - start;
+      Assert.assertEquals("uciok", line);
+      out.println("quit");
+      return latency;
+    } finally {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  private static double averageLatency(File workDir) throws Exception {
+    // Warm up the file system caches.
+    measure(workDir);
+    long total = 0;
+    for (int i = 0; i < RUNS; i++) {
+      total += measure(workDir);
+    }
+    return ((double) total) / RUNS / 1000000;
+  }
+
+  @Test
+  public void test() throws Exception {
+    File workDir = Files.createTempDirectory("detroid-startup").toFile();
+    File snapshot = new File(workDir, StartupSnapshot.DEFAULT_FILE_PATH);
+    try {
+      double withoutSnapshot = averageLatency(workDir);
+      StartupSnapshot.write(snapshot.getPath(), "params.xml");
+      double withSnapshot = averageLatency(workDir);
+      Assert.assertTrue(String.format("Average uci-uciok latency with snapshot: %.2f ms; without snapshot: %.2f ms", withSnapshot,
+          withoutSnapshot), withSnapshot < (1 - MIN_SPEEDUP) * withoutSnapshot);
+    } finally {
+      Files.deleteIfExists(snapshot.toPath());
+      Files.deleteIfExists(workDir.toPath());
+    }
+  }
+
+}
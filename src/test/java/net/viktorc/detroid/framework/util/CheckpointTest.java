@@ -0,0 +1,125 @@
+package net.viktorc.detroid.framework.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the saving and restoring of checkpoints and the atomic writing of files.
+ *
+ * @author Viktor
+ */
+public final class CheckpointTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("checkpoint");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private String path(String fileName) {
+    return directory.resolve(fileName).toString();
+  }
+
+  @Test
+  public void testValuesRoundTrip() throws IOException {
+    double[] values = new double[]{0.1, -1d / 3, Double.MIN_VALUE, Double.MAX_VALUE, 1e-300, -0d};
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.putInt("int", Integer.MIN_VALUE);
+    checkpoint.putLong("long", Long.MAX_VALUE);
+    checkpoint.putDouble("double", Math.PI);
+    checkpoint.putDoubleArray("array", values);
+    checkpoint.putDoubleArray("empty", new double[0]);
+    checkpoint.save(path("checkpoint"));
+    Checkpoint restored = Checkpoint.load(path("checkpoint"));
+    Assert.assertEquals(Integer.valueOf(Integer.MIN_VALUE), restored.getInt("int"));
+    Assert.assertEquals(Long.valueOf(Long.MAX_VALUE), restored.getLong("long"));
+    Assert.assertEquals(Double.doubleToLongBits(Math.PI), Double.doubleToLongBits(restored.getDouble("double")));
+    double[] restoredValues = restored.getDoubleArray("array");
+    Assert.assertEquals(values.length, restoredValues.length);
+    for (int i = 0; i < values.length; i++) {
+      Assert.assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(restoredValues[i]));
+    }
+    Assert.assertEquals(0, restored.getDoubleArray("empty").length);
+    Assert.assertNull(restored.getInt("missing"));
+    Assert.assertNull(restored.getDoubleArray("missing"));
+    Assert.assertNull(restored.getRandom("missing"));
+  }
+
+  @Test
+  public void testRandomRoundTrip() throws IOException {
+    Random random = new Random(42);
+    random.nextGaussian();
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.putRandom("random", random);
+    checkpoint.save(path("checkpoint"));
+    Random restored = Checkpoint.load(path("checkpoint")).getRandom("random");
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(random.nextLong(), restored.nextLong());
+      Assert.assertEquals(Double.doubleToLongBits(random.nextGaussian()), Double.doubleToLongBits(restored.nextGaussian()));
+      Assert.assertEquals(random.nextBoolean(), restored.nextBoolean());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalRandomSeed() throws IOException {
+    Files.write(directory.resolve("checkpoint"), "random=rO0ABXNyABBqYXZhLnV0aWwuUmFuZG9t".getBytes(StandardCharsets.ISO_8859_1));
+    Checkpoint.load(path("checkpoint")).getRandom("random");
+  }
+
+  @Test
+  public void testAttachments() throws IOException {
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.putInt("generation", 3);
+    checkpoint.attach(".params", path -> Files.write(directory.resolve(path), "params".getBytes(StandardCharsets.UTF_8)));
+    checkpoint.save(path("checkpoint"));
+    Assert.assertEquals(Integer.valueOf(3), Checkpoint.load(path("checkpoint")).getInt("generation"));
+    Assert.assertEquals(Arrays.asList("params"), Files.readAllLines(directory.resolve("checkpoint.params"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWriteAtomicallyReplacesFile() throws IOException {
+    Path file = directory.resolve("file");
+    Files.write(file, "old".getBytes(StandardCharsets.UTF_8));
+    Checkpoint.writeAtomically(file.toString(), path -> Files.write(directory.resolve(path), "new".getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(Arrays.asList("new"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    Assert.assertFalse(Files.exists(directory.resolve("file.tmp")));
+  }
+
+  @Test
+  public void testFailedWriteKeepsPreviousFile() throws IOException {
+    Path file = directory.resolve("file");
+    Files.write(file, "old".getBytes(StandardCharsets.UTF_8));
+    try {
+      Checkpoint.writeAtomically(file.toString(), path -> {
+        Files.write(directory.resolve(path), "partial".getBytes(StandardCharsets.UTF_8));
+        throw new IOException("Simulated failure.");
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Simulated failure.", e.getMessage());
+    }
+    Assert.assertEquals(Arrays.asList("old"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    Assert.assertFalse(Files.exists(directory.resolve("file.tmp")));
+  }
+
+}
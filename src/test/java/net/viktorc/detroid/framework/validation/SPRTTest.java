@@ -0,0 +1,63 @@
+package net.viktorc.detroid.framework.validation;
+
+import net.viktorc.detroid.framework.validation.SPRT.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A test of the sequential probability ratio test on match records that clearly favour one of the hypotheses and on records without
+ * draws or with only one kind of result.
+ *
+ * @author Viktor
+ */
+public final class SPRTTest {
+
+  private final SPRT sprt = new SPRT(0, 10, null, null);
+
+  @Test
+  public void testNoGames() {
+    Assert.assertEquals(0, sprt.calculateLLR(0, 0, 0), 0);
+    Assert.assertEquals(Result.UNDECIDED, sprt.test(0, 0, 0));
+  }
+
+  @Test
+  public void testUndecided() {
+    Assert.assertEquals(Result.UNDECIDED, sprt.test(5, 5, 10));
+    Assert.assertEquals(Result.UNDECIDED, sprt.test(6, 4, 10));
+  }
+
+  @Test
+  public void testAcceptH0() {
+    Assert.assertEquals(Result.H0_ACCEPTED, sprt.test(800, 1000, 2000));
+  }
+
+  @Test
+  public void testAcceptH1() {
+    Assert.assertEquals(Result.H1_ACCEPTED, sprt.test(1000, 800, 2000));
+  }
+
+  @Test
+  public void testNoDraws() {
+    Assert.assertEquals(Result.H0_ACCEPTED, sprt.test(400, 600, 0));
+    Assert.assertEquals(Result.H1_ACCEPTED, sprt.test(600, 400, 0));
+  }
+
+  @Test
+  public void testCleanSweep() {
+    Assert.assertEquals(Result.H1_ACCEPTED, sprt.test(100, 0, 0));
+    Assert.assertEquals(Result.H0_ACCEPTED, sprt.test(0, 100, 0));
+    Assert.assertEquals(Result.H0_ACCEPTED, sprt.test(0, 0, 1000));
+  }
+
+  @Test
+  public void testLLRMonotonicity() {
+    Assert.assertTrue(sprt.calculateLLR(51, 50, 0) > sprt.calculateLLR(50, 50, 0));
+    Assert.assertTrue(sprt.calculateLLR(50, 51, 0) < sprt.calculateLLR(50, 50, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeCount() {
+    sprt.calculateLLR(-1, 0, 0);
+  }
+
+}